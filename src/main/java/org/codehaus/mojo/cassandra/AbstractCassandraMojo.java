@@ -18,20 +18,26 @@
  */
 package org.codehaus.mojo.cassandra;
 
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.exceptions.ConfigurationException;
+import org.apache.cassandra.utils.FBUtilities;
 import org.apache.commons.exec.CommandLine;
 import org.apache.commons.exec.OS;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.ArtifactUtils;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
 import org.apache.maven.toolchain.Toolchain;
 import org.apache.maven.toolchain.ToolchainManager;
+import org.cassandraunit.dataset.ParseException;
 import org.codehaus.plexus.component.repository.exception.ComponentLookupException;
 import org.codehaus.plexus.util.FileUtils;
 import org.codehaus.plexus.util.IOUtil;
 import org.codehaus.plexus.util.StringUtils;
 import org.codehaus.plexus.util.cli.CommandLineUtils;
+import org.yaml.snakeyaml.Yaml;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -44,6 +50,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
@@ -161,6 +168,25 @@ public abstract class AbstractCassandraMojo
      */
     protected int jmxPort;
 
+    /**
+     * When {@code true}, the goals that load data keep the instance from compacting while they load: autocompaction
+     * is disabled and the compaction throughput turned down through JMX until the load ends. The instances it starts
+     * also get room for larger memtables, flushed by more threads, unless {@code yaml} says otherwise.
+     *
+     * @parameter property="cassandra.bulkLoadMode" default-value="false"
+     * @since 3.11.12.2
+     */
+    protected boolean bulkLoadMode;
+
+    /**
+     * When {@code true}, every non system keyspace is compacted, unthrottled, at the end of a load in
+     * {@code bulkLoadMode}.
+     *
+     * @parameter property="cassandra.bulkLoad.compact" default-value="false"
+     * @since 3.11.12.2
+     */
+    protected boolean bulkLoadCompact;
+
     /**
      * Port on which the CQL native transport listens for clients.
      *
@@ -248,6 +274,16 @@ public abstract class AbstractCassandraMojo
      */
     protected String logLevel;
 
+    /**
+     * The directory caching the CassandraUnit dataSets loaded with {@code cuLoadStreaming}, so that a dataSet that did
+     * not change is loaded without being parsed again. Entries are keyed by the content of the dataSet and the plugin
+     * version; an empty value disables the cache.
+     *
+     * @parameter property="cassandra.cu.cache" default-value="${project.build.directory}/cassandra-unit-cache"
+     * @since 3.11.12.2
+     */
+    protected File cuCacheDirectory;
+
     /**
      * Create a jar with just a manifest containing a Main-Class entry for SurefireBooter and a Class-Path entry for
      * all classpath elements. Copied from surefire (ForkConfiguration#createJar())
@@ -415,14 +451,6 @@ public abstract class AbstractCassandraMojo
             getLog().debug( ( cassandraJar.isFile() ? "Updating " : "Creating " ) + cassandraJar );
             createCassandraJar( cassandraJar, CassandraMonitor.class.getName(), cassandraDir );
         }
-        /*
-        File nodetoolJar = new File( bin, "nodetool.jar" );
-        if ( Utils.shouldGenerateResource( project, nodetoolJar ) )
-        {
-            getLog().debug( ( nodetoolJar.isFile() ? "Updating " : "Creating " ) + nodetoolJar );
-            createCassandraJar( nodetoolJar, NodeCmd.class.getName(), cassandraDir );
-        }
-        */
     }
 
     /**
@@ -486,8 +514,111 @@ public abstract class AbstractCassandraMojo
                 config.append( "\"" ).append( "\n" );
             }
         }
+        String bulkLoad = null;
+        if ( bulkLoadMode )
+        {
+            // half the heap for memtables rather than a quarter, flushed by twice the default writers
+            bulkLoad = "memtable_heap_space_in_mb: " + maxMemory / 2 + "\nmemtable_flush_writers: 4\n";
+        }
         FileUtils.fileWrite( cassandraYaml.getAbsolutePath(),
-                             Utils.merge( Utils.merge( defaults, yaml ), config.toString() ) );
+                             Utils.merge( Utils.merge( Utils.merge( defaults, bulkLoad ), yaml ), config.toString() ) );
+    }
+
+    /**
+     * Reads a setting of the server configuration, i.e. of the bundled {@code cassandra.yaml} with the {@code yaml}
+     * overrides applied.
+     *
+     * @param name the name of the setting.
+     * @return the value of the setting or {@code null} if it is not set.
+     * @throws IOException If the bundled configuration could not be read.
+     */
+    protected Object getCassandraYamlSetting( String name )
+        throws IOException
+    {
+        String defaults = IOUtil.toString( getClass().getResourceAsStream( "/cassandra.yaml" ) );
+        Map<String, Object> config = (Map<String, Object>) new Yaml().load( Utils.merge( defaults, yaml ) );
+        return config == null ? null : config.get( name );
+    }
+
+    /**
+     * Gets the partitioner of the server configuration, for the mojos that write SSTables.
+     *
+     * @return the partitioner.
+     * @throws MojoExecutionException If the configuration could not be read or names an unknown partitioner.
+     */
+    protected IPartitioner getPartitioner()
+        throws MojoExecutionException
+    {
+        try
+        {
+            Object partitioner = getCassandraYamlSetting( "partitioner" );
+            return FBUtilities.newPartitioner( partitioner == null
+                                                   ? "org.apache.cassandra.dht.Murmur3Partitioner"
+                                                   : partitioner.toString() );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not read the server configuration", e );
+        }
+        catch ( ConfigurationException e )
+        {
+            throw new MojoExecutionException( "Unknown partitioner", e );
+        }
+    }
+
+    /**
+     * Loads CassandraUnit dataSets into the Cassandra instance, several at a time.
+     *
+     * @param dataSets      the dataSets, and directories of dataSets, to load; may be {@code null}.
+     * @param dataSet       the dataSet, or directory of dataSets, to load when {@code dataSets} is empty.
+     * @param threads       the number of dataSets loaded at the same time, 0 for the number of processors.
+     * @param streaming     whether to stream the dataSets rather than have CassandraUnit parse them whole.
+     * @param failureIgnore whether to only log an error if a dataSet cannot be parsed.
+     * @throws MojoExecutionException if a dataSet cannot be parsed and {@code failureIgnore} is {@code false}, or
+     *                                cannot be written.
+     * @see CassandraUnitDataSetLoader
+     */
+    protected void loadCassandraUnitDataSets( File[] dataSets, File dataSet, int threads, boolean streaming,
+                                              boolean failureIgnore )
+        throws MojoExecutionException
+    {
+        try
+        {
+            CassandraUnitDataSetCache cache = null;
+            if ( cuCacheDirectory != null && cuCacheDirectory.getPath().length() > 0 && pluginArtifact != null )
+            {
+                cache = new CassandraUnitDataSetCache( cuCacheDirectory, pluginArtifact.getVersion() );
+            }
+            new CassandraUnitDataSetLoader( rpcAddress, rpcPort, threads, streaming, cache, getLog() ).load(
+                CassandraUnitDataSetLoader.listDataSets( dataSets != null && dataSets.length > 0
+                                                             ? dataSets
+                                                             : new File[]{ dataSet } ) );
+        }
+        catch ( ParseException e )
+        {
+            cuLoadFailed( e, failureIgnore );
+        }
+        catch ( IllegalArgumentException e )
+        {
+            cuLoadFailed( e, failureIgnore );
+        }
+        catch ( ThriftApiExecutionException e )
+        {
+            throw new MojoExecutionException( "Error while loading CassandraUnit dataSet", e );
+        }
+    }
+
+    private void cuLoadFailed( RuntimeException e, boolean failureIgnore )
+        throws MojoExecutionException
+    {
+        if ( failureIgnore )
+        {
+            getLog().error( e.getMessage() + ". Ignoring as cuLoadFailureIgnore is true" );
+        }
+        else
+        {
+            throw new MojoExecutionException( "Error while loading CassandraUnit dataSet", e );
+        }
     }
 
     /**
@@ -658,26 +789,114 @@ public abstract class AbstractCassandraMojo
     }
 
     /**
-     * Creates the command line to launch the {@code nodetool} utility.
+     * Connects to the JMX interface of the running Cassandra instance.
      *
-     * @param args the command line arguments to pass to the {@code nodetool} utility.
-     * @return the {@link CommandLine} to launch {@code nodetool} with the supplied arguments.
-     * @throws IOException if there are issues creating the cassandra home directory.
+     * @return the client, to be closed by the caller.
+     * @throws MojoExecutionException if the instance could not be reached.
      */
-    protected CommandLine newNodetoolCommandLine( String... args )
-        throws IOException
+    protected CassandraJmxClient connectJmx()
+        throws MojoExecutionException
     {
-        createCassandraHome();
-        CommandLine commandLine = newJavaCommandLine();
-        commandLine.addArgument( "-jar" );
-        // It seems that java cannot handle quoted jar file names...
-        commandLine.addArgument( new File( new File( cassandraDir, "bin" ), "nodetool.jar" ).getAbsolutePath(), false );
-        commandLine.addArgument( "--host" );
-        commandLine.addArgument( "127.0.0.1" );
-        commandLine.addArgument( "--port" );
-        commandLine.addArgument( Integer.toString( jmxPort ) );
-        commandLine.addArguments( args );
-        return commandLine;
+        return connectJmx( 0 );
+    }
+
+    /**
+     * Enters {@link BulkLoadMode} if {@code bulkLoadMode} is set.
+     *
+     * @return the mode, to be passed to {@link #endBulkLoad(BulkLoadMode, boolean)} once the load ends, {@code null}
+     *         if not set.
+     * @throws MojoExecutionException if the instance could not be reached.
+     */
+    protected BulkLoadMode beginBulkLoad()
+        throws MojoExecutionException
+    {
+        if ( !bulkLoadMode )
+        {
+            return null;
+        }
+        CassandraJmxClient jmx = connectJmx();
+        try
+        {
+            return BulkLoadMode.begin( jmx, getLog() );
+        }
+        catch ( IOException e )
+        {
+            jmx.close();
+            throw new MojoExecutionException( "Could not enter bulk load mode", e );
+        }
+    }
+
+    /**
+     * Leaves {@link BulkLoadMode}, compacting what was loaded if {@code bulkLoadCompact} is set.
+     *
+     * @param bulkLoad the mode {@link #beginBulkLoad()} returned, may be {@code null}.
+     * @param loaded   whether the load succeeded, there is nothing worth compacting otherwise. When it did not, an
+     *                 error leaving the mode is only logged, so that it does not hide why the load failed.
+     * @throws MojoExecutionException if the load succeeded but the instance could not be reached or the compaction
+     *                                failed.
+     */
+    protected void endBulkLoad( BulkLoadMode bulkLoad, boolean loaded )
+        throws MojoExecutionException
+    {
+        if ( bulkLoad == null )
+        {
+            return;
+        }
+        MojoExecutionException error;
+        try
+        {
+            bulkLoad.end( loaded && bulkLoadCompact );
+            return;
+        }
+        catch ( IOException e )
+        {
+            error = new MojoExecutionException( "Could not leave bulk load mode", e );
+        }
+        catch ( RuntimeException e )
+        {
+            error = new MojoExecutionException( "Could not leave bulk load mode", e );
+        }
+        catch ( ExecutionException e )
+        {
+            error = new MojoExecutionException( "Could not compact after the bulk load", e.getCause() );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            error = new MojoExecutionException( "Interrupted while compacting after the bulk load", e );
+        }
+        finally
+        {
+            bulkLoad.close();
+        }
+        if ( !loaded )
+        {
+            getLog().error( error.getMessage(), error.getCause() );
+            return;
+        }
+        throw error;
+    }
+
+    /**
+     * Connects to the JMX interface of a node of the running Cassandra instance, or cluster, whose port is
+     * {@code jmxPort} plus the index of the node.
+     *
+     * @param node the index of the node, from 0.
+     * @return the client, to be closed by the caller.
+     * @throws MojoExecutionException if the node could not be reached.
+     */
+    protected CassandraJmxClient connectJmx( int node )
+        throws MojoExecutionException
+    {
+        try
+        {
+            return CassandraJmxClient.connect( "127.0.0.1", jmxPort + node );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not connect to the JMX interface of Cassandra on port "
+                                                  + ( jmxPort + node ), e );
+        }
     }
 
     /**
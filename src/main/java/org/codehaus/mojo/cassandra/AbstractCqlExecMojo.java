@@ -3,23 +3,25 @@ package org.codehaus.mojo.cassandra;
 import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.Token;
 import org.apache.cassandra.cql3.CqlLexer;
-import org.apache.cassandra.thrift.Cassandra.Client;
-import org.apache.cassandra.thrift.Compression;
-import org.apache.cassandra.thrift.ConsistencyLevel;
 import org.apache.cassandra.thrift.CqlResult;
-import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.codehaus.plexus.util.IOUtil;
 
 import java.io.File;
+import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.nio.ByteBuffer;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -29,6 +31,11 @@ import java.util.List;
  */
 public abstract class AbstractCqlExecMojo extends AbstractCassandraMojo
 {
+    /**
+     * The default of {@code batch_size_warn_threshold_in_kb} in Cassandra.
+     */
+    private static final int DEFAULT_BATCH_SIZE_THRESHOLD_KB = 5;
+
     /**
      * Version of CQL to use
      *
@@ -46,8 +53,8 @@ public abstract class AbstractCqlExecMojo extends AbstractCassandraMojo
     protected String cqlEncoding = Charset.defaultCharset().name();
 
     /**
-     * Should we use the CqlLexer when loading the cql file. This should be better than than the default behaviour
-     * which is to just split input on ; since it handles ; in comments and strings.
+     * Should we use the CqlLexer when loading the cql file instead of the default splitter. Both handle ; in comments
+     * and strings, but the CqlLexer needs the whole script in memory and is much slower.
      *
      * It is not enabled by default since has not been extensively tested.
      *
@@ -56,51 +63,343 @@ public abstract class AbstractCqlExecMojo extends AbstractCassandraMojo
      */
     protected boolean useCqlLexer = false;
 
-    protected String readFile(File file) throws MojoExecutionException
+    /**
+     * Number of connections used to execute the statements. With more than one connection consecutive
+     * {@code INSERT}, {@code UPDATE} and {@code DELETE} statements are sent concurrently, while any other statement
+     * (schema changes, {@code USE}, {@code SELECT}, ...) waits for everything before it to complete and acts as a
+     * barrier. Writes to the same partition of a table always go over the same connection, in script order, so only
+     * writes to different partitions overlap. Writes that cannot be attributed to a single partition (batches not
+     * built by {@code cqlBatchWrites}, lightweight transactions, counter updates, ...) are barriers too. When several
+     * scripts are executed, statements on unrelated keyspaces and tables are sent concurrently as well. The default
+     * of 1 executes the statements strictly in order.
+     *
+     * @parameter property="cql.connections" default-value="1"
+     * @since 3.11.12.2
+     */
+    protected int cqlConnections = 1;
+
+    /**
+     * Maximum number of writes queued for the connections when {@code cqlConnections} is greater than 1, bounding the
+     * memory used by statements read ahead of the ones being executed. At most {@code cqlConnections} statements are
+     * executing at any time.
+     *
+     * @parameter property="cql.window" default-value="256"
+     * @since 3.11.12.2
+     */
+    protected int cqlWindow = 256;
+
+    /**
+     * When {@code true}, runs of consecutive {@code INSERT}, {@code UPDATE} and {@code DELETE} statements that write
+     * to the same partition of the same table are sent as {@code UNLOGGED BATCH}es, saving a round trip per
+     * statement.
+     *
+     * @parameter property="cql.batchWrites" default-value="false"
+     * @since 3.11.12.2
+     */
+    protected boolean cqlBatchWrites = false;
+
+    /**
+     * Maximum size of the batches built when {@code cqlBatchWrites} is enabled, in kilobytes of CQL. When not set the
+     * {@code batch_size_warn_threshold_in_kb} of the server configuration is used.
+     *
+     * @parameter property="cql.batchSizeThresholdKb"
+     * @since 3.11.12.2
+     */
+    protected int cqlBatchSizeThresholdKb;
+
+    /**
+     * When {@code true}, writes are executed as prepared statements: the constants of each statement are replaced by
+     * bind markers, every distinct resulting statement is prepared once per connection and the constants are bound
+     * to it. This saves the server from parsing scripts made of many statements that only differ in their values.
+     *
+     * @parameter property="cql.prepareStatements" default-value="false"
+     * @since 3.11.12.2
+     */
+    protected boolean cqlPrepareStatements = false;
+
+    /**
+     * When {@code true}, scripts are treated as the desired schema: their {@code CREATE} statements are compared with
+     * the live schema and only the statements needed to bring it in line with the script are executed, e.g. an
+     * {@code ALTER TABLE ... ADD} for a column added to a {@code CREATE TABLE} statement. Other statements are
+     * executed as usual. Re-running an unchanged schema script then only costs a few schema queries.
+     *
+     * @parameter property="cql.schemaDiff" default-value="false"
+     * @since 3.11.12.2
+     */
+    protected boolean cqlSchemaDiff = false;
+
+    /**
+     * When {@code true} and {@code cqlSchemaDiff} is enabled, columns the script does not declare are dropped, tables
+     * whose primary key differs from the script are recreated and the views, indexes and tables of keyspaces created
+     * by the script that it does not declare are dropped.
+     *
+     * @parameter property="cql.schemaDiffDrop" default-value="false"
+     * @since 3.11.12.2
+     */
+    protected boolean cqlSchemaDiffDrop = false;
+
+    protected Reader openFile(File file) throws MojoExecutionException
     {
         if (!file.isFile())
         {
             throw new MojoExecutionException("script " + file + " does not exist.");
         }
 
-        InputStreamReader r = null;
+        InputStream in = null;
         try
         {
-            r = new InputStreamReader(new FileInputStream(file), cqlEncoding);
-            return IOUtil.toString(r);
+            in = new FileInputStream(file);
+            return new InputStreamReader(in, cqlEncoding);
         } catch (FileNotFoundException e)
         {
             throw new MojoExecutionException("Cql file '" + file + "' was deleted before I could read it", e);
         } catch (IOException e)
         {
+            IOUtil.close(in);
             throw new MojoExecutionException("Could not parse or load cql file", e);
-        } finally
-        {
-            IOUtil.close(r);
         }
     }
 
+    /**
+     * Opens a connection that is not bound to any keyspace, for statements the plugin issues itself.
+     *
+     * @return the connection, to be closed by the caller.
+     * @throws ThriftApiExecutionException if the connection could not be set up.
+     */
+    CqlConnection openCqlConnection() throws ThriftApiExecutionException
+    {
+        return CqlConnection.open(rpcAddress, rpcPort, cqlVersion, null, false);
+    }
+
+    /**
+     * @return the version of CQL to use.
+     */
+    String getCqlVersion()
+    {
+        return cqlVersion;
+    }
+
     protected List<CqlResult> executeCql(final String statements) throws MojoExecutionException
     {
-        final List<CqlResult> results = new ArrayList<CqlResult>();
         if (StringUtils.isBlank(statements))
         {
             getLog().warn("No CQL provided. Nothing to do.");
-        } else
+            return new ArrayList<CqlResult>();
+        }
+        return executeCql(new StringReader(statements), true);
+    }
+
+    /**
+     * Executes a CQL script. Unless {@code useCqlLexer} is set the script is streamed: statements are read and
+     * executed one at a time, so scripts of any size can be executed.
+     *
+     * @param file           the script.
+     * @param collectResults whether to return the results of the statements. Leave this off for large scripts as
+     *                       the results would have to be kept in memory.
+     * @return the results of the statements, empty when they are not collected.
+     * @throws MojoExecutionException if the script could not be read or a statement failed.
+     * @see CqlStatementReader
+     */
+    protected List<CqlResult> executeCqlScript(File file, boolean collectResults) throws MojoExecutionException
+    {
+        Reader reader = openFile(file);
+        try
+        {
+            return executeCql(reader, collectResults);
+        } finally
         {
+            IOUtil.close(reader);
+        }
+    }
+
+    /**
+     * Executes several CQL scripts. The statements of all scripts are scheduled according to the keyspaces, tables
+     * and types they touch, so that independent ones run concurrently over {@code cqlConnections} connections while
+     * the statements on any one table run in script order.
+     *
+     * @param files the scripts, in order.
+     * @throws MojoExecutionException if a script could not be read or a statement failed.
+     * @see CqlScriptScheduler
+     */
+    protected void executeCqlScripts(List<File> files) throws MojoExecutionException
+    {
+        if (cqlBatchWrites || cqlSchemaDiff)
+        {
+            getLog().warn("Writes are not batched and schemas are not compared when executing several scripts");
+        }
+        CqlScriptScheduler scheduler =
+            new CqlScriptScheduler(rpcAddress, rpcPort, cqlVersion, keyspace, cqlConnections, cqlPrepareStatements,
+                                   getLog());
+        for (File file : files)
+        {
+            getLog().info("Reading " + file + "...");
+            Reader reader = openFile(file);
             try
             {
-                CqlExecOperation operation = new CqlExecOperation(statements);
-                Utils.executeThrift(operation);
-                results.addAll(operation.results);
+                scheduler.add(file.getName(), CqlStatement.number(readStatements(reader)));
+            } catch (UncheckedIOException e)
+            {
+                throw new MojoExecutionException("Could not parse or load cql file " + file, e.getCause());
+            } finally
+            {
+                IOUtil.close(reader);
+            }
+        }
+        if (scheduler.getNodes().isEmpty())
+        {
+            getLog().warn("No CQL provided. Nothing to do.");
+            return;
+        }
+        try
+        {
+            scheduler.execute();
+        } catch (ThriftApiExecutionException taee)
+        {
+            throw new MojoExecutionException(taee.getMessage(), taee);
+        }
+    }
+
+    /**
+     * Expands directories into the {@code .cql} files they contain, in name order.
+     *
+     * @param filesOrDirectories CQL files and directories of CQL files.
+     * @return the CQL files.
+     * @throws MojoExecutionException if one of the files does not exist.
+     */
+    protected static List<File> listCqlScripts(File... filesOrDirectories) throws MojoExecutionException
+    {
+        List<File> files = new ArrayList<File>();
+        for (File file : filesOrDirectories)
+        {
+            if (file.isDirectory())
+            {
+                File[] scripts = file.listFiles(new FileFilter()
+                {
+                    public boolean accept(File pathname)
+                    {
+                        return pathname.isFile() && pathname.getName().endsWith(".cql");
+                    }
+                });
+                if (scripts == null)
+                {
+                    throw new MojoExecutionException("Could not list the scripts of directory " + file);
+                }
+                Arrays.sort(scripts);
+                files.addAll(Arrays.asList(scripts));
+            } else if (file.isFile())
+            {
+                files.add(file);
+            } else
+            {
+                throw new MojoExecutionException("script " + file + " does not exist.");
+            }
+        }
+        return files;
+    }
+
+    private List<CqlResult> executeCql(Reader script, boolean collectResults) throws MojoExecutionException
+    {
+        final List<CqlResult> results = new ArrayList<CqlResult>();
+        try
+        {
+            Iterator<CqlStatement> statementIterator = CqlStatement.number(readStatements(script));
+            if (!statementIterator.hasNext())
+            {
+                getLog().warn("No CQL provided. Nothing to do.");
+                return results;
+            }
+            if (StringUtils.isNotBlank(keyspace))
+            {
+                getLog().info("setting keyspace: " + keyspace);
+            }
+            getLog().info("setting cqlversion: " + cqlVersion);
+            if (cqlPrepareStatements)
+            {
+                getLog().info("executing writes as prepared statements");
+            }
+            if (cqlConnections > 1)
+            {
+                getLog().info("executing writes over " + cqlConnections + " connections, up to " + cqlWindow
+                                  + " queued");
+            }
+            CqlConnection schemaConnection = null;
+            try
+            {
+                if (cqlSchemaDiff || cqlBatchWrites || cqlConnections > 1)
+                {
+                    schemaConnection = openCqlConnection();
+                }
+                if (cqlSchemaDiff)
+                {
+                    getLog().info("executing only the schema changes needed"
+                                      + (cqlSchemaDiffDrop ? ", dropping what the script does not declare" : ""));
+                    statementIterator = new CqlSchemaDiff(statementIterator, schemaConnection, keyspace,
+                                                          cqlSchemaDiffDrop, getLog());
+                }
+                if (cqlBatchWrites)
+                {
+                    int thresholdKb = getBatchSizeThresholdKb();
+                    getLog().info("batching writes to the same partition, up to " + thresholdKb + "kb per batch");
+                    statementIterator =
+                        new CqlStatementBatcher(statementIterator, schemaConnection, keyspace, thresholdKb * 1024);
+                } else if (cqlConnections > 1)
+                {
+                    // works out the partition of every write, so that writes to a partition stay in order
+                    statementIterator = new CqlStatementBatcher(statementIterator, schemaConnection, keyspace, 0);
+                }
+                CqlStatementPipeline pipeline =
+                    new CqlStatementPipeline(rpcAddress, rpcPort, cqlVersion, keyspace, cqlConnections, cqlWindow,
+                                             cqlPrepareStatements, getLog());
+                results.addAll(pipeline.execute(statementIterator, collectResults));
             } catch (ThriftApiExecutionException taee)
             {
                 throw new MojoExecutionException(taee.getMessage(), taee);
+            } finally
+            {
+                if (schemaConnection != null)
+                {
+                    schemaConnection.close();
+                }
             }
+        } catch (UncheckedIOException e)
+        {
+            throw new MojoExecutionException("Could not parse or load cql file", e.getCause());
         }
         return results;
     }
 
+    private Iterator<String> readStatements(Reader script) throws MojoExecutionException
+    {
+        if (useCqlLexer)
+        {
+            getLog().warn("Using CqlLexer has not been extensively tested");
+            try
+            {
+                return Arrays.asList(splitStatementsUsingCqlLexer(IOUtil.toString(script))).iterator();
+            } catch (IOException e)
+            {
+                throw new MojoExecutionException("Could not parse or load cql file", e);
+            }
+        }
+        return new CqlStatementReader(script);
+    }
+
+    private int getBatchSizeThresholdKb() throws MojoExecutionException
+    {
+        if (cqlBatchSizeThresholdKb > 0)
+        {
+            return cqlBatchSizeThresholdKb;
+        }
+        try
+        {
+            Object threshold = getCassandraYamlSetting("batch_size_warn_threshold_in_kb");
+            return threshold instanceof Number ? ((Number) threshold).intValue() : DEFAULT_BATCH_SIZE_THRESHOLD_KB;
+        } catch (IOException e)
+        {
+            throw new MojoExecutionException("Could not read the server configuration", e);
+        }
+    }
+
     /**
      * Best effort to somewhat parse the cql input instead of just splitting on ; which
      * breaks badly if you have ; in strings or comments.
@@ -136,63 +435,4 @@ public abstract class AbstractCqlExecMojo extends AbstractCassandraMojo
         return statementList.toArray(new String[statementList.size()]);
     }
 
-
-    private class CqlExecOperation extends ThriftApiOperation
-    {
-        private final List<CqlResult> results = new ArrayList<CqlResult>();
-        private final String[] statements;
-
-        private CqlExecOperation(String statements)
-        {
-            super(rpcAddress, rpcPort);
-            if (useCqlLexer) {
-                getLog().warn("Using CqlLexer has not been extensively tested");
-                this.statements = splitStatementsUsingCqlLexer(statements);
-            } else {
-                this.statements = statements.split(";");
-            }
-            if (StringUtils.isNotBlank(keyspace))
-            {
-                getLog().info("setting keyspace: " + keyspace);
-                setKeyspace(keyspace);
-            }
-            getLog().info("setting cqlversion: " + cqlVersion);
-            setCqlVersion(cqlVersion);
-        }
-
-        @Override
-        void executeOperation(Client client) throws ThriftApiExecutionException
-        {
-            for (String statement : statements)
-            {
-                if (StringUtils.isNotBlank(statement))
-                {
-                    if (getLog().isDebugEnabled()) {
-                        getLog().debug("Executing cql statement: " + statement);
-                    }
-                    results.add(executeStatement(client, statement));
-                }
-            }
-        }
-
-        private CqlResult executeStatement(Client client, String statement) throws ThriftApiExecutionException
-        {
-            ByteBuffer buf = ByteBufferUtil.bytes(statement);
-            try
-            {
-                if (cqlVersion.charAt(0) >= '3')
-                {
-                    return client.execute_cql3_query(buf, Compression.NONE, ConsistencyLevel.ONE);
-                } else
-                {
-                    return client.execute_cql_query(buf, Compression.NONE);
-                }
-            } catch (Exception e)
-            {
-                getLog().debug(statement);
-                throw new ThriftApiExecutionException(e);
-            }
-        }
-    }
-
 }
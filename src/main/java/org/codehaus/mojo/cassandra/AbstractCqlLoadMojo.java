@@ -3,6 +3,7 @@ package org.codehaus.mojo.cassandra;
 import org.apache.maven.plugin.MojoExecutionException;
 
 import java.io.File;
+import java.util.List;
 
 /**
  * Abstract parent class for mojos that load and execute CQL statements from a file.
@@ -18,6 +19,16 @@ public abstract class AbstractCqlLoadMojo extends AbstractCqlExecMojo
      */
     private File script;
 
+    /**
+     * CQL files, or directories of {@code .cql} files, to load instead of {@code script}. Directories contribute their
+     * files in name order. Statements of all scripts that touch unrelated keyspaces or tables are executed
+     * concurrently when {@code cqlConnections} is greater than 1, the statements on any one table in script order.
+     *
+     * @parameter
+     * @since 3.11.12.2
+     */
+    private File[] scripts;
+
     /**
      * Whether to ignore errors when loading the script.
      *
@@ -27,23 +38,40 @@ public abstract class AbstractCqlLoadMojo extends AbstractCqlExecMojo
 
     protected void execCqlFile() throws MojoExecutionException
     {
-        if (script != null)
+        if (scripts != null && scripts.length > 0)
+        {
+            List<File> files = listCqlScripts(scripts);
+            getLog().info("Running " + files.size() + " scripts...");
+            try
+            {
+                executeCqlScripts(files);
+                getLog().info("Finished " + files.size() + " scripts.");
+            } catch (MojoExecutionException e)
+            {
+                loadFailed(e);
+            }
+        } else if (script != null)
         {
             getLog().info("Running " + script + "...");
             try
             {
-                executeCql(readFile(script));
+                executeCqlScript(script, false);
                 getLog().info("Finished " + script + ".");
             } catch (MojoExecutionException e)
             {
-                if (loadFailureIgnore)
-                {
-                    getLog().error("Script execution failed with " + e.getMessage() + ". Ignoring.");
-                } else
-                {
-                    throw e;
-                }
+                loadFailed(e);
             }
         }
     }
+
+    private void loadFailed(MojoExecutionException e) throws MojoExecutionException
+    {
+        if (loadFailureIgnore)
+        {
+            getLog().error("Script execution failed with " + e.getMessage() + ". Ignoring.");
+        } else
+        {
+            throw e;
+        }
+    }
 }
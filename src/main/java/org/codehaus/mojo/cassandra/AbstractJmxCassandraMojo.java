@@ -0,0 +1,141 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Abstract parent class for the mojos that run an operation over JMX on the running instance of Cassandra, or on
+ * every node of the running cluster in parallel, reporting how it went on every node.
+ */
+public abstract class AbstractJmxCassandraMojo extends AbstractCassandraMojo
+{
+    /**
+     * The number of nodes to run the operation on, in parallel unless the operation may not overlap across nodes
+     * (incremental {@code repair}): {@code clusterSize} of {@code start-cluster}, or 1 for the instance of
+     * {@code start}.
+     *
+     * @parameter property="cassandra.maintenance.nodes" default-value="1"
+     * @since 3.11.12.2
+     */
+    protected int maintenanceNodes = 1;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException
+    {
+        if (skip)
+        {
+            getLog().info("Skipping cassandra: cassandra.skip==true");
+            return;
+        }
+        if (maintenanceNodes < 1)
+        {
+            throw new MojoExecutionException("Invalid number of nodes " + maintenanceNodes + ". Must be at least 1");
+        }
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(getParallelism());
+        try
+        {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int node = 0; node < maintenanceNodes; node++)
+            {
+                final int index = node;
+                results.add(executor.submit(new Callable<String>()
+                {
+                    public String call() throws MojoExecutionException, MojoFailureException
+                    {
+                        CassandraJmxClient jmx = connectJmx(index);
+                        try
+                        {
+                            return execute(jmx, index);
+                        } finally
+                        {
+                            jmx.close();
+                        }
+                    }
+                }));
+            }
+            List<String> failures = new ArrayList<String>();
+            Throwable error = null;
+            for (int node = 0; node < maintenanceNodes; node++)
+            {
+                try
+                {
+                    getLog().info(nodeName(node) + results.get(node).get());
+                } catch (ExecutionException e)
+                {
+                    failures.add(nodeName(node) + e.getCause().getMessage());
+                    getLog().error(nodeName(node) + e.getCause().getMessage());
+                    if (error == null && !(e.getCause() instanceof MojoFailureException))
+                    {
+                        error = e.getCause();
+                    }
+                }
+            }
+            if (error != null)
+            {
+                throw new MojoExecutionException(StringUtils.join(failures, "; "), error);
+            }
+            if (!failures.isEmpty())
+            {
+                throw new MojoFailureException(StringUtils.join(failures, "; "));
+            }
+            if (maintenanceNodes > 1)
+            {
+                getLog().info(getOperation() + " " + maintenanceNodes + " nodes in "
+                                  + (System.currentTimeMillis() - start) + "ms");
+            }
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while running " + getOperation(), e);
+        } finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @param node the index of the node, from 0.
+     * @return the prefix of the log messages about the node, empty if there is only one.
+     */
+    protected String nodeName(int node)
+    {
+        return maintenanceNodes == 1 ? "" : "Node " + (node + 1) + ": ";
+    }
+
+    /**
+     * @return the number of nodes the operation runs on at the same time, all of them by default.
+     */
+    protected int getParallelism()
+    {
+        return maintenanceNodes;
+    }
+
+    /**
+     * @return the past participle of the operation, for the log, e.g. {@code Flushed}.
+     */
+    protected abstract String getOperation();
+
+    /**
+     * Runs the operation on a node, and waits for it to complete.
+     *
+     * @param jmx  the connection to the node.
+     * @param node the index of the node, from 0.
+     * @return how the operation went, for the log.
+     * @throws MojoExecutionException if the operation could not be run.
+     * @throws MojoFailureException   if the operation failed.
+     */
+    protected abstract String execute(CassandraJmxClient jmx, int node)
+        throws MojoExecutionException, MojoFailureException;
+}
@@ -0,0 +1,130 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Abstract parent class for the mojos that run a {@code nodetool} operation on keyspaces, or some of their tables, of
+ * the running instance of Cassandra, or of every node of the running cluster in parallel. The operation is called
+ * over JMX from the Maven JVM rather than by forking one to run {@code nodetool}.
+ */
+public abstract class AbstractMaintenanceCassandraMojo extends AbstractJmxCassandraMojo
+{
+    /**
+     * Comma separated keyspaces to run the operation on, {@code keyspace} if not set, and every keyspace the
+     * operation applies to if neither is.
+     *
+     * @parameter property="cassandra.maintenance.keyspaces"
+     * @since 3.11.12.2
+     */
+    protected String maintenanceKeyspaces;
+
+    /**
+     * Comma separated tables of each keyspace to run the operation on, all of them if not set.
+     *
+     * @parameter property="cassandra.maintenance.tables"
+     * @since 3.11.12.2
+     */
+    protected String maintenanceTables;
+
+    /**
+     * @return the keyspaces to run the operation on, as stored in the schema, empty if none is set.
+     */
+    protected List<String> getMaintenanceKeyspaces()
+    {
+        return split(StringUtils.isBlank(maintenanceKeyspaces) ? keyspace : maintenanceKeyspaces);
+    }
+
+    /**
+     * @return the tables of each keyspace to run the operation on, as stored in the schema, empty for all of them.
+     */
+    protected String[] getMaintenanceTables()
+    {
+        return split(maintenanceTables).toArray(new String[0]);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected String execute(CassandraJmxClient jmx, int node) throws MojoExecutionException, MojoFailureException
+    {
+        String[] tables = getMaintenanceTables();
+        long start = System.currentTimeMillis();
+        try
+        {
+            List<String> keyspaces = getMaintenanceKeyspaces();
+            if (keyspaces.isEmpty())
+            {
+                keyspaces = getDefaultKeyspaces(jmx);
+            }
+            for (String name : keyspaces)
+            {
+                long keyspaceStart = System.currentTimeMillis();
+                String failure = execute(jmx, name, tables);
+                if (failure != null)
+                {
+                    throw new MojoFailureException(failure);
+                }
+                getLog().debug(nodeName(node) + getOperation() + " " + name
+                                   + (tables.length == 0 ? "" : " " + StringUtils.join(tables, ", ")) + " in "
+                                   + (System.currentTimeMillis() - keyspaceStart) + "ms");
+            }
+            return getOperation() + " " + keyspaces + (tables.length == 0 ? "" : " " + StringUtils.join(tables, ", "))
+                + " in " + (System.currentTimeMillis() - start) + "ms";
+        } catch (IOException e)
+        {
+            throw new MojoExecutionException("Could not run " + getOperation() + ": " + e.getMessage(), e);
+        } catch (ExecutionException e)
+        {
+            throw new MojoExecutionException("Could not run " + getOperation() + ": " + e.getCause().getMessage(),
+                                             e.getCause());
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while running " + getOperation(), e);
+        }
+    }
+
+    /**
+     * @param jmx the connection to the instance.
+     * @return the keyspaces the operation runs on when none are set, as {@code nodetool} picks them.
+     * @throws IOException if the instance could not be reached.
+     */
+    protected abstract List<String> getDefaultKeyspaces(CassandraJmxClient jmx) throws IOException;
+
+    /**
+     * Runs the operation on a keyspace, and waits for it to complete.
+     *
+     * @param jmx      the connection to the instance.
+     * @param keyspace the keyspace.
+     * @param tables   the tables of the keyspace, all of them if empty.
+     * @return why the operation failed, {@code null} if it did not.
+     * @throws IOException          if the instance could not be reached.
+     * @throws ExecutionException   if the operation failed on the instance.
+     * @throws InterruptedException if interrupted while waiting for the operation.
+     */
+    protected abstract String execute(CassandraJmxClient jmx, String keyspace, String[] tables)
+        throws IOException, ExecutionException, InterruptedException;
+
+    private static List<String> split(String names)
+    {
+        List<String> result = new ArrayList<String>();
+        if (names != null)
+        {
+            for (String name : names.split(","))
+            {
+                if (StringUtils.isNotBlank(name))
+                {
+                    result.add(CqlStatements.schemaName(name));
+                }
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,54 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Abstract parent class for the mojos that take, and restore, named snapshots of the running instance of Cassandra.
+ */
+public abstract class AbstractSnapshotCassandraMojo extends AbstractCqlExecMojo
+{
+    /**
+     * The name of the snapshot.
+     *
+     * @parameter property="cassandra.snapshot.name" default-value="cassandra-maven-plugin"
+     * @since 3.11.12.2
+     */
+    protected String snapshotName = "cassandra-maven-plugin";
+
+    /**
+     * Comma separated keyspaces of the snapshot, {@code keyspace} if not set.
+     *
+     * @parameter property="cassandra.snapshot.keyspaces"
+     * @since 3.11.12.2
+     */
+    protected String snapshotKeyspaces;
+
+    /**
+     * @return the keyspaces of the snapshot, as stored in the schema.
+     * @throws MojoExecutionException if none is set.
+     */
+    protected List<String> getSnapshotKeyspaces() throws MojoExecutionException
+    {
+        String names = StringUtils.isBlank(snapshotKeyspaces) ? keyspace : snapshotKeyspaces;
+        List<String> keyspaces = new ArrayList<String>();
+        if (names != null)
+        {
+            for (String name : names.split(","))
+            {
+                if (StringUtils.isNotBlank(name))
+                {
+                    keyspaces.add(CqlStatements.schemaName(name));
+                }
+            }
+        }
+        if (keyspaces.isEmpty())
+        {
+            throw new MojoExecutionException("Set snapshotKeyspaces or keyspace");
+        }
+        return keyspaces;
+    }
+}
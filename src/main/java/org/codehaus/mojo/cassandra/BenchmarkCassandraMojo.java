@@ -0,0 +1,239 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.codehaus.plexus.util.IOUtil;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Measures the throughput and latency of a workload of prepared statements against the test instance, or cluster, of
+ * Cassandra, and optionally fails the build when they regress against a baseline.
+ * <p/>
+ * {@code benchmarkConcurrency} threads execute the statements of {@code benchmarkWorkload}, picked in proportion to
+ * their weights, for {@code benchmarkWarmUp} seconds and then for {@code benchmarkDuration} seconds while recording
+ * their latencies. The number of operations and errors, the throughput and the p50, p99, p999, maximum and mean
+ * latencies, overall and per statement, are written to {@code benchmarkReportDirectory/benchmarkName.properties}.
+ * When {@code benchmarkBaseline} is set, the overall throughput, p50 and p99 latencies are compared with it.
+ *
+ * @goal benchmark
+ * @threadSafe
+ * @phase integration-test
+ * @since 3.11.12.2
+ */
+public class BenchmarkCassandraMojo extends AbstractCqlExecMojo
+{
+    /**
+     * The statements of the workload, each as {@code weight: statement}, e.g.
+     * {@code 9: SELECT * FROM ks.users WHERE id = ?} and {@code 1: INSERT INTO ks.users (id, name) VALUES (?, ?)}.
+     * The weight defaults to 1. Every bind marker of an execution is bound to a value derived from the same random
+     * key, {@code key42} for text markers and {@code 42} for numeric ones, so reads find the rows written by writes.
+     *
+     * @parameter
+     * @required
+     * @since 3.11.12.2
+     */
+    protected List<String> benchmarkWorkload;
+
+    /**
+     * The number of distinct keys the markers are bound to.
+     *
+     * @parameter property="cassandra.benchmark.keys" default-value="100000"
+     * @since 3.11.12.2
+     */
+    protected long benchmarkKeys = 100000;
+
+    /**
+     * The number of statements in flight, i.e. of threads and connections.
+     *
+     * @parameter property="cassandra.benchmark.concurrency" default-value="16"
+     * @since 3.11.12.2
+     */
+    protected int benchmarkConcurrency = 16;
+
+    /**
+     * How long, in seconds, to run the workload before recording.
+     *
+     * @parameter property="cassandra.benchmark.warmUp" default-value="10"
+     * @since 3.11.12.2
+     */
+    protected int benchmarkWarmUp = 10;
+
+    /**
+     * How long, in seconds, to run the workload while recording.
+     *
+     * @parameter property="cassandra.benchmark.duration" default-value="60"
+     * @since 3.11.12.2
+     */
+    protected int benchmarkDuration = 60;
+
+    /**
+     * The seed of the keys and of the choice of statements.
+     *
+     * @parameter property="cassandra.benchmark.seed" default-value="0"
+     * @since 3.11.12.2
+     */
+    protected long benchmarkSeed;
+
+    /**
+     * Comma separated RPC addresses to spread the connections over, e.g. {@code 127.0.0.1,127.0.0.2} for a cluster
+     * started by {@code start-cluster}. Defaults to {@code rpcAddress}.
+     *
+     * @parameter property="cassandra.benchmark.rpcAddresses"
+     * @since 3.11.12.2
+     */
+    protected String benchmarkRpcAddresses;
+
+    /**
+     * The directory the results are written to.
+     *
+     * @parameter property="cassandra.benchmark.reportDirectory"
+     * default-value="${project.build.directory}/cassandra-reports"
+     * @since 3.11.12.2
+     */
+    protected File benchmarkReportDirectory;
+
+    /**
+     * The name of the results file, without its {@code .properties} extension.
+     *
+     * @parameter property="cassandra.benchmark.name" default-value="benchmark"
+     * @since 3.11.12.2
+     */
+    protected String benchmarkName = "benchmark";
+
+    /**
+     * Results of an earlier run to compare with, as written to {@code benchmarkReportDirectory}. When the file does
+     * not exist, the results are stored in it for the next runs.
+     *
+     * @parameter property="cassandra.benchmark.baseline"
+     * @since 3.11.12.2
+     */
+    protected File benchmarkBaseline;
+
+    /**
+     * The regression, in percent, of the throughput or of the p50 or p99 latency against {@code benchmarkBaseline}
+     * that fails the build.
+     *
+     * @parameter property="cassandra.benchmark.maxRegression" default-value="10"
+     * @since 3.11.12.2
+     */
+    protected double benchmarkMaxRegression = 10;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException
+    {
+        if (skip)
+        {
+            getLog().info("Skipping cassandra: cassandra.skip==true");
+            return;
+        }
+        if (benchmarkWorkload == null || benchmarkWorkload.isEmpty())
+        {
+            throw new MojoExecutionException("benchmarkWorkload has no statements");
+        }
+        List<CqlBenchmark.Operation> operations = new ArrayList<CqlBenchmark.Operation>();
+        try
+        {
+            for (String spec : benchmarkWorkload)
+            {
+                operations.add(CqlBenchmark.parseOperation(spec));
+            }
+        } catch (IllegalArgumentException e)
+        {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        String[] addresses = StringUtils.isBlank(benchmarkRpcAddresses)
+            ? new String[]{rpcAddress}
+            : StringUtils.stripAll(benchmarkRpcAddresses.split(","));
+        getLog().info("Running " + operations.size() + " statements over " + benchmarkConcurrency
+                          + " connections for " + benchmarkWarmUp + "s of warm-up and " + benchmarkDuration + "s...");
+        Properties results;
+        try
+        {
+            results = new CqlBenchmark(operations, addresses, rpcPort, getCqlVersion(), keyspace, benchmarkKeys,
+                                       benchmarkSeed, getLog()).run(Math.max(1, benchmarkConcurrency),
+                                                                    benchmarkWarmUp * 1000L,
+                                                                    Math.max(1, benchmarkDuration) * 1000L);
+        } catch (ThriftApiExecutionException taee)
+        {
+            throw new MojoExecutionException(taee.getMessage(), taee);
+        } catch (IllegalArgumentException e)
+        {
+            throw new MojoExecutionException(e.getMessage(), e);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while running the benchmark", e);
+        }
+        File report = new File(benchmarkReportDirectory, benchmarkName + ".properties");
+        store(results, report);
+        getLog().info("Wrote " + report);
+        if (benchmarkBaseline == null)
+        {
+            return;
+        }
+        if (!benchmarkBaseline.isFile())
+        {
+            getLog().warn("No baseline " + benchmarkBaseline + ", storing these results as the baseline");
+            store(results, benchmarkBaseline);
+            return;
+        }
+        List<String> regressions = CqlBenchmark.regressions(load(benchmarkBaseline), results, benchmarkMaxRegression);
+        if (!regressions.isEmpty())
+        {
+            throw new MojoFailureException("Regressed by more than " + benchmarkMaxRegression + "% against "
+                                               + benchmarkBaseline + ": " + StringUtils.join(regressions, ", "));
+        }
+        getLog().info("No regression against " + benchmarkBaseline);
+    }
+
+    private static Properties load(File file) throws MojoExecutionException
+    {
+        Properties properties = new Properties();
+        InputStream in = null;
+        try
+        {
+            in = new FileInputStream(file);
+            properties.load(in);
+        } catch (IOException e)
+        {
+            throw new MojoExecutionException("Could not read " + file, e);
+        } finally
+        {
+            IOUtil.close(in);
+        }
+        return properties;
+    }
+
+    private static void store(Properties properties, File file) throws MojoExecutionException
+    {
+        File directory = file.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new MojoExecutionException("Could not create " + directory);
+        }
+        OutputStream out = null;
+        try
+        {
+            out = new FileOutputStream(file);
+            properties.store(out, "cassandra:benchmark results");
+        } catch (IOException e)
+        {
+            throw new MojoExecutionException("Could not write " + file, e);
+        } finally
+        {
+            IOUtil.close(out);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.service.StorageServiceMBean;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Keeps a running instance from compacting while data is loaded into it, so that the load has the disks to itself,
+ * and compacts what was loaded in one go afterwards.
+ * <p/>
+ * Autocompaction is disabled on every non system keyspace, and compactions of the tables created by the load are
+ * throttled to {@link #LOAD_COMPACTION_THROUGHPUT} MB/s, until the load ends.
+ */
+final class BulkLoadMode implements Closeable
+{
+    /**
+     * Compaction throughput, in MB/s, while loading: as low as it goes, 0 meaning unthrottled.
+     */
+    static final int LOAD_COMPACTION_THROUGHPUT = 1;
+
+    private final CassandraJmxClient jmx;
+
+    private final int compactionThroughput;
+
+    private final Log log;
+
+    private final long start;
+
+    private BulkLoadMode(CassandraJmxClient jmx, int compactionThroughput, Log log)
+    {
+        this.jmx = jmx;
+        this.compactionThroughput = compactionThroughput;
+        this.log = log;
+        this.start = System.currentTimeMillis();
+    }
+
+    /**
+     * Enters bulk load mode.
+     *
+     * @param jmx the connection to the instance, closed with the mode.
+     * @param log where the mode reports what it does.
+     * @return the mode, to be ended once the load completes.
+     * @throws IOException if the instance could not be reached.
+     */
+    static BulkLoadMode begin(CassandraJmxClient jmx, Log log) throws IOException
+    {
+        StorageServiceMBean storageService = jmx.getStorageService();
+        int compactionThroughput = storageService.getCompactionThroughputMbPerSec();
+        for (String keyspace : storageService.getNonSystemKeyspaces())
+        {
+            storageService.disableAutoCompaction(keyspace);
+        }
+        storageService.setCompactionThroughputMbPerSec(LOAD_COMPACTION_THROUGHPUT);
+        log.info("Bulk load mode: autocompaction disabled, compaction throughput " + compactionThroughput + " -> "
+                     + LOAD_COMPACTION_THROUGHPUT + " MB/s");
+        return new BulkLoadMode(jmx, compactionThroughput, log);
+    }
+
+    /**
+     * Leaves bulk load mode, enabling autocompaction of every non system keyspace again, including those the load
+     * created, and restoring the compaction throughput.
+     *
+     * @param compact whether to run a major compaction of every non system keyspace first, unthrottled.
+     * @throws IOException          if the instance could not be reached.
+     * @throws ExecutionException   if the compaction failed.
+     * @throws InterruptedException if interrupted while compacting.
+     */
+    void end(boolean compact) throws IOException, ExecutionException, InterruptedException
+    {
+        StorageServiceMBean storageService = jmx.getStorageService();
+        try
+        {
+            for (String keyspace : storageService.getNonSystemKeyspaces())
+            {
+                storageService.enableAutoCompaction(keyspace);
+            }
+            if (compact)
+            {
+                long compactionStart = System.currentTimeMillis();
+                long bytesCompacted = jmx.getBytesCompacted();
+                storageService.setCompactionThroughputMbPerSec(0);
+                for (String keyspace : storageService.getNonSystemKeyspaces())
+                {
+                    storageService.forceKeyspaceCompaction(false, keyspace);
+                }
+                log.info("Bulk load mode: compacted "
+                             + CassandraJmxClient.throughput(jmx.getBytesCompacted() - bytesCompacted,
+                                                             System.currentTimeMillis() - compactionStart));
+            }
+        } finally
+        {
+            storageService.setCompactionThroughputMbPerSec(compactionThroughput);
+        }
+        log.info("Bulk load mode: left after " + (System.currentTimeMillis() - start) + "ms, autocompaction enabled, "
+                     + "compaction throughput " + compactionThroughput + " MB/s");
+    }
+
+    /**
+     * Closes the connection to the instance.
+     */
+    public void close()
+    {
+        jmx.close();
+    }
+}
@@ -0,0 +1,491 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.db.compaction.CompactionManagerMBean;
+import org.apache.cassandra.service.CacheServiceMBean;
+import org.apache.cassandra.service.StorageServiceMBean;
+import org.apache.cassandra.utils.progress.ProgressEventType;
+import org.apache.maven.plugin.logging.Log;
+
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.JMX;
+import javax.management.ListenerNotFoundException;
+import javax.management.MBeanServerConnection;
+import javax.management.MalformedObjectNameException;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.remote.JMXConnectionNotification;
+import javax.management.remote.JMXConnector;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A JMX connection to a running Cassandra instance, for the operations {@code nodetool} performs, without forking a
+ * JVM to run it.
+ */
+final class CassandraJmxClient implements Closeable
+{
+    private static final String STORAGE_SERVICE = "org.apache.cassandra.db:type=StorageService";
+
+    private static final String COMPACTION_MANAGER = "org.apache.cassandra.db:type=CompactionManager";
+
+    private static final String CACHE_SERVICE = "org.apache.cassandra.db:type=Caches";
+
+    private static final String CACHE_METRIC = "org.apache.cassandra.metrics:type=Cache,scope=";
+
+    private static final String COMPACTION_METRIC = "org.apache.cassandra.metrics:type=Compaction,name=";
+
+    private static final String THREAD_POOL_METRIC = "org.apache.cassandra.metrics:type=ThreadPools,name=";
+
+    private static final String TABLE_METRIC = "org.apache.cassandra.metrics:type=Table,keyspace=";
+
+    private static final long POLL_MILLIS = 500;
+
+    private static final long REPAIR_STATUS_MILLIS = 10000;
+
+    private final String address;
+
+    private final JMXConnector connector;
+
+    private final ObjectName storageServiceName;
+
+    private final StorageServiceMBean storageService;
+
+    private final CompactionManagerMBean compactionManager;
+
+    private final CacheServiceMBean cacheService;
+
+    private CassandraJmxClient(String address, JMXConnector connector, ObjectName storageServiceName)
+        throws IOException, MalformedObjectNameException
+    {
+        this.address = address;
+        this.connector = connector;
+        this.storageServiceName = storageServiceName;
+        this.storageService = JMX.newMBeanProxy(connector.getMBeanServerConnection(), storageServiceName,
+                                                StorageServiceMBean.class);
+        this.compactionManager = JMX.newMBeanProxy(connector.getMBeanServerConnection(),
+                                                   new ObjectName(COMPACTION_MANAGER), CompactionManagerMBean.class);
+        this.cacheService = JMX.newMBeanProxy(connector.getMBeanServerConnection(), new ObjectName(CACHE_SERVICE),
+                                              CacheServiceMBean.class);
+    }
+
+    /**
+     * Connects to an instance.
+     *
+     * @param host the host the instance listens to JMX connections on.
+     * @param port the JMX port of the instance.
+     * @return the client.
+     * @throws IOException if the instance could not be reached.
+     */
+    static CassandraJmxClient connect(String host, int port) throws IOException
+    {
+        JMXConnector connector = JMXConnectorFactory.connect(
+            new JMXServiceURL("service:jmx:rmi:///jndi/rmi://" + host + ":" + port + "/jmxrmi"));
+        try
+        {
+            return new CassandraJmxClient(host + ":" + port, connector, new ObjectName(STORAGE_SERVICE));
+        } catch (MalformedObjectNameException e)
+        {
+            connector.close();
+            throw new IllegalStateException(e);
+        } catch (IOException e)
+        {
+            connector.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the storage service of the instance, whose operations are those of {@code nodetool}.
+     */
+    StorageServiceMBean getStorageService()
+    {
+        return storageService;
+    }
+
+    /**
+     * @return the compaction manager of the instance.
+     */
+    CompactionManagerMBean getCompactionManager()
+    {
+        return compactionManager;
+    }
+
+    /**
+     * @return the cache service of the instance.
+     */
+    CacheServiceMBean getCacheService()
+    {
+        return cacheService;
+    }
+
+    /**
+     * @return the address the instance is known by in the ring, as in the replicas of
+     *         {@link StorageServiceMBean#getRangeToEndpointMap(String)}.
+     * @throws IOException if the instance is not part of the ring.
+     */
+    String getEndpoint() throws IOException
+    {
+        String endpoint = storageService.getHostIdToEndpoint().get(storageService.getLocalHostId());
+        if (endpoint == null)
+        {
+            throw new IOException(address + " is not part of the ring");
+        }
+        return endpoint;
+    }
+
+    /**
+     * @param cache the cache, e.g. {@code KeyCache}, {@code RowCache} or {@code CounterCache}.
+     * @return the capacity of the cache, in bytes.
+     * @throws IOException if the instance could not be reached.
+     */
+    long getCacheCapacity(String cache) throws IOException
+    {
+        return ((Number) getAttribute(CACHE_METRIC + cache + ",name=Capacity", "Value")).longValue();
+    }
+
+    /**
+     * @return the number of compactions the instance estimates it still has to run.
+     * @throws IOException if the instance could not be reached.
+     */
+    int getPendingCompactions() throws IOException
+    {
+        return ((Number) getAttribute(COMPACTION_METRIC + "PendingTasks", "Value")).intValue();
+    }
+
+    /**
+     * @return the number of bytes the instance compacted since it started.
+     * @throws IOException if the instance could not be reached.
+     */
+    long getBytesCompacted() throws IOException
+    {
+        return ((Number) getAttribute(COMPACTION_METRIC + "BytesCompacted", "Count")).longValue();
+    }
+
+    /**
+     * @param keyspace the keyspace.
+     * @return the number of bytes compactions wrote to every table of the keyspace since the instance started, by
+     *         table name.
+     * @throws IOException if the instance could not be reached.
+     */
+    Map<String, Long> getCompactionBytesWritten(String keyspace) throws IOException
+    {
+        Map<String, Long> written = new LinkedHashMap<String, Long>();
+        MBeanServerConnection server = connector.getMBeanServerConnection();
+        try
+        {
+            for (ObjectName name : server.queryNames(
+                new ObjectName(TABLE_METRIC + keyspace + ",scope=*,name=CompactionBytesWritten"), null))
+            {
+                written.put(name.getKeyProperty("scope"), ((Number) server.getAttribute(name, "Count")).longValue());
+            }
+        } catch (JMException e)
+        {
+            throw new IOException("Could not read the compaction metrics of " + keyspace, e);
+        }
+        return written;
+    }
+
+    /**
+     * Waits for the instance to run no compaction, and have none pending, reporting the progress of the running ones.
+     *
+     * @param timeoutMillis          how long to wait at most, 0 for as long as it takes.
+     * @param progressIntervalMillis interval between progress reports.
+     * @param log                    where the progress reports go.
+     * @return whether the instance is idle, {@code false} if the timeout expired first.
+     * @throws IOException          if the instance could not be reached.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    boolean awaitCompactions(long timeoutMillis, long progressIntervalMillis, Log log)
+        throws IOException, InterruptedException
+    {
+        return await(false, timeoutMillis, progressIntervalMillis, log);
+    }
+
+    /**
+     * Waits for the instance to be quiescent: to have no task running or pending in any of its thread pools, so no
+     * write, flush or view update, and to run no compaction, index or view build, and have none pending.
+     *
+     * @param timeoutMillis          how long to wait at most, 0 for as long as it takes.
+     * @param progressIntervalMillis interval between progress reports.
+     * @param log                    where the progress reports go.
+     * @return whether the instance is quiescent, {@code false} if the timeout expired first.
+     * @throws IOException          if the instance could not be reached.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    boolean awaitQuiescence(long timeoutMillis, long progressIntervalMillis, Log log)
+        throws IOException, InterruptedException
+    {
+        return await(true, timeoutMillis, progressIntervalMillis, log);
+    }
+
+    /**
+     * @return the number of running and pending tasks of every thread pool of the instance that has any, by name.
+     * @throws IOException if the instance could not be reached.
+     */
+    Map<String, Long> getBusyThreadPools() throws IOException
+    {
+        Map<String, Long> busy = new TreeMap<String, Long>();
+        MBeanServerConnection server = connector.getMBeanServerConnection();
+        try
+        {
+            for (String metric : new String[]{ "ActiveTasks", "PendingTasks" })
+            {
+                for (ObjectName name : server.queryNames(new ObjectName(THREAD_POOL_METRIC + metric + ",*"), null))
+                {
+                    long tasks = ((Number) server.getAttribute(name, "Value")).longValue();
+                    if (tasks > 0)
+                    {
+                        Long previous = busy.get(name.getKeyProperty("scope"));
+                        busy.put(name.getKeyProperty("scope"), tasks + (previous == null ? 0 : previous));
+                    }
+                }
+            }
+        } catch (JMException e)
+        {
+            throw new IOException("Could not read the thread pool metrics", e);
+        }
+        return busy;
+    }
+
+    private boolean await(boolean threadPools, long timeoutMillis, long progressIntervalMillis, Log log)
+        throws IOException, InterruptedException
+    {
+        long start = System.currentTimeMillis();
+        long bytesCompacted = getBytesCompacted();
+        long lastReport = start;
+        while (true)
+        {
+            Map<String, Long> busy = threadPools ? getBusyThreadPools() : Collections.<String, Long>emptyMap();
+            List<Map<String, String>> active = compactionManager.getCompactions();
+            int pending = getPendingCompactions();
+            if (busy.isEmpty() && active.isEmpty() && pending == 0)
+            {
+                return true;
+            }
+            long now = System.currentTimeMillis();
+            if (timeoutMillis > 0 && now - start >= timeoutMillis)
+            {
+                return false;
+            }
+            if (now - lastReport >= progressIntervalMillis)
+            {
+                long completed = 0;
+                long total = 0;
+                for (Map<String, String> compaction : active)
+                {
+                    if ("bytes".equals(compaction.get("unit")))
+                    {
+                        completed += Long.parseLong(compaction.get("completed"));
+                        total += Long.parseLong(compaction.get("total"));
+                    }
+                }
+                log.info(String.format("%s: %s%d running (%d%% done) and %d pending compactions, %s", address,
+                                       busy.isEmpty() ? "" : "busy thread pools " + busy + ", ", active.size(),
+                                       total == 0 ? 0 : completed * 100 / total, pending,
+                                       throughput(getBytesCompacted() - bytesCompacted, now - start)));
+                lastReport = now;
+            }
+            Thread.sleep(POLL_MILLIS);
+        }
+    }
+
+    /**
+     * @return the amount of data and how fast it was processed, for the log.
+     */
+    static String throughput(long bytes, long millis)
+    {
+        return String.format("%.1f MB at %.1f MB/s", bytes / 1048576.0,
+                             millis == 0 ? 0.0 : bytes / 1048576.0 * 1000 / millis);
+    }
+
+    /**
+     * Repairs a keyspace and waits for the repair to complete, the way {@code nodetool repair} does, by following
+     * the progress notifications of its session.
+     * <p/>
+     * Notifications may be lost, so whenever none comes for a while the threads of the repair are looked for on the
+     * instance: once they are gone and no notification followed, the repair is reported as failed, as how it went is
+     * unknown.
+     *
+     * @param keyspace the keyspace.
+     * @param options  the options of the repair, as in {@code org.apache.cassandra.repair.messages.RepairOption}.
+     * @param log      where the progress messages go.
+     * @return the errors the repair reported, empty if it succeeded or there was nothing to repair.
+     * @throws IOException          if the instance could not be reached, or the connection was lost during the repair.
+     * @throws InterruptedException if interrupted while waiting for the repair.
+     */
+    List<String> repair(String keyspace, Map<String, String> options, Log log) throws IOException, InterruptedException
+    {
+        final BlockingQueue<Notification> notifications = new LinkedBlockingQueue<Notification>();
+        NotificationListener listener = new NotificationListener()
+        {
+            public void handleNotification(Notification notification, Object handback)
+            {
+                if ("progress".equals(notification.getType()) || notification instanceof JMXConnectionNotification)
+                {
+                    notifications.add(notification);
+                }
+            }
+        };
+        // listen before starting the repair, its first notifications may come before repairAsync returns
+        try
+        {
+            connector.getMBeanServerConnection().addNotificationListener(storageServiceName, listener, null, null);
+        } catch (InstanceNotFoundException e)
+        {
+            throw new IOException(e);
+        }
+        connector.addConnectionNotificationListener(listener, null, null);
+        try
+        {
+            int command = storageService.repairAsync(keyspace, options);
+            List<String> errors = new ArrayList<String>();
+            if (command <= 0)
+            {
+                log.info("Nothing to repair for keyspace " + keyspace);
+                return errors;
+            }
+            String tag = "repair:" + command;
+            boolean ended = false;
+            while (true)
+            {
+                Notification notification = notifications.poll(REPAIR_STATUS_MILLIS, TimeUnit.MILLISECONDS);
+                if (notification == null)
+                {
+                    if (ended)
+                    {
+                        errors.add("Repair #" + command + " of keyspace " + keyspace + " ended without notifying "
+                                       + "how it went, see the log of " + address);
+                        log.error(errors.get(errors.size() - 1));
+                        return errors;
+                    }
+                    // give a notification sent as the repair ended one more period to arrive
+                    ended = !isRepairRunning(command);
+                    continue;
+                }
+                if (notification instanceof JMXConnectionNotification)
+                {
+                    if (JMXConnectionNotification.NOTIFS_LOST.equals(notification.getType()))
+                    {
+                        log.warn("Lost notifications of repair #" + command + ": " + notification.getMessage());
+                    } else if (JMXConnectionNotification.CLOSED.equals(notification.getType())
+                        || JMXConnectionNotification.FAILED.equals(notification.getType()))
+                    {
+                        throw new IOException("Lost the connection to " + address + " while repairing keyspace "
+                                                  + keyspace);
+                    }
+                    continue;
+                }
+                if (!tag.equals(notification.getSource()))
+                {
+                    continue;
+                }
+                @SuppressWarnings("unchecked")
+                Map<String, Integer> progress = (Map<String, Integer>) notification.getUserData();
+                ProgressEventType type = ProgressEventType.values()[progress.get("type")];
+                switch (type)
+                {
+                    case ERROR:
+                    case ABORT:
+                        errors.add(notification.getMessage());
+                        log.error(notification.getMessage());
+                        break;
+                    case COMPLETE:
+                        return errors;
+                    default:
+                        log.debug(notification.getMessage());
+                }
+            }
+        } finally
+        {
+            try
+            {
+                connector.removeConnectionNotificationListener(listener);
+            } catch (ListenerNotFoundException e)
+            {
+                // never the case, it was added above
+            }
+            try
+            {
+                connector.getMBeanServerConnection().removeNotificationListener(storageServiceName, listener);
+            } catch (IOException e)
+            {
+                // the connection is gone, and the listener with it
+            } catch (InstanceNotFoundException e)
+            {
+                // the instance is gone, and the listener with it
+            } catch (ListenerNotFoundException e)
+            {
+                // likewise
+            }
+        }
+    }
+
+    /**
+     * @return whether a thread of the repair, named after its command number, is still alive on the instance.
+     */
+    private boolean isRepairRunning(int command) throws IOException
+    {
+        ThreadMXBean threads = ManagementFactory.newPlatformMXBeanProxy(connector.getMBeanServerConnection(),
+                                                                        ManagementFactory.THREAD_MXBEAN_NAME,
+                                                                        ThreadMXBean.class);
+        String name = "Repair#" + command;
+        for (ThreadInfo thread : threads.getThreadInfo(threads.getAllThreadIds()))
+        {
+            if (thread != null
+                && (thread.getThreadName().equals(name) || thread.getThreadName().startsWith(name + ":")))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Object getAttribute(String name, String attribute) throws IOException
+    {
+        try
+        {
+            return connector.getMBeanServerConnection().getAttribute(new ObjectName(name), attribute);
+        } catch (JMException e)
+        {
+            throw new IOException("Could not read " + name, e);
+        }
+    }
+
+    /**
+     * @return the host and port of the instance.
+     */
+    public String toString()
+    {
+        return address;
+    }
+
+    /**
+     * Closes the connection; failing to is of no consequence to the instance, so it is ignored.
+     */
+    public void close()
+    {
+        try
+        {
+            connector.close();
+        } catch (IOException e)
+        {
+            // the connection is gone either way
+        }
+    }
+}
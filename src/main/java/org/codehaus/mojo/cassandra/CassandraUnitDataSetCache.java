@@ -0,0 +1,256 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.thrift.CfDef;
+import org.apache.cassandra.thrift.KsDef;
+import org.apache.cassandra.thrift.Mutation;
+import org.apache.cassandra.utils.Hex;
+import org.apache.thrift.TException;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.protocol.TProtocol;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.codehaus.plexus.util.IOUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Caches the contents of CassandraUnit dataSets as read by {@link CassandraUnitDataSetReader}, so that a dataSet that
+ * did not change since the last build is replayed without being parsed or converted again.
+ * <p/>
+ * An entry holds the keyspace, column family and row mutations of a dataSet in the Thrift binary protocol, i.e. the
+ * keys, names and values already serialized by the types of the column families. Entries are keyed by the SHA-256 of
+ * the plugin version and of the content of the dataSet, so a changed dataSet or a new plugin never replays a stale
+ * entry. An entry is written next to its final name and renamed once complete.
+ */
+final class CassandraUnitDataSetCache
+{
+    private static final int MAGIC = 0x43554443;
+
+    private static final byte KEYSPACE = 'K';
+
+    private static final byte COLUMN_FAMILY = 'C';
+
+    private static final byte ROW = 'R';
+
+    private static final byte END = 'E';
+
+    private final File directory;
+
+    private final String pluginVersion;
+
+    /**
+     * @param directory     the directory of the entries, created as needed.
+     * @param pluginVersion the version of the plugin, part of the keys of the entries.
+     */
+    CassandraUnitDataSetCache(File directory, String pluginVersion)
+    {
+        this.directory = directory;
+        this.pluginVersion = pluginVersion;
+    }
+
+    /**
+     * Reads a dataSet from its cache entry, or reads it with {@link CassandraUnitDataSetReader} and caches it.
+     *
+     * @param file    the dataSet.
+     * @param handler receives the contents of the dataSet.
+     * @return whether the dataSet was read from the cache.
+     * @throws IOException              if the dataSet could not be read or cached.
+     * @throws IllegalArgumentException if the dataSet is malformed.
+     */
+    boolean read(File file, CassandraUnitDataSetReader.Handler handler) throws IOException
+    {
+        File entry = entryOf(file);
+        if (entry.isFile())
+        {
+            replay(entry, handler);
+            return true;
+        }
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Could not create " + directory);
+        }
+        File partial = new File(directory, entry.getName() + "." + Thread.currentThread().getId() + ".tmp");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(partial));
+        boolean complete = false;
+        try
+        {
+            final TProtocol protocol = new TBinaryProtocol(new TIOStreamTransport(out));
+            protocol.writeI32(MAGIC);
+            final CassandraUnitDataSetReader.Handler target = handler;
+            CassandraUnitDataSetReader.forFile(file).read(file, new CassandraUnitDataSetReader.Handler()
+            {
+                public void keyspace(KsDef keyspace)
+                {
+                    try
+                    {
+                        protocol.writeByte(KEYSPACE);
+                        keyspace.write(protocol);
+                    } catch (TException e)
+                    {
+                        throw new CacheWriteException(e);
+                    }
+                    target.keyspace(keyspace);
+                }
+
+                public void columnFamily(CfDef columnFamily)
+                {
+                    try
+                    {
+                        protocol.writeByte(COLUMN_FAMILY);
+                        columnFamily.write(protocol);
+                    } catch (TException e)
+                    {
+                        throw new CacheWriteException(e);
+                    }
+                    target.columnFamily(columnFamily);
+                }
+
+                public void row(String columnFamily, ByteBuffer key, List<Mutation> mutations)
+                {
+                    try
+                    {
+                        protocol.writeByte(ROW);
+                        protocol.writeString(columnFamily);
+                        protocol.writeBinary(key);
+                        protocol.writeI32(mutations.size());
+                        for (Mutation mutation : mutations)
+                        {
+                            mutation.write(protocol);
+                        }
+                    } catch (TException e)
+                    {
+                        throw new CacheWriteException(e);
+                    }
+                    target.row(columnFamily, key, mutations);
+                }
+            });
+            protocol.writeByte(END);
+            out.close();
+            complete = true;
+        } catch (TException e)
+        {
+            throw new IOException("Could not write " + partial, e);
+        } catch (CacheWriteException e)
+        {
+            throw new IOException("Could not write " + partial, e.getCause());
+        } finally
+        {
+            IOUtil.close(out);
+            if (!complete || !partial.renameTo(entry))
+            {
+                partial.delete();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param file a dataSet.
+     * @return the cache entry of the current content of the dataSet, which may not exist.
+     * @throws IOException if the dataSet could not be read.
+     */
+    File entryOf(File file) throws IOException
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        digest.update(pluginVersion.getBytes("UTF-8"));
+        digest.update((byte) 0);
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+            {
+                digest.update(buffer, 0, read);
+            }
+        } finally
+        {
+            IOUtil.close(in);
+        }
+        return new File(directory, file.getName() + "-" + Hex.bytesToHex(digest.digest()) + ".bin");
+    }
+
+    private static void replay(File entry, CassandraUnitDataSetReader.Handler handler) throws IOException
+    {
+        InputStream in = new BufferedInputStream(new FileInputStream(entry));
+        try
+        {
+            TProtocol protocol = new TBinaryProtocol(new TIOStreamTransport(in));
+            if (protocol.readI32() != MAGIC)
+            {
+                throw new IOException(entry + " is not a CassandraUnit dataSet cache entry");
+            }
+            while (true)
+            {
+                byte type = protocol.readByte();
+                if (type == KEYSPACE)
+                {
+                    KsDef keyspace = new KsDef();
+                    keyspace.read(protocol);
+                    handler.keyspace(keyspace);
+                } else if (type == COLUMN_FAMILY)
+                {
+                    CfDef columnFamily = new CfDef();
+                    columnFamily.read(protocol);
+                    handler.columnFamily(columnFamily);
+                } else if (type == ROW)
+                {
+                    String columnFamily = protocol.readString();
+                    ByteBuffer key = protocol.readBinary();
+                    int size = protocol.readI32();
+                    List<Mutation> mutations = new ArrayList<Mutation>(size);
+                    for (int i = 0; i < size; i++)
+                    {
+                        Mutation mutation = new Mutation();
+                        mutation.read(protocol);
+                        mutations.add(mutation);
+                    }
+                    handler.row(columnFamily, key, mutations);
+                } else if (type == END)
+                {
+                    return;
+                } else
+                {
+                    throw new IOException(entry + " is corrupt");
+                }
+            }
+        } catch (TException e)
+        {
+            throw new IOException("Could not read " + entry, e);
+        } finally
+        {
+            IOUtil.close(in);
+        }
+    }
+
+    /**
+     * Carries a failure to write the cache entry out of the handler.
+     */
+    private static final class CacheWriteException extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        private CacheWriteException(TException cause)
+        {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.cassandraunit.DataLoader;
+import org.cassandraunit.dataset.DataSet;
+import org.cassandraunit.dataset.FileDataSet;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads several CassandraUnit dataSets concurrently.
+ * <p/>
+ * The dataSets are parsed in parallel, then the dataSets of different keyspaces are loaded in parallel. Loading a
+ * dataSet recreates its keyspace, so dataSets of the same keyspace are loaded one after the other, in the order
+ * given. When streaming, only the start of the dataSets is parsed up front, the rest is parsed as it is written, or
+ * replayed from a {@link CassandraUnitDataSetCache}.
+ */
+final class CassandraUnitDataSetLoader
+{
+    private static final String[] EXTENSIONS = {".xml", ".json", ".yaml", ".yml"};
+
+    /**
+     * The CQL version of the connections used when streaming.
+     */
+    private static final String CQL_VERSION = "3.4.0";
+
+    private final String rpcAddress;
+
+    private final int rpcPort;
+
+    private final String host;
+
+    private final int threads;
+
+    private final boolean streaming;
+
+    private final CassandraUnitDataSetCache cache;
+
+    private final Log log;
+
+    /**
+     * @param rpcAddress the RPC address to connect to.
+     * @param rpcPort    the RPC port to connect on.
+     * @param threads    the number of dataSets parsed or loaded at the same time, 0 for the number of available
+     *                   processors.
+     * @param streaming  whether to stream the dataSets with {@link CassandraUnitDataSetReader} rather than have
+     *                   CassandraUnit parse them whole.
+     * @param cache      the cache of the streamed dataSets, {@code null} for none.
+     * @param log        the log.
+     */
+    CassandraUnitDataSetLoader(String rpcAddress, int rpcPort, int threads, boolean streaming,
+                               CassandraUnitDataSetCache cache, Log log)
+    {
+        this.rpcAddress = rpcAddress;
+        this.rpcPort = rpcPort;
+        this.host = rpcAddress + ":" + rpcPort;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.streaming = streaming;
+        this.cache = cache;
+        this.log = log;
+    }
+
+    /**
+     * Expands directories into the dataSets they contain, in name order.
+     *
+     * @param dataSets dataSet files and directories of dataSets, those that do not exist are skipped.
+     * @return the dataSet files.
+     * @throws MojoExecutionException if a directory cannot be listed.
+     */
+    static List<File> listDataSets(File... dataSets) throws MojoExecutionException
+    {
+        List<File> files = new ArrayList<File>();
+        for (File dataSet : dataSets)
+        {
+            if (dataSet == null)
+            {
+                continue;
+            }
+            if (dataSet.isDirectory())
+            {
+                File[] children = dataSet.listFiles(new FileFilter()
+                {
+                    public boolean accept(File file)
+                    {
+                        if (!file.isFile())
+                        {
+                            return false;
+                        }
+                        for (String extension : EXTENSIONS)
+                        {
+                            if (file.getName().endsWith(extension))
+                            {
+                                return true;
+                            }
+                        }
+                        return false;
+                    }
+                });
+                if (children == null)
+                {
+                    throw new MojoExecutionException("Could not list the CassandraUnit dataSets of directory "
+                                                         + dataSet);
+                }
+                Arrays.sort(children);
+                files.addAll(Arrays.asList(children));
+            } else if (dataSet.isFile())
+            {
+                files.add(dataSet);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Groups the dataSets by the keyspace they load.
+     *
+     * @param files     the dataSets.
+     * @param keyspaces the keyspace of every dataSet.
+     * @return the dataSets of every keyspace, both in the order of {@code files}.
+     */
+    static Map<String, List<File>> groupByKeyspace(List<File> files, List<String> keyspaces)
+    {
+        Map<String, List<File>> groups = new LinkedHashMap<String, List<File>>();
+        for (int i = 0; i < files.size(); i++)
+        {
+            List<File> group = groups.get(keyspaces.get(i));
+            if (group == null)
+            {
+                group = new ArrayList<File>();
+                groups.put(keyspaces.get(i), group);
+            }
+            group.add(files.get(i));
+        }
+        return groups;
+    }
+
+    private void stream(File file) throws IOException
+    {
+        CqlConnection connection = CqlConnection.open(rpcAddress, rpcPort, CQL_VERSION, null, false);
+        try
+        {
+            CassandraUnitDataSetWriter writer = new CassandraUnitDataSetWriter(connection);
+            boolean cached = false;
+            if (cache != null)
+            {
+                cached = cache.read(file, writer);
+            } else
+            {
+                CassandraUnitDataSetReader.forFile(file).read(file, writer);
+            }
+            writer.flush();
+            log.debug("Wrote " + writer.getRows() + " rows of " + file + (cached ? " from the cache" : ""));
+        } finally
+        {
+            connection.close();
+        }
+    }
+
+    /**
+     * Loads the dataSets.
+     *
+     * @param files the dataSets.
+     * @throws MojoExecutionException if interrupted.
+     * @throws RuntimeException       as thrown by CassandraUnit if a dataSet could not be parsed or loaded, e.g. a
+     *                                {@link org.cassandraunit.dataset.ParseException}, or when streaming an
+     *                                {@link IllegalArgumentException} if a dataSet is malformed and a
+     *                                {@link ThriftApiExecutionException} if it could not be written.
+     */
+    void load(List<File> files) throws MojoExecutionException
+    {
+        if (files.isEmpty())
+        {
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+        try
+        {
+            final Map<File, DataSet> dataSets = new ConcurrentHashMap<File, DataSet>();
+            List<Future<String>> keyspaces = new ArrayList<Future<String>>();
+            for (final File file : files)
+            {
+                keyspaces.add(executor.submit(new Callable<String>()
+                {
+                    public String call() throws IOException
+                    {
+                        if (streaming)
+                        {
+                            return CassandraUnitDataSetReader.readKeyspaceName(file);
+                        }
+                        DataSet dataSet = new FileDataSet(file.getAbsolutePath());
+                        dataSets.put(file, dataSet);
+                        // parses the file
+                        return dataSet.getKeyspace().getName();
+                    }
+                }));
+            }
+            List<String> names = new ArrayList<String>(files.size());
+            for (Future<String> keyspace : keyspaces)
+            {
+                names.add(keyspace.get());
+            }
+            List<Future<?>> loaded = new ArrayList<Future<?>>();
+            for (final Map.Entry<String, List<File>> group : groupByKeyspace(files, names).entrySet())
+            {
+                if (group.getValue().size() > 1)
+                {
+                    log.warn("CassandraUnit dataSets " + group.getValue() + " all load keyspace " + group.getKey()
+                                 + ", they are loaded one after the other");
+                }
+                loaded.add(executor.submit(new Callable<Void>()
+                {
+                    public Void call() throws IOException
+                    {
+                        for (File file : group.getValue())
+                        {
+                            log.info("Loading CassandraUnit dataSet " + file + "...");
+                            if (streaming)
+                            {
+                                stream(file);
+                            } else
+                            {
+                                new DataLoader("cassandraUnitCluster", host).load(dataSets.get(file));
+                            }
+                            log.info("Finished " + file + ".");
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : loaded)
+            {
+                future.get();
+            }
+        } catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error)
+            {
+                throw (Error) e.getCause();
+            }
+            throw new MojoExecutionException("Error while loading CassandraUnit dataSet", e.getCause());
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while loading CassandraUnit dataSets", e);
+        } finally
+        {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,452 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.CounterColumnType;
+import org.apache.cassandra.db.marshal.TypeParser;
+import org.apache.cassandra.thrift.CfDef;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnDef;
+import org.apache.cassandra.thrift.ColumnOrSuperColumn;
+import org.apache.cassandra.thrift.CounterColumn;
+import org.apache.cassandra.thrift.CounterSuperColumn;
+import org.apache.cassandra.thrift.IndexType;
+import org.apache.cassandra.thrift.KsDef;
+import org.apache.cassandra.thrift.Mutation;
+import org.apache.cassandra.thrift.SuperColumn;
+import org.codehaus.plexus.util.IOUtil;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads a CassandraUnit dataSet one row at a time, without building a model of the whole dataSet, so that dataSets of
+ * any size can be loaded in bounded memory.
+ * <p/>
+ * Subclasses parse a format and report the objects of the dataSet (column families, column metadata, rows, super
+ * columns and columns) as they open and close, and their scalar properties in between. This class turns them into
+ * the Thrift definitions and mutations handed to a {@link Handler}: the keyspace when its first column family opens,
+ * a column family when its first row opens and every row when it closes, with its key, names and values converted
+ * with the types of the column family. As with CassandraUnit, a value can name its type, e.g. {@code long(42)}.
+ * <p/>
+ * The properties of the keyspace must therefore precede its column families and the properties of a column family
+ * its rows, as they do in the CassandraUnit schemas and examples.
+ */
+abstract class CassandraUnitDataSetReader
+{
+    /**
+     * Receives the contents of a dataSet.
+     */
+    interface Handler
+    {
+        void keyspace(KsDef keyspace);
+
+        void columnFamily(CfDef columnFamily);
+
+        /**
+         * @param columnFamily the name of the column family.
+         * @param key          the row key.
+         * @param mutations    the columns or super columns of the row.
+         */
+        void row(String columnFamily, ByteBuffer key, List<Mutation> mutations);
+    }
+
+    /**
+     * The objects of a dataSet, below the keyspace.
+     */
+    enum Level
+    {
+        COLUMN_FAMILY, COLUMN_METADATA, ROW, SUPER_COLUMN, COLUMN
+    }
+
+    private static final Pattern TYPED_VALUE = Pattern.compile("(\\w+)\\((.*)\\)", Pattern.DOTALL);
+
+    private static final Map<String, String> VALUE_TYPES = new HashMap<String, String>();
+
+    static
+    {
+        VALUE_TYPES.put("bytes", "BytesType");
+        VALUE_TYPES.put("integer", "IntegerType");
+        VALUE_TYPES.put("lexicaluuid", "LexicalUUIDType");
+        VALUE_TYPES.put("long", "LongType");
+        VALUE_TYPES.put("timeuuid", "TimeUUIDType");
+        VALUE_TYPES.put("utf8", "UTF8Type");
+        VALUE_TYPES.put("uuid", "UUIDType");
+        VALUE_TYPES.put("ascii", "AsciiType");
+    }
+
+    private final long timestamp = System.currentTimeMillis() * 1000;
+
+    private final Deque<Level> open = new ArrayDeque<Level>();
+
+    private final Map<Level, Map<String, String>> properties = new HashMap<Level, Map<String, String>>();
+
+    private final Map<String, String> keyspaceProperties = new HashMap<String, String>();
+
+    private Handler handler;
+
+    private String keyspace;
+
+    private CfDef columnFamily;
+
+    private List<Map<String, String>> columnMetadata;
+
+    private AbstractType<?> keyType;
+
+    private AbstractType<?> comparator;
+
+    private AbstractType<?> subComparator;
+
+    private AbstractType<?> defaultValueType;
+
+    private Map<ByteBuffer, AbstractType<?>> valueTypes;
+
+    private boolean counters;
+
+    private List<Mutation> mutations;
+
+    private List<Column> superColumnColumns;
+
+    private List<CounterColumn> superColumnCounters;
+
+    /**
+     * @param file a dataSet file.
+     * @return a reader for the format of the file, XML or otherwise JSON and YAML.
+     */
+    static CassandraUnitDataSetReader forFile(File file)
+    {
+        return file.getName().toLowerCase(Locale.ENGLISH).endsWith(".xml")
+            ? new XmlDataSetReader()
+            : new YamlDataSetReader();
+    }
+
+    /**
+     * Reads just enough of a dataSet to know its keyspace.
+     *
+     * @param file the dataSet.
+     * @return the name of the keyspace.
+     * @throws IOException              if the dataSet could not be read.
+     * @throws IllegalArgumentException if the dataSet is malformed.
+     */
+    static String readKeyspaceName(File file) throws IOException
+    {
+        final String[] name = new String[1];
+        try
+        {
+            forFile(file).read(file, new Handler()
+            {
+                public void keyspace(KsDef keyspace)
+                {
+                    name[0] = keyspace.getName();
+                    throw new StopReading();
+                }
+
+                public void columnFamily(CfDef columnFamily)
+                {
+                }
+
+                public void row(String columnFamily, ByteBuffer key, List<Mutation> mutations)
+                {
+                }
+            });
+        } catch (StopReading e)
+        {
+            // got it
+        }
+        return name[0];
+    }
+
+    /**
+     * Reads a dataSet. A reader reads a single dataSet.
+     *
+     * @param file    the dataSet.
+     * @param handler receives the contents of the dataSet.
+     * @throws IOException              if the dataSet could not be read.
+     * @throws IllegalArgumentException if the dataSet is malformed; the message names the file.
+     */
+    final void read(File file, Handler handler) throws IOException
+    {
+        this.handler = handler;
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try
+        {
+            parse(in);
+            emitKeyspace();
+        } catch (IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException(file + ": " + e.getMessage(), e);
+        } finally
+        {
+            IOUtil.close(in);
+        }
+    }
+
+    /**
+     * Parses the dataSet, calling {@link #begin(Level)}, {@link #property(String, String)} and {@link #end(Level)}.
+     *
+     * @param in the dataSet.
+     * @throws IOException              if the dataSet could not be read.
+     * @throws IllegalArgumentException if the dataSet is malformed.
+     */
+    protected abstract void parse(InputStream in) throws IOException;
+
+    protected final void begin(Level level)
+    {
+        Level parent = open.peek();
+        switch (level)
+        {
+            case COLUMN_FAMILY:
+                expect(level, parent, null);
+                emitKeyspace();
+                columnFamily = null;
+                columnMetadata = new ArrayList<Map<String, String>>();
+                break;
+            case COLUMN_METADATA:
+                expect(level, parent, Level.COLUMN_FAMILY);
+                break;
+            case ROW:
+                expect(level, parent, Level.COLUMN_FAMILY);
+                emitColumnFamily();
+                mutations = new ArrayList<Mutation>();
+                break;
+            case SUPER_COLUMN:
+                expect(level, parent, Level.ROW);
+                superColumnColumns = new ArrayList<Column>();
+                superColumnCounters = new ArrayList<CounterColumn>();
+                break;
+            default:
+                if (parent != Level.ROW && parent != Level.SUPER_COLUMN)
+                {
+                    throw new IllegalArgumentException("Unexpected column outside of a row");
+                }
+        }
+        open.push(level);
+        properties.put(level, new HashMap<String, String>());
+    }
+
+    /**
+     * Sets a property of the innermost open object, or of the keyspace when no object is open.
+     */
+    protected final void property(String name, String value)
+    {
+        if (open.isEmpty())
+        {
+            if (keyspace != null)
+            {
+                throw new IllegalArgumentException("Keyspace property " + name + " must precede the column families");
+            }
+            keyspaceProperties.put(name, value);
+        } else if (open.peek() == Level.COLUMN_FAMILY && columnFamily != null)
+        {
+            throw new IllegalArgumentException("Column family property " + name + " must precede the rows");
+        } else
+        {
+            properties.get(open.peek()).put(name, value);
+        }
+    }
+
+    protected final void end(Level level)
+    {
+        if (open.peek() != level)
+        {
+            throw new IllegalArgumentException("Unexpected end of " + level);
+        }
+        Map<String, String> values = properties.get(open.pop());
+        switch (level)
+        {
+            case COLUMN_FAMILY:
+                emitColumnFamily();
+                break;
+            case COLUMN_METADATA:
+                columnMetadata.add(values);
+                break;
+            case ROW:
+                handler.row(columnFamily.getName(), convert(keyType, required(values, "key", "row")), mutations);
+                mutations = null;
+                break;
+            case SUPER_COLUMN:
+                ByteBuffer name = convert(comparator, required(values, "name", "super column"));
+                ColumnOrSuperColumn superColumn = new ColumnOrSuperColumn();
+                if (counters)
+                {
+                    superColumn.setCounter_super_column(new CounterSuperColumn(name, superColumnCounters));
+                } else
+                {
+                    superColumn.setSuper_column(new SuperColumn(name, superColumnColumns));
+                }
+                mutations.add(new Mutation().setColumn_or_supercolumn(superColumn));
+                break;
+            default:
+                addColumn(values, open.peek() == Level.SUPER_COLUMN);
+        }
+    }
+
+    private void addColumn(Map<String, String> values, boolean inSuperColumn)
+    {
+        ByteBuffer name = convert(inSuperColumn ? subComparator : comparator, required(values, "name", "column"));
+        String value = values.get("value");
+        if (counters)
+        {
+            String text = value == null ? "0" : value.trim();
+            Matcher matcher = TYPED_VALUE.matcher(text);
+            long count = Long.parseLong(matcher.matches() ? matcher.group(2).trim() : text);
+            CounterColumn counter = new CounterColumn(name, count);
+            if (inSuperColumn)
+            {
+                superColumnCounters.add(counter);
+            } else
+            {
+                mutations.add(new Mutation().setColumn_or_supercolumn(
+                    new ColumnOrSuperColumn().setCounter_column(counter)));
+            }
+            return;
+        }
+        AbstractType<?> type = inSuperColumn ? null : valueTypes.get(name);
+        Column column = new Column(name);
+        column.setValue(convert(type != null ? type : defaultValueType, value == null ? "" : value));
+        column.setTimestamp(timestamp);
+        if (inSuperColumn)
+        {
+            superColumnColumns.add(column);
+        } else
+        {
+            mutations.add(new Mutation().setColumn_or_supercolumn(new ColumnOrSuperColumn().setColumn(column)));
+        }
+    }
+
+    private void emitKeyspace()
+    {
+        if (keyspace != null)
+        {
+            return;
+        }
+        keyspace = required(keyspaceProperties, "name", "keyspace");
+        String strategy = keyspaceProperties.get("strategy");
+        String replicationFactor = keyspaceProperties.get("replicationFactor");
+        KsDef definition = new KsDef(keyspace, strategy != null ? strategy
+            : "org.apache.cassandra.locator.SimpleStrategy", new ArrayList<CfDef>());
+        definition.setStrategy_options(Collections.singletonMap("replication_factor",
+                                                                replicationFactor != null ? replicationFactor : "1"));
+        handler.keyspace(definition);
+    }
+
+    private void emitColumnFamily()
+    {
+        if (columnFamily != null)
+        {
+            return;
+        }
+        Map<String, String> values = properties.get(Level.COLUMN_FAMILY);
+        CfDef definition = new CfDef(keyspace, required(values, "name", "column family"));
+        boolean superColumnFamily = "SUPER".equalsIgnoreCase(values.get("type"));
+        definition.setColumn_type(superColumnFamily ? "Super" : "Standard");
+        definition.setKey_validation_class(typeName(values.get("keyType")));
+        definition.setComparator_type(typeName(values.get("comparatorType")));
+        if (superColumnFamily)
+        {
+            definition.setSubcomparator_type(typeName(values.get("subComparatorType")));
+        }
+        definition.setDefault_validation_class(typeName(values.get("defaultColumnValueType")));
+        if (values.containsKey("comment"))
+        {
+            definition.setComment(values.get("comment"));
+        }
+        keyType = typeOf(definition.getKey_validation_class());
+        comparator = typeOf(definition.getComparator_type());
+        subComparator = superColumnFamily ? typeOf(definition.getSubcomparator_type()) : null;
+        defaultValueType = typeOf(definition.getDefault_validation_class());
+        counters = defaultValueType instanceof CounterColumnType;
+        valueTypes = new HashMap<ByteBuffer, AbstractType<?>>();
+        List<ColumnDef> columns = new ArrayList<ColumnDef>();
+        for (Map<String, String> metadata : columnMetadata)
+        {
+            ByteBuffer name = convert(comparator, required(metadata, "name", "column metadata"));
+            ColumnDef column = new ColumnDef(name, typeName(metadata.get("validationClass")));
+            if (metadata.containsKey("indexType"))
+            {
+                column.setIndex_type(IndexType.valueOf(metadata.get("indexType").toUpperCase(Locale.ENGLISH)));
+                column.setIndex_name(metadata.get("indexName"));
+            }
+            valueTypes.put(name, typeOf(column.getValidation_class()));
+            columns.add(column);
+        }
+        definition.setColumn_metadata(columns);
+        columnFamily = definition;
+        handler.columnFamily(definition);
+    }
+
+    private static void expect(Level level, Level parent, Level expected)
+    {
+        if (parent != expected)
+        {
+            throw new IllegalArgumentException("Unexpected " + level + (parent == null ? "" : " in " + parent));
+        }
+    }
+
+    private static String required(Map<String, String> values, String name, String object)
+    {
+        String value = values.get(name);
+        if (value == null)
+        {
+            throw new IllegalArgumentException("Missing " + name + " of " + object);
+        }
+        return value;
+    }
+
+    private static String typeName(String type)
+    {
+        return type == null ? "BytesType" : type.trim();
+    }
+
+    private static AbstractType<?> typeOf(String type)
+    {
+        try
+        {
+            return TypeParser.parse(type);
+        } catch (Exception e)
+        {
+            throw new IllegalArgumentException("Unknown type " + type, e);
+        }
+    }
+
+    /**
+     * Converts a value with the given type, or the type the value names, e.g. {@code long(42)}.
+     */
+    private static ByteBuffer convert(AbstractType<?> type, String value)
+    {
+        Matcher matcher = TYPED_VALUE.matcher(value);
+        if (matcher.matches() && VALUE_TYPES.containsKey(matcher.group(1).toLowerCase(Locale.ENGLISH)))
+        {
+            type = typeOf(VALUE_TYPES.get(matcher.group(1).toLowerCase(Locale.ENGLISH)));
+            value = matcher.group(2);
+        }
+        try
+        {
+            return type.fromString(value);
+        } catch (RuntimeException e)
+        {
+            throw new IllegalArgumentException("Invalid " + type.getClass().getSimpleName() + " value " + value, e);
+        }
+    }
+
+    /**
+     * Ends {@link #readKeyspaceName(File)} as soon as the keyspace is known.
+     */
+    private static final class StopReading extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+    }
+}
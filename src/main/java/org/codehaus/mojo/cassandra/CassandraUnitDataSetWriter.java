@@ -0,0 +1,180 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.thrift.CfDef;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.ColumnOrSuperColumn;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CounterColumn;
+import org.apache.cassandra.thrift.KsDef;
+import org.apache.cassandra.thrift.Mutation;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a CassandraUnit dataSet as it is read: recreates the keyspace, creates the column families and sends the rows
+ * in {@code batch_mutate} calls of bounded size.
+ */
+final class CassandraUnitDataSetWriter implements CassandraUnitDataSetReader.Handler
+{
+    /**
+     * Size of the batches, well below the default {@code thrift_framed_transport_size_in_mb} of 15.
+     */
+    private static final int MAX_BATCH_BYTES = 1024 * 1024;
+
+    private static final int MAX_BATCH_MUTATIONS = 1000;
+
+    private final CqlConnection connection;
+
+    private Map<ByteBuffer, Map<String, List<Mutation>>> batch =
+        new HashMap<ByteBuffer, Map<String, List<Mutation>>>();
+
+    private int batchBytes;
+
+    private int batchMutations;
+
+    private long rows;
+
+    /**
+     * @param connection the connection to write with, its keyspace is changed.
+     */
+    CassandraUnitDataSetWriter(CqlConnection connection)
+    {
+        this.connection = connection;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws ThriftApiExecutionException if the keyspace could not be recreated.
+     */
+    public void keyspace(KsDef keyspace)
+    {
+        connection.execute("DROP KEYSPACE IF EXISTS \"" + keyspace.getName().replace("\"", "\"\"") + "\"");
+        try
+        {
+            connection.getClient().system_add_keyspace(keyspace);
+        } catch (Exception e)
+        {
+            throw new ThriftApiExecutionException("Could not create keyspace " + keyspace.getName(), e);
+        }
+        connection.useKeyspace(keyspace.getName());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws ThriftApiExecutionException if the column family could not be created.
+     */
+    public void columnFamily(CfDef columnFamily)
+    {
+        flush();
+        try
+        {
+            connection.getClient().system_add_column_family(columnFamily);
+        } catch (Exception e)
+        {
+            throw new ThriftApiExecutionException("Could not create column family " + columnFamily.getName(), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws ThriftApiExecutionException if a batch could not be written.
+     */
+    public void row(String columnFamily, ByteBuffer key, List<Mutation> mutations)
+    {
+        Map<String, List<Mutation>> columnFamilies = batch.get(key);
+        if (columnFamilies == null)
+        {
+            columnFamilies = new HashMap<String, List<Mutation>>();
+            batch.put(key, columnFamilies);
+            batchBytes += key.remaining();
+        }
+        List<Mutation> existing = columnFamilies.get(columnFamily);
+        if (existing == null)
+        {
+            columnFamilies.put(columnFamily, new ArrayList<Mutation>(mutations));
+        } else
+        {
+            existing.addAll(mutations);
+        }
+        for (Mutation mutation : mutations)
+        {
+            batchBytes += sizeOf(mutation.getColumn_or_supercolumn());
+        }
+        batchMutations += mutations.size();
+        rows++;
+        if (batchBytes >= MAX_BATCH_BYTES || batchMutations >= MAX_BATCH_MUTATIONS)
+        {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the rows not written yet.
+     *
+     * @throws ThriftApiExecutionException if the batch could not be written.
+     */
+    void flush()
+    {
+        if (batch.isEmpty())
+        {
+            return;
+        }
+        try
+        {
+            connection.getClient().batch_mutate(batch, ConsistencyLevel.ONE);
+        } catch (Exception e)
+        {
+            throw new ThriftApiExecutionException(e);
+        }
+        batch = new HashMap<ByteBuffer, Map<String, List<Mutation>>>();
+        batchBytes = 0;
+        batchMutations = 0;
+    }
+
+    /**
+     * @return the number of rows received.
+     */
+    long getRows()
+    {
+        return rows;
+    }
+
+    private static int sizeOf(ColumnOrSuperColumn column)
+    {
+        int size = 0;
+        if (column.isSetColumn())
+        {
+            size += sizeOf(column.getColumn());
+        } else if (column.isSetSuper_column())
+        {
+            size += column.getSuper_column().bufferForName().remaining();
+            for (Column subColumn : column.getSuper_column().getColumns())
+            {
+                size += sizeOf(subColumn);
+            }
+        } else if (column.isSetCounter_column())
+        {
+            size += column.getCounter_column().bufferForName().remaining() + 8;
+        } else if (column.isSetCounter_super_column())
+        {
+            size += column.getCounter_super_column().bufferForName().remaining();
+            for (CounterColumn counter : column.getCounter_super_column().getColumns())
+            {
+                size += counter.bufferForName().remaining() + 8;
+            }
+        }
+        return size;
+    }
+
+    private static int sizeOf(Column column)
+    {
+        return column.bufferForName().remaining() + (column.isSetValue() ? column.bufferForValue().remaining() : 0);
+    }
+}
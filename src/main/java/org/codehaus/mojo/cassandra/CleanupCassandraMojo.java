@@ -18,69 +18,45 @@
  */
 package org.codehaus.mojo.cassandra;
 
-import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.ExecuteException;
-import org.apache.commons.exec.Executor;
-import org.apache.commons.exec.LogOutputStream;
-import org.apache.commons.exec.PumpStreamHandler;
-import org.apache.commons.exec.ShutdownHookProcessDestroyer;
-import org.apache.maven.plugin.MojoExecutionException;
-import org.apache.maven.plugin.MojoFailureException;
-
 import java.io.IOException;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
- * Runs {@code nodetool cleanup} on a Cassandra instance.
+ * Removes the data a Cassandra instance no longer owns from keyspaces, or some of their tables, as
+ * {@code nodetool cleanup} does.
  *
  * @author stephenc
  * @goal cleanup
  * @threadSafe
  */
-public class CleanupCassandraMojo extends AbstractCassandraMojo
+public class CleanupCassandraMojo extends AbstractMaintenanceCassandraMojo
 {
     /**
      * {@inheritDoc}
      */
-    public void execute() throws MojoExecutionException, MojoFailureException
+    protected String getOperation()
     {
-        if (skip)
-        {
-            getLog().info("Skipping cassandra: cassandra.skip==true");
-            return;
-        }
-        try
-        {
-            Map environment = createEnvironmentVars();
-            CommandLine commandLine = newNodetoolCommandLine("cleanup");
-
-            Executor exec = new DefaultExecutor();
-            exec.setWorkingDirectory(cassandraDir);
-            exec.setProcessDestroyer(new ShutdownHookProcessDestroyer());
-
-            LogOutputStream stdout = new MavenLogOutputStream(getLog());
-            LogOutputStream stderr = new MavenLogOutputStream(getLog());
-
-            try
-            {
-                getLog().debug("Executing command line: " + commandLine);
-
-                exec.setStreamHandler(new PumpStreamHandler(stdout, stderr, System.in));
+        return "Cleaned up";
+    }
 
-                exec.execute(commandLine, environment);
+    /**
+     * {@inheritDoc}
+     */
+    protected List<String> getDefaultKeyspaces(CassandraJmxClient jmx)
+    {
+        return jmx.getStorageService().getNonLocalStrategyKeyspaces();
+    }
 
-                getLog().info("Cleanup triggered.");
-            } catch (ExecuteException e)
-            {
-                throw new MojoExecutionException("Command execution failed.", e);
-            } catch (IOException e)
-            {
-                throw new MojoExecutionException("Command execution failed.", e);
-            }
-        } catch (IOException e)
-        {
-            throw new MojoExecutionException(e.getLocalizedMessage(), e);
-        }
+    /**
+     * {@inheritDoc}
+     */
+    protected String execute(CassandraJmxClient jmx, String keyspace, String[] tables)
+        throws IOException, ExecutionException, InterruptedException
+    {
+        // 0 is success, anything else means at least one table was not cleaned up
+        int status = jmx.getStorageService().forceKeyspaceCleanup(0, keyspace, tables);
+        return status == 0 ? null : "Aborted cleaning up at least one table of keyspace " + keyspace
+            + ", check the Cassandra log for more information";
     }
 }
@@ -18,69 +18,123 @@
  */
 package org.codehaus.mojo.cassandra;
 
-import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.ExecuteException;
-import org.apache.commons.exec.Executor;
-import org.apache.commons.exec.LogOutputStream;
-import org.apache.commons.exec.PumpStreamHandler;
-import org.apache.commons.exec.ShutdownHookProcessDestroyer;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 /**
- * Runs {@code nodetool compact} on a Cassandra instance.
+ * Runs a major compaction of keyspaces, or some of their tables, of a Cassandra instance, as {@code nodetool compact}
+ * does.
+ * <p/>
+ * With {@code waitForCompletion}, the goal then waits for the instance to run no compaction, and have none pending,
+ * reporting their progress, and reports how much every table compacted, and how fast.
  *
  * @author stephenc
  * @goal compact
  * @threadSafe
  */
-public class CompactCassandraMojo extends AbstractCassandraMojo
+public class CompactCassandraMojo extends AbstractMaintenanceCassandraMojo
 {
     /**
-     * {@inheritDoc}
+     * Whether to wait for the instance to have completed every compaction, rather than just the major ones.
+     *
+     * @parameter property="cassandra.compact.waitForCompletion" default-value="false"
+     * @since 3.11.12.2
      */
-    public void execute() throws MojoExecutionException, MojoFailureException
-    {
-        if (skip)
-        {
-            getLog().info("Skipping cassandra: cassandra.skip==true");
-            return;
-        }
-        try
-        {
-            Map environment = createEnvironmentVars();
-            CommandLine commandLine = newNodetoolCommandLine("compact");
+    protected boolean waitForCompletion;
 
-            Executor exec = new DefaultExecutor();
-            exec.setWorkingDirectory(cassandraDir);
-            exec.setProcessDestroyer(new ShutdownHookProcessDestroyer());
+    /**
+     * How long to wait for the compactions of every keyspace of an instance to complete, in seconds, before failing,
+     * 0 to wait as long as it takes.
+     *
+     * @parameter property="cassandra.compact.timeout" default-value="600"
+     * @since 3.11.12.2
+     */
+    protected int compactTimeout = 600;
 
-            LogOutputStream stdout = new MavenLogOutputStream(getLog());
-            LogOutputStream stderr = new MavenLogOutputStream(getLog());
+    /**
+     * Interval, in seconds, between progress reports while waiting for the compactions to complete.
+     *
+     * @parameter property="cassandra.compact.progressInterval" default-value="10"
+     * @since 3.11.12.2
+     */
+    protected int compactProgressInterval = 10;
 
-            try
-            {
-                getLog().debug("Executing command line: " + commandLine);
+    /**
+     * When the compactions of the instance compacted by the current thread have to be complete, 0 for never.
+     */
+    private final ThreadLocal<Long> deadline = new ThreadLocal<Long>();
 
-                exec.setStreamHandler(new PumpStreamHandler(stdout, stderr, System.in));
+    /**
+     * {@inheritDoc}
+     */
+    protected String getOperation()
+    {
+        return "Compacted";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected String execute(CassandraJmxClient jmx, int node) throws MojoExecutionException, MojoFailureException
+    {
+        // one timeout for all the keyspaces, rather than one per keyspace
+        deadline.set(compactTimeout > 0 ? System.currentTimeMillis() + compactTimeout * 1000L : 0L);
+        try
+        {
+            return super.execute(jmx, node);
+        } finally
+        {
+            deadline.remove();
+        }
+    }
 
-                exec.execute(commandLine, environment);
+    /**
+     * {@inheritDoc}
+     */
+    protected List<String> getDefaultKeyspaces(CassandraJmxClient jmx)
+    {
+        return jmx.getStorageService().getKeyspaces();
+    }
 
-                getLog().info("Compact triggered.");
-            } catch (ExecuteException e)
-            {
-                throw new MojoExecutionException("Command execution failed.", e);
-            } catch (IOException e)
+    /**
+     * {@inheritDoc}
+     */
+    protected String execute(CassandraJmxClient jmx, String keyspace, String[] tables)
+        throws IOException, ExecutionException, InterruptedException
+    {
+        Map<String, Long> before = waitForCompletion ? jmx.getCompactionBytesWritten(keyspace) : null;
+        long start = System.currentTimeMillis();
+        jmx.getStorageService().forceKeyspaceCompaction(false, keyspace, tables);
+        if (!waitForCompletion)
+        {
+            return null;
+        }
+        long timeoutMillis = 0;
+        if (deadline.get() > 0)
+        {
+            // at least a millisecond, as 0 would wait as long as it takes
+            timeoutMillis = Math.max(1, deadline.get() - System.currentTimeMillis());
+        }
+        if (!jmx.awaitCompactions(timeoutMillis, compactProgressInterval * 1000L, getLog()))
+        {
+            return "Compactions still running on " + jmx + " after " + compactTimeout + "s";
+        }
+        long millis = System.currentTimeMillis() - start;
+        for (Map.Entry<String, Long> table : jmx.getCompactionBytesWritten(keyspace).entrySet())
+        {
+            Long previous = before.get(table.getKey());
+            long bytes = table.getValue() - (previous == null ? 0 : previous);
+            if (bytes > 0)
             {
-                throw new MojoExecutionException("Command execution failed.", e);
+                getLog().info(jmx + ": compacted " + keyspace + "." + table.getKey() + ", "
+                                  + CassandraJmxClient.throughput(bytes, millis));
             }
-        } catch (IOException e)
-        {
-            throw new MojoExecutionException(e.getLocalizedMessage(), e);
         }
+        return null;
     }
 }
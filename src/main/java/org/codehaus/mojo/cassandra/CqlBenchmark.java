@@ -0,0 +1,484 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.AsciiType;
+import org.apache.cassandra.db.marshal.BooleanType;
+import org.apache.cassandra.db.marshal.ByteType;
+import org.apache.cassandra.db.marshal.BytesType;
+import org.apache.cassandra.db.marshal.CounterColumnType;
+import org.apache.cassandra.db.marshal.DecimalType;
+import org.apache.cassandra.db.marshal.DoubleType;
+import org.apache.cassandra.db.marshal.FloatType;
+import org.apache.cassandra.db.marshal.InetAddressType;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.IntegerType;
+import org.apache.cassandra.db.marshal.LongType;
+import org.apache.cassandra.db.marshal.ReversedType;
+import org.apache.cassandra.db.marshal.ShortType;
+import org.apache.cassandra.db.marshal.SimpleDateType;
+import org.apache.cassandra.db.marshal.TimeType;
+import org.apache.cassandra.db.marshal.TimeUUIDType;
+import org.apache.cassandra.db.marshal.TimestampType;
+import org.apache.cassandra.db.marshal.TypeParser;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.cassandra.db.marshal.UUIDType;
+import org.apache.cassandra.thrift.CqlPreparedResult;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.thrift.transport.TTransportException;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs a workload of prepared statements against Cassandra and measures its throughput and latency.
+ * <p/>
+ * Every worker thread has its own connection, picks the statements at random in proportion to their weights and
+ * executes them one after the other, as fast as they complete. The bind markers of the statements are bound to values
+ * derived from a key drawn uniformly from {@code [0, keys)}, e.g. {@code key42} for text and {@code 42} for numbers,
+ * so that reads find the rows written by the same or an earlier run. Latencies are recorded, after the warm-up, in a
+ * {@link LatencyHistogram} per statement and thread. As the load is closed, latencies do not include the time a
+ * statement would have waited for a worker.
+ */
+final class CqlBenchmark
+{
+    private static final Pattern WEIGHTED = Pattern.compile("(\\d+)\\s*:\\s*(.*)", Pattern.DOTALL);
+
+    /**
+     * The percentiles reported, and the names of their properties.
+     */
+    private static final double[] PERCENTILES = {50, 99, 99.9};
+
+    private static final String[] PERCENTILE_NAMES = {"p50", "p99", "p999"};
+
+    /**
+     * The properties compared with a baseline, higher latencies and lower throughputs are regressions.
+     */
+    private static final String[] GATED = {"latency.p50.micros", "latency.p99.micros"};
+
+    private final List<Operation> operations;
+
+    private final String[] rpcAddresses;
+
+    private final int rpcPort;
+
+    private final String cqlVersion;
+
+    private final String keyspace;
+
+    private final long keys;
+
+    private final long seed;
+
+    private final Log log;
+
+    /**
+     * @param operations   the workload, see {@link #parseOperation(String)}.
+     * @param rpcAddresses the RPC addresses to spread the connections over.
+     * @param rpcPort      the RPC port to connect on.
+     * @param cqlVersion   the CQL version.
+     * @param keyspace     the keyspace of unqualified tables, may be {@code null}.
+     * @param keys         the number of distinct keys.
+     * @param seed         the seed of the keys and of the choice of statements.
+     * @param log          the log.
+     */
+    CqlBenchmark(List<Operation> operations, String[] rpcAddresses, int rpcPort, String cqlVersion, String keyspace,
+                 long keys, long seed, Log log)
+    {
+        this.operations = operations;
+        this.rpcAddresses = rpcAddresses;
+        this.rpcPort = rpcPort;
+        this.cqlVersion = cqlVersion;
+        this.keyspace = keyspace;
+        this.keys = Math.max(1, keys);
+        this.seed = seed;
+        this.log = log;
+    }
+
+    /**
+     * Parses a weighted statement, {@code weight: statement} or just {@code statement} for a weight of 1.
+     *
+     * @param spec the weighted statement.
+     * @return the operation.
+     * @throws IllegalArgumentException if the weight is 0 or there is no statement.
+     */
+    static Operation parseOperation(String spec)
+    {
+        String trimmed = spec.trim();
+        int weight = 1;
+        Matcher matcher = WEIGHTED.matcher(trimmed);
+        if (matcher.matches())
+        {
+            weight = Integer.parseInt(matcher.group(1));
+            trimmed = matcher.group(2).trim();
+        }
+        if (trimmed.endsWith(";"))
+        {
+            trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+        }
+        if (weight <= 0 || trimmed.length() == 0)
+        {
+            throw new IllegalArgumentException("Invalid operation '" + spec + "', use weight: statement");
+        }
+        return new Operation(weight, trimmed);
+    }
+
+    /**
+     * Runs the workload.
+     *
+     * @param threads        the number of worker threads, i.e. of statements in flight.
+     * @param warmUpMillis   how long to run before recording.
+     * @param durationMillis how long to record.
+     * @return the results, as properties.
+     * @throws ThriftApiExecutionException if a statement could not be prepared.
+     * @throws InterruptedException        if interrupted.
+     */
+    Properties run(int threads, long warmUpMillis, long durationMillis)
+        throws ThriftApiExecutionException, InterruptedException
+    {
+        final long start = System.nanoTime();
+        final long recordFrom = start + TimeUnit.MILLISECONDS.toNanos(warmUpMillis);
+        final long end = recordFrom + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Worker>> futures = new ArrayList<Future<Worker>>();
+        try
+        {
+            for (int i = 0; i < threads; i++)
+            {
+                futures.add(executor.submit(new Worker(i, recordFrom, end)));
+            }
+            LatencyHistogram[] histograms = new LatencyHistogram[operations.size()];
+            long[] errors = new long[operations.size()];
+            for (int i = 0; i < histograms.length; i++)
+            {
+                histograms[i] = new LatencyHistogram();
+            }
+            for (Future<Worker> future : futures)
+            {
+                Worker worker = future.get();
+                for (int i = 0; i < histograms.length; i++)
+                {
+                    histograms[i].add(worker.histograms[i]);
+                    errors[i] += worker.errors[i];
+                }
+            }
+            return report(histograms, errors, durationMillis);
+        } catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof RuntimeException)
+            {
+                throw (RuntimeException) e.getCause();
+            }
+            throw (Error) e.getCause();
+        } finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private Properties report(LatencyHistogram[] histograms, long[] errors, long durationMillis)
+    {
+        Properties report = new Properties();
+        LatencyHistogram total = new LatencyHistogram();
+        long totalErrors = 0;
+        for (int i = 0; i < histograms.length; i++)
+        {
+            String prefix = "op." + (i + 1) + ".";
+            report.setProperty(prefix + "statement", operations.get(i).statement);
+            report.setProperty(prefix + "weight", String.valueOf(operations.get(i).weight));
+            describe(report, prefix, histograms[i], errors[i], durationMillis);
+            total.add(histograms[i]);
+            totalErrors += errors[i];
+        }
+        describe(report, "", total, totalErrors, durationMillis);
+        report.setProperty("durationMillis", String.valueOf(durationMillis));
+        log.info(String.format(Locale.ENGLISH, "%,d operations, %,.0f ops/s, p50 %,d us, p99 %,d us, p999 %,d us, "
+                                   + "max %,d us, %,d errors", total.getCount(),
+                               total.getCount() * 1000.0 / durationMillis, total.getValueAtPercentile(50),
+                               total.getValueAtPercentile(99), total.getValueAtPercentile(99.9), total.getMax(),
+                               totalErrors));
+        return report;
+    }
+
+    private static void describe(Properties report, String prefix, LatencyHistogram histogram, long errors,
+                                 long durationMillis)
+    {
+        report.setProperty(prefix + "operations", String.valueOf(histogram.getCount()));
+        report.setProperty(prefix + "errors", String.valueOf(errors));
+        report.setProperty(prefix + "throughput",
+                           String.format(Locale.ENGLISH, "%.1f", histogram.getCount() * 1000.0 / durationMillis));
+        for (int i = 0; i < PERCENTILES.length; i++)
+        {
+            report.setProperty(prefix + "latency." + PERCENTILE_NAMES[i] + ".micros",
+                               String.valueOf(histogram.getValueAtPercentile(PERCENTILES[i])));
+        }
+        report.setProperty(prefix + "latency.max.micros", String.valueOf(histogram.getMax()));
+        report.setProperty(prefix + "latency.mean.micros",
+                           String.format(Locale.ENGLISH, "%.1f", histogram.getMean()));
+    }
+
+    /**
+     * Compares results with a baseline: the overall throughput must not drop, and the overall p50 and p99 latencies
+     * must not rise, by more than the given percentage.
+     *
+     * @param baseline   the results of the baseline.
+     * @param results    the results.
+     * @param maxPercent the tolerated regression, in percent.
+     * @return a description of every regression, empty if there is none.
+     */
+    static List<String> regressions(Properties baseline, Properties results, double maxPercent)
+    {
+        List<String> regressions = new ArrayList<String>();
+        double expected = number(baseline, "throughput");
+        double actual = number(results, "throughput");
+        if (expected > 0 && actual < expected * (1 - maxPercent / 100))
+        {
+            regressions.add(String.format(Locale.ENGLISH, "throughput dropped from %.1f to %.1f ops/s (%.1f%%)",
+                                          expected, actual, (expected - actual) * 100 / expected));
+        }
+        for (String property : GATED)
+        {
+            expected = number(baseline, property);
+            actual = number(results, property);
+            if (expected > 0 && actual > expected * (1 + maxPercent / 100))
+            {
+                regressions.add(String.format(Locale.ENGLISH, "%s rose from %.0f to %.0f (+%.1f%%)", property,
+                                              expected, actual, (actual - expected) * 100 / expected));
+            }
+        }
+        return regressions;
+    }
+
+    private static double number(Properties properties, String name)
+    {
+        String value = properties.getProperty(name);
+        try
+        {
+            return value == null ? 0 : Double.parseDouble(value);
+        } catch (NumberFormatException e)
+        {
+            return 0;
+        }
+    }
+
+    /**
+     * Binds a marker of the given type to the value derived from a key.
+     *
+     * @param type the type of the marker, as reported when preparing the statement.
+     * @param key  the key.
+     * @return the value.
+     * @throws IllegalArgumentException if there are no values of the type.
+     */
+    static ByteBuffer bind(AbstractType<?> type, long key)
+    {
+        AbstractType<?> base = type instanceof ReversedType ? ((ReversedType<?>) type).baseType : type;
+        if (base instanceof UTF8Type || base instanceof AsciiType)
+        {
+            return base.fromString("key" + key);
+        }
+        if (base instanceof ByteType)
+        {
+            return base.fromString(String.valueOf((byte) key));
+        }
+        if (base instanceof ShortType)
+        {
+            return base.fromString(String.valueOf((short) key));
+        }
+        if (base instanceof Int32Type)
+        {
+            return base.fromString(String.valueOf((int) key));
+        }
+        if (base instanceof LongType || base instanceof CounterColumnType || base instanceof IntegerType
+            || base instanceof DecimalType || base instanceof DoubleType || base instanceof FloatType
+            || base instanceof TimestampType || base instanceof TimeType)
+        {
+            return base.fromString(String.valueOf(key));
+        }
+        if (base instanceof SimpleDateType)
+        {
+            return base.fromString(LocalDate.ofEpochDay(key % 3000000).toString());
+        }
+        if (base instanceof BooleanType)
+        {
+            return base.fromString(String.valueOf(key % 2 == 0));
+        }
+        if (base instanceof BytesType)
+        {
+            return ByteBuffer.allocate(8).putLong(0, key);
+        }
+        if (base instanceof TimeUUIDType || base instanceof UUIDType)
+        {
+            // a version 1 UUID is a valid value of both
+            return base.fromString(new UUID(0x1000L, Long.MIN_VALUE | key).toString());
+        }
+        if (base instanceof InetAddressType)
+        {
+            return base.fromString("10." + ((key >> 16) & 0xFF) + "." + ((key >> 8) & 0xFF) + "." + (key & 0xFF));
+        }
+        throw new IllegalArgumentException("Cannot bind markers of type " + type);
+    }
+
+    /**
+     * A weighted statement of the workload.
+     */
+    static final class Operation
+    {
+        private final int weight;
+
+        private final String statement;
+
+        private Operation(int weight, String statement)
+        {
+            this.weight = weight;
+            this.statement = statement;
+        }
+
+        int getWeight()
+        {
+            return weight;
+        }
+
+        String getStatement()
+        {
+            return statement;
+        }
+    }
+
+    private final class Worker implements Callable<Worker>
+    {
+        private final int index;
+
+        private final long recordFrom;
+
+        private final long end;
+
+        private final Random random;
+
+        private final LatencyHistogram[] histograms = new LatencyHistogram[operations.size()];
+
+        private final long[] errors = new long[operations.size()];
+
+        private CqlConnection connection;
+
+        private int[] itemIds;
+
+        private List<List<AbstractType<?>>> markerTypes;
+
+        private Worker(int index, long recordFrom, long end)
+        {
+            this.index = index;
+            this.recordFrom = recordFrom;
+            this.end = end;
+            this.random = new Random(seed + index);
+            for (int i = 0; i < histograms.length; i++)
+            {
+                histograms[i] = new LatencyHistogram();
+            }
+        }
+
+        public Worker call()
+        {
+            int totalWeight = 0;
+            for (Operation operation : operations)
+            {
+                totalWeight += operation.weight;
+            }
+            try
+            {
+                connect();
+                long now = System.nanoTime();
+                while (now < end && !Thread.currentThread().isInterrupted())
+                {
+                    int pick = random.nextInt(totalWeight);
+                    int operation = 0;
+                    while (pick >= operations.get(operation).weight)
+                    {
+                        pick -= operations.get(operation).weight;
+                        operation++;
+                    }
+                    List<AbstractType<?>> types = markerTypes.get(operation);
+                    List<ByteBuffer> values = new ArrayList<ByteBuffer>(types.size());
+                    long key = (random.nextLong() >>> 1) % keys;
+                    for (AbstractType<?> type : types)
+                    {
+                        values.add(bind(type, key));
+                    }
+                    long started = System.nanoTime();
+                    try
+                    {
+                        connection.executePrepared(itemIds[operation], values);
+                        now = System.nanoTime();
+                        if (started >= recordFrom)
+                        {
+                            histograms[operation].record(TimeUnit.NANOSECONDS.toMicros(now - started));
+                        }
+                    } catch (ThriftApiExecutionException e)
+                    {
+                        now = System.nanoTime();
+                        if (started >= recordFrom)
+                        {
+                            errors[operation]++;
+                        }
+                        if (e.getCause() instanceof TTransportException)
+                        {
+                            log.debug("Reconnecting worker " + index + " after " + e.getCause());
+                            connection.close();
+                            connect();
+                        }
+                    }
+                }
+            } finally
+            {
+                if (connection != null)
+                {
+                    connection.close();
+                }
+            }
+            return this;
+        }
+
+        private void connect()
+        {
+            connection = CqlConnection.open(rpcAddresses[index % rpcAddresses.length], rpcPort, cqlVersion, keyspace,
+                                            false);
+            itemIds = new int[operations.size()];
+            markerTypes = new ArrayList<List<AbstractType<?>>>();
+            for (int i = 0; i < itemIds.length; i++)
+            {
+                CqlPreparedResult prepared = connection.prepareStatement(operations.get(i).statement);
+                itemIds[i] = prepared.getItemId();
+                List<AbstractType<?>> types = new ArrayList<AbstractType<?>>();
+                if (prepared.getVariable_types() != null)
+                {
+                    for (String type : prepared.getVariable_types())
+                    {
+                        try
+                        {
+                            types.add(TypeParser.parse(type));
+                        } catch (Exception e)
+                        {
+                            throw new ThriftApiExecutionException("Unknown marker type " + type + " in "
+                                                                      + operations.get(i).statement, e);
+                        }
+                        // fails now rather than in the middle of the run
+                        bind(types.get(types.size() - 1), 0);
+                    }
+                }
+                markerTypes.add(types);
+            }
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.Compression;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CqlPreparedResult;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TFramedTransport;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A Thrift connection used to execute CQL statements. Keeps track of the keyspace the connection is bound to so that
+ * several connections can follow the {@code USE} statements of a single script.
+ */
+final class CqlConnection
+{
+    private final TTransport transport;
+
+    private final Cassandra.Client client;
+
+    private final boolean cql3;
+
+    private final CqlPreparedStatements preparedStatements;
+
+    private String keyspace;
+
+    private CqlConnection(TTransport transport, Cassandra.Client client, String cqlVersion, String keyspace,
+                          boolean prepareStatements)
+    {
+        this.transport = transport;
+        this.client = client;
+        this.cql3 = cqlVersion.charAt(0) >= '3';
+        this.keyspace = StringUtils.isBlank(keyspace) ? null : keyspace;
+        this.preparedStatements = prepareStatements && cql3 ? new CqlPreparedStatements(client) : null;
+    }
+
+    /**
+     * Wraps a client that is already set up, e.g. a fake one in tests.
+     *
+     * @param client     the client.
+     * @param cqlVersion the CQL version the client uses.
+     */
+    CqlConnection(Cassandra.Client client, String cqlVersion)
+    {
+        this(null, client, cqlVersion, null, false);
+    }
+
+    /**
+     * Opens a new connection.
+     *
+     * @param rpcAddress the RPC address to connect to.
+     * @param rpcPort    the RPC port to connect on.
+     * @param cqlVersion the CQL version to use.
+     * @param keyspace   the keyspace to bind to, may be {@code null}.
+     * @param prepareStatements whether writes are executed as prepared statements.
+     * @return the opened connection.
+     * @throws ThriftApiExecutionException if the connection could not be set up.
+     */
+    static CqlConnection open(String rpcAddress, int rpcPort, String cqlVersion, String keyspace,
+                              boolean prepareStatements)
+        throws ThriftApiExecutionException
+    {
+        TTransport transport = new TFramedTransport(new TSocket(rpcAddress, rpcPort));
+        Cassandra.Client client = new Cassandra.Client(new TBinaryProtocol(transport, true, true));
+        try
+        {
+            transport.open();
+            if (StringUtils.isNotBlank(keyspace))
+            {
+                client.set_keyspace(keyspace);
+            }
+            client.set_cql_version(cqlVersion);
+        } catch (Exception e)
+        {
+            if (transport.isOpen())
+            {
+                transport.close();
+            }
+            throw new ThriftApiExecutionException(e);
+        }
+        return new CqlConnection(transport, client, cqlVersion, keyspace, prepareStatements);
+    }
+
+    /**
+     * Binds this connection to the supplied keyspace unless it is already bound to it.
+     *
+     * @param keyspace the keyspace, {@code null} leaves the connection untouched.
+     * @throws ThriftApiExecutionException if the keyspace could not be set.
+     */
+    void useKeyspace(String keyspace) throws ThriftApiExecutionException
+    {
+        if (keyspace == null || keyspace.equals(this.keyspace))
+        {
+            return;
+        }
+        try
+        {
+            client.set_keyspace(keyspace);
+            this.keyspace = keyspace;
+        } catch (Exception e)
+        {
+            throw new ThriftApiExecutionException(e);
+        }
+    }
+
+    /**
+     * Executes a single CQL statement, as a prepared statement if enabled and possible.
+     *
+     * @param statement the statement.
+     * @return the result of the statement.
+     * @throws ThriftApiExecutionException if the statement failed.
+     */
+    CqlResult execute(String statement) throws ThriftApiExecutionException
+    {
+        return execute(statement, ConsistencyLevel.ONE);
+    }
+
+    /**
+     * Executes a single CQL statement, as a prepared statement if enabled and possible.
+     *
+     * @param statement   the statement.
+     * @param consistency the consistency level of a CQL3 statement that is not executed as a prepared statement.
+     * @return the result of the statement.
+     * @throws ThriftApiExecutionException if the statement failed.
+     */
+    CqlResult execute(String statement, ConsistencyLevel consistency) throws ThriftApiExecutionException
+    {
+        CqlResult result = null;
+        try
+        {
+            if (preparedStatements != null)
+            {
+                result = preparedStatements.execute(keyspace, statement);
+            }
+            if (result != null)
+            {
+                return result;
+            }
+            ByteBuffer buf = ByteBufferUtil.bytes(statement);
+            if (cql3)
+            {
+                result = client.execute_cql3_query(buf, Compression.NONE, consistency);
+            } else
+            {
+                result = client.execute_cql_query(buf, Compression.NONE);
+            }
+        } catch (Exception e)
+        {
+            throw new ThriftApiExecutionException(e);
+        }
+        String used = CqlStatements.usedKeyspace(statement);
+        if (used != null)
+        {
+            keyspace = used;
+        }
+        return result;
+    }
+
+    /**
+     * Prepares a CQL3 statement with bind markers.
+     *
+     * @param statement the statement.
+     * @return the id of the prepared statement on this connection.
+     * @throws ThriftApiExecutionException if the statement could not be prepared.
+     */
+    int prepare(String statement) throws ThriftApiExecutionException
+    {
+        return prepareStatement(statement).getItemId();
+    }
+
+    /**
+     * Prepares a CQL3 statement with bind markers.
+     *
+     * @param statement the statement.
+     * @return the prepared statement: its id on this connection and the types of its markers.
+     * @throws ThriftApiExecutionException if the statement could not be prepared.
+     */
+    CqlPreparedResult prepareStatement(String statement) throws ThriftApiExecutionException
+    {
+        try
+        {
+            return client.prepare_cql3_query(ByteBufferUtil.bytes(statement), Compression.NONE);
+        } catch (Exception e)
+        {
+            throw new ThriftApiExecutionException(e);
+        }
+    }
+
+    /**
+     * Executes a statement prepared on this connection.
+     *
+     * @param itemId the id returned by {@link #prepare(String)}.
+     * @param values the values bound to the markers of the statement.
+     * @return the result of the statement.
+     * @throws ThriftApiExecutionException if the statement failed.
+     */
+    CqlResult executePrepared(int itemId, List<ByteBuffer> values) throws ThriftApiExecutionException
+    {
+        try
+        {
+            return client.execute_prepared_cql3_query(itemId, values, ConsistencyLevel.ONE);
+        } catch (Exception e)
+        {
+            throw new ThriftApiExecutionException(e);
+        }
+    }
+
+    /**
+     * @return the Thrift client, for the calls that are not CQL statements.
+     */
+    Cassandra.Client getClient()
+    {
+        return client;
+    }
+
+    /**
+     * Closes the connection.
+     */
+    void close()
+    {
+        if (transport != null && transport.isOpen())
+        {
+            transport.close();
+        }
+    }
+}
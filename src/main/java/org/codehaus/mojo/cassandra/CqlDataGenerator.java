@@ -0,0 +1,666 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import java.nio.charset.CharacterCodingException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generates the rows of a table, as JSON objects taken by {@code INSERT ... JSON}, from its live schema.
+ * <p/>
+ * The rows are {@code partitions} partitions of {@code rowsPerPartition} rows each. The first partition key column
+ * and the first clustering column are derived from the number of the partition and of the row, so partitions and
+ * rows are distinct whatever their size; every other value is random. The sizes of text and blob values, and of the
+ * elements of collections, follow a {@link Distribution} per kind of column. All values come from a single
+ * {@link Random} seeded with {@code seed}, so the same arguments always generate the same rows.
+ */
+final class CqlDataGenerator implements CqlImporter.Rows
+{
+    private static final Pattern IDENTIFIER = Pattern.compile("[a-z][a-z0-9_]*");
+
+    private static final Pattern FROZEN = Pattern.compile("frozen\\s*<(.*)>", Pattern.CASE_INSENSITIVE);
+
+    private static final Set<String> SCALAR_TYPES = new HashSet<String>(Arrays.asList(
+        "ascii", "text", "varchar", "blob", "boolean", "tinyint", "smallint", "int", "bigint", "varint", "float",
+        "double", "decimal", "timestamp", "date", "time", "uuid", "timeuuid", "inet", "duration"));
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * 2017-07-14, so that generated timestamps and dates look current.
+     */
+    private static final long EPOCH_MILLIS = 1500000000000L;
+
+    private final List<ColumnSchema> columns;
+
+    private final long partitions;
+
+    private final int rowsPerPartition;
+
+    private final Distribution keySize;
+
+    private final Distribution clusteringKeySize;
+
+    private final Distribution valueSize;
+
+    private final Random random;
+
+    private long partition;
+
+    private int row;
+
+    private StringBuilder partitionKey;
+
+    private long rowNumber;
+
+    /**
+     * @param columns           the columns of the table.
+     * @param partitions        the number of partitions.
+     * @param rowsPerPartition  the number of rows of every partition, 1 for tables without clustering columns.
+     * @param seed              the seed of the random values.
+     * @param keySize           the size of the partition key values.
+     * @param clusteringKeySize the size of the clustering column values.
+     * @param valueSize         the size of the other values.
+     * @throws IllegalArgumentException if the table has a column whose values cannot be generated.
+     */
+    CqlDataGenerator(List<ColumnSchema> columns, long partitions, int rowsPerPartition, long seed,
+                     Distribution keySize, Distribution clusteringKeySize, Distribution valueSize)
+    {
+        this.columns = new ArrayList<ColumnSchema>(columns);
+        Collections.sort(this.columns);
+        boolean clustered = false;
+        for (ColumnSchema column : this.columns)
+        {
+            clustered |= column.isClustering();
+            checkType(column.type);
+        }
+        this.partitions = partitions;
+        this.rowsPerPartition = clustered ? Math.max(1, rowsPerPartition) : 1;
+        this.keySize = keySize;
+        this.clusteringKeySize = clusteringKeySize;
+        this.valueSize = valueSize;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Reads the columns of a table from {@code system_schema}.
+     *
+     * @param connection the connection to read with.
+     * @param keyspace   the keyspace, as stored in the schema, i.e. unquoted.
+     * @param table      the table, as stored in the schema.
+     * @return the columns, empty if the table does not exist.
+     * @throws ThriftApiExecutionException if the schema could not be read.
+     */
+    static List<ColumnSchema> readSchema(CqlConnection connection, String keyspace, String table)
+    {
+        CqlResult result = connection.execute(
+            "SELECT column_name, kind, position, type, clustering_order FROM system_schema.columns WHERE "
+                + "keyspace_name = '" + keyspace.replace("'", "''") + "' AND table_name = '" + table.replace("'", "''") + "'");
+        List<ColumnSchema> columns = new ArrayList<ColumnSchema>();
+        if (result.getRows() == null)
+        {
+            return columns;
+        }
+        try
+        {
+            for (CqlRow row : result.getRows())
+            {
+                String name = null;
+                String kind = null;
+                String type = null;
+                String clusteringOrder = null;
+                int position = -1;
+                for (Column column : row.getColumns())
+                {
+                    String columnName = ByteBufferUtil.string(column.name);
+                    if ("column_name".equals(columnName))
+                    {
+                        name = ByteBufferUtil.string(column.value);
+                    } else if ("kind".equals(columnName))
+                    {
+                        kind = ByteBufferUtil.string(column.value);
+                    } else if ("position".equals(columnName))
+                    {
+                        position = ByteBufferUtil.toInt(column.value);
+                    } else if ("type".equals(columnName))
+                    {
+                        type = ByteBufferUtil.string(column.value);
+                    } else if ("clustering_order".equals(columnName))
+                    {
+                        clusteringOrder = ByteBufferUtil.string(column.value);
+                    }
+                }
+                columns.add(new ColumnSchema(name, kind, position, type, clusteringOrder));
+            }
+        } catch (CharacterCodingException e)
+        {
+            throw new ThriftApiExecutionException("Could not read the schema of " + keyspace + "." + table, e);
+        }
+        return columns;
+    }
+
+    /**
+     * @return the number of rows generated.
+     */
+    long getRows()
+    {
+        return partitions * rowsPerPartition;
+    }
+
+    public boolean hasNext()
+    {
+        return partition < partitions;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public String next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        if (row == 0)
+        {
+            // the same for every row of the partition
+            partitionKey = new StringBuilder();
+            boolean first = true;
+            for (ColumnSchema column : columns)
+            {
+                if (column.isPartitionKey())
+                {
+                    appendMember(partitionKey, column, first
+                        ? key(column.type, keySize.sample(random), partition)
+                        : value(column.type, keySize));
+                    first = false;
+                }
+            }
+        }
+        StringBuilder json = new StringBuilder("{").append(partitionKey);
+        boolean firstClustering = true;
+        for (ColumnSchema column : columns)
+        {
+            if (column.isClustering())
+            {
+                appendMember(json, column, firstClustering
+                    ? key(column.type, clusteringKeySize.sample(random), row)
+                    : value(column.type, clusteringKeySize));
+                firstClustering = false;
+            } else if (!column.isPartitionKey() && (row == 0 || !column.isStatic()))
+            {
+                // static columns are written with the first row of the partition
+                appendMember(json, column, value(column.type, valueSize));
+            }
+        }
+        rowNumber++;
+        if (++row == rowsPerPartition)
+        {
+            row = 0;
+            partition++;
+        }
+        return json.append('}').toString();
+    }
+
+    private static void appendMember(StringBuilder json, ColumnSchema column, String value)
+    {
+        if (json.length() > 0 && json.charAt(json.length() - 1) != '{')
+        {
+            json.append(", ");
+        }
+        JsonRows.appendString(json, IDENTIFIER.matcher(column.name).matches()
+            ? column.name
+            : '"' + column.name.replace("\"", "\"\"") + '"');
+        json.append(": ").append(value);
+    }
+
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public long getRowNumber()
+    {
+        return rowNumber;
+    }
+
+    /**
+     * Generates a key value that is distinct for every {@code index}.
+     */
+    private String key(String type, int size, long index)
+    {
+        String name = baseType(type);
+        if (isText(name))
+        {
+            String digits = Long.toString(index);
+            // letters then digits, so the digits always read back as the index
+            return '"' + letters(size - digits.length()) + digits + '"';
+        }
+        if ("blob".equals(name))
+        {
+            StringBuilder hex = new StringBuilder("\"0x");
+            appendHex(hex, Math.max(0, size - 8));
+            for (int shift = 56; shift >= 0; shift -= 8)
+            {
+                hex.append(HEX[(int) (index >>> (shift + 4)) & 0xF]).append(HEX[(int) (index >>> shift) & 0xF]);
+            }
+            return hex.append('"').toString();
+        }
+        if ("tinyint".equals(name))
+        {
+            return Byte.toString((byte) index);
+        }
+        if ("smallint".equals(name))
+        {
+            return Short.toString((short) index);
+        }
+        if ("int".equals(name))
+        {
+            return Integer.toString((int) index);
+        }
+        if ("bigint".equals(name) || "varint".equals(name) || "time".equals(name) || "float".equals(name)
+            || "double".equals(name) || "decimal".equals(name))
+        {
+            return Long.toString(index);
+        }
+        if ("timestamp".equals(name))
+        {
+            return Long.toString(EPOCH_MILLIS + index);
+        }
+        if ("date".equals(name))
+        {
+            return '"' + date(EPOCH_MILLIS / 86400000L + index) + '"';
+        }
+        if ("uuid".equals(name) || "timeuuid".equals(name))
+        {
+            return '"' + uuid("uuid".equals(name) ? 4 : 1, Long.MIN_VALUE | index) + '"';
+        }
+        return value(type, size);
+    }
+
+    private String value(String type, Distribution size)
+    {
+        String name = baseType(type);
+        List<String> arguments = typeArguments(type);
+        if ("list".equals(name) || "set".equals(name) || "tuple".equals(name))
+        {
+            StringBuilder json = new StringBuilder("[");
+            int elements = "tuple".equals(name) ? arguments.size() : 1 + random.nextInt(3);
+            for (int i = 0; i < elements; i++)
+            {
+                if (i > 0)
+                {
+                    json.append(", ");
+                }
+                json.append(value(arguments.get("tuple".equals(name) ? i : 0), size));
+            }
+            return json.append(']').toString();
+        }
+        if ("map".equals(name))
+        {
+            StringBuilder json = new StringBuilder("{");
+            int entries = 1 + random.nextInt(3);
+            for (int i = 0; i < entries; i++)
+            {
+                if (i > 0)
+                {
+                    json.append(", ");
+                }
+                String key = value(arguments.get(0), size);
+                // JSON keys are strings, Cassandra reads numbers and booleans from them too
+                if (key.startsWith("\""))
+                {
+                    json.append(key);
+                } else
+                {
+                    JsonRows.appendString(json, key);
+                }
+                json.append(": ").append(value(arguments.get(1), size));
+            }
+            return json.append('}').toString();
+        }
+        return value(name, size.sample(random));
+    }
+
+    private String value(String name, int size)
+    {
+        if (isText(name))
+        {
+            return '"' + letters(size) + '"';
+        }
+        if ("blob".equals(name))
+        {
+            StringBuilder hex = new StringBuilder("\"0x");
+            appendHex(hex, size);
+            return hex.append('"').toString();
+        }
+        if ("boolean".equals(name))
+        {
+            return Boolean.toString(random.nextBoolean());
+        }
+        if ("tinyint".equals(name))
+        {
+            return Integer.toString(random.nextInt(256) - 128);
+        }
+        if ("smallint".equals(name))
+        {
+            return Integer.toString(random.nextInt(65536) - 32768);
+        }
+        if ("int".equals(name))
+        {
+            return Integer.toString(random.nextInt());
+        }
+        if ("bigint".equals(name) || "varint".equals(name))
+        {
+            return Long.toString(random.nextLong());
+        }
+        if ("float".equals(name))
+        {
+            return Float.toString(random.nextFloat() * 1000);
+        }
+        if ("double".equals(name) || "decimal".equals(name))
+        {
+            return Double.toString(random.nextDouble() * 1000000);
+        }
+        if ("timestamp".equals(name))
+        {
+            return Long.toString(EPOCH_MILLIS + (long) (random.nextDouble() * 365 * 86400000L));
+        }
+        if ("date".equals(name))
+        {
+            return '"' + date(EPOCH_MILLIS / 86400000L + random.nextInt(365)) + '"';
+        }
+        if ("time".equals(name))
+        {
+            return Long.toString((long) (random.nextDouble() * 86400000000000L));
+        }
+        if ("uuid".equals(name) || "timeuuid".equals(name))
+        {
+            return '"' + uuid("uuid".equals(name) ? 4 : 1, random.nextLong()) + '"';
+        }
+        if ("inet".equals(name))
+        {
+            return "\"10." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256) + '"';
+        }
+        if ("duration".equals(name))
+        {
+            return "\"" + random.nextInt(1000) + "m\"";
+        }
+        throw new IllegalArgumentException("Cannot generate values of type " + name);
+    }
+
+    private String letters(int count)
+    {
+        char[] chars = new char[Math.max(0, count)];
+        for (int i = 0; i < chars.length; i++)
+        {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+    private void appendHex(StringBuilder hex, int bytes)
+    {
+        for (int i = 0; i < bytes; i++)
+        {
+            int b = random.nextInt(256);
+            hex.append(HEX[b >> 4]).append(HEX[b & 0xF]);
+        }
+    }
+
+    private String uuid(int version, long leastSignificantBits)
+    {
+        long most = (random.nextLong() & ~0xF000L) | ((long) version << 12);
+        long least = (leastSignificantBits & 0x3FFFFFFFFFFFFFFFL) | Long.MIN_VALUE;
+        return new UUID(most, least).toString();
+    }
+
+    private static String date(long epochDay)
+    {
+        return LocalDate.ofEpochDay(epochDay).toString();
+    }
+
+    private static boolean isText(String name)
+    {
+        return "text".equals(name) || "varchar".equals(name) || "ascii".equals(name);
+    }
+
+    private static void checkType(String type)
+    {
+        String name = baseType(type);
+        if ("counter".equals(name))
+        {
+            throw new IllegalArgumentException("Cannot generate rows of counter tables");
+        }
+        for (String argument : typeArguments(type))
+        {
+            checkType(argument);
+        }
+        if (!SCALAR_TYPES.contains(name) && !"list".equals(name) && !"set".equals(name) && !"map".equals(name)
+            && !"tuple".equals(name))
+        {
+            throw new IllegalArgumentException("Cannot generate values of type " + type);
+        }
+    }
+
+    /**
+     * @return the name of a type without its arguments, e.g. {@code list} for {@code frozen<list<int>>}.
+     */
+    static String baseType(String type)
+    {
+        String unfrozen = unfreeze(type);
+        int arguments = unfrozen.indexOf('<');
+        return (arguments < 0 ? unfrozen : unfrozen.substring(0, arguments)).trim().toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * @return the arguments of a type, e.g. {@code text} and {@code int} for {@code map<text, int>}.
+     */
+    static List<String> typeArguments(String type)
+    {
+        String unfrozen = unfreeze(type);
+        List<String> arguments = new ArrayList<String>();
+        int start = unfrozen.indexOf('<');
+        if (start < 0)
+        {
+            return arguments;
+        }
+        int depth = 0;
+        for (int i = start + 1; i < unfrozen.length(); i++)
+        {
+            char c = unfrozen.charAt(i);
+            if (c == '<')
+            {
+                depth++;
+            } else if (c == '>' && depth > 0)
+            {
+                depth--;
+            } else if ((c == ',' && depth == 0) || (c == '>' && depth == 0))
+            {
+                arguments.add(unfrozen.substring(start + 1, i).trim());
+                start = i;
+            }
+        }
+        return arguments;
+    }
+
+    private static String unfreeze(String type)
+    {
+        String trimmed = type.trim();
+        Matcher frozen = FROZEN.matcher(trimmed);
+        return frozen.matches() ? unfreeze(frozen.group(1)) : trimmed;
+    }
+
+    /**
+     * A column of a table, as listed in {@code system_schema.columns}.
+     */
+    static final class ColumnSchema implements Comparable<ColumnSchema>
+    {
+        private final String name;
+
+        /**
+         * {@code partition_key}, {@code clustering}, {@code static} or {@code regular}.
+         */
+        private final String kind;
+
+        private final int position;
+
+        private final String type;
+
+        /**
+         * {@code asc} or {@code desc} for clustering columns, {@code none} for the others.
+         */
+        private final String clusteringOrder;
+
+        ColumnSchema(String name, String kind, int position, String type)
+        {
+            this(name, kind, position, type, "none");
+        }
+
+        ColumnSchema(String name, String kind, int position, String type, String clusteringOrder)
+        {
+            this.name = name;
+            this.kind = kind;
+            this.position = position;
+            this.type = type;
+            this.clusteringOrder = clusteringOrder == null ? "none" : clusteringOrder;
+        }
+
+        String getName()
+        {
+            return name;
+        }
+
+        String getKind()
+        {
+            return kind;
+        }
+
+        int getPosition()
+        {
+            return position;
+        }
+
+        String getType()
+        {
+            return type;
+        }
+
+        String getClusteringOrder()
+        {
+            return clusteringOrder;
+        }
+
+        boolean isPartitionKey()
+        {
+            return "partition_key".equals(kind);
+        }
+
+        boolean isClustering()
+        {
+            return "clustering".equals(kind);
+        }
+
+        boolean isStatic()
+        {
+            return "static".equals(kind);
+        }
+
+        /**
+         * Orders the partition key columns, then the clustering columns, by position, then the others by name.
+         */
+        public int compareTo(ColumnSchema other)
+        {
+            int byKind = kindOrder() - other.kindOrder();
+            if (byKind != 0)
+            {
+                return byKind;
+            }
+            return position != other.position ? position - other.position : name.compareTo(other.name);
+        }
+
+        private int kindOrder()
+        {
+            return isPartitionKey() ? 0 : isClustering() ? 1 : 2;
+        }
+    }
+
+    /**
+     * The distribution of the sizes of generated values: {@code fixed(n)}, or just {@code n},
+     * {@code uniform(min, max)} or {@code gaussian(mean, standardDeviation)}. Sizes are never negative.
+     */
+    static final class Distribution
+    {
+        private static final Pattern SPEC = Pattern.compile("(\\w+)\\s*\\(\\s*(\\d+)\\s*(?:,\\s*(\\d+)\\s*)?\\)");
+
+        private final String name;
+
+        private final int first;
+
+        private final int second;
+
+        private Distribution(String name, int first, int second)
+        {
+            this.name = name;
+            this.first = first;
+            this.second = second;
+        }
+
+        /**
+         * @param spec the distribution, e.g. {@code uniform(8, 64)}.
+         * @return the distribution.
+         * @throws IllegalArgumentException if the distribution is malformed.
+         */
+        static Distribution parse(String spec)
+        {
+            String trimmed = spec.trim();
+            if (trimmed.matches("\\d+"))
+            {
+                return new Distribution("fixed", Integer.parseInt(trimmed), 0);
+            }
+            Matcher matcher = SPEC.matcher(trimmed);
+            if (matcher.matches())
+            {
+                String name = matcher.group(1).toLowerCase(Locale.ENGLISH);
+                int first = Integer.parseInt(matcher.group(2));
+                boolean pair = matcher.group(3) != null;
+                int second = pair ? Integer.parseInt(matcher.group(3)) : 0;
+                if (("fixed".equals(name) && !pair) || ("uniform".equals(name) && pair && first <= second)
+                    || ("gaussian".equals(name) && pair))
+                {
+                    return new Distribution(name, first, second);
+                }
+            }
+            throw new IllegalArgumentException("Invalid size distribution " + spec
+                                                   + ", use n, fixed(n), uniform(min, max) or gaussian(mean, sd)");
+        }
+
+        int sample(Random random)
+        {
+            if ("uniform".equals(name))
+            {
+                return first + random.nextInt(second - first + 1);
+            }
+            if ("gaussian".equals(name))
+            {
+                return Math.max(0, (int) Math.round(first + random.nextGaussian() * second));
+            }
+            return first;
+        }
+    }
+}
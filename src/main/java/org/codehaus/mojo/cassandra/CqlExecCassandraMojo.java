@@ -24,7 +24,8 @@ import java.util.List;
 public class CqlExecCassandraMojo extends AbstractCqlExecMojo {
 
   /**
-   * The CQL script which will be executed
+   * The CQL script which will be executed. When this is a directory all its {@code .cql} files are executed, see
+   * {@code cqlConnections}; their results are not printed.
    *
    * @parameter property="cassandra.cql.script" default-value="${basedir}/src/cassandra/cql/exec.cql"
    */
@@ -81,10 +82,14 @@ public class CqlExecCassandraMojo extends AbstractCqlExecMojo {
       }
       if (cqlScript != null && cqlScript.isFile())
       {
-          cqlStatement = readFile(cqlScript);
+          printResults(executeCqlScript(cqlScript, true));
+      } else if (cqlScript != null && cqlScript.isDirectory())
+      {
+          executeCqlScripts(listCqlScripts(cqlScript));
+      } else
+      {
+          printResults(executeCql(cqlStatement));
       }
-
-      printResults(executeCql(cqlStatement));
   }
 
   /*
@@ -0,0 +1,485 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Exports the tables of a keyspace into {@link TableSnapshot}s.
+ * <p/>
+ * The token ring is split into ranges that are scanned concurrently, every one over its own connection, with
+ * {@code SELECT ... WHERE token(...) > ? AND token(...) <= ?} queries of at most a page of rows. Since Thrift does not
+ * page, a page ending within a partition is cut before it and the partition is read on its own, so that no row is
+ * skipped or read twice. Tables of counters are skipped as their values cannot be written back with {@code INSERT}.
+ */
+final class CqlExporter
+{
+    private static final BigInteger MURMUR3_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+
+    private static final BigInteger MURMUR3_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+
+    private static final BigInteger RANDOM_MIN = BigInteger.ONE.negate();
+
+    private static final BigInteger RANDOM_MAX = BigInteger.ONE.shiftLeft(127);
+
+    private final String rpcAddress;
+
+    private final int rpcPort;
+
+    private final String cqlVersion;
+
+    private final int threads;
+
+    private final int splits;
+
+    private final int pageSize;
+
+    private final Log log;
+
+    /**
+     * @param threads  the number of ranges scanned concurrently.
+     * @param splits   the number of ranges the ring is split into for every table.
+     * @param pageSize the maximum number of rows read at once.
+     */
+    CqlExporter(String rpcAddress, int rpcPort, String cqlVersion, int threads, int splits, int pageSize, Log log)
+    {
+        this.rpcAddress = rpcAddress;
+        this.rpcPort = rpcPort;
+        this.cqlVersion = cqlVersion;
+        this.threads = Math.max(1, threads);
+        this.splits = Math.max(1, splits);
+        this.pageSize = Math.max(2, pageSize);
+        this.log = log;
+    }
+
+    /**
+     * Exports tables, into {@code <table>.snapshot} files.
+     *
+     * @param keyspace  the keyspace, as stored in the schema.
+     * @param tables    the tables to export, all of the keyspace if empty.
+     * @param directory the directory to write the snapshots to.
+     * @return the snapshots written.
+     * @throws IOException                 if a snapshot could not be written.
+     * @throws ThriftApiExecutionException if a query failed.
+     * @throws IllegalArgumentException    if the keyspace or a table does not exist, or the partitioner is not
+     *                                     supported.
+     */
+    List<File> export(String keyspace, List<String> tables, File directory)
+        throws IOException, ThriftApiExecutionException, InterruptedException
+    {
+        List<TableSnapshot.Schema> schemas = new ArrayList<TableSnapshot.Schema>();
+        List<BigInteger> bounds;
+        CqlConnection connection = CqlConnection.open(rpcAddress, rpcPort, cqlVersion, null, false);
+        try
+        {
+            bounds = split(partitionerOf(connection), splits);
+            Map<String, String> ids = tableIdsOf(connection, keyspace, false);
+            if (ids.isEmpty())
+            {
+                throw new IllegalArgumentException("Keyspace " + keyspace + " has no tables");
+            }
+            List<TableSnapshot.UserType> types = typesOf(connection, keyspace);
+            for (String table : tables.isEmpty() ? ids.keySet() : tables)
+            {
+                if (!ids.containsKey(table))
+                {
+                    throw new IllegalArgumentException("Table " + keyspace + "." + table + " does not exist");
+                }
+                List<CqlDataGenerator.ColumnSchema> columns = CqlDataGenerator.readSchema(connection, keyspace, table);
+                if (hasCounters(columns))
+                {
+                    log.warn("Skipping " + keyspace + "." + table + ": tables of counters cannot be exported");
+                    continue;
+                }
+                schemas.add(new TableSnapshot.Schema(keyspace, table, ids.get(table), columns, types));
+            }
+        } finally
+        {
+            connection.close();
+        }
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Could not create " + directory);
+        }
+        return export(schemas, bounds, directory);
+    }
+
+    private List<File> export(List<TableSnapshot.Schema> schemas, List<BigInteger> bounds, File directory)
+        throws IOException, ThriftApiExecutionException, InterruptedException
+    {
+        final List<CqlConnection> connections = Collections.synchronizedList(new ArrayList<CqlConnection>());
+        final ThreadLocal<CqlConnection> connection = new ThreadLocal<CqlConnection>();
+        final List<TableSnapshot.Writer> writers = new ArrayList<TableSnapshot.Writer>();
+        List<File> files = new ArrayList<File>();
+        List<Future<Void>> results = new ArrayList<Future<Void>>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        boolean completed = false;
+        try
+        {
+            for (final TableSnapshot.Schema schema : schemas)
+            {
+                final TableSnapshot.Writer writer =
+                    new TableSnapshot.Writer(new File(directory, schema.getTable() + TableSnapshot.EXTENSION), schema);
+                writers.add(writer);
+                files.add(writer.getFile());
+                final AtomicInteger remaining = new AtomicInteger(bounds.size() - 1);
+                final long start = System.currentTimeMillis();
+                for (int i = 1; i < bounds.size(); i++)
+                {
+                    final BigInteger from = bounds.get(i - 1);
+                    final BigInteger to = bounds.get(i);
+                    results.add(executor.submit(new Callable<Void>()
+                    {
+                        public Void call() throws Exception
+                        {
+                            CqlConnection current = connection.get();
+                            if (current == null)
+                            {
+                                current = CqlConnection.open(rpcAddress, rpcPort, cqlVersion, null, false);
+                                connections.add(current);
+                                connection.set(current);
+                            }
+                            scan(current, schema, from, to, writer);
+                            if (remaining.decrementAndGet() == 0)
+                            {
+                                writer.close();
+                                log.info(String.format(Locale.ENGLISH, "Exported %,d rows of %s.%s in %,d ms",
+                                                       writer.getRows(), schema.getKeyspace(), schema.getTable(),
+                                                       System.currentTimeMillis() - start));
+                            }
+                            return null;
+                        }
+                    }));
+                }
+            }
+            for (Future<Void> result : results)
+            {
+                result.get();
+            }
+            completed = true;
+            return files;
+        } catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof IOException)
+            {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof ThriftApiExecutionException)
+            {
+                throw (ThriftApiExecutionException) e.getCause();
+            }
+            throw new ThriftApiExecutionException(e.getCause());
+        } finally
+        {
+            executor.shutdownNow();
+            synchronized (connections)
+            {
+                for (CqlConnection open : connections)
+                {
+                    open.close();
+                }
+            }
+            if (!completed)
+            {
+                // the scans may still be running, a snapshot without its end is detected when it is imported
+                for (TableSnapshot.Writer writer : writers)
+                {
+                    try
+                    {
+                        writer.close();
+                    } catch (IOException e)
+                    {
+                        // already failing
+                    }
+                    writer.getFile().delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the rows of the tokens in {@code (from, to]} into the snapshot.
+     */
+    private void scan(CqlConnection connection, TableSnapshot.Schema schema, BigInteger from, BigInteger to,
+                      TableSnapshot.Writer writer) throws IOException
+    {
+        String select = selectOf(schema);
+        String token = tokenOf(schema);
+        TableSnapshot.Block block = writer.newBlock();
+        BigInteger after = from;
+        while (true)
+        {
+            List<CqlRow> rows = rowsOf(connection.execute(select + " WHERE " + token + " > " + after + " AND "
+                                                              + token + " <= " + to + " LIMIT " + pageSize));
+            if (rows.size() < pageSize)
+            {
+                add(rows, rows.size(), block, writer);
+                break;
+            }
+            BigInteger last = tokenOf(rows.get(rows.size() - 1));
+            int complete = rows.size() - 1;
+            while (complete > 0 && tokenOf(rows.get(complete - 1)).equals(last))
+            {
+                complete--;
+            }
+            add(rows, complete, block, writer);
+            // the last partition may have more rows than the page had room for
+            List<CqlRow> partition = rowsOf(connection.execute(select + " WHERE " + token + " = " + last));
+            add(partition, partition.size(), block, writer);
+            if (last.equals(to))
+            {
+                break;
+            }
+            after = last;
+        }
+        writer.write(block);
+    }
+
+    private static void add(List<CqlRow> rows, int count, TableSnapshot.Block block, TableSnapshot.Writer writer)
+        throws IOException
+    {
+        for (int i = 0; i < count; i++)
+        {
+            List<Column> columns = rows.get(i).getColumns();
+            List<ByteBuffer> values = new ArrayList<ByteBuffer>(columns.size() - 1);
+            for (int j = 1; j < columns.size(); j++)
+            {
+                values.add(columns.get(j).value);
+            }
+            block.add(values);
+            if (block.isFull())
+            {
+                writer.write(block);
+            }
+        }
+    }
+
+    private static List<CqlRow> rowsOf(CqlResult result)
+    {
+        return result.getRows() == null ? Collections.<CqlRow>emptyList() : result.getRows();
+    }
+
+    private static BigInteger tokenOf(CqlRow row)
+    {
+        return new BigInteger(ByteBufferUtil.getArray(row.getColumns().get(0).value));
+    }
+
+    private static String selectOf(TableSnapshot.Schema schema)
+    {
+        StringBuilder select = new StringBuilder("SELECT ").append(tokenOf(schema));
+        for (CqlDataGenerator.ColumnSchema column : schema.getColumns())
+        {
+            select.append(", ").append(TableSnapshot.quote(column.getName()));
+        }
+        return select.append(" FROM ").append(TableSnapshot.quote(schema.getKeyspace())).append('.')
+            .append(TableSnapshot.quote(schema.getTable())).toString();
+    }
+
+    private static String tokenOf(TableSnapshot.Schema schema)
+    {
+        StringBuilder token = new StringBuilder("token(");
+        for (CqlDataGenerator.ColumnSchema column : schema.getColumns())
+        {
+            if (column.isPartitionKey())
+            {
+                token.append(token.length() == "token(".length() ? "" : ", ")
+                    .append(TableSnapshot.quote(column.getName()));
+            }
+        }
+        return token.append(')').toString();
+    }
+
+    private static boolean hasCounters(List<CqlDataGenerator.ColumnSchema> columns)
+    {
+        for (CqlDataGenerator.ColumnSchema column : columns)
+        {
+            if ("counter".equals(column.getType()))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits the token ring into ranges.
+     *
+     * @param partitioner the class name of the partitioner.
+     * @param ranges      the number of ranges.
+     * @return the bounds of the ranges, every range holding the tokens after its first bound up to its second.
+     * @throws IllegalArgumentException if the tokens of the partitioner cannot be split into ranges.
+     */
+    static List<BigInteger> split(String partitioner, int ranges)
+    {
+        BigInteger min;
+        BigInteger max;
+        if (partitioner.endsWith("Murmur3Partitioner"))
+        {
+            min = MURMUR3_MIN;
+            max = MURMUR3_MAX;
+        } else if (partitioner.endsWith("RandomPartitioner"))
+        {
+            min = RANDOM_MIN;
+            max = RANDOM_MAX;
+        } else
+        {
+            throw new IllegalArgumentException("Cannot split the tokens of the " + partitioner + ", only those of the "
+                                                   + "Murmur3Partitioner and RandomPartitioner");
+        }
+        BigInteger width = max.subtract(min);
+        List<BigInteger> bounds = new ArrayList<BigInteger>();
+        for (int i = 0; i < ranges; i++)
+        {
+            bounds.add(min.add(width.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(ranges))));
+        }
+        bounds.add(max);
+        return bounds;
+    }
+
+    private static String partitionerOf(CqlConnection connection) throws IOException
+    {
+        List<CqlRow> rows = rowsOf(connection.execute("SELECT partitioner FROM system.local"));
+        if (rows.isEmpty())
+        {
+            throw new IOException("Could not read the partitioner");
+        }
+        return ByteBufferUtil.string(rows.get(0).getColumns().get(0).value);
+    }
+
+    /**
+     * @param views whether to read the ids of the materialized views rather than of the tables.
+     * @return the ids of the tables, or views, of the keyspace, by name.
+     * @throws CharacterCodingException if a name is not valid UTF-8.
+     */
+    static Map<String, String> tableIdsOf(CqlConnection connection, String keyspace, boolean views)
+        throws CharacterCodingException
+    {
+        Map<String, String> ids = new LinkedHashMap<String, String>();
+        for (CqlRow row : rowsOf(connection.execute("SELECT " + (views ? "view_name" : "table_name") + ", id FROM "
+                                                        + (views ? "system_schema.views" : "system_schema.tables")
+                                                        + " WHERE keyspace_name = '" + keyspace.replace("'", "''")
+                                                        + "'")))
+        {
+            ByteBuffer id = row.getColumns().get(1).value;
+            ids.put(ByteBufferUtil.string(row.getColumns().get(0).value),
+                    id == null ? null : new UUID(id.getLong(id.position()), id.getLong(id.position() + 8)).toString());
+        }
+        return ids;
+    }
+
+    /**
+     * @return the user defined types of the keyspace, those used by others first.
+     */
+    private static List<TableSnapshot.UserType> typesOf(CqlConnection connection, String keyspace)
+        throws CharacterCodingException
+    {
+        List<TableSnapshot.UserType> types = new ArrayList<TableSnapshot.UserType>();
+        for (CqlRow row : rowsOf(connection.execute("SELECT type_name, field_names, field_types FROM "
+                                                        + "system_schema.types WHERE keyspace_name = '"
+                                                        + keyspace.replace("'", "''") + "'")))
+        {
+            types.add(new TableSnapshot.UserType(ByteBufferUtil.string(row.getColumns().get(0).value),
+                                                 textsOf(row.getColumns().get(1).value),
+                                                 textsOf(row.getColumns().get(2).value)));
+        }
+        return dependenciesFirst(types);
+    }
+
+    /**
+     * Orders user defined types so that the types a type uses come before it.
+     */
+    static List<TableSnapshot.UserType> dependenciesFirst(List<TableSnapshot.UserType> types)
+    {
+        List<TableSnapshot.UserType> ordered = new ArrayList<TableSnapshot.UserType>();
+        Set<String> declared = new HashSet<String>();
+        List<TableSnapshot.UserType> pending = new ArrayList<TableSnapshot.UserType>(types);
+        while (!pending.isEmpty())
+        {
+            int before = ordered.size();
+            for (int i = 0; i < pending.size(); i++)
+            {
+                TableSnapshot.UserType type = pending.get(i);
+                if (usesOnly(type, types, declared))
+                {
+                    ordered.add(type);
+                    declared.add(type.getName());
+                    pending.remove(i--);
+                }
+            }
+            if (ordered.size() == before)
+            {
+                // a cycle, which Cassandra does not allow, keep the remaining types as they are
+                ordered.addAll(pending);
+                break;
+            }
+        }
+        return ordered;
+    }
+
+    private static boolean usesOnly(TableSnapshot.UserType type, List<TableSnapshot.UserType> types,
+                                    Set<String> declared)
+    {
+        for (TableSnapshot.UserType other : types)
+        {
+            if (other != type && !declared.contains(other.getName()))
+            {
+                Pattern name = Pattern.compile("(^|[^\\w\"])\"?" + Pattern.quote(other.getName())
+                                                   + "\"?($|[^\\w\"])");
+                for (String fieldType : type.getFieldTypes())
+                {
+                    if (name.matcher(fieldType).find())
+                    {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the elements of a serialized {@code list<text>}.
+     */
+    private static List<String> textsOf(ByteBuffer list) throws CharacterCodingException
+    {
+        List<String> texts = new ArrayList<String>();
+        if (list == null)
+        {
+            return texts;
+        }
+        ByteBuffer input = list.duplicate();
+        for (int count = input.getInt(); count > 0; count--)
+        {
+            int length = input.getInt();
+            ByteBuffer element = input.slice();
+            element.limit(length);
+            texts.add(ByteBufferUtil.string(element));
+            input.position(input.position() + length);
+        }
+        return texts;
+    }
+}
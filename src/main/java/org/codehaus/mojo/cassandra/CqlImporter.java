@@ -0,0 +1,401 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.thrift.TimedOutException;
+import org.apache.cassandra.thrift.UnavailableException;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.maven.plugin.logging.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Writes JSON rows into a table with a prepared {@code INSERT ... JSON} statement, or rows of values with the
+ * statements they come with, over as many connections as the server keeps up with.
+ * <p/>
+ * The number of rows in flight follows an additive increase, multiplicative decrease (AIMD) scheme: it grows by one
+ * for every {@code limit} rows written within the latency target and is halved, at most once per latency target,
+ * when a write is slower than the target, times out or is refused because the server is overloaded (which Thrift
+ * reports as an {@code UnavailableException}). Writes that timed out or were refused are retried after a back-off.
+ */
+final class CqlImporter
+{
+    /**
+     * Rows to import, as JSON objects.
+     */
+    interface Rows extends Iterator<String>
+    {
+        /**
+         * @return the number of the last row returned, for error messages.
+         */
+        long getRowNumber();
+    }
+
+    /**
+     * Rows to import as the values bound to the markers of prepared statements, e.g. of {@code INSERT} statements
+     * naming the columns of a row that are not null.
+     */
+    interface BoundRows extends Iterator<List<ByteBuffer>>
+    {
+        /**
+         * @return the statement the last values returned are bound to.
+         */
+        String getStatement();
+
+        /**
+         * @return the number of the last row returned, for error messages.
+         */
+        long getRowNumber();
+
+        /**
+         * @return the values of a row, for error messages.
+         */
+        String describe(List<ByteBuffer> values);
+    }
+
+    private final String rpcAddress;
+
+    private final int rpcPort;
+
+    private final String cqlVersion;
+
+    private final int maxConcurrency;
+
+    private final long latencyTargetMillis;
+
+    private final int retries;
+
+    private final long progressIntervalMillis;
+
+    private final Log log;
+
+    CqlImporter(String rpcAddress, int rpcPort, String cqlVersion, int maxConcurrency, long latencyTargetMillis,
+                int retries, long progressIntervalMillis, Log log)
+    {
+        this.rpcAddress = rpcAddress;
+        this.rpcPort = rpcPort;
+        this.cqlVersion = cqlVersion;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.latencyTargetMillis = latencyTargetMillis;
+        this.retries = retries;
+        this.progressIntervalMillis = progressIntervalMillis;
+        this.log = log;
+    }
+
+    /**
+     * Writes the rows.
+     *
+     * @param table the keyspace qualified, quoted if need be, name of the table.
+     * @param rows  the rows, as JSON objects.
+     * @return the number of rows written.
+     * @throws ThriftApiExecutionException if a row could not be written; the message holds its number.
+     */
+    long importRows(String table, final Rows rows) throws ThriftApiExecutionException
+    {
+        final String insert = "INSERT INTO " + table + " JSON ? DEFAULT UNSET";
+        return importRows(new BoundRows()
+        {
+            public boolean hasNext()
+            {
+                return rows.hasNext();
+            }
+
+            public List<ByteBuffer> next()
+            {
+                return Collections.singletonList(ByteBufferUtil.bytes(rows.next()));
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            public String getStatement()
+            {
+                return insert;
+            }
+
+            public long getRowNumber()
+            {
+                return rows.getRowNumber();
+            }
+
+            public String describe(List<ByteBuffer> values)
+            {
+                try
+                {
+                    return ByteBufferUtil.string(values.get(0));
+                } catch (CharacterCodingException e)
+                {
+                    return ByteBufferUtil.bytesToHex(values.get(0));
+                }
+            }
+        });
+    }
+
+    /**
+     * Writes the rows.
+     *
+     * @param rows the rows, as the values of the markers of the statements they return.
+     * @return the number of rows written.
+     * @throws ThriftApiExecutionException if a row could not be written; the message holds its number.
+     */
+    long importRows(final BoundRows rows) throws ThriftApiExecutionException
+    {
+        final AimdLimit limit = new AimdLimit(Math.min(4, maxConcurrency), maxConcurrency,
+                                              TimeUnit.MILLISECONDS.toNanos(latencyTargetMillis));
+        final List<CqlConnection> connections = Collections.synchronizedList(new ArrayList<CqlConnection>());
+        final ThreadLocal<Prepared> prepared = new ThreadLocal<Prepared>();
+        final AtomicReference<ThriftApiExecutionException> failure =
+            new AtomicReference<ThriftApiExecutionException>();
+        final AtomicLong written = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(maxConcurrency);
+        long start = System.currentTimeMillis();
+        long lastReport = start;
+        long lastWritten = 0;
+        long lastBytes = 0;
+        try
+        {
+            while (rows.hasNext() && failure.get() == null)
+            {
+                final List<ByteBuffer> values = rows.next();
+                final String insert = rows.getStatement();
+                final long number = rows.getRowNumber();
+                limit.acquire();
+                executor.execute(new Runnable()
+                {
+                    public void run()
+                    {
+                        try
+                        {
+                            Prepared statements = prepared.get();
+                            if (statements == null)
+                            {
+                                CqlConnection connection =
+                                    CqlConnection.open(rpcAddress, rpcPort, cqlVersion, null, false);
+                                connections.add(connection);
+                                statements = new Prepared(connection);
+                                prepared.set(statements);
+                            }
+                            write(statements.connection, statements.itemIdOf(insert), values, limit);
+                            written.incrementAndGet();
+                            long size = 0;
+                            for (ByteBuffer value : values)
+                            {
+                                size += value == null ? 0 : value.remaining();
+                            }
+                            bytes.addAndGet(size);
+                        } catch (ThriftApiExecutionException e)
+                        {
+                            failure.compareAndSet(null, new ThriftApiExecutionException("Row " + number + " failed: "
+                                + rows.describe(values), e.getCause()));
+                        } catch (RuntimeException e)
+                        {
+                            failure.compareAndSet(null, new ThriftApiExecutionException("Row " + number + " failed: "
+                                + rows.describe(values), e));
+                        } catch (InterruptedException e)
+                        {
+                            Thread.currentThread().interrupt();
+                        } finally
+                        {
+                            limit.release();
+                        }
+                    }
+                });
+                long now = System.currentTimeMillis();
+                if (now - lastReport >= progressIntervalMillis)
+                {
+                    long count = written.get();
+                    long size = bytes.get();
+                    log.info(String.format("Imported %,d rows, %,.0f rows/s, %,.0f KB/s, %d rows in flight", count,
+                                           (count - lastWritten) * 1000.0 / (now - lastReport),
+                                           (size - lastBytes) * 1000.0 / 1024 / (now - lastReport), limit.get()));
+                    lastReport = now;
+                    lastWritten = count;
+                    lastBytes = size;
+                }
+            }
+            executor.shutdown();
+            while (!executor.awaitTermination(1, TimeUnit.SECONDS))
+            {
+                // keep waiting for the rows in flight
+            }
+            if (failure.get() != null)
+            {
+                throw failure.get();
+            }
+            long elapsed = Math.max(1, System.currentTimeMillis() - start);
+            log.info(String.format("Imported %,d rows in %,d ms, %,.0f rows/s, %,.0f KB/s", written.get(), elapsed,
+                                   written.get() * 1000.0 / elapsed, bytes.get() * 1000.0 / 1024 / elapsed));
+            return written.get();
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ThriftApiExecutionException("Interrupted while importing rows", e);
+        } finally
+        {
+            executor.shutdownNow();
+            synchronized (connections)
+            {
+                for (CqlConnection connection : connections)
+                {
+                    connection.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes one row, retrying with a back-off while the server is overloaded.
+     */
+    private void write(CqlConnection connection, int itemId, List<ByteBuffer> values, AimdLimit limit)
+        throws ThriftApiExecutionException, InterruptedException
+    {
+        for (int attempt = 0; ; attempt++)
+        {
+            long start = System.nanoTime();
+            try
+            {
+                connection.executePrepared(itemId, values);
+                limit.onSuccess(System.nanoTime() - start);
+                return;
+            } catch (ThriftApiExecutionException e)
+            {
+                if (!isOverloaded(e.getCause()) || attempt >= retries)
+                {
+                    throw e;
+                }
+                limit.onOverload();
+                long backOff = Math.min(1000L, 10L << Math.min(attempt, 7));
+                if (log.isDebugEnabled())
+                {
+                    log.debug("Server overloaded, retrying in " + backOff + "ms: " + e.getCause());
+                }
+                Thread.sleep(backOff);
+            }
+        }
+    }
+
+    private static boolean isOverloaded(Throwable cause)
+    {
+        return cause instanceof TimedOutException || cause instanceof UnavailableException;
+    }
+
+    /**
+     * The connection of a writer thread and the statements prepared on it.
+     */
+    private static final class Prepared
+    {
+        private final CqlConnection connection;
+
+        private final Map<String, Integer> itemIds = new HashMap<String, Integer>();
+
+        private Prepared(CqlConnection connection)
+        {
+            this.connection = connection;
+        }
+
+        private int itemIdOf(String statement) throws ThriftApiExecutionException
+        {
+            Integer itemId = itemIds.get(statement);
+            if (itemId == null)
+            {
+                itemId = connection.prepare(statement);
+                itemIds.put(statement, itemId);
+            }
+            return itemId;
+        }
+    }
+
+    /**
+     * Additive increase, multiplicative decrease limit on the number of rows in flight.
+     */
+    static final class AimdLimit
+    {
+        private final int max;
+
+        private final long latencyTargetNanos;
+
+        private double limit;
+
+        private int inFlight;
+
+        private long lastDecrease;
+
+        AimdLimit(int initial, int max, long latencyTargetNanos)
+        {
+            this.limit = initial;
+            this.max = max;
+            this.latencyTargetNanos = latencyTargetNanos;
+            this.lastDecrease = System.nanoTime() - latencyTargetNanos;
+        }
+
+        /**
+         * Waits until a row may be sent.
+         */
+        synchronized void acquire() throws InterruptedException
+        {
+            while (inFlight >= (int) limit)
+            {
+                wait();
+            }
+            inFlight++;
+        }
+
+        synchronized void release()
+        {
+            inFlight--;
+            notifyAll();
+        }
+
+        /**
+         * Records a write that completed, a write slower than the latency target counts as congestion.
+         */
+        synchronized void onSuccess(long latencyNanos)
+        {
+            if (latencyNanos > latencyTargetNanos)
+            {
+                decrease();
+            } else
+            {
+                limit = Math.min(max, limit + 1 / limit);
+                notifyAll();
+            }
+        }
+
+        /**
+         * Records a write that timed out or was refused.
+         */
+        synchronized void onOverload()
+        {
+            decrease();
+        }
+
+        synchronized int get()
+        {
+            return (int) limit;
+        }
+
+        private void decrease()
+        {
+            long now = System.nanoTime();
+            // one decrease per latency target, so that a burst of slow writes sent together only counts once
+            if (now - lastDecrease >= latencyTargetNanos)
+            {
+                limit = Math.max(1, limit / 2);
+                lastDecrease = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.codehaus.mojo.cassandra;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * A versioned migration script, named {@code V<version>__<description>.cql} where the version is made of numbers
+ * separated by {@code .} or {@code _}, e.g. {@code V001__create_users.cql} or {@code V2_1__add_index.cql}.
+ */
+final class CqlMigration implements Comparable<CqlMigration>
+{
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+(?:[._]\\d+)*)__(.+)\\.cql");
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+
+    private final String version;
+
+    private final String description;
+
+    private CqlMigration(File file, String version, String description)
+    {
+        this.file = file;
+        this.version = version;
+        this.description = description;
+    }
+
+    /**
+     * @param file the script.
+     * @return the migration, or {@code null} if the name of the file is not the one of a migration.
+     */
+    static CqlMigration of(File file)
+    {
+        Matcher matcher = FILE_NAME.matcher(file.getName());
+        if (!matcher.matches())
+        {
+            return null;
+        }
+        StringBuilder version = new StringBuilder();
+        for (String part : matcher.group(1).split("[._]"))
+        {
+            if (version.length() > 0)
+            {
+                version.append('.');
+            }
+            // V001 and V1 are the same version
+            version.append(part.replaceFirst("^0+(?=\\d)", ""));
+        }
+        return new CqlMigration(file, version.toString(), matcher.group(2).replace('_', ' '));
+    }
+
+    File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * @return the normalized version, e.g. {@code 2.1} for {@code V2_01__add_index.cql}.
+     */
+    String getVersion()
+    {
+        return version;
+    }
+
+    String getDescription()
+    {
+        return description;
+    }
+
+    public int compareTo(CqlMigration other)
+    {
+        return compareVersions(version, other.version);
+    }
+
+    /**
+     * Compares two normalized versions part by part, numerically.
+     */
+    static int compareVersions(String a, String b)
+    {
+        String[] as = a.split("\\.");
+        String[] bs = b.split("\\.");
+        for (int i = 0; i < Math.max(as.length, bs.length); i++)
+        {
+            String ap = i < as.length ? as[i] : "0";
+            String bp = i < bs.length ? bs[i] : "0";
+            // normalized parts have no leading zeros, so the longer one is the larger
+            int result = ap.length() != bp.length() ? ap.length() - bp.length() : ap.compareTo(bp);
+            if (result != 0)
+            {
+                return result;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Computes the checksum of a script. Line terminators are not part of the checksum, so checking out a script on
+     * another platform does not change it.
+     *
+     * @param script the script, closed by this method.
+     * @return the checksum.
+     * @throws IOException if the script could not be read.
+     */
+    static int checksumOf(Reader script) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(script);
+        try
+        {
+            CRC32 crc = new CRC32();
+            for (String line = reader.readLine(); line != null; line = reader.readLine())
+            {
+                crc.update(line.getBytes(UTF_8));
+            }
+            return (int) crc.getValue();
+        } finally
+        {
+            reader.close();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return "V" + version + " (" + file.getName() + ")";
+    }
+}
@@ -0,0 +1,229 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.TypeParser;
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.Compression;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CqlPreparedResult;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.InvalidRequestException;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.thrift.TException;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Executes writes as prepared statements. Each write is reduced to its shape, the statement with every constant
+ * replaced by a bind marker, which is prepared once per connection; the constants are then bound to the prepared
+ * statement, so the server does not parse statements that only differ in their values over and over again.
+ * <p/>
+ * The server drops the prepared statements of a table when the table is dropped or altered, so the shapes are
+ * forgotten whenever a statement other than a write runs on the connection, and a shape is prepared again once when
+ * the server no longer knows it, e.g. after a schema change made over another connection.
+ */
+final class CqlPreparedStatements
+{
+    /**
+     * Maximum number of shapes remembered per connection.
+     */
+    private static final int MAX_SHAPES = 1000;
+
+    /**
+     * Marks shapes the server refused to prepare.
+     */
+    private static final Prepared UNPREPARABLE = new Prepared(-1, null);
+
+    private final Cassandra.Client client;
+
+    private final Map<String, Prepared> shapes = new LinkedHashMap<String, Prepared>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Prepared> eldest)
+        {
+            return size() > MAX_SHAPES;
+        }
+    };
+
+    CqlPreparedStatements(Cassandra.Client client)
+    {
+        this.client = client;
+    }
+
+    /**
+     * Executes a statement through its prepared shape.
+     *
+     * @param keyspace  the keyspace the connection is bound to, unqualified names in the shape refer to it.
+     * @param statement the statement.
+     * @return the result, or {@code null} if the statement cannot be executed as a prepared statement and has to be
+     *         executed as is.
+     * @throws Exception if the server rejected the statement.
+     */
+    CqlResult execute(String keyspace, String statement) throws Exception
+    {
+        if (!CqlStatements.isWrite(statement))
+        {
+            // e.g. a schema change, after which the server may no longer know the prepared statements
+            shapes.clear();
+            return null;
+        }
+        List<CqlScanner.Token> constants = new ArrayList<CqlScanner.Token>();
+        String shape;
+        try
+        {
+            shape = shapeOf(statement, constants);
+        } catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+        if (constants.isEmpty())
+        {
+            return null;
+        }
+        String key = keyspace + '\u0000' + shape;
+        Prepared prepared = shapes.get(key);
+        if (prepared == null)
+        {
+            prepared = prepare(shape, constants.size());
+            shapes.put(key, prepared);
+        }
+        try
+        {
+            return execute(prepared, constants);
+        } catch (InvalidRequestException e)
+        {
+            // the server may have dropped the prepared statement, along with its table, prepare it again
+            prepared = prepare(shape, constants.size());
+            shapes.put(key, prepared);
+            return execute(prepared, constants);
+        }
+    }
+
+    /**
+     * @return the result, or {@code null} if the constants cannot be bound to the prepared shape.
+     */
+    private CqlResult execute(Prepared prepared, List<CqlScanner.Token> constants) throws Exception
+    {
+        if (prepared == UNPREPARABLE)
+        {
+            return null;
+        }
+        List<ByteBuffer> values = new ArrayList<ByteBuffer>(constants.size());
+        try
+        {
+            for (int i = 0; i < constants.size(); i++)
+            {
+                values.add(prepared.types.get(i).fromString(valueOf(constants.get(i))));
+            }
+        } catch (RuntimeException e)
+        {
+            // the literal does not convert the way the server would convert it, let the server deal with it
+            return null;
+        }
+        return client.execute_prepared_cql3_query(prepared.itemId, values, ConsistencyLevel.ONE);
+    }
+
+    /**
+     * Prepares a shape.
+     *
+     * @return the prepared shape, or {@link #UNPREPARABLE} if the server refused it.
+     * @throws TException if the server could not be reached; the shape is not marked as unpreparable then.
+     */
+    private Prepared prepare(String shape, int count) throws TException
+    {
+        CqlPreparedResult result;
+        try
+        {
+            result = client.prepare_cql3_query(ByteBufferUtil.bytes(shape), Compression.NONE);
+        } catch (InvalidRequestException e)
+        {
+            // e.g. a constant in a position where no bind marker is allowed
+            return UNPREPARABLE;
+        }
+        if (result.getCount() != count || result.getVariable_types() == null)
+        {
+            return UNPREPARABLE;
+        }
+        List<AbstractType<?>> types = new ArrayList<AbstractType<?>>(count);
+        try
+        {
+            for (String type : result.getVariable_types())
+            {
+                types.add(TypeParser.parse(type));
+            }
+        } catch (RuntimeException e)
+        {
+            // a type this client does not know
+            return UNPREPARABLE;
+        }
+        return new Prepared(result.getItemId(), types);
+    }
+
+    /**
+     * Replaces every constant of the statement by a bind marker. Whitespace and comments are collapsed, so that
+     * statements that only differ in their values or layout have the same shape.
+     *
+     * @param statement the statement.
+     * @param constants receives the constants, in statement order.
+     * @return the shape of the statement.
+     * @throws IllegalArgumentException if the statement cannot be tokenized.
+     */
+    static String shapeOf(String statement, List<CqlScanner.Token> constants)
+    {
+        StringBuilder shape = new StringBuilder(statement.length());
+        int previousEnd = -1;
+        for (CqlScanner.Token token : CqlScanner.scan(statement))
+        {
+            if (previousEnd >= 0 && token.getStart() > previousEnd)
+            {
+                shape.append(' ');
+            }
+            if (token.isConstant())
+            {
+                constants.add(token);
+                shape.append('?');
+            } else
+            {
+                shape.append(token.getText());
+            }
+            previousEnd = token.getEnd();
+        }
+        return shape.toString();
+    }
+
+    /**
+     * @return the value of a constant in the format understood by {@link AbstractType#fromString(String)}.
+     */
+    static String valueOf(CqlScanner.Token constant)
+    {
+        String text = constant.getText();
+        switch (constant.getType())
+        {
+            case STRING:
+                return text.startsWith("$$")
+                    ? text.substring(2, text.length() - 2)
+                    : text.substring(1, text.length() - 1).replace("''", "'");
+            case BLOB:
+                return text.substring(2);
+            default:
+                return text;
+        }
+    }
+
+    private static final class Prepared
+    {
+        private final int itemId;
+
+        private final List<AbstractType<?>> types;
+
+        private Prepared(int itemId, List<AbstractType<?>> types)
+        {
+            this.itemId = itemId;
+            this.types = types;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.cassandra.io.sstable.CQLSSTableWriter;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.codehaus.plexus.util.IOUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Writes the rows of a CSV or JSON lines data file, or of a {@link TableSnapshot}, into SSTables of a single table,
+ * offline, with {@link CQLSSTableWriter}.
+ * <p/>
+ * Rows are written with {@code INSERT ... JSON}, so values are given as they would be in JSON and Cassandra converts
+ * them to the column types, see {@link JsonRows}. The first record of a CSV file names the columns of the following
+ * ones.
+ */
+final class CqlSSTableGenerator
+{
+    private static final Pattern TABLE_ID = Pattern.compile("\\bid\\s*=\\s*'([0-9a-fA-F-]{36})'",
+                                                            Pattern.CASE_INSENSITIVE);
+
+    private final String keyspace;
+
+    private final String table;
+
+    private final String createTable;
+
+    private final List<String> createTypes = new ArrayList<String>();
+
+    /**
+     * @param schema the {@code CREATE TYPE} statements the table needs, if any, and the {@code CREATE TABLE}
+     *               statement; names must be qualified with the keyspace.
+     * @throws IllegalArgumentException if the schema does not hold a keyspace qualified {@code CREATE TABLE}
+     *                                  statement.
+     */
+    CqlSSTableGenerator(String schema)
+    {
+        String createTable = null;
+        String keyspace = null;
+        String table = null;
+        CqlStatementReader statements = new CqlStatementReader(new StringReader(schema));
+        while (statements.hasNext())
+        {
+            String statement = statements.next().trim();
+            List<CqlScanner.Token> tokens = CqlScanner.scan(statement);
+            if (!CqlStatements.isKeywordAt(tokens, 0, "CREATE"))
+            {
+                continue;
+            }
+            if (CqlStatements.isKeywordAt(tokens, 1, "TYPE"))
+            {
+                createTypes.add(statement);
+            } else if (CqlStatements.isKeywordAt(tokens, 1, "TABLE")
+                || CqlStatements.isKeywordAt(tokens, 1, "COLUMNFAMILY"))
+            {
+                int name = CqlStatements.skipIfExists(tokens, 2);
+                if (!CqlStatements.isQualifiedName(tokens, name))
+                {
+                    throw new IllegalArgumentException("The table name must be qualified with its keyspace in "
+                                                           + statement);
+                }
+                createTable = statement;
+                keyspace = tokens.get(name).getName();
+                table = tokens.get(name + 2).getName();
+            }
+        }
+        if (createTable == null)
+        {
+            throw new IllegalArgumentException("No CREATE TABLE statement found");
+        }
+        this.createTable = createTable;
+        this.keyspace = keyspace;
+        this.table = table;
+    }
+
+    String getKeyspace()
+    {
+        return keyspace;
+    }
+
+    String getTable()
+    {
+        return table;
+    }
+
+    /**
+     * @return the id given to the table with {@code WITH id = '...'}, without dashes as in the name of its data
+     *         directory, or {@code null} if it has none.
+     */
+    String getTableId()
+    {
+        Matcher matcher = TABLE_ID.matcher(createTable);
+        return matcher.find() ? matcher.group(1).replace("-", "").toLowerCase(Locale.ENGLISH) : null;
+    }
+
+    /**
+     * Writes the data file into SSTables.
+     *
+     * @param data         the data, closed by this method.
+     * @param csv          {@code true} for CSV, {@code false} for JSON lines.
+     * @param directory    the directory to write the SSTables to.
+     * @param partitioner  the partitioner of the cluster the SSTables are for.
+     * @param bufferSizeMb the amount of data buffered before an SSTable is written.
+     * @return the number of rows written.
+     * @throws IOException              if the data could not be read or the SSTables could not be written.
+     * @throws IllegalArgumentException if a row could not be written, the message holds its number.
+     */
+    long generate(Reader data, boolean csv, File directory, IPartitioner partitioner, int bufferSizeMb)
+        throws IOException
+    {
+        CQLSSTableWriter writer = open("INSERT INTO " + quote(keyspace) + "." + quote(table) + " JSON ?", directory,
+                                       partitioner, bufferSizeMb);
+        long count = 0;
+        try
+        {
+            JsonRows rows = new JsonRows(data, csv, ',', true, null);
+            while (rows.hasNext())
+            {
+                String json = rows.next();
+                try
+                {
+                    writer.addRow(json);
+                } catch (IOException e)
+                {
+                    throw e;
+                } catch (Exception e)
+                {
+                    throw new IllegalArgumentException("Row " + rows.getRowNumber() + " of " + keyspace + "." + table
+                                                           + ": " + e.getMessage(), e);
+                }
+                count++;
+            }
+        } finally
+        {
+            IOUtil.close(data);
+            writer.close();
+        }
+        return count;
+    }
+
+    /**
+     * Writes the rows of a snapshot of the table into SSTables.
+     *
+     * @param rows         the snapshot, closed by this method.
+     * @param directory    the directory to write the SSTables to.
+     * @param partitioner  the partitioner of the cluster the SSTables are for.
+     * @param bufferSizeMb the amount of data buffered before an SSTable is written.
+     * @return the number of rows written.
+     * @throws IOException              if the snapshot could not be read or the SSTables could not be written.
+     * @throws IllegalArgumentException if a row could not be written, the message holds its number.
+     */
+    long generate(TableSnapshot.Reader rows, File directory, IPartitioner partitioner, int bufferSizeMb)
+        throws IOException
+    {
+        List<CqlDataGenerator.ColumnSchema> columns = rows.getSchema().getColumns();
+        BitSet all = new BitSet(columns.size());
+        all.set(0, columns.size());
+        CQLSSTableWriter writer = open(rows.getSchema().insert(keyspace, all), directory, partitioner, bufferSizeMb);
+        long count = 0;
+        try
+        {
+            while (rows.hasNext())
+            {
+                List<ByteBuffer> values = rows.next();
+                for (int i = 0; i < values.size(); i++)
+                {
+                    if (values.get(i) == null)
+                    {
+                        // neither a value nor a tombstone
+                        values.set(i, ByteBufferUtil.UNSET_BYTE_BUFFER);
+                    }
+                }
+                try
+                {
+                    writer.rawAddRow(values);
+                } catch (IOException e)
+                {
+                    throw e;
+                } catch (Exception e)
+                {
+                    throw new IllegalArgumentException("Row " + rows.getRowNumber() + " of " + keyspace + "." + table
+                                                           + ": " + e.getMessage(), e);
+                }
+                count++;
+            }
+        } catch (UncheckedIOException e)
+        {
+            throw e.getCause();
+        } finally
+        {
+            try
+            {
+                rows.close();
+            } finally
+            {
+                writer.close();
+            }
+        }
+        return count;
+    }
+
+    private CQLSSTableWriter open(String insert, File directory, IPartitioner partitioner, int bufferSizeMb)
+        throws IOException
+    {
+        if (!directory.isDirectory() && !directory.mkdirs())
+        {
+            throw new IOException("Could not create " + directory);
+        }
+        CQLSSTableWriter.Builder builder = CQLSSTableWriter.builder()
+            .inDirectory(directory)
+            .forTable(createTable)
+            .using(insert)
+            .withPartitioner(partitioner)
+            .withBufferSizeInMB(bufferSizeMb);
+        for (String createType : createTypes)
+        {
+            builder.withType(createType);
+        }
+        return builder.build();
+    }
+
+    private static String quote(String name)
+    {
+        return '"' + name.replace("\"", "\"\"") + '"';
+    }
+}
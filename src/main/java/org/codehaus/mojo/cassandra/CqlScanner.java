@@ -0,0 +1,322 @@
+package org.codehaus.mojo.cassandra;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A small hand written tokenizer for single CQL statements. It knows just enough of the CQL grammar to tell names,
+ * literals and punctuation apart, skipping whitespace and comments, which is all that is needed to inspect
+ * statements without going through the server side parser.
+ */
+final class CqlScanner
+{
+    /**
+     * The kinds of token recognised by the scanner.
+     */
+    enum Type
+    {
+        /** An unquoted name or keyword. */
+        IDENTIFIER,
+        /** A double quoted, case sensitive name. */
+        QUOTED_IDENTIFIER,
+        /** A single quoted or dollar quoted string constant. */
+        STRING,
+        /** An integer or floating point constant. */
+        NUMBER,
+        /** A {@code 0x} prefixed blob constant. */
+        BLOB,
+        /** An unquoted UUID constant. */
+        UUID,
+        /** Any other single character. */
+        SYMBOL
+    }
+
+    /**
+     * A token of a statement.
+     */
+    static final class Token
+    {
+        private final Type type;
+
+        private final String text;
+
+        private final int start;
+
+        private final int end;
+
+        Token(Type type, String text, int start, int end)
+        {
+            this.type = type;
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+
+        Type getType()
+        {
+            return type;
+        }
+
+        /**
+         * @return the source text of the token, including any quotes.
+         */
+        String getText()
+        {
+            return text;
+        }
+
+        int getStart()
+        {
+            return start;
+        }
+
+        int getEnd()
+        {
+            return end;
+        }
+
+        /**
+         * @return {@code true} for string, number, blob and UUID constants.
+         */
+        boolean isConstant()
+        {
+            return type == Type.STRING || type == Type.NUMBER || type == Type.BLOB || type == Type.UUID;
+        }
+
+        /**
+         * @return {@code true} if this is a name, quoted or not.
+         */
+        boolean isName()
+        {
+            return type == Type.IDENTIFIER || type == Type.QUOTED_IDENTIFIER;
+        }
+
+        /**
+         * @param keyword the upper case keyword.
+         * @return {@code true} if this token is the supplied keyword.
+         */
+        boolean is(String keyword)
+        {
+            return type == Type.IDENTIFIER && text.equalsIgnoreCase(keyword);
+        }
+
+        /**
+         * @param symbol the symbol.
+         * @return {@code true} if this token is the supplied symbol.
+         */
+        boolean is(char symbol)
+        {
+            return type == Type.SYMBOL && text.charAt(0) == symbol;
+        }
+
+        /**
+         * @return the name as stored in the schema: unquoted names are lower cased, quoted ones are unquoted.
+         */
+        String getName()
+        {
+            if (type == Type.QUOTED_IDENTIFIER)
+            {
+                return text.substring(1, text.length() - 1).replace("\"\"", "\"");
+            }
+            return text.toLowerCase(Locale.ENGLISH);
+        }
+
+        @Override
+        public String toString()
+        {
+            return text;
+        }
+    }
+
+    /**
+     * Do not instantiate.
+     */
+    private CqlScanner()
+    {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * Splits a statement into tokens.
+     *
+     * @param statement the statement.
+     * @return the tokens, never {@code null}.
+     * @throws IllegalArgumentException if a string, quoted name or block comment is not terminated.
+     */
+    static List<Token> scan(String statement)
+    {
+        List<Token> tokens = new ArrayList<Token>();
+        int length = statement.length();
+        int pos = 0;
+        while (pos < length)
+        {
+            char c = statement.charAt(pos);
+            char next = pos + 1 < length ? statement.charAt(pos + 1) : 0;
+            int start = pos;
+            Type type;
+            if (Character.isWhitespace(c))
+            {
+                pos++;
+                continue;
+            } else if ((c == '-' || c == '/') && next == c)
+            {
+                int eol = statement.indexOf('\n', pos);
+                pos = eol < 0 ? length : eol + 1;
+                continue;
+            } else if (c == '/' && next == '*')
+            {
+                pos = indexAfter(statement, "*/", pos + 2);
+                continue;
+            } else if (c == '\'' || c == '"')
+            {
+                pos = endOfQuoted(statement, c, pos);
+                type = c == '\'' ? Type.STRING : Type.QUOTED_IDENTIFIER;
+            } else if (c == '$' && next == '$')
+            {
+                pos = indexAfter(statement, "$$", pos + 2);
+                type = Type.STRING;
+            } else if (isUuidAt(statement, pos))
+            {
+                pos += 36;
+                type = Type.UUID;
+            } else if (c == '0' && (next == 'x' || next == 'X'))
+            {
+                pos += 2;
+                while (pos < length && Character.digit(statement.charAt(pos), 16) >= 0)
+                {
+                    pos++;
+                }
+                type = Type.BLOB;
+            } else if (isDigit(c) || ((c == '-' || c == '+') && isDigit(next) && signAllowed(tokens)))
+            {
+                pos = endOfNumber(statement, pos + 1);
+                type = Type.NUMBER;
+            } else if (Character.isLetter(c) || c == '_')
+            {
+                while (pos < length && isIdentifierPart(statement.charAt(pos)))
+                {
+                    pos++;
+                }
+                type = Type.IDENTIFIER;
+            } else
+            {
+                pos++;
+                type = Type.SYMBOL;
+            }
+            tokens.add(new Token(type, statement.substring(start, pos), start, pos));
+        }
+        return tokens;
+    }
+
+    private static boolean isDigit(char c)
+    {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdentifierPart(char c)
+    {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /**
+     * A sign belongs to a number unless it follows something that can be the left operand of an addition.
+     */
+    private static boolean signAllowed(List<Token> tokens)
+    {
+        if (tokens.isEmpty())
+        {
+            return true;
+        }
+        Token previous = tokens.get(tokens.size() - 1);
+        return previous.getType() == Type.SYMBOL && !previous.is(')') && !previous.is(']') && !previous.is('}');
+    }
+
+    private static int endOfNumber(String statement, int pos)
+    {
+        int length = statement.length();
+        while (pos < length && isDigit(statement.charAt(pos)))
+        {
+            pos++;
+        }
+        if (pos + 1 < length && statement.charAt(pos) == '.' && isDigit(statement.charAt(pos + 1)))
+        {
+            pos++;
+            while (pos < length && isDigit(statement.charAt(pos)))
+            {
+                pos++;
+            }
+        }
+        if (pos < length && (statement.charAt(pos) == 'e' || statement.charAt(pos) == 'E'))
+        {
+            int exponent = pos + 1;
+            if (exponent < length && (statement.charAt(exponent) == '+' || statement.charAt(exponent) == '-'))
+            {
+                exponent++;
+            }
+            if (exponent < length && isDigit(statement.charAt(exponent)))
+            {
+                pos = exponent;
+                while (pos < length && isDigit(statement.charAt(pos)))
+                {
+                    pos++;
+                }
+            }
+        }
+        return pos;
+    }
+
+    private static int endOfQuoted(String statement, char quote, int pos)
+    {
+        int length = statement.length();
+        pos++;
+        while (pos < length)
+        {
+            if (statement.charAt(pos) == quote)
+            {
+                if (pos + 1 < length && statement.charAt(pos + 1) == quote)
+                {
+                    pos += 2;
+                    continue;
+                }
+                return pos + 1;
+            }
+            pos++;
+        }
+        throw new IllegalArgumentException("Unterminated " + quote + " in: " + statement);
+    }
+
+    private static int indexAfter(String statement, String terminator, int from)
+    {
+        int end = statement.indexOf(terminator, from);
+        if (end < 0)
+        {
+            throw new IllegalArgumentException("Unterminated " + terminator + " in: " + statement);
+        }
+        return end + terminator.length();
+    }
+
+    private static boolean isUuidAt(String statement, int pos)
+    {
+        if (pos + 36 > statement.length()
+            || (pos + 36 < statement.length() && isIdentifierPart(statement.charAt(pos + 36))))
+        {
+            return false;
+        }
+        for (int i = 0; i < 36; i++)
+        {
+            char c = statement.charAt(pos + i);
+            if (i == 8 || i == 13 || i == 18 || i == 23)
+            {
+                if (c != '-')
+                {
+                    return false;
+                }
+            } else if (Character.digit(c, 16) < 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,653 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Reduces a schema script to the statements needed to bring the live schema in line with it.
+ * <p/>
+ * {@code CREATE KEYSPACE}, {@code TYPE}, {@code INDEX} and {@code MATERIALIZED VIEW} statements are only passed on
+ * if the object does not exist yet. A {@code CREATE TABLE} statement is passed on if the table does not exist,
+ * otherwise it is replaced by the {@code ALTER TABLE} statements adding the columns the table lacks. When dropping is
+ * enabled columns missing from the script are dropped, tables whose primary key differs are recreated and, at the end
+ * of the script, views, indexes and tables of the keyspaces created by the script that the script does not declare
+ * are dropped. Differences that cannot be applied are logged. Options ({@code WITH ...}) are not compared. All other
+ * statements are passed through unchanged.
+ * <p/>
+ * The live schema of a keyspace is read from the {@code system_schema} tables when it is first needed and again after
+ * every schema change handed out, so when the schema already matches the script only a handful of queries are
+ * issued.
+ */
+class CqlSchemaDiff implements Iterator<CqlStatement>
+{
+    private final Iterator<CqlStatement> statements;
+
+    private final CqlConnection schemaConnection;
+
+    private final boolean drop;
+
+    private final Log log;
+
+    private final Queue<CqlStatement> ready = new ArrayDeque<CqlStatement>();
+
+    /**
+     * The live schema, by keyspace; a {@code null} value for keyspaces that do not exist.
+     */
+    private final Map<String, LiveKeyspace> live = new HashMap<String, LiveKeyspace>();
+
+    /**
+     * The objects declared by the script, by keyspace, for the keyspaces the script creates.
+     */
+    private final Map<String, Set<String>> declared = new LinkedHashMap<String, Set<String>>();
+
+    private String keyspace;
+
+    private int lastNumber;
+
+    private int schemaStatements;
+
+    private int appliedStatements;
+
+    private boolean finished;
+
+    /**
+     * @param statements       the statements of the script.
+     * @param schemaConnection the connection used to read the live schema.
+     * @param keyspace         the keyspace unqualified names initially refer to, may be {@code null}.
+     * @param drop             whether to drop what the script does not declare.
+     * @param log              the log differences that are not applied are reported to.
+     */
+    CqlSchemaDiff(Iterator<CqlStatement> statements, CqlConnection schemaConnection, String keyspace, boolean drop,
+                  Log log)
+    {
+        this.statements = statements;
+        this.schemaConnection = schemaConnection;
+        this.keyspace = StringUtils.isBlank(keyspace) ? null : keyspace;
+        this.drop = drop;
+        this.log = log;
+    }
+
+    public boolean hasNext()
+    {
+        // never read past a statement before it has been handed out and executed, it may change the schema
+        while (ready.isEmpty() && statements.hasNext())
+        {
+            CqlStatement statement = statements.next();
+            lastNumber = statement.getLast();
+            process(statement);
+        }
+        if (ready.isEmpty() && !finished)
+        {
+            finished = true;
+            if (drop)
+            {
+                dropUndeclared();
+            }
+            log.info("schema diff: " + appliedStatements + " statements needed for " + schemaStatements
+                         + " schema statements");
+        }
+        return !ready.isEmpty();
+    }
+
+    public CqlStatement next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        CqlStatement statement = ready.poll();
+        String keyword = CqlStatements.firstKeyword(statement.getCql());
+        if ("CREATE".equals(keyword) || "ALTER".equals(keyword) || "DROP".equals(keyword))
+        {
+            live.clear();
+        }
+        return statement;
+    }
+
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    private void process(CqlStatement statement)
+    {
+        List<CqlScanner.Token> tokens;
+        try
+        {
+            tokens = CqlScanner.scan(statement.getCql());
+        } catch (IllegalArgumentException e)
+        {
+            tokens = null;
+        }
+        if (tokens == null || !CqlStatements.isKeywordAt(tokens, 0, "CREATE") || !processCreate(statement, tokens))
+        {
+            String used = CqlStatements.usedKeyspace(statement.getCql());
+            if (used != null)
+            {
+                keyspace = used;
+            }
+            ready.add(statement);
+        }
+    }
+
+    /**
+     * @return {@code false} if the statement is not one the diff handles.
+     */
+    private boolean processCreate(CqlStatement statement, List<CqlScanner.Token> tokens)
+    {
+        int i = CqlStatements.isKeywordAt(tokens, 1, "CUSTOM") ? 2 : 1;
+        if (CqlStatements.isKeywordAt(tokens, i, "KEYSPACE") || CqlStatements.isKeywordAt(tokens, i, "SCHEMA"))
+        {
+            int name = CqlStatements.skipIfExists(tokens, i + 1);
+            if (name >= tokens.size() || !tokens.get(name).isName())
+            {
+                return false;
+            }
+            String ks = tokens.get(name).getName();
+            schemaStatements++;
+            if (!declared.containsKey(ks))
+            {
+                declared.put(ks, new HashSet<String>());
+            }
+            if (liveKeyspace(ks) == null)
+            {
+                apply(statement);
+            }
+            return true;
+        }
+        if (CqlStatements.isKeywordAt(tokens, i, "TABLE") || CqlStatements.isKeywordAt(tokens, i, "COLUMNFAMILY"))
+        {
+            return processCreateTable(statement, tokens, CqlStatements.skipIfExists(tokens, i + 1));
+        }
+        if (CqlStatements.isKeywordAt(tokens, i, "TYPE"))
+        {
+            return processCreateObject(statement, tokens, CqlStatements.skipIfExists(tokens, i + 1), "type");
+        }
+        if (CqlStatements.isKeywordAt(tokens, i, "MATERIALIZED") && CqlStatements.isKeywordAt(tokens, i + 1, "VIEW"))
+        {
+            return processCreateObject(statement, tokens, CqlStatements.skipIfExists(tokens, i + 2), "view");
+        }
+        if (CqlStatements.isKeywordAt(tokens, i, "INDEX"))
+        {
+            return processCreateIndex(statement, tokens, CqlStatements.skipIfExists(tokens, i + 1));
+        }
+        return false;
+    }
+
+    private boolean processCreateObject(CqlStatement statement, List<CqlScanner.Token> tokens, int name, String kind)
+    {
+        String[] qualified = qualifiedName(tokens, name);
+        if (qualified == null)
+        {
+            return false;
+        }
+        schemaStatements++;
+        declare(qualified[0], kind + ":" + qualified[1]);
+        LiveKeyspace ks = liveKeyspace(qualified[0]);
+        Set<String> existing = ks == null ? null : "type".equals(kind) ? ks.types : ks.views;
+        if (existing == null || !existing.contains(qualified[1]))
+        {
+            apply(statement);
+        }
+        return true;
+    }
+
+    private boolean processCreateIndex(CqlStatement statement, List<CqlScanner.Token> tokens, int i)
+    {
+        int on = i;
+        while (on < tokens.size() && !tokens.get(on).is("ON"))
+        {
+            on++;
+        }
+        String[] table = qualifiedName(tokens, on + 1);
+        if (table == null)
+        {
+            return false;
+        }
+        String name;
+        if (on > i && tokens.get(i).isName())
+        {
+            name = tokens.get(i).getName();
+        } else
+        {
+            // the name Cassandra gives unnamed indexes, the target may be wrapped in keys(), values(), ...
+            int target = on + (CqlStatements.isQualifiedName(tokens, on + 1) ? 5 : 3);
+            if (target + 1 < tokens.size() && tokens.get(target + 1).is('('))
+            {
+                target += 2;
+            }
+            if (target >= tokens.size() || !tokens.get(target).isName())
+            {
+                return false;
+            }
+            name = (table[1] + "_" + tokens.get(target).getName() + "_idx").replaceAll("\\W", "");
+        }
+        schemaStatements++;
+        declare(table[0], "index:" + name);
+        LiveKeyspace ks = liveKeyspace(table[0]);
+        if (ks == null || !ks.indexes.contains(name))
+        {
+            apply(statement);
+        }
+        return true;
+    }
+
+    private boolean processCreateTable(CqlStatement statement, List<CqlScanner.Token> tokens, int name)
+    {
+        String[] qualified = qualifiedName(tokens, name);
+        int open = name + (CqlStatements.isQualifiedName(tokens, name) ? 3 : 1);
+        Map<String, ColumnDefinition> columns =
+            qualified == null ? null : parseColumns(statement.getCql(), tokens, open);
+        if (columns == null)
+        {
+            return false;
+        }
+        schemaStatements++;
+        declare(qualified[0], "table:" + qualified[1]);
+        LiveKeyspace ks = liveKeyspace(qualified[0]);
+        Map<String, ColumnDefinition> liveColumns = ks == null ? null : ks.tables.get(qualified[1]);
+        if (liveColumns == null)
+        {
+            apply(statement);
+            return true;
+        }
+        String table = quote(qualified[0]) + "." + quote(qualified[1]);
+        if (!primaryKeyOf(columns).equals(primaryKeyOf(liveColumns)))
+        {
+            if (drop)
+            {
+                apply(new CqlStatement("DROP TABLE " + table, statement.getFirst(), statement.getLast()));
+                apply(statement);
+            } else
+            {
+                log.warn("The primary key of " + table + " differs from " + statement.describe()
+                             + ", enable dropping to recreate the table");
+            }
+            return true;
+        }
+        for (Map.Entry<String, ColumnDefinition> column : columns.entrySet())
+        {
+            ColumnDefinition liveColumn = liveColumns.get(column.getKey());
+            if (liveColumn == null)
+            {
+                apply(new CqlStatement("ALTER TABLE " + table + " ADD " + quote(column.getKey()) + " "
+                                           + column.getValue().type
+                                           + ("static".equals(column.getValue().kind) ? " STATIC" : ""),
+                                       statement.getFirst(), statement.getLast()));
+            } else if (!normalizeType(column.getValue().type).equals(normalizeType(liveColumn.type))
+                || !column.getValue().kind.equals(liveColumn.kind))
+            {
+                log.warn("Column " + column.getKey() + " of " + table + " is " + liveColumn.kind + " "
+                             + liveColumn.type + " instead of " + column.getValue().kind + " "
+                             + column.getValue().type + " as in " + statement.describe()
+                             + ", this cannot be changed");
+            }
+        }
+        for (String column : liveColumns.keySet())
+        {
+            if (!columns.containsKey(column))
+            {
+                if (drop)
+                {
+                    apply(new CqlStatement("ALTER TABLE " + table + " DROP " + quote(column), statement.getFirst(),
+                                           statement.getLast()));
+                } else
+                {
+                    log.warn("Column " + column + " of " + table + " is not in " + statement.describe());
+                }
+            }
+        }
+        return true;
+    }
+
+    private void dropUndeclared()
+    {
+        // views first as they depend on their tables, as do indexes
+        String[] kinds = {"view", "index", "table"};
+        for (String kind : kinds)
+        {
+            for (Map.Entry<String, Set<String>> entry : declared.entrySet())
+            {
+                LiveKeyspace ks = liveKeyspace(entry.getKey());
+                if (ks == null)
+                {
+                    continue;
+                }
+                Set<String> existing = "view".equals(kind) ? ks.views : "index".equals(kind) ? ks.indexes
+                    : ks.tables.keySet();
+                for (String name : new ArrayList<String>(existing))
+                {
+                    if (!entry.getValue().contains(kind + ":" + name))
+                    {
+                        String statement = "view".equals(kind) ? "DROP MATERIALIZED VIEW " : "DROP " + kind + " ";
+                        ready.add(new CqlStatement(statement.toUpperCase(Locale.ENGLISH) + quote(entry.getKey())
+                                                       + "." + quote(name), lastNumber));
+                        appliedStatements++;
+                    }
+                }
+            }
+        }
+    }
+
+    private void apply(CqlStatement statement)
+    {
+        ready.add(statement);
+        appliedStatements++;
+    }
+
+    private void declare(String ks, String object)
+    {
+        Set<String> objects = declared.get(ks);
+        if (objects != null)
+        {
+            objects.add(object);
+        }
+    }
+
+    private LiveKeyspace liveKeyspace(String ks)
+    {
+        if (!live.containsKey(ks))
+        {
+            live.put(ks, readKeyspace(ks));
+        }
+        return live.get(ks);
+    }
+
+    /**
+     * @return the keyspace and name of the (possibly keyspace qualified) name at {@code i}, or {@code null}.
+     */
+    private String[] qualifiedName(List<CqlScanner.Token> tokens, int i)
+    {
+        if (i >= tokens.size() || !tokens.get(i).isName())
+        {
+            return null;
+        }
+        if (CqlStatements.isQualifiedName(tokens, i))
+        {
+            return new String[]{tokens.get(i).getName(), tokens.get(i + 2).getName()};
+        }
+        return keyspace == null ? null : new String[]{keyspace, tokens.get(i).getName()};
+    }
+
+    /**
+     * Parses the column definitions of a {@code CREATE TABLE} statement.
+     *
+     * @param cql    the statement.
+     * @param tokens the tokens of the statement.
+     * @param open   the index of the {@code (} opening the column definitions.
+     * @return the columns, or {@code null} if they could not be parsed.
+     */
+    static Map<String, ColumnDefinition> parseColumns(String cql, List<CqlScanner.Token> tokens, int open)
+    {
+        if (open >= tokens.size() || !tokens.get(open).is('('))
+        {
+            return null;
+        }
+        Map<String, ColumnDefinition> columns = new LinkedHashMap<String, ColumnDefinition>();
+        List<String> partitionKey = new ArrayList<String>();
+        List<String> clustering = new ArrayList<String>();
+        int start = open + 1;
+        int depth = 0;
+        for (int i = start; i < tokens.size(); i++)
+        {
+            CqlScanner.Token token = tokens.get(i);
+            if (token.is('(') || token.is('<'))
+            {
+                depth++;
+            } else if ((token.is(')') || token.is('>')) && depth > 0)
+            {
+                depth--;
+            } else if (depth == 0 && (token.is(',') || token.is(')')))
+            {
+                if (i > start && !parseDefinition(cql, tokens, start, i, columns, partitionKey, clustering))
+                {
+                    return null;
+                }
+                start = i + 1;
+                if (token.is(')'))
+                {
+                    break;
+                }
+            }
+        }
+        if (partitionKey.isEmpty())
+        {
+            return null;
+        }
+        for (int i = 0; i < partitionKey.size(); i++)
+        {
+            ColumnDefinition column = columns.get(partitionKey.get(i));
+            if (column == null)
+            {
+                return null;
+            }
+            columns.put(partitionKey.get(i), new ColumnDefinition("partition_key", column.type, i));
+        }
+        for (int i = 0; i < clustering.size(); i++)
+        {
+            ColumnDefinition column = columns.get(clustering.get(i));
+            if (column == null)
+            {
+                return null;
+            }
+            columns.put(clustering.get(i), new ColumnDefinition("clustering", column.type, i));
+        }
+        return columns;
+    }
+
+    private static boolean parseDefinition(String cql, List<CqlScanner.Token> tokens, int start, int end,
+                                           Map<String, ColumnDefinition> columns, List<String> partitionKey,
+                                           List<String> clustering)
+    {
+        if (tokens.get(start).is("PRIMARY") && CqlStatements.isKeywordAt(tokens, start + 1, "KEY"))
+        {
+            // PRIMARY KEY (a, b) or PRIMARY KEY ((a, b), c)
+            int i = start + 3;
+            if (i < end && tokens.get(i).is('('))
+            {
+                for (i++; i < end && !tokens.get(i).is(')'); i++)
+                {
+                    if (tokens.get(i).isName())
+                    {
+                        partitionKey.add(tokens.get(i).getName());
+                    }
+                }
+                i++;
+            } else if (i < end && tokens.get(i).isName())
+            {
+                partitionKey.add(tokens.get(i++).getName());
+            }
+            for (; i < end; i++)
+            {
+                if (tokens.get(i).isName())
+                {
+                    clustering.add(tokens.get(i).getName());
+                }
+            }
+            return !partitionKey.isEmpty();
+        }
+        if (!tokens.get(start).isName() || start + 1 >= end)
+        {
+            return false;
+        }
+        int typeEnd = start + 1;
+        while (typeEnd < end && !tokens.get(typeEnd).is("STATIC") && !tokens.get(typeEnd).is("PRIMARY"))
+        {
+            typeEnd++;
+        }
+        String name = tokens.get(start).getName();
+        String type = cql.substring(tokens.get(start + 1).getStart(), tokens.get(typeEnd - 1).getEnd());
+        columns.put(name, new ColumnDefinition(typeEnd < end && tokens.get(typeEnd).is("STATIC") ? "static"
+                                                   : "regular", type, -1));
+        if (typeEnd < end && tokens.get(typeEnd).is("PRIMARY"))
+        {
+            partitionKey.add(name);
+        }
+        return true;
+    }
+
+    private static String primaryKeyOf(Map<String, ColumnDefinition> columns)
+    {
+        Map<String, String> key = new TreeMap<String, String>();
+        for (Map.Entry<String, ColumnDefinition> column : columns.entrySet())
+        {
+            ColumnDefinition definition = column.getValue();
+            if (definition.position >= 0)
+            {
+                key.put(definition.kind + ":" + definition.position, column.getKey());
+            }
+        }
+        return key.toString();
+    }
+
+    static String normalizeType(String type)
+    {
+        return type.toLowerCase(Locale.ENGLISH).replaceAll("\\s+", "").replaceAll("\\bvarchar\\b", "text");
+    }
+
+    private static String quote(String name)
+    {
+        return '"' + name.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Reads the live schema of a keyspace.
+     *
+     * @param ks the keyspace.
+     * @return the schema, or {@code null} if the keyspace does not exist.
+     */
+    LiveKeyspace readKeyspace(String ks)
+    {
+        String where = " WHERE keyspace_name = '" + ks.replace("'", "''") + "'";
+        if (query("SELECT keyspace_name FROM system_schema.keyspaces" + where).isEmpty())
+        {
+            return null;
+        }
+        LiveKeyspace result = new LiveKeyspace();
+        for (Map<String, ByteBuffer> row : query("SELECT table_name FROM system_schema.tables" + where))
+        {
+            result.tables.put(string(row.get("table_name")), new LinkedHashMap<String, ColumnDefinition>());
+        }
+        for (Map<String, ByteBuffer> row : query(
+            "SELECT table_name, column_name, kind, position, type FROM system_schema.columns" + where))
+        {
+            // columns of views are listed too
+            Map<String, ColumnDefinition> columns = result.tables.get(string(row.get("table_name")));
+            if (columns != null)
+            {
+                String kind = string(row.get("kind"));
+                boolean key = "partition_key".equals(kind) || "clustering".equals(kind);
+                columns.put(string(row.get("column_name")),
+                            new ColumnDefinition(kind, string(row.get("type")),
+                                                 key ? ByteBufferUtil.toInt(row.get("position")) : -1));
+            }
+        }
+        for (Map<String, ByteBuffer> row : query("SELECT type_name FROM system_schema.types" + where))
+        {
+            result.types.add(string(row.get("type_name")));
+        }
+        for (Map<String, ByteBuffer> row : query("SELECT index_name FROM system_schema.indexes" + where))
+        {
+            result.indexes.add(string(row.get("index_name")));
+        }
+        for (Map<String, ByteBuffer> row : query("SELECT view_name FROM system_schema.views" + where))
+        {
+            result.views.add(string(row.get("view_name")));
+        }
+        return result;
+    }
+
+    private List<Map<String, ByteBuffer>> query(String cql)
+    {
+        CqlResult result = schemaConnection.execute(cql);
+        List<Map<String, ByteBuffer>> rows = new ArrayList<Map<String, ByteBuffer>>();
+        if (result.getRows() == null)
+        {
+            return rows;
+        }
+        for (CqlRow row : result.getRows())
+        {
+            Map<String, ByteBuffer> values = new HashMap<String, ByteBuffer>();
+            for (Column column : row.getColumns())
+            {
+                values.put(string(column.name), column.value);
+            }
+            rows.add(values);
+        }
+        return rows;
+    }
+
+    private static String string(ByteBuffer value)
+    {
+        try
+        {
+            return ByteBufferUtil.string(value);
+        } catch (CharacterCodingException e)
+        {
+            throw new ThriftApiExecutionException("Could not read the schema", e);
+        }
+    }
+
+    /**
+     * A column as declared by a script or read from the live schema.
+     */
+    static final class ColumnDefinition
+    {
+        /**
+         * As in {@code system_schema.columns}: {@code partition_key}, {@code clustering}, {@code static} or
+         * {@code regular}.
+         */
+        private final String kind;
+
+        private final String type;
+
+        /**
+         * The position within the partition key or the clustering columns, -1 for other columns.
+         */
+        private final int position;
+
+        ColumnDefinition(String kind, String type, int position)
+        {
+            this.kind = kind;
+            this.type = type;
+            this.position = position;
+        }
+    }
+
+    /**
+     * The live schema of a keyspace.
+     */
+    static final class LiveKeyspace
+    {
+        /**
+         * The columns of each table, by name.
+         */
+        final Map<String, Map<String, ColumnDefinition>> tables = new HashMap<String, Map<String, ColumnDefinition>>();
+
+        final Set<String> types = new HashSet<String>();
+
+        final Set<String> indexes = new HashSet<String>();
+
+        final Set<String> views = new HashSet<String>();
+    }
+}
@@ -0,0 +1,635 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executes the statements of several CQL scripts concurrently where they do not depend on each other.
+ * <p/>
+ * Every statement is reduced to the schema objects it touches: a whole keyspace (keyspace, type, function and
+ * aggregate statements as well as {@code DROP INDEX}), some tables of a keyspace (table, index, view and trigger
+ * statements, reads and writes) or everything (anything else, e.g. role and permission statements). A statement
+ * depends on the last statement before it, in script order, that touches one of the same objects, so statements on
+ * separate keyspaces or unrelated tables run concurrently while the order of the statements on any one table is
+ * preserved. Consecutive statements of a script that touch the same objects are executed as a single unit.
+ * <p/>
+ * The scripts are read completely before the first statement is executed.
+ */
+final class CqlScriptScheduler
+{
+    private final String rpcAddress;
+
+    private final int rpcPort;
+
+    private final String cqlVersion;
+
+    private final String keyspace;
+
+    private final int connections;
+
+    private final boolean prepareStatements;
+
+    private final Log log;
+
+    private final List<Node> nodes = new ArrayList<Node>();
+
+    private Node lastGlobal;
+
+    private final Map<String, Node> lastKeyspaceWide = new HashMap<String, Node>();
+
+    private final Map<String, Map<String, Node>> lastTables = new HashMap<String, Map<String, Node>>();
+
+    private int statementCount;
+
+    CqlScriptScheduler(String rpcAddress, int rpcPort, String cqlVersion, String keyspace, int connections,
+                       boolean prepareStatements, Log log)
+    {
+        this.rpcAddress = rpcAddress;
+        this.rpcPort = rpcPort;
+        this.cqlVersion = cqlVersion;
+        this.keyspace = StringUtils.isBlank(keyspace) ? null : keyspace;
+        this.connections = Math.max(1, connections);
+        this.prepareStatements = prepareStatements;
+        this.log = log;
+    }
+
+    /**
+     * Adds the statements of a script after those of the scripts added before.
+     *
+     * @param script     the name of the script, used to report failures.
+     * @param statements the statements of the script.
+     */
+    void add(String script, Iterator<CqlStatement> statements)
+    {
+        String currentKeyspace = keyspace;
+        Node current = null;
+        while (statements.hasNext())
+        {
+            CqlStatement statement = statements.next();
+            String used = CqlStatements.usedKeyspace(statement.getCql());
+            if (used != null)
+            {
+                // every statement is executed with the keyspace it was written for, see Node
+                currentKeyspace = used;
+                continue;
+            }
+            Scope scope = scopeOf(statement.getCql(), currentKeyspace);
+            if (current == null || !current.scope.equals(scope))
+            {
+                current = new Node(script, scope);
+                link(current);
+                nodes.add(current);
+            }
+            current.statements.add(statement);
+            current.keyspaces.add(currentKeyspace);
+            statementCount++;
+        }
+    }
+
+    /**
+     * @return the units of execution, in script order.
+     */
+    List<Node> getNodes()
+    {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    /**
+     * Executes the statements of all scripts added.
+     *
+     * @throws ThriftApiExecutionException if a statement failed; the message holds the script and the number of the
+     *                                     statement. Statements that do not depend on the failed one may have been
+     *                                     executed.
+     */
+    void execute() throws ThriftApiExecutionException
+    {
+        if (nodes.isEmpty())
+        {
+            return;
+        }
+        log.info("executing " + statementCount + " statements in " + nodes.size() + " units over " + connections
+                     + " connections");
+        BlockingQueue<CqlConnection> pool = new ArrayBlockingQueue<CqlConnection>(connections);
+        ExecutorService executor = Executors.newFixedThreadPool(connections);
+        try
+        {
+            for (int i = 0; i < connections; i++)
+            {
+                pool.add(CqlConnection.open(rpcAddress, rpcPort, cqlVersion, keyspace, prepareStatements));
+            }
+            new Run(executor, pool).await();
+        } finally
+        {
+            executor.shutdownNow();
+            for (CqlConnection connection : pool)
+            {
+                connection.close();
+            }
+        }
+    }
+
+    private void link(Node node)
+    {
+        Scope scope = node.scope;
+        if (scope.global)
+        {
+            node.dependOn(lastGlobal);
+            for (Node last : lastKeyspaceWide.values())
+            {
+                node.dependOn(last);
+            }
+            for (Map<String, Node> tables : lastTables.values())
+            {
+                for (Node last : tables.values())
+                {
+                    node.dependOn(last);
+                }
+            }
+            lastKeyspaceWide.clear();
+            lastTables.clear();
+            lastGlobal = node;
+        } else if (scope.keyspace != null)
+        {
+            node.dependOn(lastOf(scope.keyspace));
+            Map<String, Node> tables = lastTables.remove(scope.keyspace);
+            if (tables != null)
+            {
+                for (Node last : tables.values())
+                {
+                    node.dependOn(last);
+                }
+            }
+            lastKeyspaceWide.put(scope.keyspace, node);
+        } else
+        {
+            for (Map.Entry<String, Set<String>> entry : scope.tables.entrySet())
+            {
+                Map<String, Node> tables = lastTables.get(entry.getKey());
+                if (tables == null)
+                {
+                    tables = new HashMap<String, Node>();
+                    lastTables.put(entry.getKey(), tables);
+                }
+                for (String table : entry.getValue())
+                {
+                    Node last = tables.get(table);
+                    node.dependOn(last != null ? last : lastOf(entry.getKey()));
+                    tables.put(table, node);
+                }
+            }
+        }
+    }
+
+    private Node lastOf(String keyspace)
+    {
+        Node last = lastKeyspaceWide.get(keyspace);
+        return last != null ? last : lastGlobal;
+    }
+
+    /**
+     * Determines the schema objects a statement touches.
+     *
+     * @param statement the statement.
+     * @param keyspace  the keyspace unqualified names refer to, may be {@code null}.
+     * @return the scope of the statement; global if it cannot be determined.
+     */
+    static Scope scopeOf(String statement, String keyspace)
+    {
+        List<CqlScanner.Token> tokens;
+        try
+        {
+            tokens = CqlScanner.scan(statement);
+        } catch (IllegalArgumentException e)
+        {
+            // let the server report it
+            return Scope.GLOBAL;
+        }
+        Scope scope = tokens.isEmpty() ? null : new ScopeParser(tokens, keyspace).parse();
+        return scope != null ? scope : Scope.GLOBAL;
+    }
+
+    /**
+     * The schema objects touched by a unit of execution: everything, a whole keyspace or tables of one or more
+     * keyspaces.
+     */
+    static final class Scope
+    {
+        static final Scope GLOBAL = new Scope(true, null, Collections.<String, Set<String>>emptyMap());
+
+        private final boolean global;
+
+        private final String keyspace;
+
+        private final Map<String, Set<String>> tables;
+
+        private Scope(boolean global, String keyspace, Map<String, Set<String>> tables)
+        {
+            this.global = global;
+            this.keyspace = keyspace;
+            this.tables = tables;
+        }
+
+        boolean isGlobal()
+        {
+            return global;
+        }
+
+        /**
+         * @return the keyspace touched as a whole, or {@code null}.
+         */
+        String getKeyspace()
+        {
+            return keyspace;
+        }
+
+        /**
+         * @return the tables touched, by keyspace.
+         */
+        Map<String, Set<String>> getTables()
+        {
+            return tables;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Scope))
+            {
+                return false;
+            }
+            Scope other = (Scope) o;
+            return global == other.global && StringUtils.equals(keyspace, other.keyspace)
+                && tables.equals(other.tables);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return (global ? 1 : 0) + 31 * (keyspace == null ? 0 : keyspace.hashCode()) + 961 * tables.hashCode();
+        }
+
+        @Override
+        public String toString()
+        {
+            return global ? "*" : keyspace != null ? keyspace + ".*" : tables.toString();
+        }
+    }
+
+    /**
+     * A run of consecutive statements of a script that touch the same objects.
+     */
+    static final class Node
+    {
+        private final String script;
+
+        private final Scope scope;
+
+        private final List<CqlStatement> statements = new ArrayList<CqlStatement>();
+
+        /**
+         * The keyspace each statement was written for, the one of the last {@code USE} before it.
+         */
+        private final List<String> keyspaces = new ArrayList<String>();
+
+        private final Set<Node> dependencies = new LinkedHashSet<Node>();
+
+        private final List<Node> dependents = new ArrayList<Node>();
+
+        private int pending;
+
+        private Node(String script, Scope scope)
+        {
+            this.script = script;
+            this.scope = scope;
+        }
+
+        private void dependOn(Node node)
+        {
+            if (node != null && dependencies.add(node))
+            {
+                node.dependents.add(this);
+                pending++;
+            }
+        }
+
+        Scope getScope()
+        {
+            return scope;
+        }
+
+        List<CqlStatement> getStatements()
+        {
+            return statements;
+        }
+
+        Set<Node> getDependencies()
+        {
+            return dependencies;
+        }
+    }
+
+    /**
+     * The state of an execution: nodes are submitted as soon as all their dependencies have completed.
+     */
+    private final class Run
+    {
+        private final ExecutorService executor;
+
+        private final BlockingQueue<CqlConnection> pool;
+
+        private int running;
+
+        private ThriftApiExecutionException failure;
+
+        private Run(ExecutorService executor, BlockingQueue<CqlConnection> pool)
+        {
+            this.executor = executor;
+            this.pool = pool;
+        }
+
+        private synchronized void await() throws ThriftApiExecutionException
+        {
+            for (Node node : nodes)
+            {
+                if (node.pending == 0)
+                {
+                    submit(node);
+                }
+            }
+            try
+            {
+                while (running > 0)
+                {
+                    wait();
+                }
+            } catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new ThriftApiExecutionException("Interrupted while executing CQL statements", e);
+            }
+            if (failure != null)
+            {
+                throw failure;
+            }
+        }
+
+        private void submit(final Node node)
+        {
+            running++;
+            executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    ThriftApiExecutionException error = null;
+                    try
+                    {
+                        CqlConnection connection = pool.take();
+                        try
+                        {
+                            execute(connection, node);
+                        } finally
+                        {
+                            pool.add(connection);
+                        }
+                    } catch (ThriftApiExecutionException e)
+                    {
+                        error = e;
+                    } catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        error = new ThriftApiExecutionException("Interrupted while executing CQL statements", e);
+                    } catch (RuntimeException e)
+                    {
+                        error = new ThriftApiExecutionException(node.script + " failed", e);
+                    }
+                    completed(node, error);
+                }
+            });
+        }
+
+        private synchronized void completed(Node node, ThriftApiExecutionException error)
+        {
+            running--;
+            if (error != null && failure == null)
+            {
+                failure = error;
+            }
+            if (failure == null)
+            {
+                for (Node dependent : node.dependents)
+                {
+                    if (--dependent.pending == 0)
+                    {
+                        submit(dependent);
+                    }
+                }
+            }
+            notifyAll();
+        }
+
+        private void execute(CqlConnection connection, Node node) throws ThriftApiExecutionException
+        {
+            for (int i = 0; i < node.statements.size(); i++)
+            {
+                CqlStatement statement = node.statements.get(i);
+                if (log.isDebugEnabled())
+                {
+                    log.debug("Executing cql statement: " + statement.getCql());
+                }
+                try
+                {
+                    connection.useKeyspace(node.keyspaces.get(i));
+                    connection.execute(statement.getCql());
+                } catch (ThriftApiExecutionException e)
+                {
+                    throw new ThriftApiExecutionException(node.script + ": " + statement.describe() + " failed: "
+                                                              + statement.getCql().trim(), e.getCause());
+                }
+            }
+        }
+    }
+
+    /**
+     * Works out the scope of a single statement.
+     */
+    private static final class ScopeParser
+    {
+        private final List<CqlScanner.Token> tokens;
+
+        private final String keyspace;
+
+        private final Map<String, Set<String>> tables = new HashMap<String, Set<String>>();
+
+        private ScopeParser(List<CqlScanner.Token> tokens, String keyspace)
+        {
+            this.tokens = tokens;
+            this.keyspace = keyspace;
+        }
+
+        /**
+         * @return the scope, or {@code null} if it is global.
+         */
+        private Scope parse()
+        {
+            CqlScanner.Token first = tokens.get(0);
+            if (first.is("CREATE") || first.is("ALTER") || first.is("DROP"))
+            {
+                return parseSchemaChange(first.is("CREATE"), first.is("DROP"));
+            }
+            if (first.is("INSERT"))
+            {
+                return tables(at("INTO", 1) ? 2 : -1);
+            }
+            if (first.is("UPDATE"))
+            {
+                return tables(1);
+            }
+            if (first.is("DELETE") || first.is("SELECT"))
+            {
+                return tables(indexOf("FROM", 1) + 1);
+            }
+            if (first.is("TRUNCATE"))
+            {
+                return tables(at("TABLE", 1) || at("COLUMNFAMILY", 1) ? 2 : 1);
+            }
+            if (first.is("BEGIN"))
+            {
+                for (int i = 1; i < tokens.size(); i++)
+                {
+                    CqlScanner.Token token = tokens.get(i);
+                    if ((token.is("INTO") || token.is("UPDATE") || token.is("FROM")) && !addTable(i + 1))
+                    {
+                        return null;
+                    }
+                }
+                return tables.isEmpty() ? null : new Scope(false, null, tables);
+            }
+            return null;
+        }
+
+        private Scope parseSchemaChange(boolean create, boolean drop)
+        {
+            int i = 1;
+            if (at("OR", i))
+            {
+                // OR REPLACE
+                i += 2;
+            }
+            if (at("CUSTOM", i))
+            {
+                i++;
+            }
+            if (at("KEYSPACE", i) || at("SCHEMA", i))
+            {
+                i = skipIfExists(i + 1);
+                return i < tokens.size() && tokens.get(i).isName()
+                    ? new Scope(false, tokens.get(i).getName(), Collections.<String, Set<String>>emptyMap())
+                    : null;
+            }
+            if (at("TABLE", i) || at("COLUMNFAMILY", i))
+            {
+                return tables(skipIfExists(i + 1));
+            }
+            if (at("MATERIALIZED", i) && at("VIEW", i + 1))
+            {
+                i = skipIfExists(i + 2);
+                if (create)
+                {
+                    return addTable(i) ? tables(indexOf("FROM", i) + 1) : null;
+                }
+                return drop ? keyspaceOf(i) : tables(i);
+            }
+            if ((at("INDEX", i) && !drop) || at("TRIGGER", i))
+            {
+                return tables(indexOf("ON", i) + 1);
+            }
+            if (at("INDEX", i) || at("TYPE", i) || at("FUNCTION", i) || at("AGGREGATE", i))
+            {
+                return keyspaceOf(skipIfExists(i + 1));
+            }
+            return null;
+        }
+
+        private boolean at(String keyword, int i)
+        {
+            return CqlStatements.isKeywordAt(tokens, i, keyword);
+        }
+
+        private int indexOf(String keyword, int from)
+        {
+            for (int i = from; i < tokens.size(); i++)
+            {
+                if (tokens.get(i).is(keyword))
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int skipIfExists(int i)
+        {
+            return CqlStatements.skipIfExists(tokens, i);
+        }
+
+        private boolean isQualified(int i)
+        {
+            return CqlStatements.isQualifiedName(tokens, i);
+        }
+
+        /**
+         * Adds the (possibly keyspace qualified) table name at {@code i}, if there is one.
+         */
+        private boolean addTable(int i)
+        {
+            if (i <= 0 || i >= tokens.size() || !tokens.get(i).isName())
+            {
+                return false;
+            }
+            String tableKeyspace = isQualified(i) ? tokens.get(i).getName() : keyspace;
+            String table = tokens.get(isQualified(i) ? i + 2 : i).getName();
+            // a statement without a keyspace fails, the order of failures does not matter
+            String key = tableKeyspace == null ? "" : tableKeyspace;
+            Set<String> names = tables.get(key);
+            if (names == null)
+            {
+                names = new LinkedHashSet<String>();
+                tables.put(key, names);
+            }
+            names.add(table);
+            return true;
+        }
+
+        private Scope tables(int i)
+        {
+            return addTable(i) ? new Scope(false, null, tables) : null;
+        }
+
+        /**
+         * @return the keyspace of the (possibly keyspace qualified) name at {@code i} as a whole.
+         */
+        private Scope keyspaceOf(int i)
+        {
+            if (i >= tokens.size() || !tokens.get(i).isName())
+            {
+                return null;
+            }
+            String nameKeyspace = isQualified(i) ? tokens.get(i).getName() : keyspace;
+            return new Scope(false, nameKeyspace == null ? "" : nameKeyspace,
+                             Collections.<String, Set<String>>emptyMap());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A CQL statement to execute together with the (1-based) number of the script statement(s) it was built from, so
+ * that failures can be reported against the script even when statements are combined.
+ */
+final class CqlStatement
+{
+    private final String cql;
+
+    private final int first;
+
+    private final int last;
+
+    private final String partition;
+
+    CqlStatement(String cql, int number)
+    {
+        this(cql, number, number);
+    }
+
+    CqlStatement(String cql, int first, int last)
+    {
+        this(cql, first, last, null);
+    }
+
+    CqlStatement(String cql, int first, int last, String partition)
+    {
+        this.cql = cql;
+        this.first = first;
+        this.last = last;
+        this.partition = partition;
+    }
+
+    String getCql()
+    {
+        return cql;
+    }
+
+    int getFirst()
+    {
+        return first;
+    }
+
+    int getLast()
+    {
+        return last;
+    }
+
+    /**
+     * @return the table and partition the statement writes to, {@code null} if unknown or if it is not a write.
+     */
+    String getPartition()
+    {
+        return partition;
+    }
+
+    /**
+     * @return a human readable reference to the script statement(s), e.g. {@code CQL statement #12}.
+     */
+    String describe()
+    {
+        return first == last ? "CQL statement #" + first : "CQL statements #" + first + "-#" + last;
+    }
+
+    /**
+     * Numbers the non blank statements of a script.
+     *
+     * @param statements the statements of the script, in order.
+     * @return the non blank statements, numbered from 1.
+     */
+    static Iterator<CqlStatement> number(final Iterator<String> statements)
+    {
+        return new Iterator<CqlStatement>()
+        {
+            private CqlStatement next;
+
+            private int count;
+
+            public boolean hasNext()
+            {
+                while (next == null && statements.hasNext())
+                {
+                    String statement = statements.next();
+                    if (StringUtils.isNotBlank(statement))
+                    {
+                        next = new CqlStatement(statement, ++count);
+                    }
+                }
+                return next != null;
+            }
+
+            public CqlStatement next()
+            {
+                if (!hasNext())
+                {
+                    throw new NoSuchElementException();
+                }
+                CqlStatement result = next;
+                next = null;
+                return result;
+            }
+
+            public void remove()
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,528 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.CharacterCodingException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * Combines runs of consecutive {@code INSERT}, {@code UPDATE} and {@code DELETE} statements that target the same
+ * partition of the same table into {@code UNLOGGED BATCH}es, keeping every batch below a size threshold. Statements
+ * that cannot be attributed to a single partition (lightweight transactions, counter updates, JSON inserts, ...) and
+ * all other statements are passed through unchanged.
+ * <p/>
+ * The statements of a batch share a timestamp, so that the last write to a cell no longer wins: a batch never holds
+ * two statements that may write the same row, a new batch is started instead.
+ * <p/>
+ * Every write the batcher could attribute to a partition, batched or not, is handed out with that
+ * {@link CqlStatement#getPartition() partition}, so that writes to the same partition can be kept in order.
+ */
+class CqlStatementBatcher implements Iterator<CqlStatement>
+{
+    private final Iterator<CqlStatement> statements;
+
+    private final CqlConnection schemaConnection;
+
+    private final int thresholdBytes;
+
+    private final Map<String, PrimaryKey> primaryKeys = new HashMap<String, PrimaryKey>();
+
+    private final List<CqlStatement> group = new ArrayList<CqlStatement>();
+
+    private final List<List<String>> groupRows = new ArrayList<List<String>>();
+
+    private final Queue<CqlStatement> ready = new ArrayDeque<CqlStatement>();
+
+    private String groupKey;
+
+    private int groupBytes;
+
+    private String keyspace;
+
+    /**
+     * @param statements       the statements to batch.
+     * @param schemaConnection the connection used to look up the partition key of tables.
+     * @param keyspace         the keyspace unqualified table names initially refer to, may be {@code null}.
+     * @param thresholdBytes   the maximum size of a batch, in bytes of CQL text, 0 to only work out the partition of
+     *                         the writes without batching them.
+     */
+    CqlStatementBatcher(Iterator<CqlStatement> statements, CqlConnection schemaConnection, String keyspace,
+                        int thresholdBytes)
+    {
+        this.statements = statements;
+        this.schemaConnection = schemaConnection;
+        this.keyspace = StringUtils.isBlank(keyspace) ? null : keyspace;
+        this.thresholdBytes = thresholdBytes;
+    }
+
+    public boolean hasNext()
+    {
+        return !ready.isEmpty() || !group.isEmpty() || statements.hasNext();
+    }
+
+    public CqlStatement next()
+    {
+        // never read past a statement that is not batched before it has been handed out, as the following writes
+        // may depend on it (e.g. on a table it creates)
+        while (ready.isEmpty() && statements.hasNext())
+        {
+            CqlStatement statement = statements.next();
+            List<CqlScanner.Token> tokens = CqlStatements.isWrite(statement.getCql()) ? scan(statement) : null;
+            List<String> row = new ArrayList<String>();
+            String key = tokens == null ? null : partitionOf(tokens, row);
+            if (key == null)
+            {
+                if (!group.isEmpty())
+                {
+                    ready.add(flush());
+                }
+                ready.add(statement);
+                passThrough(statement);
+            } else
+            {
+                // drop the terminator and any trailing comment, the statement is terminated inside the batch
+                String cql = statement.getCql().substring(0, tokens.get(tokens.size() - 1).getEnd()).trim();
+                if (!group.isEmpty() && (!key.equals(groupKey) || groupBytes + cql.length() > thresholdBytes
+                    || overlapsGroup(row)))
+                {
+                    ready.add(flush());
+                }
+                add(key, row, statement, cql);
+            }
+        }
+        if (!ready.isEmpty())
+        {
+            return ready.poll();
+        }
+        if (!group.isEmpty())
+        {
+            return flush();
+        }
+        throw new NoSuchElementException();
+    }
+
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    private void passThrough(CqlStatement statement)
+    {
+        String used = CqlStatements.usedKeyspace(statement.getCql());
+        if (used != null)
+        {
+            keyspace = used;
+        }
+        if (!CqlStatements.isWrite(statement.getCql()))
+        {
+            // schema changes may redefine tables
+            primaryKeys.clear();
+        }
+    }
+
+    /**
+     * @param row the clustering key values of a write, a prefix of them if it writes several rows.
+     * @return whether a statement of the group may write one of the rows of the write.
+     */
+    private boolean overlapsGroup(List<String> row)
+    {
+        for (List<String> groupRow : groupRows)
+        {
+            int common = Math.min(row.size(), groupRow.size());
+            if (row.subList(0, common).equals(groupRow.subList(0, common)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void add(String key, List<String> row, CqlStatement statement, String cql)
+    {
+        group.add(new CqlStatement(cql, statement.getFirst(), statement.getLast(), key));
+        groupRows.add(row);
+        groupKey = key;
+        groupBytes += cql.length();
+    }
+
+    private CqlStatement flush()
+    {
+        CqlStatement result;
+        if (group.size() == 1)
+        {
+            result = group.get(0);
+        } else
+        {
+            StringBuilder batch = new StringBuilder("BEGIN UNLOGGED BATCH\n");
+            for (CqlStatement statement : group)
+            {
+                batch.append("  ").append(statement.getCql().trim()).append(";\n");
+            }
+            batch.append("APPLY BATCH");
+            result = new CqlStatement(batch.toString(), group.get(0).getFirst(),
+                                      group.get(group.size() - 1).getLast(), groupKey);
+        }
+        group.clear();
+        groupRows.clear();
+        groupKey = null;
+        groupBytes = 0;
+        return result;
+    }
+
+    /**
+     * @return the tokens of the statement without its terminator, or {@code null} if it cannot be tokenized.
+     */
+    private static List<CqlScanner.Token> scan(CqlStatement statement)
+    {
+        List<CqlScanner.Token> tokens;
+        try
+        {
+            tokens = CqlScanner.scan(statement.getCql());
+        } catch (IllegalArgumentException e)
+        {
+            return null;
+        }
+        if (!tokens.isEmpty() && tokens.get(tokens.size() - 1).is(';'))
+        {
+            tokens.remove(tokens.size() - 1);
+        }
+        return tokens.isEmpty() ? null : tokens;
+    }
+
+    /**
+     * Works out the partition a write goes to.
+     *
+     * @param tokens the tokens of the write.
+     * @param row    receives the clustering key values of the write, up to the first one it does not set.
+     * @return the fully qualified table followed by the partition key values, or {@code null} if the write may not
+     *         be batched.
+     */
+    private String partitionOf(List<CqlScanner.Token> tokens, List<String> row)
+    {
+        if (indexOf(tokens, "IF", 0) >= 0)
+        {
+            // lightweight transactions may not span partitions
+            return null;
+        }
+        Map<String, String> values = new HashMap<String, String>();
+        int tableStart;
+        if (tokens.get(0).is("INSERT") && tokens.size() > 1 && tokens.get(1).is("INTO"))
+        {
+            tableStart = 2;
+            int columns = skipTableName(tokens, tableStart);
+            if (columns < 0 || !tokens.get(columns).is('(') || !parseInsertValues(tokens, columns, values))
+            {
+                return null;
+            }
+        } else if (tokens.get(0).is("UPDATE") || tokens.get(0).is("DELETE"))
+        {
+            if (tokens.get(0).is("UPDATE"))
+            {
+                tableStart = 1;
+                if (isCounterUpdate(tokens))
+                {
+                    return null;
+                }
+            } else
+            {
+                tableStart = indexOf(tokens, "FROM", 1) + 1;
+            }
+            int where = indexOf(tokens, "WHERE", tableStart);
+            if (tableStart <= 0 || where < 0 || !parseWhere(tokens, where + 1, values))
+            {
+                return null;
+            }
+        } else
+        {
+            return null;
+        }
+        String table = qualifiedTableName(tokens, tableStart);
+        if (table == null)
+        {
+            return null;
+        }
+        PrimaryKey primaryKey = primaryKey(table);
+        if (primaryKey == null || primaryKey.partitionKey.isEmpty())
+        {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(table);
+        for (String column : primaryKey.partitionKey)
+        {
+            String value = values.get(column);
+            if (value == null)
+            {
+                return null;
+            }
+            key.append('\u0000').append(value);
+        }
+        for (String column : primaryKey.clustering)
+        {
+            String value = values.get(column);
+            if (value == null)
+            {
+                break;
+            }
+            row.add(value);
+        }
+        return key.toString();
+    }
+
+    private PrimaryKey primaryKey(String table)
+    {
+        PrimaryKey primaryKey = primaryKeys.get(table);
+        if (primaryKey == null)
+        {
+            int dot = table.indexOf('.');
+            primaryKey = lookupPrimaryKey(table.substring(0, dot), table.substring(dot + 1));
+            if (primaryKey != null && !primaryKey.partitionKey.isEmpty())
+            {
+                primaryKeys.put(table, primaryKey);
+            }
+        }
+        return primaryKey;
+    }
+
+    /**
+     * Reads the primary key columns of a table from {@code system_schema}.
+     *
+     * @param keyspace the keyspace.
+     * @param table    the table.
+     * @return the primary key columns, with no columns if the table does not exist.
+     */
+    PrimaryKey lookupPrimaryKey(String keyspace, String table)
+    {
+        CqlResult result = schemaConnection.execute(
+            "SELECT column_name, kind, position FROM system_schema.columns WHERE keyspace_name = '"
+                + keyspace.replace("'", "''") + "' AND table_name = '" + table.replace("'", "''") + "'");
+        TreeMap<Integer, String> partitionKey = new TreeMap<Integer, String>();
+        TreeMap<Integer, String> clustering = new TreeMap<Integer, String>();
+        if (result.getRows() == null)
+        {
+            return new PrimaryKey(new ArrayList<String>(), new ArrayList<String>());
+        }
+        try
+        {
+            for (CqlRow row : result.getRows())
+            {
+                String name = null;
+                String kind = null;
+                int position = 0;
+                for (Column column : row.getColumns())
+                {
+                    String columnName = ByteBufferUtil.string(column.name);
+                    if ("column_name".equals(columnName))
+                    {
+                        name = ByteBufferUtil.string(column.value);
+                    } else if ("kind".equals(columnName))
+                    {
+                        kind = ByteBufferUtil.string(column.value);
+                    } else if ("position".equals(columnName))
+                    {
+                        position = ByteBufferUtil.toInt(column.value);
+                    }
+                }
+                if ("partition_key".equals(kind))
+                {
+                    partitionKey.put(position, name);
+                } else if ("clustering".equals(kind))
+                {
+                    clustering.put(position, name);
+                }
+            }
+        } catch (CharacterCodingException e)
+        {
+            throw new ThriftApiExecutionException("Could not read the schema of " + keyspace + "." + table, e);
+        }
+        return new PrimaryKey(new ArrayList<String>(partitionKey.values()), new ArrayList<String>(clustering.values()));
+    }
+
+    private String qualifiedTableName(List<CqlScanner.Token> tokens, int start)
+    {
+        if (skipTableName(tokens, start) < 0)
+        {
+            return null;
+        }
+        if (start + 2 < tokens.size() && tokens.get(start + 1).is('.'))
+        {
+            return tokens.get(start).getName() + "." + tokens.get(start + 2).getName();
+        }
+        return keyspace == null ? null : keyspace + "." + tokens.get(start).getName();
+    }
+
+    /**
+     * @return the index of the token following the (possibly keyspace qualified) table name at {@code start}, or
+     *         {@code -1} if there is no table name there.
+     */
+    private static int skipTableName(List<CqlScanner.Token> tokens, int start)
+    {
+        if (start >= tokens.size() || !tokens.get(start).isName())
+        {
+            return -1;
+        }
+        if (start + 2 < tokens.size() && tokens.get(start + 1).is('.') && tokens.get(start + 2).isName())
+        {
+            return start + 3 < tokens.size() ? start + 3 : -1;
+        }
+        return start + 1 < tokens.size() ? start + 1 : -1;
+    }
+
+    private static boolean parseInsertValues(List<CqlScanner.Token> tokens, int open, Map<String, String> values)
+    {
+        List<String> names = new ArrayList<String>();
+        int pos = open + 1;
+        while (pos < tokens.size() && tokens.get(pos).isName())
+        {
+            names.add(tokens.get(pos).getName());
+            pos++;
+            if (pos < tokens.size() && tokens.get(pos).is(','))
+            {
+                pos++;
+            }
+        }
+        if (pos + 2 >= tokens.size() || !tokens.get(pos).is(')') || !tokens.get(pos + 1).is("VALUES")
+            || !tokens.get(pos + 2).is('('))
+        {
+            return false;
+        }
+        List<String> terms = new ArrayList<String>();
+        pos = splitTerms(tokens, pos + 3, terms);
+        if (pos < 0 || terms.size() != names.size())
+        {
+            return false;
+        }
+        for (int i = 0; i < names.size(); i++)
+        {
+            values.put(names.get(i), terms.get(i));
+        }
+        return true;
+    }
+
+    /**
+     * Splits the comma separated terms up to the closing parenthesis.
+     *
+     * @return the index after the closing parenthesis, or {@code -1} if there is none.
+     */
+    private static int splitTerms(List<CqlScanner.Token> tokens, int pos, List<String> terms)
+    {
+        StringBuilder term = new StringBuilder();
+        int depth = 0;
+        for (; pos < tokens.size(); pos++)
+        {
+            CqlScanner.Token token = tokens.get(pos);
+            if (depth == 0 && (token.is(',') || token.is(')')))
+            {
+                terms.add(term.toString());
+                term.setLength(0);
+                if (token.is(')'))
+                {
+                    return pos + 1;
+                }
+                continue;
+            }
+            if (token.is('(') || token.is('[') || token.is('{'))
+            {
+                depth++;
+            } else if (token.is(')') || token.is(']') || token.is('}'))
+            {
+                depth--;
+            }
+            term.append(token.getText()).append(' ');
+        }
+        return -1;
+    }
+
+    private static boolean parseWhere(List<CqlScanner.Token> tokens, int pos, Map<String, String> values)
+    {
+        while (pos + 2 < tokens.size())
+        {
+            CqlScanner.Token name = tokens.get(pos);
+            if (!name.isName() || !tokens.get(pos + 1).is('='))
+            {
+                return false;
+            }
+            StringBuilder value = new StringBuilder();
+            pos += 2;
+            int depth = 0;
+            while (pos < tokens.size() && (depth > 0 || !tokens.get(pos).is("AND")))
+            {
+                CqlScanner.Token token = tokens.get(pos);
+                if (token.is('(') || token.is('[') || token.is('{'))
+                {
+                    depth++;
+                } else if (token.is(')') || token.is(']') || token.is('}'))
+                {
+                    depth--;
+                }
+                value.append(token.getText()).append(' ');
+                pos++;
+            }
+            values.put(name.getName(), value.toString());
+            pos++;
+        }
+        return pos >= tokens.size();
+    }
+
+    /**
+     * Counter updates may not be mixed with other writes in an unlogged batch, so {@code SET c = c + 1} is never
+     * batched.
+     */
+    private static boolean isCounterUpdate(List<CqlScanner.Token> tokens)
+    {
+        for (int i = 0; i + 4 < tokens.size(); i++)
+        {
+            if (tokens.get(i).isName() && tokens.get(i + 1).is('=') && tokens.get(i + 2).isName()
+                && tokens.get(i).getName().equals(tokens.get(i + 2).getName())
+                && (tokens.get(i + 3).is('+') || tokens.get(i + 3).is('-'))
+                && tokens.get(i + 4).getType() == CqlScanner.Type.NUMBER)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int indexOf(List<CqlScanner.Token> tokens, String keyword, int from)
+    {
+        for (int i = from; i < tokens.size(); i++)
+        {
+            if (tokens.get(i).is(keyword))
+            {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The primary key columns of a table.
+     */
+    static final class PrimaryKey
+    {
+        private final List<String> partitionKey;
+
+        private final List<String> clustering;
+
+        /**
+         * @param partitionKey the partition key columns in key order.
+         * @param clustering   the clustering columns in key order.
+         */
+        PrimaryKey(List<String> partitionKey, List<String> clustering)
+        {
+            this.partitionKey = partitionKey;
+            this.clustering = clustering;
+        }
+    }
+}
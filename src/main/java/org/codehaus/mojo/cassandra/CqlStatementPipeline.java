@@ -0,0 +1,192 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Executes a sequence of CQL statements over one or more Thrift connections.
+ * <p/>
+ * With more than one connection, writes ({@code INSERT}, {@code UPDATE}, {@code DELETE} and batches) that are known
+ * to go to a single {@link CqlStatement#getPartition() partition} and sit between two other statements are sent
+ * concurrently: every connection has a thread of its own, and all writes to a partition go to the same connection,
+ * so that they run in script order. At most {@code window} writes are queued for the connections. Every other
+ * statement is a barrier: it only runs once all statements before it have completed. With a single connection every
+ * statement runs in order on the calling thread.
+ */
+final class CqlStatementPipeline
+{
+    private final String rpcAddress;
+
+    private final int rpcPort;
+
+    private final String cqlVersion;
+
+    private final String keyspace;
+
+    private final int connections;
+
+    private final int window;
+
+    private final boolean prepareStatements;
+
+    private final Log log;
+
+    CqlStatementPipeline(String rpcAddress, int rpcPort, String cqlVersion, String keyspace, int connections,
+                         int window, boolean prepareStatements, Log log)
+    {
+        this.rpcAddress = rpcAddress;
+        this.rpcPort = rpcPort;
+        this.cqlVersion = cqlVersion;
+        this.keyspace = StringUtils.isBlank(keyspace) ? null : keyspace;
+        this.connections = Math.max(1, connections);
+        this.window = Math.max(this.connections, window);
+        this.prepareStatements = prepareStatements;
+        this.log = log;
+    }
+
+    /**
+     * Executes the statements.
+     *
+     * @param statements     the statements to execute.
+     * @param collectResults whether to return the results; when {@code false} nothing is retained, so that scripts
+     *                       of any size can be executed.
+     * @return the results, in statement order, or an empty list if the results are not collected.
+     * @throws ThriftApiExecutionException if a statement failed; the message holds the number of the statement.
+     */
+    List<CqlResult> execute(Iterator<CqlStatement> statements, boolean collectResults)
+        throws ThriftApiExecutionException
+    {
+        final List<CqlResult> results = Collections.synchronizedList(new ArrayList<CqlResult>());
+        final List<CqlConnection> pool = new ArrayList<CqlConnection>(connections);
+        final Semaphore inFlight = new Semaphore(window);
+        final AtomicReference<ThriftApiExecutionException> failure =
+            new AtomicReference<ThriftApiExecutionException>();
+        List<ExecutorService> lanes = new ArrayList<ExecutorService>();
+        try
+        {
+            for (int i = 0; i < connections; i++)
+            {
+                pool.add(CqlConnection.open(rpcAddress, rpcPort, cqlVersion, keyspace, prepareStatements));
+                if (connections > 1)
+                {
+                    lanes.add(Executors.newSingleThreadExecutor());
+                }
+            }
+            String currentKeyspace = keyspace;
+            while (statements.hasNext() && failure.get() == null)
+            {
+                final CqlStatement statement = statements.next();
+                final int slot = collectResults ? results.size() : -1;
+                if (collectResults)
+                {
+                    results.add(null);
+                }
+                if (!lanes.isEmpty() && statement.getPartition() != null
+                    && CqlStatements.isWrite(statement.getCql()))
+                {
+                    final String statementKeyspace = currentKeyspace;
+                    final int lane = (statement.getPartition().hashCode() & Integer.MAX_VALUE) % connections;
+                    inFlight.acquire();
+                    lanes.get(lane).execute(new Runnable()
+                    {
+                        public void run()
+                        {
+                            try
+                            {
+                                if (failure.get() == null)
+                                {
+                                    CqlResult result = execute(pool.get(lane), statementKeyspace, statement);
+                                    if (slot >= 0)
+                                    {
+                                        results.set(slot, result);
+                                    }
+                                }
+                            } catch (ThriftApiExecutionException e)
+                            {
+                                failure.compareAndSet(null, e);
+                            } catch (RuntimeException e)
+                            {
+                                failure.compareAndSet(null, new ThriftApiExecutionException(
+                                    statement.describe() + " failed: " + statement.getCql().trim(), e));
+                            } finally
+                            {
+                                inFlight.release();
+                            }
+                        }
+                    });
+                } else
+                {
+                    awaitInFlight(inFlight);
+                    if (failure.get() != null)
+                    {
+                        break;
+                    }
+                    CqlResult result = execute(pool.get(0), currentKeyspace, statement);
+                    if (slot >= 0)
+                    {
+                        results.set(slot, result);
+                    }
+                    String used = CqlStatements.usedKeyspace(statement.getCql());
+                    if (used != null)
+                    {
+                        currentKeyspace = used;
+                    }
+                }
+            }
+            awaitInFlight(inFlight);
+            if (failure.get() != null)
+            {
+                throw failure.get();
+            }
+            return results;
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ThriftApiExecutionException("Interrupted while executing CQL statements", e);
+        } finally
+        {
+            for (ExecutorService lane : lanes)
+            {
+                lane.shutdownNow();
+            }
+            for (CqlConnection connection : pool)
+            {
+                connection.close();
+            }
+        }
+    }
+
+    private void awaitInFlight(Semaphore inFlight) throws InterruptedException
+    {
+        inFlight.acquire(window);
+        inFlight.release(window);
+    }
+
+    private CqlResult execute(CqlConnection connection, String keyspace, CqlStatement statement)
+        throws ThriftApiExecutionException
+    {
+        if (log.isDebugEnabled())
+        {
+            log.debug("Executing cql statement: " + statement.getCql());
+        }
+        try
+        {
+            connection.useKeyspace(keyspace);
+            return connection.execute(statement.getCql());
+        } catch (ThriftApiExecutionException e)
+        {
+            throw new ThriftApiExecutionException(statement.describe() + " failed: " + statement.getCql().trim(),
+                                                  e.getCause());
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package org.codehaus.mojo.cassandra;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the statements of a CQL script one at a time, so that only the statement being read has to be held in
+ * memory whatever the size of the script. Statements are separated by {@code ;}, which is not part of the returned
+ * statements.
+ * <p/>
+ * The script is split by a single pass state machine that knows about {@code '...'} and {@code $$...$$} strings,
+ * {@code "..."} names as well as {@code --}, {@code //} and {@code /* ... *}{@code /} comments, so a {@code ;} in any
+ * of them does not end the statement. The statements are returned as written, comments included.
+ */
+final class CqlStatementReader implements Iterator<String>, Closeable
+{
+    private static final int CODE = 0;
+
+    private static final int SINGLE_QUOTED = 1;
+
+    private static final int DOUBLE_QUOTED = 2;
+
+    private static final int DOLLAR_QUOTED = 3;
+
+    private static final int LINE_COMMENT = 4;
+
+    private static final int BLOCK_COMMENT = 5;
+
+    private final Reader reader;
+
+    private final char[] buffer = new char[8192];
+
+    private final StringBuilder statement = new StringBuilder();
+
+    private int position;
+
+    private int limit;
+
+    private boolean eof;
+
+    private int state = CODE;
+
+    /**
+     * The previous character, or 0 if it cannot start a two character sequence because it opened or closed a
+     * string or comment.
+     */
+    private char previous;
+
+    private String next;
+
+    CqlStatementReader(Reader reader)
+    {
+        this.reader = reader;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UncheckedIOException if the script could not be read.
+     */
+    public boolean hasNext()
+    {
+        if (next == null && !eof)
+        {
+            next = readStatement();
+        }
+        return next != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UncheckedIOException if the script could not be read.
+     */
+    public String next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        String result = next;
+        next = null;
+        return result;
+    }
+
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public void close() throws IOException
+    {
+        reader.close();
+    }
+
+    private String readStatement()
+    {
+        while (fill())
+        {
+            int start = position;
+            int end = scan();
+            if (end >= 0)
+            {
+                statement.append(buffer, start, end - start);
+                position = end + 1;
+                return takeStatement();
+            }
+            statement.append(buffer, start, limit - start);
+            position = limit;
+        }
+        eof = true;
+        return statement.length() > 0 ? takeStatement() : null;
+    }
+
+    /**
+     * Advances the state machine over the buffered characters.
+     *
+     * @return the index of the {@code ;} ending the current statement, or -1 if the buffer does not contain it.
+     */
+    private int scan()
+    {
+        int state = this.state;
+        char previous = this.previous;
+        for (int i = position; i < limit; i++)
+        {
+            char c = buffer[i];
+            switch (state)
+            {
+                case CODE:
+                    if (c == ';')
+                    {
+                        this.state = CODE;
+                        this.previous = 0;
+                        return i;
+                    } else if (c == '\'')
+                    {
+                        state = SINGLE_QUOTED;
+                        c = 0;
+                    } else if (c == '"')
+                    {
+                        state = DOUBLE_QUOTED;
+                        c = 0;
+                    } else if (c == '$' && previous == '$')
+                    {
+                        state = DOLLAR_QUOTED;
+                        c = 0;
+                    } else if ((c == '-' || c == '/') && previous == c)
+                    {
+                        state = LINE_COMMENT;
+                        c = 0;
+                    } else if (c == '*' && previous == '/')
+                    {
+                        state = BLOCK_COMMENT;
+                        c = 0;
+                    }
+                    break;
+                case SINGLE_QUOTED:
+                    // an escaped '' simply leaves and re-enters the string
+                    if (c == '\'')
+                    {
+                        state = CODE;
+                        c = 0;
+                    }
+                    break;
+                case DOUBLE_QUOTED:
+                    if (c == '"')
+                    {
+                        state = CODE;
+                        c = 0;
+                    }
+                    break;
+                case DOLLAR_QUOTED:
+                    if (c == '$' && previous == '$')
+                    {
+                        state = CODE;
+                        c = 0;
+                    }
+                    break;
+                case LINE_COMMENT:
+                    if (c == '\n')
+                    {
+                        state = CODE;
+                    }
+                    break;
+                case BLOCK_COMMENT:
+                    if (c == '/' && previous == '*')
+                    {
+                        state = CODE;
+                        c = 0;
+                    }
+                    break;
+            }
+            previous = c;
+        }
+        this.state = state;
+        this.previous = previous;
+        return -1;
+    }
+
+    private String takeStatement()
+    {
+        String result = statement.toString();
+        statement.setLength(0);
+        return result;
+    }
+
+    private boolean fill()
+    {
+        if (position < limit)
+        {
+            return true;
+        }
+        try
+        {
+            limit = reader.read(buffer);
+        } catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+        position = 0;
+        if (limit < 0)
+        {
+            limit = 0;
+            return false;
+        }
+        return true;
+    }
+}
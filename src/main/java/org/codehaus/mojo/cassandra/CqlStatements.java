@@ -0,0 +1,158 @@
+package org.codehaus.mojo.cassandra;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Lightweight inspection of individual CQL statements, enough to decide how a statement may be scheduled without
+ * fully parsing it.
+ */
+final class CqlStatements
+{
+    /**
+     * Do not instantiate.
+     */
+    private CqlStatements()
+    {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * Returns the first keyword of the statement, upper cased, skipping leading whitespace and comments.
+     *
+     * @param statement the statement.
+     * @return the first keyword or an empty string if the statement has none.
+     */
+    static String firstKeyword(String statement)
+    {
+        int start = skipWhitespaceAndComments(statement, 0);
+        int end = start;
+        while (end < statement.length() && Character.isLetter(statement.charAt(end)))
+        {
+            end++;
+        }
+        return statement.substring(start, end).toUpperCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Returns {@code true} if the statement only writes data and so may run concurrently with the writes around it.
+     * Everything else (schema changes, {@code USE}, reads, ...) has to be treated as a barrier.
+     *
+     * @param statement the statement.
+     * @return {@code true} for {@code INSERT}, {@code UPDATE}, {@code DELETE} and {@code BEGIN ... BATCH}.
+     */
+    static boolean isWrite(String statement)
+    {
+        String keyword = firstKeyword(statement);
+        return "INSERT".equals(keyword) || "UPDATE".equals(keyword) || "DELETE".equals(keyword)
+            || "BEGIN".equals(keyword);
+    }
+
+    /**
+     * Returns the keyspace selected by a {@code USE} statement.
+     *
+     * @param statement the statement.
+     * @return the keyspace name as expected by {@code set_keyspace}, or {@code null} if this is not a {@code USE}
+     *         statement.
+     */
+    static String usedKeyspace(String statement)
+    {
+        if (!"USE".equals(firstKeyword(statement)))
+        {
+            return null;
+        }
+        int start = skipWhitespaceAndComments(statement, skipWhitespaceAndComments(statement, 0) + 3);
+        if (start >= statement.length())
+        {
+            return null;
+        }
+        if (statement.charAt(start) == '"')
+        {
+            int end = statement.indexOf('"', start + 1);
+            return end < 0 ? null : statement.substring(start + 1, end);
+        }
+        int end = start;
+        while (end < statement.length()
+            && (Character.isLetterOrDigit(statement.charAt(end)) || statement.charAt(end) == '_'))
+        {
+            end++;
+        }
+        return end == start ? null : statement.substring(start, end).toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * @param tokens  the tokens of a statement.
+     * @param i       the index of a token, may be out of range.
+     * @param keyword the upper case keyword.
+     * @return {@code true} if there is a token at {@code i} and it is the keyword.
+     */
+    static boolean isKeywordAt(List<CqlScanner.Token> tokens, int i, String keyword)
+    {
+        return i >= 0 && i < tokens.size() && tokens.get(i).is(keyword);
+    }
+
+    /**
+     * Skips an {@code IF EXISTS} or {@code IF NOT EXISTS} clause.
+     *
+     * @param tokens the tokens of a statement.
+     * @param i      the index where the clause may start.
+     * @return the index of the token following the clause, {@code i} if there is no clause.
+     */
+    static int skipIfExists(List<CqlScanner.Token> tokens, int i)
+    {
+        if (isKeywordAt(tokens, i, "IF"))
+        {
+            return i + (isKeywordAt(tokens, i + 1, "NOT") ? 3 : 2);
+        }
+        return i;
+    }
+
+    /**
+     * @param tokens the tokens of a statement.
+     * @param i      the index of a name.
+     * @return {@code true} if the name at {@code i} is qualified by a keyspace, {@code ks.name}.
+     */
+    static boolean isQualifiedName(List<CqlScanner.Token> tokens, int i)
+    {
+        return i + 2 < tokens.size() && tokens.get(i).isName() && tokens.get(i + 1).is('.')
+            && tokens.get(i + 2).isName();
+    }
+
+    /**
+     * @return a keyspace or table name as stored in the schema: unquoted, or lower case if it was not quoted.
+     */
+    static String schemaName(String name)
+    {
+        String trimmed = name.trim();
+        if (trimmed.length() > 1 && trimmed.startsWith("\"") && trimmed.endsWith("\""))
+        {
+            return trimmed.substring(1, trimmed.length() - 1).replace("\"\"", "\"");
+        }
+        return trimmed.toLowerCase(Locale.ENGLISH);
+    }
+
+    private static int skipWhitespaceAndComments(String statement, int pos)
+    {
+        int length = statement.length();
+        while (pos < length)
+        {
+            char c = statement.charAt(pos);
+            if (Character.isWhitespace(c))
+            {
+                pos++;
+            } else if ((c == '-' || c == '/') && pos + 1 < length && statement.charAt(pos + 1) == c)
+            {
+                int eol = statement.indexOf('\n', pos);
+                pos = eol < 0 ? length : eol + 1;
+            } else if (c == '/' && pos + 1 < length && statement.charAt(pos + 1) == '*')
+            {
+                int end = statement.indexOf("*/", pos + 2);
+                pos = end < 0 ? length : end + 2;
+            } else
+            {
+                break;
+            }
+        }
+        return pos;
+    }
+}
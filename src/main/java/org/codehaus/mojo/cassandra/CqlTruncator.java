@@ -0,0 +1,167 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.maven.plugin.logging.Log;
+
+import java.nio.charset.CharacterCodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Truncates tables of a running instance, or cluster, concurrently over several connections.
+ * <p/>
+ * A truncation flushes and snapshots (if {@code auto_snapshot} is on) the table on every node and waits for all of
+ * them, so tables that are already empty, as far as a {@code SELECT ... LIMIT 1} can tell, can be skipped. The
+ * {@code SELECT} reads from every replica, as a replica missing some rows would otherwise have the table skipped with
+ * rows left on the others.
+ */
+class CqlTruncator
+{
+    private final String rpcAddress;
+
+    private final int rpcPort;
+
+    private final String cqlVersion;
+
+    private final int threads;
+
+    private final Log log;
+
+    CqlTruncator(String rpcAddress, int rpcPort, String cqlVersion, int threads, Log log)
+    {
+        this.rpcAddress = rpcAddress;
+        this.rpcPort = rpcPort;
+        this.cqlVersion = cqlVersion;
+        this.threads = Math.max(1, threads);
+        this.log = log;
+    }
+
+    /**
+     * @param keyspace the keyspace, as stored in the schema.
+     * @return the keyspace qualified and quoted names of the tables of the keyspace, empty if it does not exist.
+     * @throws ThriftApiExecutionException if the schema could not be read.
+     */
+    static List<String> tablesOf(CqlConnection connection, String keyspace) throws ThriftApiExecutionException
+    {
+        CqlResult result = connection.execute("SELECT table_name FROM system_schema.tables WHERE keyspace_name = '"
+                                                  + keyspace.replace("'", "''") + "'");
+        List<String> tables = new ArrayList<String>();
+        if (result.getRows() == null)
+        {
+            return tables;
+        }
+        try
+        {
+            for (CqlRow row : result.getRows())
+            {
+                tables.add(TableSnapshot.quote(keyspace) + "."
+                               + TableSnapshot.quote(ByteBufferUtil.string(row.getColumns().get(0).value)));
+            }
+        } catch (CharacterCodingException e)
+        {
+            throw new ThriftApiExecutionException("Could not read the tables of " + keyspace, e);
+        }
+        return tables;
+    }
+
+    /**
+     * @return a new connection to the instance.
+     * @throws ThriftApiExecutionException if the connection could not be set up.
+     */
+    CqlConnection open() throws ThriftApiExecutionException
+    {
+        return CqlConnection.open(rpcAddress, rpcPort, cqlVersion, null, false);
+    }
+
+    /**
+     * Truncates tables.
+     *
+     * @param tables    the keyspace qualified, quoted if need be, names of the tables.
+     * @param skipEmpty whether to leave the tables that hold no rows alone.
+     * @return the number of tables truncated.
+     * @throws ThriftApiExecutionException if a table could not be read or truncated.
+     */
+    int truncate(List<String> tables, final boolean skipEmpty) throws ThriftApiExecutionException
+    {
+        final List<CqlConnection> connections = Collections.synchronizedList(new ArrayList<CqlConnection>());
+        final ThreadLocal<CqlConnection> connection = new ThreadLocal<CqlConnection>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, tables.size())));
+        try
+        {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (final String table : tables)
+            {
+                results.add(executor.submit(new Callable<Boolean>()
+                {
+                    public Boolean call() throws ThriftApiExecutionException
+                    {
+                        try
+                        {
+                            CqlConnection current = connection.get();
+                            if (current == null)
+                            {
+                                current = open();
+                                connections.add(current);
+                                connection.set(current);
+                            }
+                            if (skipEmpty)
+                            {
+                                CqlResult result = current.execute("SELECT * FROM " + table + " LIMIT 1",
+                                                                   ConsistencyLevel.ALL);
+                                if (result.getRows() == null || result.getRows().isEmpty())
+                                {
+                                    log.debug("Skipping " + table + ", it is empty");
+                                    return Boolean.FALSE;
+                                }
+                            }
+                            long start = System.currentTimeMillis();
+                            current.execute("TRUNCATE " + table);
+                            log.debug("Truncated " + table + " in " + (System.currentTimeMillis() - start) + "ms");
+                            return Boolean.TRUE;
+                        } catch (ThriftApiExecutionException e)
+                        {
+                            throw new ThriftApiExecutionException("Could not truncate " + table + ": "
+                                                                      + e.getMessage(), e.getCause());
+                        }
+                    }
+                }));
+            }
+            int truncated = 0;
+            for (Future<Boolean> result : results)
+            {
+                truncated += result.get() ? 1 : 0;
+            }
+            return truncated;
+        } catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof ThriftApiExecutionException)
+            {
+                throw (ThriftApiExecutionException) e.getCause();
+            }
+            throw new ThriftApiExecutionException(e.getCause());
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new ThriftApiExecutionException("Interrupted while truncating tables", e);
+        } finally
+        {
+            executor.shutdownNow();
+            synchronized (connections)
+            {
+                for (CqlConnection open : connections)
+                {
+                    open.close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package org.codehaus.mojo.cassandra;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads CSV records one at a time, as described by RFC 4180: fields may be quoted with {@code "}, quoted fields may
+ * contain delimiters, line breaks and {@code ""} escaped quotes. Records may end with {@code \n} or {@code \r\n}.
+ * Unquoted empty fields are returned as {@code null}, quoted ones as empty strings, so that the two can be told
+ * apart.
+ */
+final class CsvReader implements Iterator<List<String>>, Closeable
+{
+    private final Reader reader;
+
+    private final char delimiter;
+
+    private final StringBuilder field = new StringBuilder();
+
+    private List<String> next;
+
+    private boolean eof;
+
+    /**
+     * The record number of the last record returned, 1-based.
+     */
+    private long record;
+
+    CsvReader(Reader reader, char delimiter)
+    {
+        this.reader = reader instanceof BufferedReader ? reader : new BufferedReader(reader);
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UncheckedIOException if the input could not be read.
+     * @throws IllegalArgumentException if a quoted field is not terminated.
+     */
+    public boolean hasNext()
+    {
+        if (next == null && !eof)
+        {
+            next = readRecord();
+        }
+        return next != null;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UncheckedIOException if the input could not be read.
+     * @throws IllegalArgumentException if a quoted field is not terminated.
+     */
+    public List<String> next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        List<String> result = next;
+        next = null;
+        record++;
+        return result;
+    }
+
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return the number of the last record returned, starting at 1 for the first one.
+     */
+    long getRecordNumber()
+    {
+        return record;
+    }
+
+    public void close() throws IOException
+    {
+        reader.close();
+    }
+
+    private List<String> readRecord()
+    {
+        try
+        {
+            int c = reader.read();
+            if (c < 0)
+            {
+                eof = true;
+                return null;
+            }
+            List<String> fields = new ArrayList<String>();
+            while (true)
+            {
+                boolean quoted = false;
+                field.setLength(0);
+                if (c == '"')
+                {
+                    quoted = true;
+                    c = readQuoted();
+                }
+                while (c >= 0 && c != delimiter && c != '\n')
+                {
+                    if (c != '\r')
+                    {
+                        field.append((char) c);
+                    }
+                    c = reader.read();
+                }
+                fields.add(field.length() == 0 && !quoted ? null : field.toString());
+                if (c != delimiter)
+                {
+                    eof = c < 0;
+                    return fields;
+                }
+                c = reader.read();
+            }
+        } catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a quoted field after its opening quote.
+     *
+     * @return the character following the closing quote.
+     */
+    private int readQuoted() throws IOException
+    {
+        while (true)
+        {
+            int c = reader.read();
+            if (c < 0)
+            {
+                throw new IllegalArgumentException("Unterminated quoted field in record " + (record + 1));
+            }
+            if (c == '"')
+            {
+                c = reader.read();
+                if (c != '"')
+                {
+                    return c;
+                }
+            }
+            field.append((char) c);
+        }
+    }
+}
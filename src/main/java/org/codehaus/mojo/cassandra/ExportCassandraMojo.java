@@ -0,0 +1,128 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Exports the tables of a keyspace of the test instance of Cassandra into snapshots that {@code import-snapshot}
+ * reloads, e.g. to reload the same production-like data into every test instance.
+ * <p/>
+ * Every table is written to {@code exportDirectory/keyspace/table.snapshot}, a compact binary file holding its schema,
+ * the user defined types of the keyspace and the serialized values of its rows, deflated and checksummed. The token
+ * ring is split into {@code exportSplits} ranges per table, scanned by {@code exportThreads} connections at a time.
+ * The snapshots hold the values of the rows only: write times, time-to-live and the options of the tables are not
+ * kept, and tables of counters are skipped.
+ *
+ * @goal export
+ * @threadSafe
+ * @since 3.11.12.2
+ */
+public class ExportCassandraMojo extends AbstractCqlExecMojo
+{
+    /**
+     * The keyspace to export, {@code keyspace} if not set.
+     *
+     * @parameter property="cassandra.export.keyspace"
+     * @since 3.11.12.2
+     */
+    protected String exportKeyspace;
+
+    /**
+     * Comma separated tables to export, all the tables of the keyspace if not set.
+     *
+     * @parameter property="cassandra.export.tables"
+     * @since 3.11.12.2
+     */
+    protected String exportTables;
+
+    /**
+     * The directory the snapshots are written to, in a directory named after the keyspace.
+     *
+     * @parameter property="cassandra.export.directory" default-value="${project.build.directory}/cassandra-export"
+     * @since 3.11.12.2
+     */
+    protected File exportDirectory;
+
+    /**
+     * Number of token ranges scanned concurrently, and of connections.
+     *
+     * @parameter property="cassandra.export.threads" default-value="8"
+     * @since 3.11.12.2
+     */
+    protected int exportThreads = 8;
+
+    /**
+     * Number of token ranges every table is split into, 0 for four per thread.
+     *
+     * @parameter property="cassandra.export.splits" default-value="0"
+     * @since 3.11.12.2
+     */
+    protected int exportSplits;
+
+    /**
+     * Maximum number of rows read by a single query.
+     *
+     * @parameter property="cassandra.export.pageSize" default-value="5000"
+     * @since 3.11.12.2
+     */
+    protected int exportPageSize = 5000;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException
+    {
+        if (skip)
+        {
+            getLog().info("Skipping cassandra: cassandra.skip==true");
+            return;
+        }
+        String name = StringUtils.isBlank(exportKeyspace) ? keyspace : exportKeyspace;
+        if (StringUtils.isBlank(name))
+        {
+            throw new MojoExecutionException("Set exportKeyspace or keyspace");
+        }
+        String exported = CqlStatements.schemaName(name);
+        List<String> tables = new ArrayList<String>();
+        if (StringUtils.isNotBlank(exportTables))
+        {
+            for (String table : exportTables.split(","))
+            {
+                if (StringUtils.isNotBlank(table))
+                {
+                    tables.add(CqlStatements.schemaName(table));
+                }
+            }
+        }
+        File directory = new File(exportDirectory, exported);
+        int threads = Math.max(1, exportThreads);
+        getLog().info("Exporting " + (tables.isEmpty() ? "the tables" : tables) + " of " + exported + " to "
+                          + directory + "...");
+        try
+        {
+            List<File> snapshots = new CqlExporter(rpcAddress, rpcPort, getCqlVersion(), threads,
+                                                   exportSplits > 0 ? exportSplits : threads * 4, exportPageSize,
+                                                   getLog()).export(exported, tables, directory);
+            getLog().info("Exported " + snapshots.size() + " tables to " + directory);
+        } catch (ThriftApiExecutionException taee)
+        {
+            throw new MojoExecutionException(taee.getMessage(), taee);
+        } catch (IllegalArgumentException e)
+        {
+            throw new MojoExecutionException(e.getMessage(), e);
+        } catch (IOException e)
+        {
+            throw new MojoExecutionException("Could not export " + exported, e);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while exporting " + exported, e);
+        }
+    }
+}
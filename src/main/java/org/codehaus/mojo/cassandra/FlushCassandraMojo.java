@@ -18,69 +18,43 @@
  */
 package org.codehaus.mojo.cassandra;
 
-import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.ExecuteException;
-import org.apache.commons.exec.Executor;
-import org.apache.commons.exec.LogOutputStream;
-import org.apache.commons.exec.PumpStreamHandler;
-import org.apache.commons.exec.ShutdownHookProcessDestroyer;
-import org.apache.maven.plugin.MojoExecutionException;
-import org.apache.maven.plugin.MojoFailureException;
-
 import java.io.IOException;
-import java.util.Map;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /**
- * Runs {@code nodetool flush} on a Cassandra instance.
+ * Flushes the memtables of keyspaces, or some of their tables, of a Cassandra instance to SSTables, as
+ * {@code nodetool flush} does.
  *
  * @author stephenc
  * @goal flush
  * @threadSafe
  */
-public class FlushCassandraMojo extends AbstractCassandraMojo
+public class FlushCassandraMojo extends AbstractMaintenanceCassandraMojo
 {
     /**
      * {@inheritDoc}
      */
-    public void execute() throws MojoExecutionException, MojoFailureException
+    protected String getOperation()
     {
-        if (skip)
-        {
-            getLog().info("Skipping cassandra: cassandra.skip==true");
-            return;
-        }
-        try
-        {
-            Map environment = createEnvironmentVars();
-            CommandLine commandLine = newNodetoolCommandLine("flush");
-
-            Executor exec = new DefaultExecutor();
-            exec.setWorkingDirectory(cassandraDir);
-            exec.setProcessDestroyer(new ShutdownHookProcessDestroyer());
-
-            LogOutputStream stdout = new MavenLogOutputStream(getLog());
-            LogOutputStream stderr = new MavenLogOutputStream(getLog());
-
-            try
-            {
-                getLog().debug("Executing command line: " + commandLine);
-
-                exec.setStreamHandler(new PumpStreamHandler(stdout, stderr, System.in));
+        return "Flushed";
+    }
 
-                exec.execute(commandLine, environment);
+    /**
+     * {@inheritDoc}
+     */
+    protected List<String> getDefaultKeyspaces(CassandraJmxClient jmx)
+    {
+        return jmx.getStorageService().getKeyspaces();
+    }
 
-                getLog().info("Flush triggered.");
-            } catch (ExecuteException e)
-            {
-                throw new MojoExecutionException("Command execution failed.", e);
-            } catch (IOException e)
-            {
-                throw new MojoExecutionException("Command execution failed.", e);
-            }
-        } catch (IOException e)
-        {
-            throw new MojoExecutionException(e.getLocalizedMessage(), e);
-        }
+    /**
+     * {@inheritDoc}
+     */
+    protected String execute(CassandraJmxClient jmx, String keyspace, String[] tables)
+        throws IOException, ExecutionException, InterruptedException
+    {
+        jmx.getStorageService().forceKeyspaceFlush(keyspace, tables);
+        return null;
     }
 }
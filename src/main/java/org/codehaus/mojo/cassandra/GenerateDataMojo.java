@@ -0,0 +1,170 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import java.util.List;
+
+/**
+ * Fills a table of the test instance of Cassandra with generated rows, to test access patterns against realistic
+ * volumes of data.
+ * <p/>
+ * The columns of the table are read from its live schema. {@code generatePartitions} partitions of
+ * {@code generateRowsPerPartition} rows are generated with values of every column type but counters and user defined
+ * types, whose sizes follow the configured distributions. The rows only depend on the schema, the parameters and
+ * {@code generateSeed}, so runs are reproducible. They are written as the {@code import} goal writes them, over as
+ * many connections as the instance keeps up with.
+ *
+ * @goal generate-data
+ * @threadSafe
+ * @phase pre-integration-test
+ * @since 3.11.12.2
+ */
+public class GenerateDataMojo extends AbstractCqlExecMojo
+{
+    /**
+     * The table to fill, qualified with its keyspace or in {@code keyspace}.
+     *
+     * @parameter property="cassandra.generate.table"
+     * @required
+     * @since 3.11.12.2
+     */
+    protected String generateTable;
+
+    /**
+     * The number of partitions to generate.
+     *
+     * @parameter property="cassandra.generate.partitions" default-value="1000"
+     * @since 3.11.12.2
+     */
+    protected long generatePartitions = 1000;
+
+    /**
+     * The number of rows of every partition, for tables with clustering columns.
+     *
+     * @parameter property="cassandra.generate.rowsPerPartition" default-value="1"
+     * @since 3.11.12.2
+     */
+    protected int generateRowsPerPartition = 1;
+
+    /**
+     * The seed of the generated values; the same seed generates the same rows.
+     *
+     * @parameter property="cassandra.generate.seed" default-value="0"
+     * @since 3.11.12.2
+     */
+    protected long generateSeed;
+
+    /**
+     * The distribution of the sizes, in characters or bytes, of text and blob partition key values: {@code n} or
+     * {@code fixed(n)}, {@code uniform(min, max)} or {@code gaussian(mean, standardDeviation)}.
+     *
+     * @parameter property="cassandra.generate.keySize" default-value="16"
+     * @since 3.11.12.2
+     */
+    protected String generateKeySize = "16";
+
+    /**
+     * The distribution of the sizes of text and blob clustering column values, as for {@code generateKeySize}.
+     *
+     * @parameter property="cassandra.generate.clusteringKeySize" default-value="16"
+     * @since 3.11.12.2
+     */
+    protected String generateClusteringKeySize = "16";
+
+    /**
+     * The distribution of the sizes of other text and blob values, and of the elements of collections, as for
+     * {@code generateKeySize}.
+     *
+     * @parameter property="cassandra.generate.valueSize" default-value="uniform(16, 256)"
+     * @since 3.11.12.2
+     */
+    protected String generateValueSize = "uniform(16, 256)";
+
+    /**
+     * Maximum number of rows in flight, and of connections.
+     *
+     * @parameter property="cassandra.generate.concurrency" default-value="64"
+     * @since 3.11.12.2
+     */
+    protected int generateConcurrency = 64;
+
+    /**
+     * Writes slower than this, in milliseconds, make the writers back off.
+     *
+     * @parameter property="cassandra.generate.latencyTargetMs" default-value="100"
+     * @since 3.11.12.2
+     */
+    protected long generateLatencyTargetMs = 100;
+
+    /**
+     * Number of times a row that timed out or was refused by an overloaded instance is retried.
+     *
+     * @parameter property="cassandra.generate.retries" default-value="10"
+     * @since 3.11.12.2
+     */
+    protected int generateRetries = 10;
+
+    /**
+     * Interval, in seconds, between progress reports.
+     *
+     * @parameter property="cassandra.generate.progressInterval" default-value="10"
+     * @since 3.11.12.2
+     */
+    protected int generateProgressInterval = 10;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException
+    {
+        if (skip)
+        {
+            getLog().info("Skipping cassandra: cassandra.skip==true");
+            return;
+        }
+        String table = generateTable.indexOf('.') >= 0 || StringUtils.isBlank(keyspace)
+            ? generateTable
+            : keyspace + "." + generateTable;
+        int dot = table.indexOf('.');
+        if (dot < 0)
+        {
+            throw new MojoExecutionException("Qualify generateTable with its keyspace or set keyspace");
+        }
+        try
+        {
+            CqlDataGenerator.Distribution keySize = CqlDataGenerator.Distribution.parse(generateKeySize);
+            CqlDataGenerator.Distribution clusteringKeySize =
+                CqlDataGenerator.Distribution.parse(generateClusteringKeySize);
+            CqlDataGenerator.Distribution valueSize = CqlDataGenerator.Distribution.parse(generateValueSize);
+            List<CqlDataGenerator.ColumnSchema> columns;
+            CqlConnection connection = CqlConnection.open(rpcAddress, rpcPort, getCqlVersion(), null, false);
+            try
+            {
+                columns = CqlDataGenerator.readSchema(connection,
+                                                      CqlStatements.schemaName(table.substring(0, dot)),
+                                                      CqlStatements.schemaName(table.substring(dot + 1)));
+            } finally
+            {
+                connection.close();
+            }
+            if (columns.isEmpty())
+            {
+                throw new MojoExecutionException("Table " + table + " does not exist");
+            }
+            CqlDataGenerator rows = new CqlDataGenerator(columns, generatePartitions, generateRowsPerPartition,
+                                                         generateSeed, keySize, clusteringKeySize, valueSize);
+            getLog().info("Generating " + rows.getRows() + " rows into " + table + " with seed " + generateSeed
+                              + "...");
+            new CqlImporter(rpcAddress, rpcPort, getCqlVersion(), generateConcurrency, generateLatencyTargetMs,
+                            generateRetries, generateProgressInterval * 1000L, getLog()).importRows(table, rows);
+        } catch (ThriftApiExecutionException taee)
+        {
+            throw new MojoExecutionException(taee.getMessage(), taee);
+        } catch (IllegalArgumentException e)
+        {
+            throw new MojoExecutionException(table + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Writes seed data straight into SSTables, offline, bypassing the write path (commit log, memtables, flushes and
+ * compactions) of a running instance.
+ * <p/>
+ * Every table is described by a pair of files in {@code sstableSourceDirectory} sharing a base name: a {@code .cql}
+ * file holding the keyspace qualified {@code CREATE TABLE} statement, preceded by the {@code CREATE TYPE} statements
+ * it needs, and a {@code .csv}, {@code .jsonl} or {@code .json} (JSON lines) data file. Tables are written in
+ * parallel. The SSTables are then moved into the data directory of the table in {@code cassandraDir}, where Cassandra
+ * picks them up when it starts, so this goal is meant to run before {@code start}. The data directory of a table is
+ * named after its id: either the table already exists in {@code cassandraDir}, or its {@code CREATE TABLE}
+ * statement, both here and in the schema loaded later, has to fix the id with {@code WITH id = '...'}. Installing
+ * SSTables into a {@code cassandraDir} that has never been started does not keep {@code start} from treating its
+ * next start as the first one, so the schema is still loaded then and picks up the SSTables.
+ *
+ * @goal generate-sstables
+ * @threadSafe
+ * @phase pre-integration-test
+ * @since 3.11.12.2
+ */
+public class GenerateSSTablesMojo extends AbstractCassandraMojo
+{
+    private static final Pattern SSTABLE_FILE = Pattern.compile("([a-z]+)-(\\d+)-(\\w+)-(.+)");
+
+    /**
+     * The directory holding the table definitions and data files.
+     *
+     * @parameter property="cassandra.sstables.sourceDirectory" default-value="${basedir}/src/cassandra/sstables"
+     * @since 3.11.12.2
+     */
+    protected File sstableSourceDirectory;
+
+    /**
+     * The directory the SSTables are written to before they are moved into {@code cassandraDir}.
+     *
+     * @parameter property="cassandra.sstables.outputDirectory"
+     * default-value="${project.build.directory}/cassandra-sstables"
+     * @since 3.11.12.2
+     */
+    protected File sstableOutputDirectory;
+
+    /**
+     * Whether to move the SSTables into the data directories of their tables in {@code cassandraDir}. When
+     * {@code false} they are left in {@code sstableOutputDirectory}, e.g. to be streamed in with
+     * {@code sstableloader}.
+     *
+     * @parameter property="cassandra.sstables.install" default-value="true"
+     * @since 3.11.12.2
+     */
+    protected boolean sstableInstall = true;
+
+    /**
+     * Number of tables written concurrently, 0 for the number of available processors.
+     *
+     * @parameter property="cassandra.sstables.threads" default-value="0"
+     * @since 3.11.12.2
+     */
+    protected int sstableThreads;
+
+    /**
+     * Amount of data, in megabytes, buffered in memory per table before an SSTable is written.
+     *
+     * @parameter property="cassandra.sstables.bufferSizeMb" default-value="64"
+     * @since 3.11.12.2
+     */
+    protected int sstableBufferSizeMb = 64;
+
+    /**
+     * Charset of the data files. If not specified the system default encoding will be used.
+     *
+     * @parameter property="cassandra.sstables.encoding"
+     * @since 3.11.12.2
+     */
+    protected String sstableEncoding = Charset.defaultCharset().name();
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException
+    {
+        if (skip)
+        {
+            getLog().info("Skipping cassandra: cassandra.skip==true");
+            return;
+        }
+        File[] schemas = sstableSourceDirectory.listFiles(new FileFilter()
+        {
+            public boolean accept(File file)
+            {
+                return file.isFile() && file.getName().endsWith(".cql");
+            }
+        });
+        if (schemas == null || schemas.length == 0)
+        {
+            getLog().info("No table definitions found in " + sstableSourceDirectory + ".");
+            return;
+        }
+        Arrays.sort(schemas);
+        final IPartitioner partitioner = getPartitioner();
+        int threads = Math.min(schemas.length,
+                               sstableThreads > 0 ? sstableThreads : Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try
+        {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (final File schema : schemas)
+            {
+                final File data = dataFileOf(schema);
+                results.add(executor.submit(new Callable<String>()
+                {
+                    public String call() throws Exception
+                    {
+                        return generate(schema, data, partitioner);
+                    }
+                }));
+            }
+            for (Future<String> result : results)
+            {
+                getLog().info(result.get());
+            }
+        } catch (ExecutionException e)
+        {
+            throw new MojoExecutionException(e.getCause().getMessage(), e.getCause());
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while generating SSTables", e);
+        } finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private File dataFileOf(File schema) throws MojoExecutionException
+    {
+        String base = schema.getName().substring(0, schema.getName().length() - ".cql".length());
+        for (String extension : new String[]{".csv", ".jsonl", ".json"})
+        {
+            File data = new File(schema.getParentFile(), base + extension);
+            if (data.isFile())
+            {
+                return data;
+            }
+        }
+        throw new MojoExecutionException("No " + base + ".csv, " + base + ".jsonl or " + base + ".json data file for "
+                                             + schema);
+    }
+
+    /**
+     * Writes and installs the SSTables of one table.
+     *
+     * @return a summary, to be logged.
+     */
+    private String generate(File schema, File data, IPartitioner partitioner) throws IOException
+    {
+        CqlSSTableGenerator generator;
+        try
+        {
+            generator = new CqlSSTableGenerator(FileUtils.fileRead(schema, sstableEncoding));
+        } catch (IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException(schema + ": " + e.getMessage(), e);
+        }
+        String name = generator.getKeyspace() + "." + generator.getTable();
+        File output = new File(new File(sstableOutputDirectory, generator.getKeyspace()), generator.getTable());
+        FileUtils.deleteDirectory(output);
+        long start = System.currentTimeMillis();
+        long rows = generator.generate(openData(data), !data.getName().endsWith(".json") && !data.getName()
+            .endsWith(".jsonl"), output, partitioner, sstableBufferSizeMb);
+        String summary = "Wrote " + rows + " rows of " + name + " in " + (System.currentTimeMillis() - start) + "ms";
+        if (!sstableInstall)
+        {
+            return summary + " to " + output + ".";
+        }
+        File target = tableDirectoryOf(cassandraDir, generator);
+        if (target == null)
+        {
+            getLog().warn(name + " does not exist in " + cassandraDir + " and its CREATE TABLE statement does not "
+                              + "fix its id, e.g. WITH id = '" + UUID.nameUUIDFromBytes(name.getBytes("UTF-8"))
+                              + "'. Its SSTables are left in " + output + ".");
+            return summary + " to " + output + ".";
+        }
+        install(output, target, false);
+        return summary + " to " + target + ".";
+    }
+
+    private Reader openData(File data) throws IOException
+    {
+        FileInputStream in = new FileInputStream(data);
+        try
+        {
+            return new InputStreamReader(in, sstableEncoding);
+        } catch (IOException e)
+        {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the data directory of the table in {@code cassandraDir}, or {@code null} if it cannot be determined.
+     */
+    static File tableDirectoryOf(File cassandraDir, CqlSSTableGenerator generator) throws IOException
+    {
+        File keyspaceDir = new File(new File(cassandraDir, "data"), generator.getKeyspace());
+        String id = generator.getTableId();
+        if (id != null)
+        {
+            File target = new File(keyspaceDir, generator.getTable() + "-" + id);
+            if (!target.isDirectory() && !target.mkdirs())
+            {
+                throw new IOException("Could not create " + target);
+            }
+            return target;
+        }
+        final String prefix = generator.getTable() + "-";
+        File[] existing = keyspaceDir.listFiles(new FileFilter()
+        {
+            public boolean accept(File file)
+            {
+                return file.isDirectory() && file.getName().startsWith(prefix)
+                    && file.getName().length() == prefix.length() + 32;
+            }
+        });
+        if (existing == null || existing.length == 0)
+        {
+            return null;
+        }
+        if (existing.length > 1)
+        {
+            // the table was dropped and recreated, the most recent directory is the live one
+            Arrays.sort(existing, new Comparator<File>()
+            {
+                public int compare(File a, File b)
+                {
+                    return Long.valueOf(b.lastModified()).compareTo(a.lastModified());
+                }
+            });
+        }
+        return existing[0];
+    }
+
+    /**
+     * Moves, or hard links, the SSTables into the data directory, numbering them after the SSTables already there.
+     *
+     * @return the number of files installed.
+     */
+    static int install(File output, File target, boolean link) throws IOException
+    {
+        int generation = 0;
+        String[] names = target.list();
+        for (String name : names == null ? new String[0] : names)
+        {
+            Matcher matcher = SSTABLE_FILE.matcher(name);
+            if (matcher.matches())
+            {
+                generation = Math.max(generation, Integer.parseInt(matcher.group(2)));
+            }
+        }
+        Map<Integer, Integer> generations = new TreeMap<Integer, Integer>();
+        int count = 0;
+        String[] files = output.list();
+        Arrays.sort(files);
+        for (String name : files)
+        {
+            Matcher matcher = SSTABLE_FILE.matcher(name);
+            if (!matcher.matches())
+            {
+                continue;
+            }
+            Integer from = Integer.valueOf(matcher.group(2));
+            Integer to = generations.get(from);
+            if (to == null)
+            {
+                to = ++generation;
+                generations.put(from, to);
+            }
+            File installed = new File(target, matcher.group(1) + "-" + to + "-" + matcher.group(3) + "-"
+                + matcher.group(4));
+            if (link)
+            {
+                Files.createLink(installed.toPath(), new File(output, name).toPath());
+            } else
+            {
+                FileUtils.rename(new File(output, name), installed);
+            }
+            count++;
+        }
+        return count;
+    }
+}
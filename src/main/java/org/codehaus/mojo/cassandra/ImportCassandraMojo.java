@@ -0,0 +1,199 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.codehaus.plexus.util.IOUtil;
+
+import java.io.File;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Imports a CSV or JSON lines data file into a table of the test instance of Cassandra.
+ * <p/>
+ * Rows are read one at a time and written with a prepared {@code INSERT ... JSON} statement over up to
+ * {@code importConcurrency} connections. The number of rows in flight adapts to the observed latency, time-outs and
+ * overload, so the import runs about as fast as the instance can take it without failing. Progress is reported in
+ * rows and kilobytes per second.
+ *
+ * @goal import
+ * @threadSafe
+ * @phase pre-integration-test
+ * @since 3.11.12.2
+ */
+public class ImportCassandraMojo extends AbstractCqlExecMojo
+{
+    /**
+     * The data file to import.
+     *
+     * @parameter property="cassandra.import.file"
+     * @required
+     * @since 3.11.12.2
+     */
+    protected File importFile;
+
+    /**
+     * The table to import into, qualified with its keyspace or in {@code keyspace}.
+     *
+     * @parameter property="cassandra.import.table"
+     * @required
+     * @since 3.11.12.2
+     */
+    protected String importTable;
+
+    /**
+     * The format of {@code importFile}, {@code csv} or {@code json} for one JSON object per line. When not set it
+     * is derived from the extension of the file: {@code .json} and {@code .jsonl} files are JSON lines, anything else
+     * is CSV.
+     *
+     * @parameter property="cassandra.import.format"
+     * @since 3.11.12.2
+     */
+    protected String importFormat;
+
+    /**
+     * The field delimiter of CSV files.
+     *
+     * @parameter property="cassandra.import.delimiter" default-value=","
+     * @since 3.11.12.2
+     */
+    protected String importDelimiter = ",";
+
+    /**
+     * Whether the first record of CSV files is a header naming the columns.
+     *
+     * @parameter property="cassandra.import.header" default-value="true"
+     * @since 3.11.12.2
+     */
+    protected boolean importHeader = true;
+
+    /**
+     * Comma separated columns the fields of CSV files are written to, in field order; an empty entry skips the
+     * field. Overrides the header.
+     *
+     * @parameter property="cassandra.import.columns"
+     * @since 3.11.12.2
+     */
+    protected String importColumns;
+
+    /**
+     * Maximum number of rows in flight, and of connections.
+     *
+     * @parameter property="cassandra.import.concurrency" default-value="64"
+     * @since 3.11.12.2
+     */
+    protected int importConcurrency = 64;
+
+    /**
+     * Writes slower than this, in milliseconds, make the import back off.
+     *
+     * @parameter property="cassandra.import.latencyTargetMs" default-value="100"
+     * @since 3.11.12.2
+     */
+    protected long importLatencyTargetMs = 100;
+
+    /**
+     * Number of times a row that timed out or was refused by an overloaded instance is retried.
+     *
+     * @parameter property="cassandra.import.retries" default-value="10"
+     * @since 3.11.12.2
+     */
+    protected int importRetries = 10;
+
+    /**
+     * Interval, in seconds, between progress reports.
+     *
+     * @parameter property="cassandra.import.progressInterval" default-value="10"
+     * @since 3.11.12.2
+     */
+    protected int importProgressInterval = 10;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException
+    {
+        if (skip)
+        {
+            getLog().info("Skipping cassandra: cassandra.skip==true");
+            return;
+        }
+        String table = importTable.indexOf('.') >= 0 || StringUtils.isBlank(keyspace)
+            ? importTable
+            : keyspace + "." + importTable;
+        if (table.indexOf('.') < 0)
+        {
+            throw new MojoExecutionException("Qualify importTable with its keyspace or set keyspace");
+        }
+        if (importDelimiter == null || importDelimiter.length() != 1)
+        {
+            throw new MojoExecutionException("importDelimiter must be a single character");
+        }
+        boolean csv = isCsv();
+        List<String> columns = parseColumns();
+        if (csv && !importHeader && columns == null)
+        {
+            throw new MojoExecutionException("Set importColumns when the CSV file has no header");
+        }
+        getLog().info("Importing " + importFile + " into " + table + "...");
+        Reader reader = openFile(importFile);
+        BulkLoadMode bulkLoad = null;
+        boolean loaded = false;
+        try
+        {
+            bulkLoad = beginBulkLoad();
+            JsonRows rows = new JsonRows(reader, csv, importDelimiter.charAt(0), importHeader, columns);
+            new CqlImporter(rpcAddress, rpcPort, getCqlVersion(), importConcurrency, importLatencyTargetMs,
+                            importRetries, importProgressInterval * 1000L, getLog()).importRows(table, rows);
+            loaded = true;
+        } catch (ThriftApiExecutionException taee)
+        {
+            throw new MojoExecutionException(taee.getMessage(), taee);
+        } catch (IllegalArgumentException e)
+        {
+            throw new MojoExecutionException(importFile + ": " + e.getMessage(), e);
+        } catch (UncheckedIOException e)
+        {
+            throw new MojoExecutionException("Could not read " + importFile, e.getCause());
+        } finally
+        {
+            IOUtil.close(reader);
+            endBulkLoad(bulkLoad, loaded);
+        }
+    }
+
+    private boolean isCsv() throws MojoExecutionException
+    {
+        if (StringUtils.isBlank(importFormat))
+        {
+            String name = importFile.getName();
+            return !name.endsWith(".json") && !name.endsWith(".jsonl");
+        }
+        if ("csv".equalsIgnoreCase(importFormat))
+        {
+            return true;
+        }
+        if ("json".equalsIgnoreCase(importFormat))
+        {
+            return false;
+        }
+        throw new MojoExecutionException("Unknown importFormat " + importFormat + ", use csv or json");
+    }
+
+    private List<String> parseColumns()
+    {
+        if (StringUtils.isBlank(importColumns))
+        {
+            return null;
+        }
+        List<String> columns = new ArrayList<String>();
+        for (String column : importColumns.split(",", -1))
+        {
+            columns.add(StringUtils.isBlank(column) ? null : column.trim());
+        }
+        return columns;
+    }
+}
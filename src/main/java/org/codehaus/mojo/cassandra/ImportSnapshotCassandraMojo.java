@@ -0,0 +1,272 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.dht.IPartitioner;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.codehaus.plexus.util.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reloads the table snapshots written by {@code export} into the test instance of Cassandra.
+ * <p/>
+ * With {@code importSnapshotMode} {@code write}, the default, the rows are written with prepared {@code INSERT}
+ * statements of the columns that are set, over as many connections as the instance keeps up with, as {@code import}
+ * writes them; the keyspace, the user defined types and the tables are created first if they do not exist. With
+ * {@code sstables} they are written into SSTables, offline, and moved into the data directories of the tables in
+ * {@code cassandraDir}, as {@code generate-sstables} does, so that mode is meant to run before {@code start}: the
+ * tables have to exist in {@code cassandraDir} already or be created later with the id they had when exported, as
+ * the {@code CREATE TABLE} statements logged then give it.
+ *
+ * @goal import-snapshot
+ * @threadSafe
+ * @phase pre-integration-test
+ * @since 3.11.12.2
+ */
+public class ImportSnapshotCassandraMojo extends AbstractCqlExecMojo
+{
+    /**
+     * The snapshot, or the directory searched for {@code .snapshot} files, to import.
+     *
+     * @parameter property="cassandra.importSnapshot.directory"
+     * default-value="${project.build.directory}/cassandra-export"
+     * @since 3.11.12.2
+     */
+    protected File importSnapshotDirectory;
+
+    /**
+     * The keyspace to import into, the keyspace the tables were exported from if not set.
+     *
+     * @parameter property="cassandra.importSnapshot.keyspace"
+     * @since 3.11.12.2
+     */
+    protected String importSnapshotKeyspace;
+
+    /**
+     * {@code write} to write the rows into the running instance, or {@code sstables} to write them into SSTables of
+     * an instance that is not started yet.
+     *
+     * @parameter property="cassandra.importSnapshot.mode" default-value="write"
+     * @since 3.11.12.2
+     */
+    protected String importSnapshotMode = "write";
+
+    /**
+     * Maximum number of rows in flight, and of connections, in {@code write} mode.
+     *
+     * @parameter property="cassandra.importSnapshot.concurrency" default-value="64"
+     * @since 3.11.12.2
+     */
+    protected int importSnapshotConcurrency = 64;
+
+    /**
+     * Writes slower than this, in milliseconds, make the import back off, in {@code write} mode.
+     *
+     * @parameter property="cassandra.importSnapshot.latencyTargetMs" default-value="100"
+     * @since 3.11.12.2
+     */
+    protected long importSnapshotLatencyTargetMs = 100;
+
+    /**
+     * Number of times a row that timed out or was refused by an overloaded instance is retried, in {@code write} mode.
+     *
+     * @parameter property="cassandra.importSnapshot.retries" default-value="10"
+     * @since 3.11.12.2
+     */
+    protected int importSnapshotRetries = 10;
+
+    /**
+     * Interval, in seconds, between progress reports, in {@code write} mode.
+     *
+     * @parameter property="cassandra.importSnapshot.progressInterval" default-value="10"
+     * @since 3.11.12.2
+     */
+    protected int importSnapshotProgressInterval = 10;
+
+    /**
+     * The directory the SSTables are written to before they are moved into {@code cassandraDir}, in {@code sstables}
+     * mode.
+     *
+     * @parameter property="cassandra.importSnapshot.sstableDirectory"
+     * default-value="${project.build.directory}/cassandra-sstables"
+     * @since 3.11.12.2
+     */
+    protected File importSnapshotSSTableDirectory;
+
+    /**
+     * Amount of data, in megabytes, buffered in memory before an SSTable is written, in {@code sstables} mode.
+     *
+     * @parameter property="cassandra.importSnapshot.bufferSizeMb" default-value="64"
+     * @since 3.11.12.2
+     */
+    protected int importSnapshotBufferSizeMb = 64;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException
+    {
+        if (skip)
+        {
+            getLog().info("Skipping cassandra: cassandra.skip==true");
+            return;
+        }
+        boolean sstables = "sstables".equalsIgnoreCase(importSnapshotMode);
+        if (!sstables && !"write".equalsIgnoreCase(importSnapshotMode))
+        {
+            throw new MojoExecutionException("importSnapshotMode must be write or sstables, not " + importSnapshotMode);
+        }
+        List<File> snapshots = listSnapshots(importSnapshotDirectory);
+        if (snapshots.isEmpty())
+        {
+            getLog().info("No table snapshots found in " + importSnapshotDirectory + ".");
+            return;
+        }
+        IPartitioner partitioner = sstables ? getPartitioner() : null;
+        BulkLoadMode bulkLoad = sstables ? null : beginBulkLoad();
+        boolean loaded = false;
+        try
+        {
+            for (File snapshot : snapshots)
+            {
+                importSnapshot(snapshot, sstables, partitioner);
+            }
+            loaded = true;
+        } finally
+        {
+            endBulkLoad(bulkLoad, loaded);
+        }
+    }
+
+    private void importSnapshot(File snapshot, boolean sstables, IPartitioner partitioner)
+        throws MojoExecutionException
+    {
+        TableSnapshot.Reader rows;
+        try
+        {
+            rows = new TableSnapshot.Reader(snapshot);
+        } catch (IOException e)
+        {
+            throw new MojoExecutionException("Could not read " + snapshot, e);
+        }
+        TableSnapshot.Schema schema = rows.getSchema();
+        String target = StringUtils.isBlank(importSnapshotKeyspace)
+            ? schema.getKeyspace()
+            : CqlStatements.schemaName(importSnapshotKeyspace);
+        try
+        {
+            if (sstables)
+            {
+                generate(rows, target, partitioner);
+            } else
+            {
+                write(rows, target);
+            }
+        } catch (ThriftApiExecutionException taee)
+        {
+            throw new MojoExecutionException(snapshot + ": " + taee.getMessage(), taee);
+        } catch (IllegalArgumentException e)
+        {
+            throw new MojoExecutionException(snapshot + ": " + e.getMessage(), e);
+        } catch (UncheckedIOException e)
+        {
+            throw new MojoExecutionException("Could not read " + snapshot, e.getCause());
+        } catch (IOException e)
+        {
+            throw new MojoExecutionException("Could not import " + snapshot, e);
+        } finally
+        {
+            try
+            {
+                rows.close();
+            } catch (IOException e)
+            {
+                getLog().debug("Could not close " + snapshot, e);
+            }
+        }
+    }
+
+    private void write(TableSnapshot.Reader rows, String keyspace) throws ThriftApiExecutionException
+    {
+        TableSnapshot.Schema schema = rows.getSchema();
+        CqlConnection connection = CqlConnection.open(rpcAddress, rpcPort, getCqlVersion(), null, false);
+        try
+        {
+            connection.execute("CREATE KEYSPACE IF NOT EXISTS " + TableSnapshot.quote(keyspace) + " WITH replication "
+                                   + "= {'class': 'SimpleStrategy', 'replication_factor': 1}");
+            for (String createType : schema.createTypes(keyspace))
+            {
+                connection.execute(createType);
+            }
+            connection.execute(schema.createTable(keyspace));
+        } finally
+        {
+            connection.close();
+        }
+        getLog().info("Importing " + schema.getKeyspace() + "." + schema.getTable() + " into " + keyspace + "...");
+        new CqlImporter(rpcAddress, rpcPort, getCqlVersion(), importSnapshotConcurrency, importSnapshotLatencyTargetMs,
+                        importSnapshotRetries, importSnapshotProgressInterval * 1000L, getLog())
+            .importRows(rows.toInserts(keyspace));
+    }
+
+    private void generate(TableSnapshot.Reader rows, String keyspace, IPartitioner partitioner) throws IOException
+    {
+        TableSnapshot.Schema schema = rows.getSchema();
+        String createTable = schema.createTable(keyspace);
+        StringBuilder statements = new StringBuilder();
+        for (String createType : schema.createTypes(keyspace))
+        {
+            statements.append(createType).append(";\n");
+        }
+        CqlSSTableGenerator generator = new CqlSSTableGenerator(statements.append(createTable).append(';').toString());
+        String name = keyspace + "." + schema.getTable();
+        File output = new File(new File(importSnapshotSSTableDirectory, keyspace), schema.getTable());
+        FileUtils.deleteDirectory(output);
+        long start = System.currentTimeMillis();
+        long count = generator.generate(rows, output, partitioner, importSnapshotBufferSizeMb);
+        String summary = "Wrote " + count + " rows of " + name + " in " + (System.currentTimeMillis() - start) + "ms";
+        File target = GenerateSSTablesMojo.tableDirectoryOf(cassandraDir, generator);
+        if (target == null)
+        {
+            getLog().warn(name + " does not exist in " + cassandraDir + " and was exported from another keyspace, so "
+                              + "its id is unknown. Its SSTables are left in " + output + ".");
+            getLog().info(summary + " to " + output + ".");
+            return;
+        }
+        GenerateSSTablesMojo.install(output, target, false);
+        getLog().info(summary + " to " + target + ". Create the table, if need be, with " + createTable);
+    }
+
+    private static List<File> listSnapshots(File directory)
+    {
+        List<File> snapshots = new ArrayList<File>();
+        if (directory.isFile())
+        {
+            snapshots.add(directory);
+            return snapshots;
+        }
+        File[] files = directory.listFiles();
+        if (files == null)
+        {
+            return snapshots;
+        }
+        for (File file : files)
+        {
+            if (file.isDirectory())
+            {
+                snapshots.addAll(listSnapshots(file));
+            } else if (file.getName().endsWith(TableSnapshot.EXTENSION))
+            {
+                snapshots.add(file);
+            }
+        }
+        Collections.sort(snapshots);
+        return snapshots;
+    }
+}
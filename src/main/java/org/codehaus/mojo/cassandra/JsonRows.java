@@ -0,0 +1,195 @@
+package org.codehaus.mojo.cassandra;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads the rows of a CSV or JSON lines data file as JSON objects, as taken by {@code INSERT ... JSON}.
+ * <p/>
+ * Every line of a JSON lines file is a JSON object and is returned as is; blank lines are skipped. A CSV record is
+ * turned into a JSON object whose members are named after the columns and whose values are JSON strings, which
+ * Cassandra converts to the column types; this suits all types but collections, tuples and user defined types, use
+ * JSON lines for those. Empty unquoted fields are {@code null}.
+ */
+final class JsonRows implements CqlImporter.Rows, Closeable
+{
+    private final CsvReader records;
+
+    private final BufferedReader lines;
+
+    private final List<String> columns;
+
+    private String next;
+
+    private long row;
+
+    /**
+     * @param data      the data.
+     * @param csv       {@code true} for CSV, {@code false} for JSON lines.
+     * @param delimiter the CSV field delimiter.
+     * @param header    whether the first CSV record is a header naming the columns.
+     * @param columns   the columns the CSV fields are written to, {@code null} to take the header; fields whose
+     *                  column is {@code null} are skipped.
+     */
+    JsonRows(Reader data, boolean csv, char delimiter, boolean header, List<String> columns)
+    {
+        this.records = csv ? new CsvReader(data, delimiter) : null;
+        this.lines = csv ? null : new BufferedReader(data);
+        List<String> names = csv && header && records.hasNext() ? records.next() : null;
+        this.columns = columns != null ? columns : names;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws UncheckedIOException if the data could not be read.
+     * @throws IllegalArgumentException if a CSV record is malformed, the message holds its number.
+     */
+    public boolean hasNext()
+    {
+        while (next == null)
+        {
+            if (records != null)
+            {
+                if (!records.hasNext())
+                {
+                    return false;
+                }
+                List<String> values = records.next();
+                if (values.size() > 1 || values.get(0) != null)
+                {
+                    try
+                    {
+                        next = toJson(columns, values);
+                    } catch (IllegalArgumentException e)
+                    {
+                        throw new IllegalArgumentException("Record " + records.getRecordNumber() + ": "
+                                                               + e.getMessage(), e);
+                    }
+                }
+            } else
+            {
+                String line;
+                try
+                {
+                    line = lines.readLine();
+                } catch (IOException e)
+                {
+                    throw new UncheckedIOException(e);
+                }
+                if (line == null)
+                {
+                    return false;
+                }
+                row++;
+                if (line.trim().length() > 0)
+                {
+                    next = line;
+                }
+            }
+        }
+        return true;
+    }
+
+    public String next()
+    {
+        if (!hasNext())
+        {
+            throw new NoSuchElementException();
+        }
+        String result = next;
+        next = null;
+        return result;
+    }
+
+    public void remove()
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return the number of the record, or line, of the last row returned, for error messages.
+     */
+    public long getRowNumber()
+    {
+        return records != null ? records.getRecordNumber() : row;
+    }
+
+    public void close() throws IOException
+    {
+        if (records != null)
+        {
+            records.close();
+        } else
+        {
+            lines.close();
+        }
+    }
+
+    /**
+     * Turns a CSV record into a JSON object.
+     *
+     * @param columns the names of the columns, {@code null} for fields to skip.
+     * @param values  the values of the record, {@code null} for missing values.
+     * @return the JSON object.
+     * @throws IllegalArgumentException if there are more values than columns.
+     */
+    static String toJson(List<String> columns, List<String> values)
+    {
+        if (columns == null || values.size() > columns.size())
+        {
+            throw new IllegalArgumentException("Record has " + values.size() + " values for "
+                                                   + (columns == null ? 0 : columns.size()) + " columns");
+        }
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < values.size(); i++)
+        {
+            if (columns.get(i) == null)
+            {
+                continue;
+            }
+            if (json.length() > 1)
+            {
+                json.append(", ");
+            }
+            appendString(json, columns.get(i));
+            json.append(": ");
+            if (values.get(i) == null)
+            {
+                json.append("null");
+            } else
+            {
+                appendString(json, values.get(i));
+            }
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * Appends a JSON string.
+     */
+    static void appendString(StringBuilder json, String value)
+    {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+            {
+                json.append('\\').append(c);
+            } else if (c < 0x20)
+            {
+                json.append(String.format("\\u%04x", (int) c));
+            } else
+            {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
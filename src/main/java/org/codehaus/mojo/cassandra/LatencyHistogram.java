@@ -0,0 +1,106 @@
+package org.codehaus.mojo.cassandra;
+
+/**
+ * Records latencies, in microseconds, in log-linear buckets, as HdrHistogram does with two significant digits: values
+ * below 128 are recorded exactly and every power of two above is split into 128 buckets, so percentiles are within 1%
+ * of the recorded values whatever their range, in a fixed amount of memory.
+ * <p/>
+ * A histogram is not thread-safe: every thread records into its own and the histograms are added up at the end.
+ */
+final class LatencyHistogram
+{
+    private static final int SUB_BUCKET_BITS = 7;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final long[] counts = new long[SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS];
+
+    private long count;
+
+    private long sum;
+
+    private long max;
+
+    /**
+     * @param value the latency, negative values are recorded as 0.
+     */
+    void record(long value)
+    {
+        long recorded = Math.max(0, value);
+        counts[indexOf(recorded)]++;
+        count++;
+        sum += recorded;
+        max = Math.max(max, recorded);
+    }
+
+    /**
+     * Adds the values recorded by another histogram to this one.
+     */
+    void add(LatencyHistogram other)
+    {
+        for (int i = 0; i < counts.length; i++)
+        {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    long getCount()
+    {
+        return count;
+    }
+
+    long getMax()
+    {
+        return max;
+    }
+
+    double getMean()
+    {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @param percentile the percentile, e.g. 99.9.
+     * @return the highest value equivalent to the value at the percentile, 0 when nothing was recorded.
+     */
+    long getValueAtPercentile(double percentile)
+    {
+        long target = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length && count > 0; i++)
+        {
+            seen += counts[i];
+            if (seen >= target)
+            {
+                return Math.min(max, highestValueOf(i));
+            }
+        }
+        return max;
+    }
+
+    private static int indexOf(long value)
+    {
+        if (value < SUB_BUCKETS)
+        {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    private static long highestValueOf(int index)
+    {
+        if (index < SUB_BUCKETS)
+        {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+}
@@ -42,6 +42,15 @@ public class LoadCassandraMojo extends AbstractCqlLoadMojo
             return;
         }
 
-        execCqlFile();
+        BulkLoadMode bulkLoad = beginBulkLoad();
+        boolean loaded = false;
+        try
+        {
+            execCqlFile();
+            loaded = true;
+        } finally
+        {
+            endBulkLoad(bulkLoad, loaded);
+        }
     }
 }
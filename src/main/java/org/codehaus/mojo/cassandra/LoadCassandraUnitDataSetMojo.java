@@ -20,9 +20,6 @@ package org.codehaus.mojo.cassandra;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
-import org.cassandraunit.DataLoader;
-import org.cassandraunit.dataset.FileDataSet;
-import org.cassandraunit.dataset.ParseException;
 
 import java.io.File;
 
@@ -39,12 +36,39 @@ public class LoadCassandraUnitDataSetMojo
     extends AbstractCassandraMojo
 {
     /**
-     * The CassandraUnit dataSet to load.
+     * The CassandraUnit dataSet to load, or a directory of dataSets.
      *
      * @parameter default-value="${basedir}/src/test/resources/dataSet.xml"
      */
     protected File cuDataSet;
 
+    /**
+     * CassandraUnit dataSets, or directories of dataSets, to load instead of {@code cuDataSet}. DataSets of
+     * different keyspaces are loaded concurrently.
+     *
+     * @parameter
+     * @since 3.11.12.2
+     */
+    protected File[] cuDataSets;
+
+    /**
+     * Number of CassandraUnit dataSets parsed or loaded at the same time, 0 for the number of available processors.
+     *
+     * @parameter property="cassandra.cuload.threads" default-value="0"
+     * @since 3.11.12.2
+     */
+    protected int cuLoadThreads;
+
+    /**
+     * When {@code true}, CassandraUnit dataSets are read and written one row at a time, so that dataSets of any size
+     * can be loaded in bounded memory, instead of being parsed whole by CassandraUnit. The properties of keyspaces
+     * and column families must precede their column families and rows.
+     *
+     * @parameter property="cassandra.cuload.streaming" default-value="false"
+     * @since 3.11.12.2
+     */
+    protected boolean cuLoadStreaming;
+
     /**
      * Whether to ignore errors when loading the dataSet.
      *
@@ -64,35 +88,35 @@ public class LoadCassandraUnitDataSetMojo
             return;
         }
 
-        if ( !cuDataSet.isFile() )
+        File[] dataSets = cuDataSets != null && cuDataSets.length > 0 ? cuDataSets : new File[]{ cuDataSet };
+        for ( File dataSet : dataSets )
         {
-            if ( cuLoadFailureIgnore )
-            {
-                getLog().error( "CassandraUnit dataSet " + cuDataSet + " does not exist."
-                                    + ". Ignoring as cuLoadFailureIgnore is true" );
-                return;
-            }
-            else
+            if ( !dataSet.exists() )
             {
-                throw new MojoFailureException( "CassandraUnit dataSet " + cuDataSet + " does not exist." );
+                if ( cuLoadFailureIgnore )
+                {
+                    getLog().error( "CassandraUnit dataSet " + dataSet + " does not exist."
+                                        + ". Ignoring as cuLoadFailureIgnore is true" );
+                    return;
+                }
+                else
+                {
+                    throw new MojoFailureException( "CassandraUnit dataSet " + dataSet + " does not exist." );
+                }
             }
         }
 
+        BulkLoadMode bulkLoad = beginBulkLoad();
+        boolean loaded = false;
         try
         {
-            DataLoader dataLoader = new DataLoader( "cassandraUnitCluster", rpcAddress + ":" + rpcPort );
-            dataLoader.load( new FileDataSet( cuDataSet.getAbsolutePath() ) );
+            loadCassandraUnitDataSets( dataSets, null, cuLoadThreads, cuLoadStreaming,
+                                       cuLoadFailureIgnore );
+            loaded = true;
         }
-        catch ( ParseException e )
+        finally
         {
-            if ( cuLoadFailureIgnore )
-            {
-                getLog().error( e.getMessage() + ". Ignoring as cuLoadFailureIgnore is true" );
-            }
-            else
-            {
-                throw new MojoExecutionException( "Error while loading CassandraUnit dataSet", e );
-            }
+            endBulkLoad( bulkLoad, loaded );
         }
     }
 }
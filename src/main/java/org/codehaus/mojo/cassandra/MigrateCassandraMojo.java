@@ -0,0 +1,249 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies versioned CQL migration scripts, named {@code V<version>__<description>.cql}, that have not been applied
+ * yet. The version and checksum of every applied script are recorded in a table, so a reused {@code cassandraDir}
+ * is brought up to date by executing only the new scripts, and scripts edited after they were applied are detected.
+ * <p/>
+ * Cassandra cannot roll back a script that failed half way, so migration scripts should be written to be re-run
+ * safely, e.g. with {@code IF NOT EXISTS}.
+ *
+ * @goal migrate
+ * @threadSafe
+ * @phase pre-integration-test
+ * @since 3.11.12.2
+ */
+public class MigrateCassandraMojo extends AbstractCqlExecMojo
+{
+    /**
+     * The directory holding the migration scripts.
+     *
+     * @parameter property="cassandra.migrations.directory" default-value="${basedir}/src/cassandra/cql/migrations"
+     * @since 3.11.12.2
+     */
+    protected File migrationsDirectory;
+
+    /**
+     * The keyspace of the table recording the applied migrations. It is created if it does not exist.
+     *
+     * @parameter property="cassandra.migrations.keyspace" default-value="cassandra_migrations"
+     * @since 3.11.12.2
+     */
+    protected String migrationsKeyspace;
+
+    /**
+     * The table recording the applied migrations. It is created if it does not exist.
+     *
+     * @parameter property="cassandra.migrations.table" default-value="applied_migrations"
+     * @since 3.11.12.2
+     */
+    protected String migrationsTable;
+
+    /**
+     * Whether to fail when a migration script was changed after it was applied. When {@code false} a warning is
+     * logged and the changed script is not executed again.
+     *
+     * @parameter property="cassandra.migrations.failOnChange" default-value="true"
+     * @since 3.11.12.2
+     */
+    protected boolean migrationsFailOnChange = true;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException
+    {
+        if (skip)
+        {
+            getLog().info("Skipping cassandra: cassandra.skip==true");
+            return;
+        }
+        List<CqlMigration> migrations = listMigrations();
+        if (migrations.isEmpty())
+        {
+            getLog().info("No migrations found in " + migrationsDirectory + ".");
+            return;
+        }
+        String table = migrationsKeyspace + "." + migrationsTable;
+        CqlConnection connection = null;
+        try
+        {
+            connection = openCqlConnection();
+            connection.execute("CREATE KEYSPACE IF NOT EXISTS " + migrationsKeyspace
+                                   + " WITH replication = {'class': 'SimpleStrategy', 'replication_factor': 1}");
+            connection.execute("CREATE TABLE IF NOT EXISTS " + table + " (version text PRIMARY KEY, "
+                                   + "description text, script text, checksum int, installed_on timestamp, "
+                                   + "execution_time int)");
+            Map<String, Integer> applied = readAppliedMigrations(connection, table);
+            List<CqlMigration> pending = selectPending(migrations, applied);
+            if (pending.isEmpty())
+            {
+                getLog().info("All " + migrations.size() + " migrations are applied.");
+                return;
+            }
+            for (CqlMigration migration : pending)
+            {
+                getLog().info("Migrating to version " + migration.getVersion() + " - " + migration.getDescription()
+                                  + "...");
+                long start = System.currentTimeMillis();
+                executeCqlScript(migration.getFile(), false);
+                long elapsed = System.currentTimeMillis() - start;
+                connection.execute("INSERT INTO " + table + " (version, description, script, checksum, "
+                                       + "installed_on, execution_time) VALUES ('" + migration.getVersion() + "', '"
+                                       + quote(migration.getDescription()) + "', '"
+                                       + quote(migration.getFile().getName()) + "', " + checksumOf(migration)
+                                       + ", toTimestamp(now()), " + elapsed + ")");
+            }
+            getLog().info("Applied " + pending.size() + " migrations, now at version "
+                              + pending.get(pending.size() - 1).getVersion() + ".");
+        } catch (ThriftApiExecutionException taee)
+        {
+            throw new MojoExecutionException(taee.getMessage(), taee);
+        } finally
+        {
+            if (connection != null)
+            {
+                connection.close();
+            }
+        }
+    }
+
+    private List<CqlMigration> listMigrations() throws MojoExecutionException
+    {
+        List<CqlMigration> migrations = new ArrayList<CqlMigration>();
+        if (!migrationsDirectory.isDirectory())
+        {
+            return migrations;
+        }
+        Map<String, CqlMigration> versions = new HashMap<String, CqlMigration>();
+        for (File file : listCqlScripts(migrationsDirectory))
+        {
+            CqlMigration migration = CqlMigration.of(file);
+            if (migration == null)
+            {
+                getLog().warn("Ignoring " + file + ", migrations are named V<version>__<description>.cql");
+                continue;
+            }
+            CqlMigration other = versions.put(migration.getVersion(), migration);
+            if (other != null)
+            {
+                throw new MojoExecutionException("Migrations " + other + " and " + migration
+                                                     + " have the same version");
+            }
+            migrations.add(migration);
+        }
+        Collections.sort(migrations);
+        return migrations;
+    }
+
+    private List<CqlMigration> selectPending(List<CqlMigration> migrations, Map<String, Integer> applied)
+        throws MojoExecutionException
+    {
+        String latest = null;
+        for (String version : applied.keySet())
+        {
+            if (latest == null || CqlMigration.compareVersions(version, latest) > 0)
+            {
+                latest = version;
+            }
+        }
+        List<CqlMigration> pending = new ArrayList<CqlMigration>();
+        List<CqlMigration> changed = new ArrayList<CqlMigration>();
+        for (CqlMigration migration : migrations)
+        {
+            Integer checksum = applied.remove(migration.getVersion());
+            if (checksum == null)
+            {
+                if (latest != null && CqlMigration.compareVersions(migration.getVersion(), latest) < 0)
+                {
+                    throw new MojoExecutionException("Migration " + migration + " is older than the applied version "
+                                                         + latest + ", give it a newer version");
+                }
+                pending.add(migration);
+            } else if (checksum != checksumOf(migration))
+            {
+                changed.add(migration);
+            }
+        }
+        for (String version : applied.keySet())
+        {
+            getLog().warn("Applied migration V" + version + " was not found in " + migrationsDirectory);
+        }
+        if (!changed.isEmpty())
+        {
+            String message = "Migrations changed after they were applied: " + changed;
+            if (migrationsFailOnChange)
+            {
+                throw new MojoExecutionException(message);
+            }
+            getLog().warn(message);
+        }
+        return pending;
+    }
+
+    private Map<String, Integer> readAppliedMigrations(CqlConnection connection, String table)
+    {
+        CqlResult result = connection.execute("SELECT version, checksum FROM " + table);
+        Map<String, Integer> applied = new HashMap<String, Integer>();
+        if (result.getRows() == null)
+        {
+            return applied;
+        }
+        try
+        {
+            for (CqlRow row : result.getRows())
+            {
+                String version = null;
+                int checksum = 0;
+                for (Column column : row.getColumns())
+                {
+                    String name = ByteBufferUtil.string(column.name);
+                    if ("version".equals(name))
+                    {
+                        version = ByteBufferUtil.string(column.value);
+                    } else if ("checksum".equals(name) && column.value != null && column.value.hasRemaining())
+                    {
+                        checksum = ByteBufferUtil.toInt(column.value);
+                    }
+                }
+                applied.put(version, checksum);
+            }
+        } catch (CharacterCodingException e)
+        {
+            throw new ThriftApiExecutionException("Could not read " + table, e);
+        }
+        return applied;
+    }
+
+    private int checksumOf(CqlMigration migration) throws MojoExecutionException
+    {
+        try
+        {
+            return CqlMigration.checksumOf(openFile(migration.getFile()));
+        } catch (IOException e)
+        {
+            throw new MojoExecutionException("Could not read " + migration.getFile(), e);
+        }
+    }
+
+    private static String quote(String value)
+    {
+        return value.replace("'", "''");
+    }
+}
@@ -18,69 +18,222 @@
  */
 package org.codehaus.mojo.cassandra;
 
-import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.ExecuteException;
-import org.apache.commons.exec.Executor;
-import org.apache.commons.exec.LogOutputStream;
-import org.apache.commons.exec.PumpStreamHandler;
-import org.apache.commons.exec.ShutdownHookProcessDestroyer;
+import org.apache.cassandra.repair.messages.RepairOption;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 /**
- * Runs {@code nodetool repair} on a Cassandra instance.
+ * Repairs keyspaces, or some of their tables, of a Cassandra instance, waiting for every repair to complete, as
+ * {@code nodetool repair} does.
+ * <p/>
+ * With {@code repairSubranges}, every token range of the ring is split into that many subranges, which are repaired
+ * one by one, {@code repairJobs} at a time on as many nodes, but never two sharing a replica at the same time, each
+ * one coordinated by one of its replicas. Every subrange is reported with its duration.
  *
  * @author stephenc
  * @goal repair
  * @threadSafe
  */
-public class RepairCassandraMojo extends AbstractCassandraMojo
+public class RepairCassandraMojo extends AbstractMaintenanceCassandraMojo
 {
+    /**
+     * How replicas are repaired: {@code sequential}, {@code parallel} or {@code dc_parallel}.
+     *
+     * @parameter property="cassandra.repair.parallelism" default-value="parallel"
+     * @since 3.11.12.2
+     */
+    protected String repairParallelism = "parallel";
+
+    /**
+     * Whether to only repair the data that has not been repaired yet, rather than all of it, as {@code nodetool repair}
+     * does by default. Set to {@code false} for a full repair. Incremental repair sessions may not overlap on the same
+     * SSTables, so when repairing several nodes they are repaired one after the other rather than in parallel.
+     *
+     * @parameter property="cassandra.repair.incremental" default-value="true"
+     * @since 3.11.12.2
+     */
+    protected boolean repairIncremental = true;
+
+    /**
+     * Whether to only repair the ranges the instance is the primary replica of. Always the case when repairing
+     * several nodes, every one of which repairs its own primary ranges, so that no range is repaired twice.
+     *
+     * @parameter property="cassandra.repair.primaryRange" default-value="false"
+     * @since 3.11.12.2
+     */
+    protected boolean repairPrimaryRange;
+
+    /**
+     * Number of subranges every token range is split into and repaired separately, 0 to repair every node in one go.
+     * Subranges are never repaired incrementally.
+     *
+     * @parameter property="cassandra.repair.subranges" default-value="0"
+     * @since 3.11.12.2
+     */
+    protected int repairSubranges;
+
+    /**
+     * Number of subranges repaired concurrently, 0 for {@code maintenanceNodes}.
+     *
+     * @parameter property="cassandra.repair.jobs" default-value="0"
+     * @since 3.11.12.2
+     */
+    protected int repairJobs;
+
     /**
      * {@inheritDoc}
      */
     public void execute() throws MojoExecutionException, MojoFailureException
     {
-        if (skip)
+        if (skip || repairSubranges <= 0)
         {
-            getLog().info("Skipping cassandra: cassandra.skip==true");
+            super.execute();
             return;
         }
+        if (maintenanceNodes < 1)
+        {
+            throw new MojoExecutionException("Invalid number of nodes " + maintenanceNodes + ". Must be at least 1");
+        }
+        long start = System.currentTimeMillis();
+        final Map<String, CassandraJmxClient> replicas = new LinkedHashMap<String, CassandraJmxClient>();
         try
         {
-            Map environment = createEnvironmentVars();
-            CommandLine commandLine = newNodetoolCommandLine("repair");
-
-            Executor exec = new DefaultExecutor();
-            exec.setWorkingDirectory(cassandraDir);
-            exec.setProcessDestroyer(new ShutdownHookProcessDestroyer());
+            for (int node = 0; node < maintenanceNodes; node++)
+            {
+                CassandraJmxClient jmx = connectJmx(node);
+                try
+                {
+                    replicas.put(jmx.getEndpoint(), jmx);
+                } catch (IOException e)
+                {
+                    jmx.close();
+                    throw new MojoExecutionException("Could not repair: " + e.getMessage(), e);
+                }
+            }
+            CassandraJmxClient first = replicas.values().iterator().next();
+            List<String> keyspaces = getMaintenanceKeyspaces();
+            if (keyspaces.isEmpty())
+            {
+                keyspaces = getDefaultKeyspaces(first);
+            }
+            final String tables = StringUtils.join(getMaintenanceTables(), ",");
+            List<RepairScheduler.Subrange> subranges = new ArrayList<RepairScheduler.Subrange>();
+            for (String name : keyspaces)
+            {
+                subranges.addAll(RepairScheduler.split(name, first.getStorageService().getPartitionerName(),
+                                                       first.getStorageService().getRangeToEndpointMap(name),
+                                                       repairSubranges));
+            }
+            getLog().info("Repairing " + subranges.size() + " subranges of " + keyspaces + "...");
+            int failed = new RepairScheduler(repairJobs > 0 ? repairJobs : maintenanceNodes, getLog())
+                .run(subranges, new RepairScheduler.Repairer()
+                {
+                    public String repair(RepairScheduler.Subrange subrange) throws Exception
+                    {
+                        for (String replica : subrange.getReplicas())
+                        {
+                            CassandraJmxClient jmx = replicas.get(replica);
+                            if (jmx != null)
+                            {
+                                List<String> errors = jmx.repair(subrange.getKeyspace(), options(tables, subrange),
+                                                                 getLog());
+                                if (!errors.isEmpty())
+                                {
+                                    throw new IOException(StringUtils.join(errors, "; "));
+                                }
+                                return replica;
+                            }
+                        }
+                        throw new IOException("None of the replicas " + subrange.getReplicas() + " is among the "
+                                                  + "nodes " + replicas.keySet());
+                    }
+                });
+            long millis = System.currentTimeMillis() - start;
+            if (failed > 0)
+            {
+                throw new MojoFailureException("Could not repair " + failed + " of " + subranges.size()
+                                                   + " subranges of " + keyspaces + " in " + millis + "ms");
+            }
+            getLog().info("Repaired " + subranges.size() + " subranges of " + keyspaces + " in " + millis + "ms");
+        } catch (IllegalArgumentException e)
+        {
+            throw new MojoExecutionException(e.getMessage(), e);
+        } catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while repairing", e);
+        } finally
+        {
+            for (CassandraJmxClient jmx : replicas.values())
+            {
+                jmx.close();
+            }
+        }
+    }
 
-            LogOutputStream stdout = new MavenLogOutputStream(getLog());
-            LogOutputStream stderr = new MavenLogOutputStream(getLog());
+    private Map<String, String> options(String tables, RepairScheduler.Subrange subrange)
+    {
+        Map<String, String> options = new HashMap<String, String>();
+        options.put(RepairOption.PARALLELISM_KEY, repairParallelism);
+        options.put(RepairOption.INCREMENTAL_KEY, Boolean.toString(false));
+        options.put(RepairOption.RANGES_KEY, subrange.getStart() + ":" + subrange.getEnd());
+        if (tables.length() > 0)
+        {
+            options.put(RepairOption.COLUMNFAMILIES_KEY, tables);
+        }
+        return options;
+    }
 
-            try
-            {
-                getLog().debug("Executing command line: " + commandLine);
+    /**
+     * {@inheritDoc}
+     */
+    protected int getParallelism()
+    {
+        // concurrent incremental sessions over replicas sharing SSTables fail
+        return repairIncremental ? 1 : maintenanceNodes;
+    }
 
-                exec.setStreamHandler(new PumpStreamHandler(stdout, stderr, System.in));
+    /**
+     * {@inheritDoc}
+     */
+    protected String getOperation()
+    {
+        return "Repaired";
+    }
 
-                exec.execute(commandLine, environment);
+    /**
+     * {@inheritDoc}
+     */
+    protected List<String> getDefaultKeyspaces(CassandraJmxClient jmx)
+    {
+        return jmx.getStorageService().getNonLocalStrategyKeyspaces();
+    }
 
-                getLog().info("Repair triggered.");
-            } catch (ExecuteException e)
-            {
-                throw new MojoExecutionException("Command execution failed.", e);
-            } catch (IOException e)
-            {
-                throw new MojoExecutionException("Command execution failed.", e);
-            }
-        } catch (IOException e)
+    /**
+     * {@inheritDoc}
+     */
+    protected String execute(CassandraJmxClient jmx, String keyspace, String[] tables)
+        throws IOException, ExecutionException, InterruptedException
+    {
+        Map<String, String> options = new HashMap<String, String>();
+        options.put(RepairOption.PARALLELISM_KEY, repairParallelism);
+        options.put(RepairOption.INCREMENTAL_KEY, Boolean.toString(repairIncremental));
+        options.put(RepairOption.PRIMARY_RANGE_KEY, Boolean.toString(repairPrimaryRange || maintenanceNodes > 1));
+        if (tables.length > 0)
         {
-            throw new MojoExecutionException(e.getLocalizedMessage(), e);
+            options.put(RepairOption.COLUMNFAMILIES_KEY, StringUtils.join(tables, ","));
         }
+        List<String> errors = jmx.repair(keyspace, options, getLog());
+        return errors.isEmpty() ? null
+            : "Repair of keyspace " + keyspace + " failed: " + StringUtils.join(errors, "; ");
     }
 }
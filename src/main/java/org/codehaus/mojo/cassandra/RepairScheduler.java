@@ -0,0 +1,268 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Repairs the token ring one subrange at a time, several at once as long as they share no replica, so that every node
+ * takes part in at most one repair session at a time.
+ */
+final class RepairScheduler
+{
+    /**
+     * Repairs a subrange, on one of its replicas.
+     */
+    interface Repairer
+    {
+        /**
+         * @param subrange the subrange.
+         * @return the replica that coordinated the repair.
+         * @throws Exception if the repair failed.
+         */
+        String repair(Subrange subrange) throws Exception;
+    }
+
+    /**
+     * A subrange {@code (start, end]} of a token range of a keyspace, and how its repair went.
+     */
+    static final class Subrange
+    {
+        private final String keyspace;
+
+        private final String start;
+
+        private final String end;
+
+        private final List<String> replicas;
+
+        private String coordinator;
+
+        private long millis;
+
+        private String error;
+
+        Subrange(String keyspace, String start, String end, List<String> replicas)
+        {
+            this.keyspace = keyspace;
+            this.start = start;
+            this.end = end;
+            this.replicas = replicas;
+        }
+
+        String getKeyspace()
+        {
+            return keyspace;
+        }
+
+        String getStart()
+        {
+            return start;
+        }
+
+        String getEnd()
+        {
+            return end;
+        }
+
+        List<String> getReplicas()
+        {
+            return replicas;
+        }
+
+        /**
+         * @return the replica that coordinated the repair, {@code null} if it did not run or failed.
+         */
+        String getCoordinator()
+        {
+            return coordinator;
+        }
+
+        /**
+         * @return how long the repair took, in milliseconds.
+         */
+        long getMillis()
+        {
+            return millis;
+        }
+
+        /**
+         * @return why the repair failed, {@code null} if it did not.
+         */
+        String getError()
+        {
+            return error;
+        }
+
+        public String toString()
+        {
+            return keyspace + " (" + start + ", " + end + "]";
+        }
+    }
+
+    /**
+     * The lowest token of the Murmur3Partitioner, whose tokens are every long, so 2^64 of them.
+     */
+    private static final BigInteger MURMUR3_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+
+    private static final BigInteger MURMUR3_SIZE = BigInteger.ONE.shiftLeft(64);
+
+    /**
+     * The lowest token of the RandomPartitioner, whose tokens are 0 to 2^127 included, so 2^127 + 1 of them.
+     */
+    private static final BigInteger RANDOM_MIN = BigInteger.ZERO;
+
+    private static final BigInteger RANDOM_SIZE = BigInteger.ONE.shiftLeft(127).add(BigInteger.ONE);
+
+    private final int jobs;
+
+    private final Log log;
+
+    RepairScheduler(int jobs, Log log)
+    {
+        this.jobs = Math.max(1, jobs);
+        this.log = log;
+    }
+
+    /**
+     * Splits every token range of a keyspace into subranges of about the same width.
+     *
+     * @param keyspace    the keyspace.
+     * @param partitioner the class name of the partitioner of the cluster.
+     * @param ranges      the replicas of every token range, by its start and end tokens, as the storage service maps
+     *                    them.
+     * @param parts       the number of subranges every range is split into.
+     * @return the subranges.
+     * @throws IllegalArgumentException if the tokens of the partitioner cannot be split.
+     */
+    static List<Subrange> split(String keyspace, String partitioner, Map<List<String>, List<String>> ranges, int parts)
+    {
+        BigInteger min;
+        BigInteger size;
+        if (partitioner.endsWith("Murmur3Partitioner"))
+        {
+            min = MURMUR3_MIN;
+            size = MURMUR3_SIZE;
+        } else if (partitioner.endsWith("RandomPartitioner"))
+        {
+            min = RANDOM_MIN;
+            size = RANDOM_SIZE;
+        } else
+        {
+            throw new IllegalArgumentException("Cannot split the tokens of the " + partitioner + ", only those of the "
+                                                   + "Murmur3Partitioner and RandomPartitioner");
+        }
+        List<Subrange> subranges = new ArrayList<Subrange>();
+        for (Map.Entry<List<String>, List<String>> range : ranges.entrySet())
+        {
+            BigInteger start = new BigInteger(range.getKey().get(0));
+            BigInteger end = new BigInteger(range.getKey().get(1));
+            // a range whose end is not after its start wraps around the ring, a single one covers all of it
+            BigInteger width = end.subtract(start).mod(size);
+            if (width.signum() == 0)
+            {
+                width = size;
+            }
+            int count = BigInteger.valueOf(parts).min(width).intValue();
+            BigInteger from = start;
+            for (int i = 1; i <= count; i++)
+            {
+                BigInteger to = i == count ? end
+                    : start.add(width.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(count)))
+                        .subtract(min).mod(size).add(min);
+                subranges.add(new Subrange(keyspace, from.toString(), to.toString(), range.getValue()));
+                from = to;
+            }
+        }
+        return subranges;
+    }
+
+    /**
+     * Repairs subranges, at most {@code jobs} at a time, never two sharing a replica at the same time.
+     *
+     * @param subranges the subranges, repaired in this order as far as their replicas allow.
+     * @param repairer  repairs a subrange.
+     * @return the number of subranges that failed, whose {@link Subrange#getError()} says why.
+     * @throws InterruptedException if interrupted while waiting for the repairs.
+     */
+    int run(List<Subrange> subranges, final Repairer repairer) throws InterruptedException
+    {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(jobs, Math.max(1, subranges.size())));
+        CompletionService<Subrange> completion = new ExecutorCompletionService<Subrange>(executor);
+        try
+        {
+            List<Subrange> pending = new ArrayList<Subrange>(subranges);
+            Set<String> busy = new HashSet<String>();
+            int running = 0;
+            int done = 0;
+            int failed = 0;
+            long start = System.currentTimeMillis();
+            while (!pending.isEmpty() || running > 0)
+            {
+                for (Iterator<Subrange> i = pending.iterator(); i.hasNext() && running < jobs; )
+                {
+                    final Subrange subrange = i.next();
+                    if (!Collections.disjoint(busy, subrange.getReplicas()))
+                    {
+                        continue;
+                    }
+                    i.remove();
+                    busy.addAll(subrange.getReplicas());
+                    running++;
+                    completion.submit(new Callable<Subrange>()
+                    {
+                        public Subrange call()
+                        {
+                            long started = System.currentTimeMillis();
+                            try
+                            {
+                                subrange.coordinator = repairer.repair(subrange);
+                            } catch (Exception e)
+                            {
+                                subrange.error = e.getMessage() == null ? e.toString() : e.getMessage();
+                            }
+                            subrange.millis = System.currentTimeMillis() - started;
+                            return subrange;
+                        }
+                    });
+                }
+                Subrange subrange = completion.take().get();
+                busy.removeAll(subrange.getReplicas());
+                running--;
+                done++;
+                if (subrange.getError() == null)
+                {
+                    log.info("Repaired " + subrange + " on " + subrange.getCoordinator() + " in "
+                                 + subrange.getMillis() + "ms (" + done + "/" + subranges.size() + ", "
+                                 + (System.currentTimeMillis() - start) + "ms elapsed)");
+                } else
+                {
+                    failed++;
+                    log.error("Could not repair " + subrange + " (" + done + "/" + subranges.size() + "): "
+                                  + subrange.getError());
+                }
+            }
+            return failed;
+        } catch (ExecutionException e)
+        {
+            // the tasks catch everything
+            throw new IllegalStateException(e.getCause());
+        } finally
+        {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Empties every table of one or more keyspaces of the running test instance, or cluster, of Cassandra, e.g. between
+ * test suites, without deleting {@code cassandraDir} and restarting.
+ * <p/>
+ * The tables are listed from the live schema and truncated {@code resetThreads} at a time, every one over its own
+ * connection. Truncating a table waits for every node to flush and drop it, so tables that are already empty are
+ * skipped unless {@code resetSkipEmpty} is {@code false}.
+ *
+ * @goal reset
+ * @threadSafe
+ * @since 3.11.12.2
+ */
+public class ResetCassandraMojo extends AbstractCqlExecMojo
+{
+    /**
+     * Comma separated keyspaces whose tables are truncated, {@code keyspace} if not set.
+     *
+     * @parameter property="cassandra.reset.keyspaces"
+     * @since 3.11.12.2
+     */
+    protected String resetKeyspaces;
+
+    /**
+     * Number of tables truncated concurrently, and of connections.
+     *
+     * @parameter property="cassandra.reset.threads" default-value="8"
+     * @since 3.11.12.2
+     */
+    protected int resetThreads = 8;
+
+    /**
+     * Whether to leave the tables that hold no rows alone. Whether a table holds rows is read from every replica, so
+     * with this on every node holding a replica of a table has to be up.
+     *
+     * @parameter property="cassandra.reset.skipEmpty" default-value="true"
+     * @since 3.11.12.2
+     */
+    protected boolean resetSkipEmpty = true;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException
+    {
+        if (skip)
+        {
+            getLog().info("Skipping cassandra: cassandra.skip==true");
+            return;
+        }
+        String keyspaces = StringUtils.isBlank(resetKeyspaces) ? keyspace : resetKeyspaces;
+        if (StringUtils.isBlank(keyspaces))
+        {
+            throw new MojoExecutionException("Set resetKeyspaces or keyspace");
+        }
+        long start = System.currentTimeMillis();
+        try
+        {
+            List<String> tables = new ArrayList<String>();
+            CqlConnection connection = CqlConnection.open(rpcAddress, rpcPort, getCqlVersion(), null, false);
+            try
+            {
+                for (String name : keyspaces.split(","))
+                {
+                    if (StringUtils.isBlank(name))
+                    {
+                        continue;
+                    }
+                    List<String> keyspaceTables = CqlTruncator.tablesOf(connection, CqlStatements.schemaName(name));
+                    if (keyspaceTables.isEmpty())
+                    {
+                        getLog().warn("Keyspace " + name.trim() + " has no tables");
+                    }
+                    tables.addAll(keyspaceTables);
+                }
+            } finally
+            {
+                connection.close();
+            }
+            int truncated = new CqlTruncator(rpcAddress, rpcPort, getCqlVersion(), resetThreads, getLog())
+                .truncate(tables, resetSkipEmpty);
+            getLog().info("Truncated " + truncated + " of " + tables.size() + " tables in "
+                              + (System.currentTimeMillis() - start) + "ms");
+        } catch (ThriftApiExecutionException taee)
+        {
+            throw new MojoExecutionException(taee.getMessage(), taee);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Brings keyspaces of the running test instance of Cassandra back to a snapshot taken by {@code snapshot}, e.g.
+ * before every test suite, without deleting {@code cassandraDir}, restarting and loading the fixtures again.
+ * <p/>
+ * Every table of the keyspaces is truncated, then the SSTables of the snapshot are hard linked back into the tables,
+ * and their views, and loaded by the instance, so restoring takes about as long as truncating. Tables created since
+ * the snapshot are left empty.
+ *
+ * @goal restore
+ * @threadSafe
+ * @since 3.11.12.2
+ */
+public class RestoreCassandraMojo extends AbstractSnapshotCassandraMojo
+{
+    /**
+     * Number of tables truncated concurrently, and of connections.
+     *
+     * @parameter property="cassandra.restore.threads" default-value="8"
+     * @since 3.11.12.2
+     */
+    protected int restoreThreads = 8;
+
+    /**
+     * {@inheritDoc}
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException
+    {
+        if (skip)
+        {
+            getLog().info("Skipping cassandra: cassandra.skip==true");
+            return;
+        }
+        List<String> keyspaces = getSnapshotKeyspaces();
+        long start = System.currentTimeMillis();
+        try
+        {
+            List<String> tables = new ArrayList<String>();
+            List<Map<String, String>> ids = new ArrayList<Map<String, String>>();
+            CqlConnection connection = CqlConnection.open(rpcAddress, rpcPort, getCqlVersion(), null, false);
+            try
+            {
+                for (String keyspace : keyspaces)
+                {
+                    tables.addAll(CqlTruncator.tablesOf(connection, keyspace));
+                    Map<String, String> keyspaceIds = CqlExporter.tableIdsOf(connection, keyspace, false);
+                    keyspaceIds.putAll(CqlExporter.tableIdsOf(connection, keyspace, true));
+                    ids.add(keyspaceIds);
+                }
+            } finally
+            {
+                connection.close();
+            }
+            // rows deleted since the snapshot leave tombstones that would shadow the restored ones, so empty tables
+            // are truncated too
+            new CqlTruncator(rpcAddress, rpcPort, getCqlVersion(), restoreThreads, getLog()).truncate(tables, false);
+            int files = 0;
+            CassandraJmxClient jmx = connectJmx();
+            try
+            {
+                for (int i = 0; i < keyspaces.size(); i++)
+                {
+                    files += restore(jmx, keyspaces.get(i), ids.get(i));
+                }
+            } finally
+            {
+                jmx.close();
+            }
+            getLog().info("Restored snapshot " + snapshotName + " of " + keyspaces + ", " + files + " files, in "
+                              + (System.currentTimeMillis() - start) + "ms");
+        } catch (ThriftApiExecutionException taee)
+        {
+            throw new MojoExecutionException(taee.getMessage(), taee);
+        } catch (IOException e)
+        {
+            throw new MojoExecutionException("Could not restore snapshot " + snapshotName + " of " + keyspaces, e);
+        }
+    }
+
+    private int restore(CassandraJmxClient jmx, String keyspace, Map<String, String> ids) throws IOException
+    {
+        File keyspaceDir = new File(new File(cassandraDir, "data"), keyspace);
+        int files = 0;
+        for (Map.Entry<String, String> table : ids.entrySet())
+        {
+            if (table.getValue() == null)
+            {
+                continue;
+            }
+            File tableDir = new File(keyspaceDir, table.getKey() + "-" + table.getValue().replace("-", ""));
+            File snapshotDir = new File(new File(tableDir, "snapshots"), snapshotName);
+            if (!snapshotDir.isDirectory())
+            {
+                getLog().debug(keyspace + "." + table.getKey() + " has no snapshot " + snapshotName);
+                continue;
+            }
+            int linked = GenerateSSTablesMojo.install(snapshotDir, tableDir, true);
+            if (linked > 0)
+            {
+                jmx.getStorageService().loadNewSSTables(keyspace, table.getKey());
+                getLog().debug("Restored " + keyspace + "." + table.getKey() + ", " + linked + " files");
+            }
+            files += linked;
+        }
+        return files;
+    }
+}
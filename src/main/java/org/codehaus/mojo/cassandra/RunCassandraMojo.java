@@ -21,9 +21,6 @@ package org.codehaus.mojo.cassandra;
 import org.apache.commons.exec.DefaultExecuteResultHandler;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
-import org.cassandraunit.DataLoader;
-import org.cassandraunit.dataset.FileDataSet;
-import org.cassandraunit.dataset.ParseException;
 
 import java.io.File;
 import java.io.IOException;
@@ -46,13 +43,40 @@ public class RunCassandraMojo
     private boolean loadAfterFirstStart;
 
     /**
-     * The CassandraUnit dataSet to load.
+     * The CassandraUnit dataSet to load, or a directory of dataSets.
      *
      * @parameter default-value="${basedir}/src/test/resources/dataSet.xml"
      * @since 1.2.1-2
      */
     protected File cuDataSet;
 
+    /**
+     * CassandraUnit dataSets, or directories of dataSets, to load instead of {@code cuDataSet}. DataSets of
+     * different keyspaces are loaded concurrently.
+     *
+     * @parameter
+     * @since 3.11.12.2
+     */
+    protected File[] cuDataSets;
+
+    /**
+     * Number of CassandraUnit dataSets parsed or loaded at the same time, 0 for the number of available processors.
+     *
+     * @parameter property="cassandra.cu.load.threads" default-value="0"
+     * @since 3.11.12.2
+     */
+    protected int cuLoadThreads;
+
+    /**
+     * When {@code true}, CassandraUnit dataSets are read and written one row at a time, so that dataSets of any size
+     * can be loaded in bounded memory, instead of being parsed whole by CassandraUnit. The properties of keyspaces
+     * and column families must precede their column families and rows.
+     *
+     * @parameter property="cassandra.cu.load.streaming" default-value="false"
+     * @since 3.11.12.2
+     */
+    protected boolean cuLoadStreaming;
+
     /**
      * Whether to ignore errors when loading the script.
      *
@@ -81,7 +105,7 @@ public class RunCassandraMojo
             return;
         }
         long timeStamp = System.currentTimeMillis();
-        boolean isClean = !cassandraDir.isDirectory();
+        boolean isClean = Utils.isFirstStart( cassandraDir );
         getLog().debug(
             ( isClean ? "First start of Cassandra instance in " : "Re-using existing Cassandra instance in " )
                 + cassandraDir.getAbsolutePath() );
@@ -94,31 +118,28 @@ public class RunCassandraMojo
                 getLog().info( "Waiting for Cassandra to start..." );
                 Utils.waitUntilStarted( rpcAddress, rpcPort, 0, getLog() );
 
-                if ( isClean && loadAfterFirstStart)
-                {
-                    execCqlFile();
-                }
-
-                if ( isClean && cuLoadAfterFirstStart && cuDataSet != null && cuDataSet.isFile() )
+                if ( isClean && ( loadAfterFirstStart || cuLoadAfterFirstStart ) )
                 {
-                    getLog().info( "Loading CassandraUnit dataSet " + cuDataSet + "..." );
+                    BulkLoadMode bulkLoad = beginBulkLoad();
+                    boolean loaded = false;
                     try
                     {
-                        DataLoader dataLoader = new DataLoader( "cassandraUnitCluster", rpcAddress + ":" + rpcPort );
-                        dataLoader.load( new FileDataSet( cuDataSet.getAbsolutePath() ) );
-                    }
-                    catch ( ParseException e )
-                    {
-                        if ( cuLoadFailureIgnore )
+                        if ( loadAfterFirstStart )
                         {
-                            getLog().error( e.getMessage() + ". Ignoring as cuLoadFailureIgnore is true" );
+                            execCqlFile();
                         }
-                        else
+
+                        if ( cuLoadAfterFirstStart )
                         {
-                            throw new MojoExecutionException( "Error while loading CassandraUnit dataSet", e );
+                            loadCassandraUnitDataSets( cuDataSets, cuDataSet, cuLoadThreads, cuLoadStreaming,
+                                                       cuLoadFailureIgnore );
                         }
+                        loaded = true;
+                    }
+                    finally
+                    {
+                        endBulkLoad( bulkLoad, loaded );
                     }
-                    getLog().info( "Finished " + cuDataSet + "." );
                 }
 
                 getLog().info(
@@ -0,0 +1,51 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Takes a named snapshot of keyspaces of the running test instance of Cassandra, e.g. once the fixtures are loaded,
+ * for {@code restore} to bring them back before every test suite.
+ * <p/>
+ * The tables are flushed and their SSTables hard linked into {@code snapshots/snapshotName}, so taking a snapshot
+ * takes about as long as the flush. A previous snapshot of the same name is replaced.
+ *
+ * @goal snapshot
+ * @threadSafe
+ * @since 3.11.12.2
+ */
+public class SnapshotCassandraMojo extends AbstractSnapshotCassandraMojo
+{
+    /**
+     * {@inheritDoc}
+     */
+    public void execute() throws MojoExecutionException, MojoFailureException
+    {
+        if (skip)
+        {
+            getLog().info("Skipping cassandra: cassandra.skip==true");
+            return;
+        }
+        List<String> keyspaces = getSnapshotKeyspaces();
+        String[] names = keyspaces.toArray(new String[keyspaces.size()]);
+        long start = System.currentTimeMillis();
+        CassandraJmxClient jmx = connectJmx();
+        try
+        {
+            jmx.getStorageService().clearSnapshot(snapshotName, names);
+            jmx.getStorageService().takeSnapshot(snapshotName, Collections.<String, String>emptyMap(), names);
+            getLog().info("Took snapshot " + snapshotName + " of " + keyspaces + " in "
+                              + (System.currentTimeMillis() - start) + "ms");
+        } catch (IOException e)
+        {
+            throw new MojoExecutionException("Could not take snapshot " + snapshotName + " of " + keyspaces, e);
+        } finally
+        {
+            jmx.close();
+        }
+    }
+}
@@ -20,9 +20,6 @@ package org.codehaus.mojo.cassandra;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
-import org.cassandraunit.DataLoader;
-import org.cassandraunit.dataset.FileDataSet;
-import org.cassandraunit.dataset.ParseException;
 
 import java.io.File;
 import java.io.IOException;
@@ -30,7 +27,8 @@ import java.math.BigInteger;
 import java.util.Arrays;
 
 /**
- * Starts a Cassandra instance in the background.
+ * Starts a Cassandra cluster in the background. Node {@code n}, from 0, listens on {@code 127.0.0.n+1} and to JMX
+ * connections on {@code jmxPort + n}.
  *
  * @author stephenc
  * @goal start-cluster
@@ -56,13 +54,40 @@ public class StartCassandraClusterMojo
     private boolean loadAfterFirstStart;
 
     /**
-     * The CassandraUnit dataSet to load.
+     * The CassandraUnit dataSet to load, or a directory of dataSets.
      *
      * @parameter default-value="${basedir}/src/test/resources/dataSet.xml"
      * @since 1.2.1-2
      */
     protected File cuDataSet;
 
+    /**
+     * CassandraUnit dataSets, or directories of dataSets, to load instead of {@code cuDataSet}. DataSets of
+     * different keyspaces are loaded concurrently.
+     *
+     * @parameter
+     * @since 3.11.12.2
+     */
+    protected File[] cuDataSets;
+
+    /**
+     * Number of CassandraUnit dataSets parsed or loaded at the same time, 0 for the number of available processors.
+     *
+     * @parameter property="cassandra.cu.load.threads" default-value="0"
+     * @since 3.11.12.2
+     */
+    protected int cuLoadThreads;
+
+    /**
+     * When {@code true}, CassandraUnit dataSets are read and written one row at a time, so that dataSets of any size
+     * can be loaded in bounded memory, instead of being parsed whole by CassandraUnit. The properties of keyspaces
+     * and column families must precede their column families and rows.
+     *
+     * @parameter property="cassandra.cu.load.streaming" default-value="false"
+     * @since 3.11.12.2
+     */
+    protected boolean cuLoadStreaming;
+
     /**
      * Whether to ignore errors when loading the script.
      *
@@ -118,7 +143,7 @@ public class StartCassandraClusterMojo
                 BigInteger.valueOf( clusterSize ) );
             cassandraDir[node] =
                 new File( this.cassandraDir.getParent(), this.cassandraDir.getName() + "-node" + ( node + 1 ) );
-            if ( isClean && cassandraDir[node].isDirectory() )
+            if ( isClean && !Utils.isFirstStart( cassandraDir[node] ) )
             {
                 getLog().debug( "Re-using existing Cassandra cluster in " + cassandraDir[node].getAbsolutePath() );
                 isClean = false;
@@ -137,7 +162,7 @@ public class StartCassandraClusterMojo
                 Utils.startCassandraServer( cassandraDir[node],
                                             newServiceCommandLine( cassandraDir[node], listenAddress[node],
                                                                    listenAddress[node], initialToken[node],
-                                                                   listenAddress, node == 0, node == 0 ? jmxPort : 0 ),
+                                                                   listenAddress, true, jmxPort + node ),
                                             createEnvironmentVars(), getLog() );
             }
 
@@ -161,26 +186,10 @@ public class StartCassandraClusterMojo
                 execCqlFile();
             }
 
-            if ( isClean && cuLoadAfterFirstStart && cuDataSet != null && cuDataSet.isFile() )
+            if ( isClean && cuLoadAfterFirstStart )
             {
-                getLog().info( "Loading CassandraUnit dataSet " + cuDataSet + "..." );
-                try
-                {
-                    DataLoader dataLoader = new DataLoader( "cassandraUnitCluster", rpcAddress + ":" + rpcPort );
-                    dataLoader.load( new FileDataSet( cuDataSet.getAbsolutePath() ) );
-                }
-                catch ( ParseException e )
-                {
-                    if ( cuLoadFailureIgnore )
-                    {
-                        getLog().error( e.getMessage() + ". Ignoring as cuLoadFailureIgnore is true" );
-                    }
-                    else
-                    {
-                        throw new MojoExecutionException( "Error while loading CassandraUnit dataSet", e );
-                    }
-                }
-                getLog().info( "Finished " + cuDataSet + "." );
+                loadCassandraUnitDataSets( cuDataSets, cuDataSet, cuLoadThreads, cuLoadStreaming,
+                                           cuLoadFailureIgnore );
             }
 
             getLog().info(
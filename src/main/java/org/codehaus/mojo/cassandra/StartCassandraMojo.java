@@ -20,12 +20,10 @@ package org.codehaus.mojo.cassandra;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
-import org.cassandraunit.DataLoader;
-import org.cassandraunit.dataset.FileDataSet;
-import org.cassandraunit.dataset.ParseException;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutionException;
 
 /**
  * Starts a Cassandra instance in the background.
@@ -54,13 +52,40 @@ public class StartCassandraMojo
     private boolean loadAfterFirstStart;
 
     /**
-     * The CassandraUnit dataSet to load.
+     * The CassandraUnit dataSet to load, or a directory of dataSets.
      *
      * @parameter default-value="${basedir}/src/test/resources/dataSet.xml"
      * @since 1.2.1-2
      */
     protected File cuDataSet;
 
+    /**
+     * CassandraUnit dataSets, or directories of dataSets, to load instead of {@code cuDataSet}. DataSets of
+     * different keyspaces are loaded concurrently.
+     *
+     * @parameter
+     * @since 3.11.12.2
+     */
+    protected File[] cuDataSets;
+
+    /**
+     * Number of CassandraUnit dataSets parsed or loaded at the same time, 0 for the number of available processors.
+     *
+     * @parameter property="cassandra.cu.load.threads" default-value="0"
+     * @since 3.11.12.2
+     */
+    protected int cuLoadThreads;
+
+    /**
+     * When {@code true}, CassandraUnit dataSets are read and written one row at a time, so that dataSets of any size
+     * can be loaded in bounded memory, instead of being parsed whole by CassandraUnit. The properties of keyspaces
+     * and column families must precede their column families and rows.
+     *
+     * @parameter property="cassandra.cu.load.streaming" default-value="false"
+     * @since 3.11.12.2
+     */
+    protected boolean cuLoadStreaming;
+
     /**
      * Whether to ignore errors when loading the script.
      *
@@ -77,6 +102,33 @@ public class StartCassandraMojo
      */
     private boolean cuLoadAfterFirstStart;
 
+    /**
+     * When {@code true}, once started and loaded, the instance is waited for until it is quiescent, i.e. has no task
+     * running or pending in any of its thread pools and no compaction, index or view build running or pending, so
+     * that the tests do not run against an instance still busy with the load.
+     *
+     * @parameter property="cassandra.quiesce" default-value="false"
+     * @since 3.11.12.2
+     */
+    protected boolean quiesce;
+
+    /**
+     * When {@code true}, the memtables of every non system keyspace are flushed before waiting for the instance to be
+     * quiescent, so that the tests read from SSTables as they would from a long running instance.
+     *
+     * @parameter property="cassandra.quiesce.flush" default-value="false"
+     * @since 3.11.12.2
+     */
+    protected boolean quiesceFlush;
+
+    /**
+     * How long to wait for the instance to be quiescent, in seconds, before failing, 0 to wait as long as it takes.
+     *
+     * @parameter property="cassandra.quiesce.timeout" default-value="300"
+     * @since 3.11.12.2
+     */
+    protected int quiesceTimeout = 300;
+
     /**
      * {@inheritDoc}
      */
@@ -89,7 +141,7 @@ public class StartCassandraMojo
             return;
         }
         long timeStamp = System.currentTimeMillis();
-        boolean isClean = !cassandraDir.isDirectory();
+        boolean isClean = Utils.isFirstStart( cassandraDir );
         getLog().debug(
             ( isClean ? "First start of Cassandra instance in " : "Re-using existing Cassandra instance in " )
                 + cassandraDir.getAbsolutePath() );
@@ -107,31 +159,33 @@ public class StartCassandraMojo
                     throw new MojoFailureException( "Cassandra failed to start within " + startWaitSeconds + "s" );
                 }
             }
-            if ( isClean && loadAfterFirstStart)
+            if ( isClean && ( loadAfterFirstStart || cuLoadAfterFirstStart ) )
             {
-                execCqlFile();
-            }
-
-            if ( isClean && cuLoadAfterFirstStart && cuDataSet != null && cuDataSet.isFile() )
-            {
-                getLog().info( "Loading CassandraUnit dataSet " + cuDataSet + "..." );
+                BulkLoadMode bulkLoad = beginBulkLoad();
+                boolean loaded = false;
                 try
                 {
-                    DataLoader dataLoader = new DataLoader( "cassandraUnitCluster", rpcAddress + ":" + rpcPort );
-                    dataLoader.load( new FileDataSet( cuDataSet.getAbsolutePath() ) );
-                }
-                catch ( ParseException e )
-                {
-                    if ( cuLoadFailureIgnore )
+                    if ( loadAfterFirstStart )
                     {
-                        getLog().error( e.getMessage() + ". Ignoring as cuLoadFailureIgnore is true" );
+                        execCqlFile();
                     }
-                    else
+
+                    if ( cuLoadAfterFirstStart )
                     {
-                        throw new MojoExecutionException( "Error while loading CassandraUnit dataSet", e );
+                        loadCassandraUnitDataSets( cuDataSets, cuDataSet, cuLoadThreads, cuLoadStreaming,
+                                                   cuLoadFailureIgnore );
                     }
+                    loaded = true;
+                }
+                finally
+                {
+                    endBulkLoad( bulkLoad, loaded );
                 }
-                getLog().info( "Finished " + cuDataSet + "." );
+            }
+
+            if ( quiesce && startWaitSeconds >= 0 )
+            {
+                quiesce();
             }
 
             getLog().info(
@@ -142,4 +196,44 @@ public class StartCassandraMojo
             throw new MojoExecutionException( e.getLocalizedMessage(), e );
         }
     }
+
+    private void quiesce()
+        throws MojoExecutionException, MojoFailureException
+    {
+        long start = System.currentTimeMillis();
+        CassandraJmxClient jmx = connectJmx();
+        try
+        {
+            if ( quiesceFlush )
+            {
+                for ( String name : jmx.getStorageService().getNonSystemKeyspaces() )
+                {
+                    jmx.getStorageService().forceKeyspaceFlush( name );
+                }
+            }
+            getLog().info( "Waiting for Cassandra to be quiescent..." );
+            if ( !jmx.awaitQuiescence( quiesceTimeout * 1000L, 10000L, getLog() ) )
+            {
+                throw new MojoFailureException( "Cassandra was not quiescent within " + quiesceTimeout + "s" );
+            }
+            getLog().info( "Cassandra quiescent in " + ( System.currentTimeMillis() - start ) + "ms" );
+        }
+        catch ( IOException e )
+        {
+            throw new MojoExecutionException( "Could not wait for Cassandra to be quiescent", e );
+        }
+        catch ( ExecutionException e )
+        {
+            throw new MojoExecutionException( "Could not flush Cassandra", e.getCause() );
+        }
+        catch ( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException( "Interrupted while waiting for Cassandra to be quiescent", e );
+        }
+        finally
+        {
+            jmx.close();
+        }
+    }
 }
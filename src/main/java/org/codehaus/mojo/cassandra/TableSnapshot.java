@@ -0,0 +1,704 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.utils.ByteBufferUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The snapshot of the rows of one table, as written by the {@code export} goal and read by {@code import-snapshot}.
+ * <p/>
+ * A snapshot starts with a header holding the schema of the table: its keyspace, name and id, its columns and the user
+ * defined types of its keyspace. The rows follow in deflated blocks of about a megabyte, every value as its serialized
+ * form prefixed with its length, or -1 for {@code null}, in the order of the columns of the header. The header and
+ * every block carry the CRC32 of their content and the snapshot ends with an empty block followed by the number of
+ * rows, so that corrupted and truncated snapshots are detected.
+ */
+final class TableSnapshot
+{
+    static final String EXTENSION = ".snapshot";
+
+    private static final int MAGIC = 0x43534e50;
+
+    private static final int VERSION = 1;
+
+    private static final int BLOCK_SIZE = 1 << 20;
+
+    private TableSnapshot()
+    {
+    }
+
+    /**
+     * The schema of a snapshot table.
+     */
+    static final class Schema
+    {
+        private final String keyspace;
+
+        private final String table;
+
+        private final String id;
+
+        private final List<CqlDataGenerator.ColumnSchema> columns;
+
+        private final List<UserType> types;
+
+        /**
+         * @param id      the id of the table, {@code null} if unknown.
+         * @param columns the columns, in any order.
+         * @param types   the user defined types of the keyspace, those used by others first.
+         */
+        Schema(String keyspace, String table, String id, List<CqlDataGenerator.ColumnSchema> columns,
+               List<UserType> types)
+        {
+            this.keyspace = keyspace;
+            this.table = table;
+            this.id = id;
+            this.columns = new ArrayList<CqlDataGenerator.ColumnSchema>(columns);
+            Collections.sort(this.columns);
+            this.types = new ArrayList<UserType>(types);
+        }
+
+        String getKeyspace()
+        {
+            return keyspace;
+        }
+
+        String getTable()
+        {
+            return table;
+        }
+
+        /**
+         * @return the columns: the partition key, the clustering columns and the others by name.
+         */
+        List<CqlDataGenerator.ColumnSchema> getColumns()
+        {
+            return Collections.unmodifiableList(columns);
+        }
+
+        /**
+         * @return the {@code CREATE TYPE IF NOT EXISTS} statements of the user defined types, in the keyspace.
+         */
+        List<String> createTypes(String keyspace)
+        {
+            List<String> statements = new ArrayList<String>();
+            for (UserType type : types)
+            {
+                StringBuilder statement = new StringBuilder("CREATE TYPE IF NOT EXISTS ")
+                    .append(quote(keyspace)).append('.').append(quote(type.name)).append(" (");
+                for (int i = 0; i < type.fieldNames.size(); i++)
+                {
+                    statement.append(i == 0 ? "" : ", ").append(quote(type.fieldNames.get(i))).append(' ')
+                        .append(type.fieldTypes.get(i));
+                }
+                statements.add(statement.append(')').toString());
+            }
+            return statements;
+        }
+
+        /**
+         * @return the {@code CREATE TABLE IF NOT EXISTS} statement of the table in the keyspace, which keeps the id
+         *         of the table in its own keyspace only, since ids are unique within a cluster.
+         */
+        String createTable(String keyspace)
+        {
+            StringBuilder statement = new StringBuilder("CREATE TABLE IF NOT EXISTS ").append(quote(keyspace))
+                .append('.').append(quote(table)).append(" (");
+            StringBuilder partitionKey = new StringBuilder();
+            StringBuilder clustering = new StringBuilder();
+            StringBuilder order = new StringBuilder();
+            for (CqlDataGenerator.ColumnSchema column : columns)
+            {
+                statement.append(quote(column.getName())).append(' ').append(column.getType())
+                    .append(column.isStatic() ? " static, " : ", ");
+                if (column.isPartitionKey())
+                {
+                    partitionKey.append(partitionKey.length() == 0 ? "" : ", ").append(quote(column.getName()));
+                } else if (column.isClustering())
+                {
+                    clustering.append(", ").append(quote(column.getName()));
+                    order.append(order.length() == 0 ? "" : ", ").append(quote(column.getName())).append(' ')
+                        .append(column.getClusteringOrder().toUpperCase(Locale.ENGLISH));
+                }
+            }
+            statement.append("PRIMARY KEY ((").append(partitionKey).append(')').append(clustering).append("))");
+            List<String> options = new ArrayList<String>();
+            if (order.length() > 0)
+            {
+                options.add("CLUSTERING ORDER BY (" + order + ")");
+            }
+            if (id != null && keyspace.equals(this.keyspace))
+            {
+                options.add("id = '" + id + "'");
+            }
+            for (int i = 0; i < options.size(); i++)
+            {
+                statement.append(i == 0 ? " WITH " : " AND ").append(options.get(i));
+            }
+            return statement.toString();
+        }
+
+        /**
+         * @param present the indexes of the columns to set.
+         * @return the {@code INSERT} statement of the columns into the table of the keyspace.
+         */
+        String insert(String keyspace, BitSet present)
+        {
+            StringBuilder names = new StringBuilder();
+            StringBuilder markers = new StringBuilder();
+            for (int i = present.nextSetBit(0); i >= 0; i = present.nextSetBit(i + 1))
+            {
+                names.append(names.length() == 0 ? "" : ", ").append(quote(columns.get(i).getName()));
+                markers.append(markers.length() == 0 ? "?" : ", ?");
+            }
+            return "INSERT INTO " + quote(keyspace) + "." + quote(table) + " (" + names + ") VALUES (" + markers + ")";
+        }
+
+        private void write(DataOutputStream out) throws IOException
+        {
+            out.writeUTF(keyspace);
+            out.writeUTF(table);
+            out.writeUTF(id == null ? "" : id);
+            out.writeInt(columns.size());
+            for (CqlDataGenerator.ColumnSchema column : columns)
+            {
+                out.writeUTF(column.getName());
+                out.writeUTF(column.getKind());
+                out.writeInt(column.getPosition());
+                out.writeUTF(column.getType());
+                out.writeUTF(column.getClusteringOrder());
+            }
+            out.writeInt(types.size());
+            for (UserType type : types)
+            {
+                out.writeUTF(type.name);
+                out.writeInt(type.fieldNames.size());
+                for (int i = 0; i < type.fieldNames.size(); i++)
+                {
+                    out.writeUTF(type.fieldNames.get(i));
+                    out.writeUTF(type.fieldTypes.get(i));
+                }
+            }
+        }
+
+        private static Schema read(DataInputStream in) throws IOException
+        {
+            String keyspace = in.readUTF();
+            String table = in.readUTF();
+            String id = in.readUTF();
+            List<CqlDataGenerator.ColumnSchema> columns = new ArrayList<CqlDataGenerator.ColumnSchema>();
+            for (int i = in.readInt(); i > 0; i--)
+            {
+                columns.add(new CqlDataGenerator.ColumnSchema(in.readUTF(), in.readUTF(), in.readInt(), in.readUTF(),
+                                                              in.readUTF()));
+            }
+            List<UserType> types = new ArrayList<UserType>();
+            for (int i = in.readInt(); i > 0; i--)
+            {
+                String name = in.readUTF();
+                List<String> fieldNames = new ArrayList<String>();
+                List<String> fieldTypes = new ArrayList<String>();
+                for (int j = in.readInt(); j > 0; j--)
+                {
+                    fieldNames.add(in.readUTF());
+                    fieldTypes.add(in.readUTF());
+                }
+                types.add(new UserType(name, fieldNames, fieldTypes));
+            }
+            return new Schema(keyspace, table, id.length() == 0 ? null : id, columns, types);
+        }
+    }
+
+    /**
+     * A user defined type, as described by {@code system_schema.types}.
+     */
+    static final class UserType
+    {
+        private final String name;
+
+        private final List<String> fieldNames;
+
+        private final List<String> fieldTypes;
+
+        UserType(String name, List<String> fieldNames, List<String> fieldTypes)
+        {
+            this.name = name;
+            this.fieldNames = fieldNames;
+            this.fieldTypes = fieldTypes;
+        }
+
+        String getName()
+        {
+            return name;
+        }
+
+        List<String> getFieldTypes()
+        {
+            return fieldTypes;
+        }
+    }
+
+    /**
+     * Writes a snapshot. Blocks may be filled by several threads, each with its own, and written in any order.
+     */
+    static final class Writer implements Closeable
+    {
+        private final File file;
+
+        private final DataOutputStream out;
+
+        private final int columns;
+
+        private long rows;
+
+        /**
+         * Creates the snapshot and writes its header.
+         */
+        Writer(File file, Schema schema) throws IOException
+        {
+            this.file = file;
+            this.columns = schema.columns.size();
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            schema.write(new DataOutputStream(header));
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+            try
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(header.size());
+                header.writeTo(out);
+                out.writeInt(crcOf(header.toByteArray(), header.size()));
+            } catch (IOException e)
+            {
+                out.close();
+                throw e;
+            }
+        }
+
+        /**
+         * @return an empty block of rows.
+         */
+        Block newBlock()
+        {
+            return new Block(columns);
+        }
+
+        /**
+         * Writes the rows of a block, which is then empty again.
+         */
+        void write(Block block) throws IOException
+        {
+            if (block.rows == 0)
+            {
+                return;
+            }
+            byte[] raw = block.bytes.toByteArray();
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            byte[] compressed;
+            int compressedLength;
+            try
+            {
+                deflater.setInput(raw);
+                deflater.finish();
+                compressed = new byte[raw.length + raw.length / 1000 + 64];
+                compressedLength = 0;
+                while (!deflater.finished())
+                {
+                    if (compressedLength == compressed.length)
+                    {
+                        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                    }
+                    compressedLength += deflater.deflate(compressed, compressedLength,
+                                                         compressed.length - compressedLength);
+                }
+            } finally
+            {
+                deflater.end();
+            }
+            int crc = crcOf(raw, raw.length);
+            synchronized (this)
+            {
+                out.writeInt(block.rows);
+                out.writeInt(raw.length);
+                out.writeInt(compressedLength);
+                out.write(compressed, 0, compressedLength);
+                out.writeInt(crc);
+                rows += block.rows;
+            }
+            block.clear();
+        }
+
+        synchronized long getRows()
+        {
+            return rows;
+        }
+
+        /**
+         * Ends the snapshot with the number of rows written.
+         */
+        public synchronized void close() throws IOException
+        {
+            try
+            {
+                out.writeInt(0);
+                out.writeLong(rows);
+            } finally
+            {
+                out.close();
+            }
+        }
+
+        File getFile()
+        {
+            return file;
+        }
+    }
+
+    /**
+     * Rows buffered before being written as a block.
+     */
+    static final class Block
+    {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(BLOCK_SIZE + (BLOCK_SIZE >> 3));
+
+        private final DataOutputStream data = new DataOutputStream(bytes);
+
+        private final int columns;
+
+        private int rows;
+
+        private Block(int columns)
+        {
+            this.columns = columns;
+        }
+
+        /**
+         * @param values the values of the row, in the order of the columns of the schema, {@code null} if not set.
+         */
+        void add(List<ByteBuffer> values) throws IOException
+        {
+            if (values.size() != columns)
+            {
+                throw new IllegalArgumentException("Row has " + values.size() + " values for " + columns
+                                                       + " columns");
+            }
+            for (ByteBuffer value : values)
+            {
+                if (value == null)
+                {
+                    data.writeInt(-1);
+                } else
+                {
+                    data.writeInt(value.remaining());
+                    data.write(ByteBufferUtil.getArray(value));
+                }
+            }
+            rows++;
+        }
+
+        /**
+         * @return whether the block is large enough to be written.
+         */
+        boolean isFull()
+        {
+            return bytes.size() >= BLOCK_SIZE;
+        }
+
+        private void clear()
+        {
+            bytes.reset();
+            rows = 0;
+        }
+    }
+
+    /**
+     * Reads a snapshot, checking the header and every block against their checksums as it goes.
+     */
+    static final class Reader implements Iterator<List<ByteBuffer>>, Closeable
+    {
+        private final File file;
+
+        private final DataInputStream in;
+
+        private final Schema schema;
+
+        private ByteBuffer block;
+
+        private int blockRows;
+
+        private long rows;
+
+        private boolean ended;
+
+        /**
+         * Opens the snapshot and reads its header.
+         *
+         * @throws IOException if the file could not be read, or is not a valid snapshot.
+         */
+        Reader(File file) throws IOException
+        {
+            this.file = file;
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+            try
+            {
+                if (in.readInt() != MAGIC)
+                {
+                    throw new IOException(file + " is not a table snapshot");
+                }
+                int version = in.readInt();
+                if (version != VERSION)
+                {
+                    throw new IOException(file + " is a version " + version + " table snapshot, only version "
+                                              + VERSION + " is supported");
+                }
+                byte[] header = readChecked(in.readInt());
+                schema = Schema.read(new DataInputStream(new ByteArrayInputStream(header)));
+            } catch (EOFException e)
+            {
+                in.close();
+                throw new IOException(file + " is truncated", e);
+            } catch (IOException e)
+            {
+                in.close();
+                throw e;
+            }
+        }
+
+        Schema getSchema()
+        {
+            return schema;
+        }
+
+        /**
+         * @return the number of the last row returned.
+         */
+        long getRowNumber()
+        {
+            return rows;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * @throws UncheckedIOException if the snapshot could not be read, is corrupted or truncated.
+         */
+        public boolean hasNext()
+        {
+            if (blockRows > 0)
+            {
+                return true;
+            }
+            if (ended)
+            {
+                return false;
+            }
+            try
+            {
+                blockRows = in.readInt();
+                if (blockRows == 0)
+                {
+                    long count = in.readLong();
+                    if (count != rows)
+                    {
+                        throw new IOException(file + " holds " + rows + " rows but should hold " + count);
+                    }
+                    ended = true;
+                    return false;
+                }
+                int rawLength = in.readInt();
+                byte[] compressed = new byte[in.readInt()];
+                in.readFully(compressed);
+                byte[] raw = new byte[rawLength];
+                Inflater inflater = new Inflater();
+                try
+                {
+                    inflater.setInput(compressed);
+                    if (inflater.inflate(raw) != rawLength || !inflater.finished())
+                    {
+                        throw new IOException(file + " is corrupted after row " + rows);
+                    }
+                } catch (DataFormatException e)
+                {
+                    throw new IOException(file + " is corrupted after row " + rows, e);
+                } finally
+                {
+                    inflater.end();
+                }
+                if (in.readInt() != crcOf(raw, rawLength))
+                {
+                    throw new IOException(file + " is corrupted after row " + rows);
+                }
+                block = ByteBuffer.wrap(raw);
+                return true;
+            } catch (EOFException e)
+            {
+                throw new UncheckedIOException(new IOException(file + " is truncated after row " + rows, e));
+            } catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * @return the values of the row, in the order of the columns of the schema, {@code null} if not set.
+         */
+        public List<ByteBuffer> next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            List<ByteBuffer> values = new ArrayList<ByteBuffer>(schema.columns.size());
+            try
+            {
+                for (int i = 0; i < schema.columns.size(); i++)
+                {
+                    int length = block.getInt();
+                    if (length < 0)
+                    {
+                        values.add(null);
+                    } else
+                    {
+                        ByteBuffer value = block.slice();
+                        value.limit(length);
+                        block.position(block.position() + length);
+                        values.add(value);
+                    }
+                }
+            } catch (RuntimeException e)
+            {
+                // the checksum matched, so the block was written wrong
+                throw new UncheckedIOException(new IOException(file + " has an invalid row " + (rows + 1), e));
+            }
+            blockRows--;
+            rows++;
+            return values;
+        }
+
+        public void remove()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * @return the rows as {@code INSERT} statements into the table of the keyspace, of the columns that are set,
+         *         so that the columns that are not are neither overwritten nor deleted.
+         */
+        CqlImporter.BoundRows toInserts(final String keyspace)
+        {
+            final Map<BitSet, String> inserts = new HashMap<BitSet, String>();
+            return new CqlImporter.BoundRows()
+            {
+                private String statement;
+
+                public boolean hasNext()
+                {
+                    return Reader.this.hasNext();
+                }
+
+                public List<ByteBuffer> next()
+                {
+                    List<ByteBuffer> values = Reader.this.next();
+                    BitSet present = new BitSet(values.size());
+                    List<ByteBuffer> set = new ArrayList<ByteBuffer>(values.size());
+                    for (int i = 0; i < values.size(); i++)
+                    {
+                        if (values.get(i) != null)
+                        {
+                            present.set(i);
+                            set.add(values.get(i));
+                        }
+                    }
+                    statement = inserts.get(present);
+                    if (statement == null)
+                    {
+                        statement = schema.insert(keyspace, present);
+                        inserts.put(present, statement);
+                    }
+                    return set;
+                }
+
+                public void remove()
+                {
+                    throw new UnsupportedOperationException();
+                }
+
+                public String getStatement()
+                {
+                    return statement;
+                }
+
+                public long getRowNumber()
+                {
+                    return rows;
+                }
+
+                public String describe(List<ByteBuffer> values)
+                {
+                    StringBuilder description = new StringBuilder();
+                    for (ByteBuffer value : values)
+                    {
+                        description.append(description.length() == 0 ? "0x" : ", 0x")
+                            .append(ByteBufferUtil.bytesToHex(value));
+                    }
+                    return description.toString();
+                }
+            };
+        }
+
+        public void close() throws IOException
+        {
+            in.close();
+        }
+
+        private byte[] readChecked(int length) throws IOException
+        {
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            if (in.readInt() != crcOf(bytes, length))
+            {
+                throw new IOException(file + " has a corrupted header");
+            }
+            return bytes;
+        }
+    }
+
+    private static int crcOf(byte[] bytes, int length)
+    {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return (int) crc.getValue();
+    }
+
+    static String quote(String name)
+    {
+        return '"' + name.replace("\"", "\"\"") + '"';
+    }
+}
@@ -33,6 +33,11 @@ public class ThriftApiExecutionException extends RuntimeException
     {
         super(ERR_MSG + deduceExceptionMessage(t), t);
     }
+
+    public ThriftApiExecutionException(String msg, Throwable t)
+    {
+        super(ERR_MSG + msg + ". " + deduceExceptionMessage(t), t);
+    }
     
     
     private static String deduceExceptionMessage(Throwable t)
@@ -0,0 +1,184 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.db.compaction.CompactionManagerMBean;
+import org.apache.cassandra.service.StorageServiceMBean;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Changes settings of the running test instance of Cassandra, or of every node of the running cluster, that can be
+ * changed without a restart, e.g. to compare the performance of several settings within one build. Only the settings
+ * that are set are changed, and every one is reported with its value before and after.
+ * <p/>
+ * The settings last until the instance stops: the {@code yaml} of the next start is left alone.
+ *
+ * @goal tune
+ * @threadSafe
+ * @since 3.11.12.2
+ */
+public class TuneCassandraMojo extends AbstractJmxCassandraMojo
+{
+    /**
+     * Compaction throughput, in MB/s, 0 for unthrottled.
+     *
+     * @parameter property="cassandra.tune.compactionThroughput"
+     * @since 3.11.12.2
+     */
+    protected Integer tuneCompactionThroughput;
+
+    /**
+     * Streaming throughput, in megabits/s, 0 for unthrottled.
+     *
+     * @parameter property="cassandra.tune.streamThroughput"
+     * @since 3.11.12.2
+     */
+    protected Integer tuneStreamThroughput;
+
+    /**
+     * Number of compactions run concurrently.
+     *
+     * @parameter property="cassandra.tune.concurrentCompactors"
+     * @since 3.11.12.2
+     */
+    protected Integer tuneConcurrentCompactors;
+
+    /**
+     * Capacity of the key cache, in MB.
+     *
+     * @parameter property="cassandra.tune.keyCacheSize"
+     * @since 3.11.12.2
+     */
+    protected Long tuneKeyCacheSize;
+
+    /**
+     * Capacity of the row cache, in MB.
+     *
+     * @parameter property="cassandra.tune.rowCacheSize"
+     * @since 3.11.12.2
+     */
+    protected Long tuneRowCacheSize;
+
+    /**
+     * Capacity of the counter cache, in MB.
+     *
+     * @parameter property="cassandra.tune.counterCacheSize"
+     * @since 3.11.12.2
+     */
+    protected Long tuneCounterCacheSize;
+
+    /**
+     * Logging levels, by logger name, e.g. {@code <org.apache.cassandra.db>DEBUG</org.apache.cassandra.db>}.
+     *
+     * @parameter
+     * @since 3.11.12.2
+     */
+    protected Map<String, String> tuneLoggingLevels;
+
+    /**
+     * {@inheritDoc}
+     */
+    protected String getOperation()
+    {
+        return "Tuned";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected String execute(CassandraJmxClient jmx, int node) throws MojoExecutionException, MojoFailureException
+    {
+        StorageServiceMBean storageService = jmx.getStorageService();
+        List<String> changes = new ArrayList<String>();
+        try
+        {
+            if (tuneCompactionThroughput != null)
+            {
+                int before = storageService.getCompactionThroughputMbPerSec();
+                storageService.setCompactionThroughputMbPerSec(tuneCompactionThroughput);
+                changes.add(change("compaction throughput", before, storageService.getCompactionThroughputMbPerSec(),
+                                   "MB/s"));
+            }
+            if (tuneStreamThroughput != null)
+            {
+                int before = storageService.getStreamThroughputMbPerSec();
+                storageService.setStreamThroughputMbPerSec(tuneStreamThroughput);
+                changes.add(change("stream throughput", before, storageService.getStreamThroughputMbPerSec(),
+                                   "Mb/s"));
+            }
+            if (tuneConcurrentCompactors != null)
+            {
+                CompactionManagerMBean compactionManager = jmx.getCompactionManager();
+                int before = compactionManager.getMaximumCompactorThreads();
+                // the core size of a pool may not exceed its maximum size
+                if (tuneConcurrentCompactors > before)
+                {
+                    compactionManager.setMaximumCompactorThreads(tuneConcurrentCompactors);
+                    compactionManager.setCoreCompactorThreads(tuneConcurrentCompactors);
+                } else
+                {
+                    compactionManager.setCoreCompactorThreads(tuneConcurrentCompactors);
+                    compactionManager.setMaximumCompactorThreads(tuneConcurrentCompactors);
+                }
+                changes.add(change("concurrent compactors", before, compactionManager.getMaximumCompactorThreads(),
+                                   ""));
+            }
+            if (tuneKeyCacheSize != null)
+            {
+                long before = jmx.getCacheCapacity("KeyCache");
+                jmx.getCacheService().setKeyCacheCapacityInMB(tuneKeyCacheSize);
+                changes.add(change("key cache", before >> 20, jmx.getCacheCapacity("KeyCache") >> 20, "MB"));
+            }
+            if (tuneRowCacheSize != null)
+            {
+                long before = jmx.getCacheCapacity("RowCache");
+                jmx.getCacheService().setRowCacheCapacityInMB(tuneRowCacheSize);
+                changes.add(change("row cache", before >> 20, jmx.getCacheCapacity("RowCache") >> 20, "MB"));
+            }
+            if (tuneCounterCacheSize != null)
+            {
+                long before = jmx.getCacheCapacity("CounterCache");
+                jmx.getCacheService().setCounterCacheCapacityInMB(tuneCounterCacheSize);
+                changes.add(change("counter cache", before >> 20, jmx.getCacheCapacity("CounterCache") >> 20, "MB"));
+            }
+            if (tuneLoggingLevels != null)
+            {
+                for (Map.Entry<String, String> level : tuneLoggingLevels.entrySet())
+                {
+                    String before = storageService.getLoggingLevels().get(level.getKey());
+                    try
+                    {
+                        storageService.setLoggingLevel(level.getKey(), level.getValue());
+                    } catch (Exception e)
+                    {
+                        throw new MojoFailureException("Could not set the logging level of " + level.getKey() + " to "
+                                                           + level.getValue() + ": " + e.getMessage());
+                    }
+                    changes.add(change("logging level of " + level.getKey(), before,
+                                       storageService.getLoggingLevels().get(level.getKey()), ""));
+                }
+            }
+        } catch (IOException e)
+        {
+            throw new MojoExecutionException("Could not tune Cassandra: " + e.getMessage(), e);
+        } catch (IllegalArgumentException e)
+        {
+            throw new MojoFailureException("Could not tune Cassandra: " + e.getMessage());
+        }
+        if (changes.isEmpty())
+        {
+            return "Nothing to tune, set a tune* parameter";
+        }
+        return getOperation() + " " + StringUtils.join(changes, ", ");
+    }
+
+    private static String change(String setting, Object before, Object after, String unit)
+    {
+        return setting + " " + before + " -> " + after + (unit.length() == 0 ? "" : " " + unit);
+    }
+}
@@ -182,6 +182,19 @@ public final class Utils
         }
     }
 
+    /**
+     * Returns {@code true} if Cassandra has never been started in the directory, i.e. if it has not created its system
+     * keyspace yet. The directory itself may already exist, e.g. when {@code generate-sstables} installed SSTables into
+     * it ahead of the first start.
+     *
+     * @param cassandraDir the cassandra home directory.
+     * @return {@code true} if the next start is the first one.
+     */
+    static boolean isFirstStart(File cassandraDir)
+    {
+        return !new File(new File(cassandraDir, "data"), "system").isDirectory();
+    }
+
     /**
      * Returns {@code true} if the resource is not a file, does not exist or is older than the project file.
      *
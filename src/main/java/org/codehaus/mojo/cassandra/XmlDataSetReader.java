@@ -0,0 +1,89 @@
+package org.codehaus.mojo.cassandra;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads CassandraUnit XML dataSets with StAX. Elements holding only text are properties of the enclosing object.
+ */
+final class XmlDataSetReader extends CassandraUnitDataSetReader
+{
+    private static final Map<String, Level> LEVELS = new HashMap<String, Level>();
+
+    static
+    {
+        LEVELS.put("columnFamily", Level.COLUMN_FAMILY);
+        LEVELS.put("columnMetadata", Level.COLUMN_METADATA);
+        LEVELS.put("row", Level.ROW);
+        LEVELS.put("superColumn", Level.SUPER_COLUMN);
+        LEVELS.put("column", Level.COLUMN);
+    }
+
+    @Override
+    protected void parse(InputStream in)
+    {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        try
+        {
+            XMLStreamReader reader = factory.createXMLStreamReader(in);
+            try
+            {
+                Deque<Boolean> hasChildren = new ArrayDeque<Boolean>();
+                StringBuilder text = new StringBuilder();
+                while (reader.hasNext())
+                {
+                    switch (reader.next())
+                    {
+                        case XMLStreamConstants.START_ELEMENT:
+                            if (!hasChildren.isEmpty())
+                            {
+                                hasChildren.pop();
+                                hasChildren.push(true);
+                            }
+                            hasChildren.push(false);
+                            text.setLength(0);
+                            Level level = LEVELS.get(reader.getLocalName());
+                            if (level != null)
+                            {
+                                begin(level);
+                            }
+                            break;
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA:
+                            text.append(reader.getText());
+                            break;
+                        case XMLStreamConstants.END_ELEMENT:
+                            level = LEVELS.get(reader.getLocalName());
+                            if (level != null)
+                            {
+                                end(level);
+                            } else if (!hasChildren.peek())
+                            {
+                                property(reader.getLocalName(), text.toString().trim());
+                            }
+                            hasChildren.pop();
+                            text.setLength(0);
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            } finally
+            {
+                reader.close();
+            }
+        } catch (XMLStreamException e)
+        {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package org.codehaus.mojo.cassandra;
+
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingEndEvent;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceEndEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+import org.yaml.snakeyaml.error.YAMLException;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads CassandraUnit JSON and YAML dataSets from the event stream of SnakeYAML, JSON being a subset of YAML. The
+ * mappings listed under {@code columnFamilies}, {@code columnsMetadata}, {@code rows}, {@code superColumns} and
+ * {@code columns} are the objects of the dataSet, scalars are properties of the enclosing object.
+ */
+final class YamlDataSetReader extends CassandraUnitDataSetReader
+{
+    private static final Map<String, Level> LEVELS = new HashMap<String, Level>();
+
+    static
+    {
+        LEVELS.put("columnFamilies", Level.COLUMN_FAMILY);
+        LEVELS.put("columnsMetadata", Level.COLUMN_METADATA);
+        LEVELS.put("columnMetadata", Level.COLUMN_METADATA);
+        LEVELS.put("rows", Level.ROW);
+        LEVELS.put("superColumns", Level.SUPER_COLUMN);
+        LEVELS.put("columns", Level.COLUMN);
+    }
+
+    @Override
+    protected void parse(InputStream in)
+    {
+        Deque<Frame> frames = new ArrayDeque<Frame>();
+        try
+        {
+            for (Event event : new Yaml().parse(new InputStreamReader(in, Charset.forName("UTF-8"))))
+            {
+                Frame parent = frames.peek();
+                if (event instanceof MappingStartEvent || event instanceof SequenceStartEvent)
+                {
+                    String key = null;
+                    if (parent != null)
+                    {
+                        key = parent.mapping ? parent.key : parent.container;
+                        parent.key = null;
+                    }
+                    Frame frame = new Frame(event instanceof MappingStartEvent, key);
+                    if (frame.mapping && parent != null && !parent.mapping)
+                    {
+                        frame.level = LEVELS.get(key);
+                    }
+                    frames.push(frame);
+                    if (frame.level != null)
+                    {
+                        begin(frame.level);
+                    }
+                } else if (event instanceof MappingEndEvent || event instanceof SequenceEndEvent)
+                {
+                    Frame frame = frames.pop();
+                    if (frame.level != null)
+                    {
+                        end(frame.level);
+                    }
+                } else if (event instanceof ScalarEvent && parent != null && parent.mapping)
+                {
+                    String value = ((ScalarEvent) event).getValue();
+                    if (parent.key == null)
+                    {
+                        parent.key = value;
+                    } else
+                    {
+                        property(parent.key, value);
+                        parent.key = null;
+                    }
+                }
+            }
+        } catch (YAMLException e)
+        {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    private static final class Frame
+    {
+        private final boolean mapping;
+
+        /**
+         * The key the mapping or sequence is the value of.
+         */
+        private final String container;
+
+        /**
+         * The object the mapping is, if any.
+         */
+        private Level level;
+
+        /**
+         * The key of a mapping whose value has not been read yet.
+         */
+        private String key;
+
+        private Frame(boolean mapping, String container)
+        {
+            this.mapping = mapping;
+            this.container = container;
+        }
+    }
+}
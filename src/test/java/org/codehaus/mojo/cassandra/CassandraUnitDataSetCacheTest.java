@@ -0,0 +1,103 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.thrift.CfDef;
+import org.apache.cassandra.thrift.KsDef;
+import org.apache.cassandra.thrift.Mutation;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CassandraUnitDataSetCacheTest {
+
+    private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<keyspace xmlns=\"http://xml.dataset.cassandraunit.org\">\n"
+            + "  <name>ks</name>\n"
+            + "  <columnFamilies>\n"
+            + "    <columnFamily>\n"
+            + "      <name>users</name>\n"
+            + "      <keyType>UTF8Type</keyType>\n"
+            + "      <comparatorType>UTF8Type</comparatorType>\n"
+            + "      <defaultColumnValueType>UTF8Type</defaultColumnValueType>\n"
+            + "      <row><key>jdoe</key><column><name>name</name><value>John</value></column></row>\n"
+            + "    </columnFamily>\n"
+            + "  </columnFamilies>\n"
+            + "</keyspace>\n";
+
+    @Test
+    public void should_replay_an_unchanged_data_set() throws Exception {
+        File directory = directory();
+        File dataSet = write(XML);
+        List<Object> parsed = new ArrayList<Object>();
+        List<Object> replayed = new ArrayList<Object>();
+
+        assertFalse(new CassandraUnitDataSetCache(directory, "1.0").read(dataSet, recorder(parsed)));
+        assertTrue(new CassandraUnitDataSetCache(directory, "1.0").read(dataSet, recorder(replayed)));
+
+        assertEquals(3, parsed.size());
+        assertEquals(parsed, replayed);
+        assertEquals(1, directory.list().length);
+    }
+
+    @Test
+    public void should_not_replay_a_changed_data_set_or_another_plugin_version() throws Exception {
+        File directory = directory();
+        File dataSet = write(XML);
+        List<Object> events = new ArrayList<Object>();
+
+        assertFalse(new CassandraUnitDataSetCache(directory, "1.0").read(dataSet, recorder(events)));
+        assertFalse(new CassandraUnitDataSetCache(directory, "1.1").read(dataSet, recorder(events)));
+        File changed = write(XML.replace("John", "Jane"));
+        assertFalse(new CassandraUnitDataSetCache(directory, "1.0").read(changed, recorder(events)));
+        assertTrue(new CassandraUnitDataSetCache(directory, "1.0").read(changed, recorder(events)));
+    }
+
+    private static CassandraUnitDataSetReader.Handler recorder(final List<Object> events) {
+        return new CassandraUnitDataSetReader.Handler() {
+            public void keyspace(KsDef keyspace) {
+                events.add(keyspace);
+            }
+
+            public void columnFamily(CfDef columnFamily) {
+                events.add(columnFamily);
+            }
+
+            public void row(String columnFamily, ByteBuffer key, List<Mutation> mutations) {
+                List<Object> row = new ArrayList<Object>();
+                row.add(columnFamily);
+                row.add(key);
+                row.addAll(mutations);
+                events.add(row);
+            }
+        };
+    }
+
+    private static File directory() throws IOException {
+        File directory = File.createTempFile("cassandra-unit-cache", "");
+        directory.delete();
+        directory.mkdirs();
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    private static File write(String content) throws IOException {
+        File file = File.createTempFile("dataSet", ".xml");
+        file.deleteOnExit();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,53 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class CassandraUnitDataSetLoaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void should_expand_directories_into_their_data_sets_in_name_order() throws IOException,
+            MojoExecutionException {
+        File directory = folder.newFolder("dataSets");
+        File b = new File(directory, "b.json");
+        File a = new File(directory, "a.xml");
+        File c = new File(directory, "c.yml");
+        for (File file : Arrays.asList(b, a, c, new File(directory, "notes.txt"))) {
+            file.createNewFile();
+        }
+        new File(directory, "nested.xml").mkdir();
+        File single = folder.newFile("single.yaml");
+
+        List<File> dataSets = CassandraUnitDataSetLoader.listDataSets(single, null, directory,
+                new File(folder.getRoot(), "missing.xml"));
+
+        assertEquals(Arrays.asList(single, a, b, c), dataSets);
+    }
+
+    @Test
+    public void should_group_data_sets_by_keyspace_in_the_order_given() {
+        File first = new File("first.xml");
+        File second = new File("second.xml");
+        File third = new File("third.xml");
+
+        Map<String, List<File>> groups = CassandraUnitDataSetLoader.groupByKeyspace(
+                Arrays.asList(first, second, third), Arrays.asList("shop", "users", "shop"));
+
+        assertEquals(Arrays.asList("shop", "users"), Arrays.asList(groups.keySet().toArray()));
+        assertEquals(Arrays.asList(first, third), groups.get("shop"));
+        assertEquals(Arrays.asList(second), groups.get("users"));
+    }
+}
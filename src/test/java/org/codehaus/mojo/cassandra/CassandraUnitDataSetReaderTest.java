@@ -0,0 +1,140 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.thrift.CfDef;
+import org.apache.cassandra.thrift.KsDef;
+import org.apache.cassandra.thrift.Mutation;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CassandraUnitDataSetReaderTest {
+
+    private static final String XML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<keyspace xmlns=\"http://xml.dataset.cassandraunit.org\">\n"
+            + "  <name>ks</name>\n"
+            + "  <replicationFactor>1</replicationFactor>\n"
+            + "  <columnFamilies>\n"
+            + "    <columnFamily>\n"
+            + "      <name>users</name>\n"
+            + "      <keyType>UTF8Type</keyType>\n"
+            + "      <comparatorType>UTF8Type</comparatorType>\n"
+            + "      <defaultColumnValueType>UTF8Type</defaultColumnValueType>\n"
+            + "      <columnMetadata><name>age</name><validationClass>LongType</validationClass></columnMetadata>\n"
+            + "      <row><key>jdoe</key>\n"
+            + "        <column><name>name</name><value>John</value></column>\n"
+            + "        <column><name>age</name><value>42</value></column>\n"
+            + "      </row>\n"
+            + "      <row><key>asmith</key><column><name>name</name><value>Ann</value></column></row>\n"
+            + "    </columnFamily>\n"
+            + "    <columnFamily><name>counts</name><defaultColumnValueType>CounterColumnType</defaultColumnValueType>\n"
+            + "      <row><key>0a</key><column><name>0b</name><value>long(7)</value></column></row>\n"
+            + "    </columnFamily>\n"
+            + "  </columnFamilies>\n"
+            + "</keyspace>\n";
+
+    private static final String JSON = "{\n"
+            + "  \"name\": \"ks\",\n"
+            + "  \"columnFamilies\": [{\n"
+            + "    \"name\": \"users\",\n"
+            + "    \"keyType\": \"UTF8Type\",\n"
+            + "    \"comparatorType\": \"UTF8Type\",\n"
+            + "    \"defaultColumnValueType\": \"UTF8Type\",\n"
+            + "    \"columnsMetadata\": [{\"name\": \"age\", \"validationClass\": \"LongType\"}],\n"
+            + "    \"rows\": [\n"
+            + "      {\"key\": \"jdoe\", \"columns\": [{\"name\": \"name\", \"value\": \"John\"},\n"
+            + "                                   {\"name\": \"age\", \"value\": \"42\"}]},\n"
+            + "      {\"columns\": [{\"name\": \"name\", \"value\": \"Ann\"}], \"key\": \"asmith\"}\n"
+            + "    ]\n"
+            + "  }, {\n"
+            + "    \"name\": \"counts\",\n"
+            + "    \"defaultColumnValueType\": \"CounterColumnType\",\n"
+            + "    \"rows\": [{\"key\": \"0a\", \"columns\": [{\"name\": \"0b\", \"value\": \"long(7)\"}]}]\n"
+            + "  }]\n"
+            + "}\n";
+
+    @Test
+    public void should_stream_xml_data_sets() throws Exception {
+        assertEvents(read(write("dataSet.xml", XML)));
+    }
+
+    @Test
+    public void should_stream_json_data_sets() throws Exception {
+        assertEvents(read(write("dataSet.json", JSON)));
+    }
+
+    @Test
+    public void should_read_only_the_keyspace_name() throws Exception {
+        assertEquals("ks", CassandraUnitDataSetReader.readKeyspaceName(write("dataSet.xml", XML)));
+        assertEquals("ks", CassandraUnitDataSetReader.readKeyspaceName(write("dataSet.json", JSON)));
+    }
+
+    @Test
+    public void should_require_column_family_properties_before_rows() throws Exception {
+        String json = "{\"name\": \"ks\", \"columnFamilies\": [{\"name\": \"users\", "
+                + "\"rows\": [{\"key\": \"00\", \"columns\": []}], \"keyType\": \"UTF8Type\"}]}";
+        try {
+            read(write("dataSet.json", json));
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("keyType must precede the rows"));
+            return;
+        }
+        throw new AssertionError("expected an IllegalArgumentException");
+    }
+
+    private static void assertEvents(List<String> events) {
+        assertEquals("keyspace ks SimpleStrategy 1", events.get(0));
+        assertEquals("column family users Standard UTF8Type 1 column(s)", events.get(1));
+        assertEquals("row users jdoe 2", events.get(2));
+        assertEquals("row users asmith 1", events.get(3));
+        assertEquals("column family counts Standard BytesType 0 column(s)", events.get(4));
+        assertEquals("row counts 1 1", events.get(5));
+        assertEquals(6, events.size());
+    }
+
+    private static List<String> read(File file) throws IOException {
+        final List<String> events = new ArrayList<String>();
+        CassandraUnitDataSetReader.forFile(file).read(file, new CassandraUnitDataSetReader.Handler() {
+            public void keyspace(KsDef keyspace) {
+                String strategy = keyspace.getStrategy_class();
+                events.add("keyspace " + keyspace.getName() + " " + strategy.substring(strategy.lastIndexOf('.') + 1)
+                        + " " + keyspace.getStrategy_options().get("replication_factor"));
+            }
+
+            public void columnFamily(CfDef columnFamily) {
+                events.add("column family " + columnFamily.getName() + " " + columnFamily.getColumn_type() + " "
+                        + columnFamily.getKey_validation_class() + " " + columnFamily.getColumn_metadata().size()
+                        + " column(s)");
+            }
+
+            public void row(String columnFamily, ByteBuffer key, List<Mutation> mutations) {
+                String text = columnFamily.equals("counts")
+                        ? String.valueOf(key.remaining())
+                        : Charset.forName("UTF-8").decode(key.duplicate()).toString();
+                events.add("row " + columnFamily + " " + text + " " + mutations.size());
+            }
+        });
+        return events;
+    }
+
+    private static File write(String name, String content) throws IOException {
+        File file = File.createTempFile("cassandra-unit", name);
+        file.deleteOnExit();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,55 @@
+package org.codehaus.mojo.cassandra;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CqlBenchmarkTest {
+
+    @Test
+    public void should_parse_weighted_statements() {
+        CqlBenchmark.Operation read = CqlBenchmark.parseOperation(" 9 : SELECT * FROM ks.t WHERE id = ?; ");
+        assertEquals(9, read.getWeight());
+        assertEquals("SELECT * FROM ks.t WHERE id = ?", read.getStatement());
+        CqlBenchmark.Operation write = CqlBenchmark.parseOperation("INSERT INTO ks.t (id, m) VALUES (?, {1: 'a'})");
+        assertEquals(1, write.getWeight());
+        assertEquals("INSERT INTO ks.t (id, m) VALUES (?, {1: 'a'})", write.getStatement());
+        for (String spec : new String[]{"0: SELECT * FROM ks.t", "3:", " "}) {
+            try {
+                CqlBenchmark.parseOperation(spec);
+                fail(spec);
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void should_report_regressions_beyond_the_threshold() {
+        Properties baseline = results("1000.0", "500", "2000");
+        assertTrue(CqlBenchmark.regressions(baseline, results("950.0", "540", "2150"), 10).isEmpty());
+
+        List<String> regressions = CqlBenchmark.regressions(baseline, results("850.0", "500", "2300"), 10);
+        assertEquals(Arrays.asList("throughput dropped from 1000.0 to 850.0 ops/s (15.0%)",
+                "latency.p99.micros rose from 2000 to 2300 (+15.0%)"), regressions);
+    }
+
+    @Test
+    public void should_ignore_missing_baseline_values() {
+        assertTrue(CqlBenchmark.regressions(new Properties(), results("1.0", "9999", "9999"), 10).isEmpty());
+    }
+
+    private static Properties results(String throughput, String p50, String p99) {
+        Properties properties = new Properties();
+        properties.setProperty("throughput", throughput);
+        properties.setProperty("latency.p50.micros", p50);
+        properties.setProperty("latency.p99.micros", p99);
+        return properties;
+    }
+}
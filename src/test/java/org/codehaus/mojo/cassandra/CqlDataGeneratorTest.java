@@ -0,0 +1,121 @@
+package org.codehaus.mojo.cassandra;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CqlDataGeneratorTest {
+
+    private static final List<CqlDataGenerator.ColumnSchema> COLUMNS = Arrays.asList(
+            new CqlDataGenerator.ColumnSchema("payload", "regular", -1, "map<int, frozen<list<text>>>"),
+            new CqlDataGenerator.ColumnSchema("ts", "clustering", 0, "timestamp"),
+            new CqlDataGenerator.ColumnSchema("owner", "static", -1, "uuid"),
+            new CqlDataGenerator.ColumnSchema("id", "partition_key", 0, "text"),
+            new CqlDataGenerator.ColumnSchema("Bucket", "partition_key", 1, "int"));
+
+    @Test
+    public void should_generate_the_same_rows_from_the_same_seed() {
+        assertEquals(generate(42), generate(42));
+        assertFalse(generate(42).equals(generate(43)));
+    }
+
+    @Test
+    public void should_keep_the_partition_key_of_a_partition_and_write_static_columns_once() {
+        List<String> rows = generate(7);
+        assertEquals(6, rows.size());
+        for (int partition = 0; partition < 2; partition++) {
+            String key = partitionKey(rows.get(partition * 3));
+            assertTrue(rows.get(partition * 3), rows.get(partition * 3).contains("\"owner\": "));
+            for (int row = 1; row < 3; row++) {
+                assertEquals(key, partitionKey(rows.get(partition * 3 + row)));
+                assertFalse(rows.get(partition * 3 + row).contains("\"owner\""));
+            }
+        }
+        assertFalse(partitionKey(rows.get(0)).equals(partitionKey(rows.get(3))));
+        assertTrue(rows.get(0), rows.get(0).matches("\\{\"id\": \"[a-z]*0\", .*"));
+        assertTrue(rows.get(3), rows.get(3).matches("\\{\"id\": \"[a-z]*1\", .*"));
+        assertTrue(rows.get(0), rows.get(0).contains("\"\\\"Bucket\\\"\": "));
+        assertTrue(rows.get(0), rows.get(0).contains("\"ts\": 1500000000000, "));
+        assertTrue(rows.get(2), rows.get(2).contains("\"ts\": 1500000000002, "));
+    }
+
+    @Test
+    public void should_make_text_keys_distinct_whatever_their_size() {
+        List<CqlDataGenerator.ColumnSchema> columns = Arrays.asList(
+                new CqlDataGenerator.ColumnSchema("id", "partition_key", 0, "text"));
+        CqlDataGenerator generator = new CqlDataGenerator(columns, 1000, 1, 0,
+                CqlDataGenerator.Distribution.parse("uniform(0, 3)"), null, null);
+        HashSet<String> keys = new HashSet<String>();
+        while (generator.hasNext()) {
+            assertTrue(keys.add(generator.next()));
+        }
+        assertEquals(1000, keys.size());
+    }
+
+    @Test
+    public void should_reject_types_it_cannot_generate() {
+        for (String type : new String[]{"counter", "frozen<address>", "list<address>"}) {
+            try {
+                new CqlDataGenerator(Arrays.asList(new CqlDataGenerator.ColumnSchema("c", "regular", -1, type)), 1,
+                        1, 0, null, null, null);
+                fail(type);
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void should_parse_types() {
+        assertEquals("map", CqlDataGenerator.baseType("frozen<map<text, frozen<list<int>>>>"));
+        assertEquals(Arrays.asList("text", "frozen<list<int>>"),
+                CqlDataGenerator.typeArguments("frozen<map<text, frozen<list<int>>>>"));
+        assertEquals(Arrays.asList("int", "text", "uuid"), CqlDataGenerator.typeArguments("tuple<int, text, uuid>"));
+        assertTrue(CqlDataGenerator.typeArguments("text").isEmpty());
+    }
+
+    @Test
+    public void should_parse_size_distributions() {
+        Random random = new Random(0);
+        assertEquals(12, CqlDataGenerator.Distribution.parse("12").sample(random));
+        assertEquals(12, CqlDataGenerator.Distribution.parse("fixed(12)").sample(random));
+        for (int i = 0; i < 100; i++) {
+            int size = CqlDataGenerator.Distribution.parse("uniform(4, 8)").sample(random);
+            assertTrue(String.valueOf(size), size >= 4 && size <= 8);
+            assertTrue(CqlDataGenerator.Distribution.parse("gaussian(2, 10)").sample(random) >= 0);
+        }
+        for (String spec : new String[]{"uniform(8, 4)", "fixed(1, 2)", "gaussian(2)", "zipf(1, 2)", "-1"}) {
+            try {
+                CqlDataGenerator.Distribution.parse(spec);
+                fail(spec);
+            } catch (IllegalArgumentException expected) {
+                // expected
+            }
+        }
+    }
+
+    private static List<String> generate(long seed) {
+        CqlDataGenerator.Distribution size = CqlDataGenerator.Distribution.parse("uniform(4, 12)");
+        CqlDataGenerator generator = new CqlDataGenerator(COLUMNS, 2, 3, seed, size, size, size);
+        assertEquals(6, generator.getRows());
+        List<String> rows = new ArrayList<String>();
+        while (generator.hasNext()) {
+            rows.add(generator.next());
+            assertEquals(rows.size(), generator.getRowNumber());
+        }
+        return rows;
+    }
+
+    private static String partitionKey(String row) {
+        return row.substring(0, row.indexOf("\"ts\""));
+    }
+}
@@ -0,0 +1,56 @@
+package org.codehaus.mojo.cassandra;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CqlExporterTest {
+
+    @Test
+    public void should_split_the_ring_into_contiguous_ranges() {
+        List<BigInteger> bounds = CqlExporter.split("org.apache.cassandra.dht.Murmur3Partitioner", 3);
+        assertEquals(4, bounds.size());
+        assertEquals(BigInteger.valueOf(Long.MIN_VALUE), bounds.get(0));
+        assertEquals(BigInteger.valueOf(Long.MAX_VALUE), bounds.get(3));
+        for (int i = 1; i < bounds.size(); i++) {
+            assertTrue(bounds.get(i - 1).compareTo(bounds.get(i)) < 0);
+        }
+        bounds = CqlExporter.split("org.apache.cassandra.dht.RandomPartitioner", 1);
+        assertEquals(Arrays.asList(BigInteger.ONE.negate(), BigInteger.ONE.shiftLeft(127)), bounds);
+        try {
+            CqlExporter.split("org.apache.cassandra.dht.ByteOrderedPartitioner", 4);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // expected
+        }
+    }
+
+    @Test
+    public void should_declare_the_types_a_type_uses_first() {
+        List<TableSnapshot.UserType> types = CqlExporter.dependenciesFirst(Arrays.asList(
+                type("person", "frozen<address>", "list<frozen<\"Phone\">>"),
+                type("address", "text", "frozen<geo>"),
+                type("Phone", "text"),
+                type("geo", "double", "double")));
+        assertEquals(Arrays.asList("Phone", "geo", "address", "person"), names(types));
+    }
+
+    private static TableSnapshot.UserType type(String name, String... fieldTypes) {
+        return new TableSnapshot.UserType(name, Collections.nCopies(fieldTypes.length, "f"), Arrays.asList(fieldTypes));
+    }
+
+    private static List<String> names(List<TableSnapshot.UserType> types) {
+        String[] names = new String[types.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = types.get(i).getName();
+        }
+        return Arrays.asList(names);
+    }
+}
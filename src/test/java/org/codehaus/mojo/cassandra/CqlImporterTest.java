@@ -0,0 +1,46 @@
+package org.codehaus.mojo.cassandra;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class CqlImporterTest {
+
+    private static final long TARGET = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    public void should_grow_by_one_per_window_of_fast_writes() {
+        CqlImporter.AimdLimit limit = new CqlImporter.AimdLimit(4, 6, TARGET);
+
+        for (int i = 0; i < 5; i++) {
+            limit.onSuccess(TARGET / 2);
+        }
+        assertEquals(5, limit.get());
+
+        for (int i = 0; i < 100; i++) {
+            limit.onSuccess(TARGET / 2);
+        }
+        assertEquals(6, limit.get());
+    }
+
+    @Test
+    public void should_halve_once_per_latency_target_on_congestion() {
+        CqlImporter.AimdLimit limit = new CqlImporter.AimdLimit(32, 64, TARGET);
+
+        limit.onOverload();
+        limit.onSuccess(TARGET * 2);
+        limit.onOverload();
+        assertEquals(16, limit.get());
+    }
+
+    @Test
+    public void should_not_go_below_one() {
+        CqlImporter.AimdLimit limit = new CqlImporter.AimdLimit(1, 64, 0);
+
+        limit.onOverload();
+        limit.onOverload();
+        assertEquals(1, limit.get());
+    }
+}
@@ -0,0 +1,43 @@
+package org.codehaus.mojo.cassandra;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class CqlMigrationTest {
+
+    @Test
+    public void should_parse_and_order_migration_file_names() {
+        CqlMigration v10 = CqlMigration.of(new File("V10__add_index.cql"));
+        CqlMigration v2 = CqlMigration.of(new File("V002__create_users.cql"));
+        CqlMigration v2_1 = CqlMigration.of(new File("V2_1__alter_users.cql"));
+
+        assertEquals("2", v2.getVersion());
+        assertEquals("create users", v2.getDescription());
+        assertEquals("2.1", v2_1.getVersion());
+        assertNull(CqlMigration.of(new File("create_users.cql")));
+        assertNull(CqlMigration.of(new File("V1_create_users.cql")));
+
+        List<CqlMigration> migrations = Arrays.asList(v10, v2_1, v2);
+        Collections.sort(migrations);
+        assertEquals(Arrays.asList(v2, v2_1, v10), migrations);
+    }
+
+    @Test
+    public void should_ignore_line_terminators_in_checksums() throws Exception {
+        int unix = CqlMigration.checksumOf(new StringReader("CREATE TABLE t (id int PRIMARY KEY);\nDROP TABLE t;\n"));
+        int windows = CqlMigration.checksumOf(new StringReader("CREATE TABLE t (id int PRIMARY KEY);\r\nDROP TABLE t;\r\n"));
+        int edited = CqlMigration.checksumOf(new StringReader("CREATE TABLE t (id int PRIMARY KEY);\nDROP TABLE u;\n"));
+
+        assertEquals(unix, windows);
+        assertFalse(unix == edited);
+    }
+}
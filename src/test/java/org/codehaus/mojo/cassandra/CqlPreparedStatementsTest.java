@@ -0,0 +1,98 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.Compression;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CqlPreparedResult;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.InvalidRequestException;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CqlPreparedStatementsTest {
+    @Test
+    public void should_replace_constants_by_bind_markers() {
+        List<CqlScanner.Token> constants = new ArrayList<CqlScanner.Token>();
+
+        String shape = CqlPreparedStatements.shapeOf(
+                "INSERT INTO ks.t (id, name, data, v, w)\n  VALUES (-42, 'it''s', 0xcafe, 1.5e3, $$a;b$$) USING TTL 10",
+                constants);
+
+        assertEquals("INSERT INTO ks.t (id, name, data, v, w) VALUES (?, ?, ?, ?, ?) USING TTL ?", shape);
+        assertEquals(6, constants.size());
+        assertEquals("-42", CqlPreparedStatements.valueOf(constants.get(0)));
+        assertEquals("it's", CqlPreparedStatements.valueOf(constants.get(1)));
+        assertEquals("cafe", CqlPreparedStatements.valueOf(constants.get(2)));
+        assertEquals("1.5e3", CqlPreparedStatements.valueOf(constants.get(3)));
+        assertEquals("a;b", CqlPreparedStatements.valueOf(constants.get(4)));
+        assertEquals("10", CqlPreparedStatements.valueOf(constants.get(5)));
+    }
+
+    @Test
+    public void should_give_statements_differing_in_values_and_layout_the_same_shape() {
+        String first = CqlPreparedStatements.shapeOf(
+                "UPDATE t SET c = c + 1 WHERE id = 123e4567-e89b-12d3-a456-426655440000 -- first",
+                new ArrayList<CqlScanner.Token>());
+        String second = CqlPreparedStatements.shapeOf(
+                "UPDATE t  SET c = c + 7\nWHERE id = 00000000-0000-0000-0000-000000000000",
+                new ArrayList<CqlScanner.Token>());
+
+        assertEquals("UPDATE t SET c = c + ? WHERE id = ?", first);
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void should_prepare_again_after_schema_changes() throws Exception {
+        FakeClient client = new FakeClient();
+        CqlPreparedStatements statements = new CqlPreparedStatements(client);
+
+        statements.execute("ks", "INSERT INTO t (id) VALUES ('a')");
+        statements.execute("ks", "INSERT INTO t (id) VALUES ('b')");
+        assertNull(statements.execute("ks", "DROP TABLE t"));
+        statements.execute("ks", "INSERT INTO t (id) VALUES ('c')");
+        // the table is dropped over another connection
+        client.known.clear();
+        statements.execute("ks", "INSERT INTO t (id) VALUES ('d')");
+
+        assertEquals(Arrays.asList("prepare 1", "execute 1", "execute 1", "prepare 2", "execute 2", "unknown 2",
+                "prepare 3", "execute 3"), client.calls);
+    }
+
+    private static final class FakeClient extends Cassandra.Client {
+        private final List<String> calls = new ArrayList<String>();
+        private final Set<Integer> known = new HashSet<Integer>();
+        private int lastId;
+
+        private FakeClient() {
+            super(null);
+        }
+
+        @Override
+        public CqlPreparedResult prepare_cql3_query(ByteBuffer query, Compression compression) {
+            known.add(++lastId);
+            calls.add("prepare " + lastId);
+            return new CqlPreparedResult(lastId, 1).setVariable_types(Collections.singletonList("UTF8Type"));
+        }
+
+        @Override
+        public CqlResult execute_prepared_cql3_query(int itemId, List<ByteBuffer> values,
+                                                     ConsistencyLevel consistency) throws InvalidRequestException {
+            if (!known.contains(itemId)) {
+                calls.add("unknown " + itemId);
+                throw new InvalidRequestException("Prepared query with ID " + itemId + " not found");
+            }
+            calls.add("execute " + itemId);
+            return new CqlResult();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class CqlSchemaDiffTest {
+
+    private static final String SCHEMA_KEYSPACE =
+            "CREATE KEYSPACE IF NOT EXISTS ks WITH replication = {'class': 'SimpleStrategy', 'replication_factor': 1}";
+
+    private static final String SCHEMA_TABLE =
+            "CREATE TABLE ks.users (id int, bucket int, name varchar, tags set<text>, PRIMARY KEY ((id, bucket)))";
+
+    private static CqlSchemaDiff.LiveKeyspace liveKeyspace(String... extraColumns) {
+        CqlSchemaDiff.LiveKeyspace ks = new CqlSchemaDiff.LiveKeyspace();
+        Map<String, CqlSchemaDiff.ColumnDefinition> columns = new LinkedHashMap<String, CqlSchemaDiff.ColumnDefinition>();
+        columns.put("id", new CqlSchemaDiff.ColumnDefinition("partition_key", "int", 0));
+        columns.put("bucket", new CqlSchemaDiff.ColumnDefinition("partition_key", "int", 1));
+        columns.put("name", new CqlSchemaDiff.ColumnDefinition("regular", "text", -1));
+        for (String column : extraColumns) {
+            columns.put(column, new CqlSchemaDiff.ColumnDefinition("regular", "text", -1));
+        }
+        ks.tables.put("users", columns);
+        ks.tables.put("old", new LinkedHashMap<String, CqlSchemaDiff.ColumnDefinition>());
+        return ks;
+    }
+
+    private static List<String> diff(final CqlSchemaDiff.LiveKeyspace live, boolean drop, String... statements) {
+        CqlSchemaDiff diff = new CqlSchemaDiff(CqlStatement.number(Arrays.asList(statements).iterator()), null, null,
+                drop, new SystemStreamLog()) {
+            @Override
+            LiveKeyspace readKeyspace(String ks) {
+                return "ks".equals(ks) ? live : null;
+            }
+        };
+        List<String> result = new ArrayList<String>();
+        while (diff.hasNext()) {
+            result.add(diff.next().getCql());
+        }
+        return result;
+    }
+
+    @Test
+    public void should_only_add_missing_columns_to_existing_tables() {
+        List<String> result = diff(liveKeyspace(), false,
+                SCHEMA_KEYSPACE,
+                SCHEMA_TABLE,
+                "CREATE TABLE ks.events (id timeuuid PRIMARY KEY)",
+                "INSERT INTO ks.users (id, bucket, name) VALUES (1, 0, 'a')");
+
+        assertEquals(Arrays.asList(
+                "ALTER TABLE \"ks\".\"users\" ADD \"tags\" set<text>",
+                "CREATE TABLE ks.events (id timeuuid PRIMARY KEY)",
+                "INSERT INTO ks.users (id, bucket, name) VALUES (1, 0, 'a')"), result);
+    }
+
+    @Test
+    public void should_execute_nothing_when_the_schema_matches() {
+        assertEquals(new ArrayList<String>(), diff(liveKeyspace("tags"), false, SCHEMA_KEYSPACE, SCHEMA_TABLE
+                .replace("set<text>", "text")));
+    }
+
+    @Test
+    public void should_drop_what_the_script_does_not_declare() {
+        List<String> result = diff(liveKeyspace("tags", "extra"), true,
+                SCHEMA_KEYSPACE,
+                SCHEMA_TABLE.replace("set<text>", "text"));
+
+        assertEquals(Arrays.asList(
+                "ALTER TABLE \"ks\".\"users\" DROP \"extra\"",
+                "DROP TABLE \"ks\".\"old\""), result);
+    }
+}
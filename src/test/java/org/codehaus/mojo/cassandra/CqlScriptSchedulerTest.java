@@ -0,0 +1,77 @@
+package org.codehaus.mojo.cassandra;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CqlScriptSchedulerTest {
+
+    private static CqlScriptScheduler.Node node(CqlScriptScheduler scheduler, int index) {
+        return scheduler.getNodes().get(index);
+    }
+
+    private static void add(CqlScriptScheduler scheduler, String script, String... statements) {
+        scheduler.add(script, CqlStatement.number(Arrays.asList(statements).iterator()));
+    }
+
+    @Test
+    public void should_determine_the_objects_touched_by_statements() {
+        assertEquals("ks.*", CqlScriptScheduler.scopeOf(
+                "CREATE KEYSPACE IF NOT EXISTS ks WITH replication = {'class': 'SimpleStrategy'}", null).toString());
+        assertEquals("other.*", CqlScriptScheduler.scopeOf("CREATE TYPE other.address (street text)", "ks").toString());
+        assertEquals("{ks=[users]}", CqlScriptScheduler.scopeOf("CREATE INDEX ON users (name)", "ks").toString());
+        assertEquals("{ks=[by_name, users]}", CqlScriptScheduler.scopeOf(
+                "CREATE MATERIALIZED VIEW by_name AS SELECT * FROM users WHERE name IS NOT NULL PRIMARY KEY (name, id)",
+                "ks").toString());
+        assertEquals("{a=[t], b=[u]}", CqlScriptScheduler.scopeOf(
+                "BEGIN BATCH INSERT INTO a.t (id) VALUES (1); UPDATE b.u SET v = 'from' WHERE id = 1; APPLY BATCH",
+                null).toString());
+        assertTrue(CqlScriptScheduler.scopeOf("GRANT SELECT ON ALL KEYSPACES TO bob", "ks").isGlobal());
+    }
+
+    @Test
+    public void should_run_independent_keyspaces_and_tables_concurrently() {
+        CqlScriptScheduler scheduler = new CqlScriptScheduler("localhost", 9160, "3.4.0", null, 4, false, null);
+        add(scheduler, "a.cql",
+                "CREATE KEYSPACE a WITH replication = {'class': 'SimpleStrategy', 'replication_factor': 1}",
+                "USE a",
+                "CREATE TABLE t (id int PRIMARY KEY)",
+                "CREATE TABLE u (id int PRIMARY KEY)",
+                "INSERT INTO t (id) VALUES (1)",
+                "INSERT INTO t (id) VALUES (2)");
+        add(scheduler, "b.cql",
+                "CREATE KEYSPACE b WITH replication = {'class': 'SimpleStrategy', 'replication_factor': 1}",
+                "INSERT INTO a.u (id) VALUES (1)");
+
+        List<CqlScriptScheduler.Node> nodes = scheduler.getNodes();
+        assertEquals(6, nodes.size());
+        assertEquals(Collections.emptySet(), node(scheduler, 0).getDependencies());
+        assertEquals(Collections.singleton(node(scheduler, 0)), node(scheduler, 1).getDependencies());
+        assertEquals(Collections.singleton(node(scheduler, 0)), node(scheduler, 2).getDependencies());
+        // both inserts into t are a single unit depending on the creation of t
+        assertEquals(2, node(scheduler, 3).getStatements().size());
+        assertEquals(Collections.singleton(node(scheduler, 1)), node(scheduler, 3).getDependencies());
+        // keyspace b does not wait for keyspace a, the insert into a.u does wait for the creation of u
+        assertEquals(Collections.emptySet(), node(scheduler, 4).getDependencies());
+        assertEquals(Collections.singleton(node(scheduler, 2)), node(scheduler, 5).getDependencies());
+    }
+
+    @Test
+    public void should_make_global_statements_barriers() {
+        CqlScriptScheduler scheduler = new CqlScriptScheduler("localhost", 9160, "3.4.0", "ks", 4, false, null);
+        add(scheduler, "a.cql",
+                "INSERT INTO t (id) VALUES (1)",
+                "INSERT INTO u (id) VALUES (1)",
+                "CREATE ROLE bob",
+                "INSERT INTO t (id) VALUES (2)");
+
+        assertEquals(4, scheduler.getNodes().size());
+        assertEquals(2, node(scheduler, 2).getDependencies().size());
+        assertEquals(Collections.singleton(node(scheduler, 2)), node(scheduler, 3).getDependencies());
+    }
+}
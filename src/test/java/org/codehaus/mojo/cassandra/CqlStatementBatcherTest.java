@@ -0,0 +1,98 @@
+package org.codehaus.mojo.cassandra;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CqlStatementBatcherTest {
+
+    private static List<CqlStatement> batch(int thresholdBytes, String... statements) {
+        CqlStatementBatcher batcher = new CqlStatementBatcher(
+                CqlStatement.number(Arrays.asList(statements).iterator()), null, "ks", thresholdBytes) {
+            @Override
+            PrimaryKey lookupPrimaryKey(String keyspace, String table) {
+                List<String> none = Collections.emptyList();
+                if ("users".equals(table)) {
+                    return new PrimaryKey(Collections.singletonList("id"), none);
+                }
+                if ("events".equals(table)) {
+                    return new PrimaryKey(Collections.singletonList("id"), Arrays.asList("day", "seq"));
+                }
+                return new PrimaryKey(none, none);
+            }
+        };
+        List<CqlStatement> result = new ArrayList<CqlStatement>();
+        while (batcher.hasNext()) {
+            result.add(batcher.next());
+        }
+        return result;
+    }
+
+    @Test
+    public void should_batch_consecutive_writes_to_different_rows_of_the_same_partition() {
+        List<CqlStatement> result = batch(5120,
+                "INSERT INTO events (id, day, seq, name) VALUES (1, 1, 1, 'a')",
+                "UPDATE ks.events SET name = 'b' WHERE id = 1 AND day = 1 AND seq = 2",
+                "DELETE FROM events WHERE id = 1 AND day = 2");
+
+        assertEquals(1, result.size());
+        assertEquals("BEGIN UNLOGGED BATCH\n"
+                + "  INSERT INTO events (id, day, seq, name) VALUES (1, 1, 1, 'a');\n"
+                + "  UPDATE ks.events SET name = 'b' WHERE id = 1 AND day = 1 AND seq = 2;\n"
+                + "  DELETE FROM events WHERE id = 1 AND day = 2;\n"
+                + "APPLY BATCH", result.get(0).getCql());
+        assertEquals("CQL statements #1-#3", result.get(0).describe());
+    }
+
+    @Test
+    public void should_not_batch_writes_to_the_same_row_as_they_would_share_a_timestamp() {
+        List<CqlStatement> result = batch(5120,
+                "DELETE FROM users WHERE id = 1",
+                "INSERT INTO users (id, name) VALUES (1, 'a')",
+                "UPDATE ks.users SET name = 'b' WHERE id = 1",
+                "INSERT INTO events (id, day, seq, name) VALUES (1, 1, 1, 'a')",
+                "DELETE FROM events WHERE id = 1 AND day = 1",
+                "INSERT INTO events (id, day, seq, name) VALUES (1, 2, 1, 'a')");
+
+        assertEquals(5, result.size());
+        assertEquals("CQL statement #1", result.get(0).describe());
+        assertEquals("CQL statement #2", result.get(1).describe());
+        assertEquals("CQL statement #3", result.get(2).describe());
+        assertEquals("CQL statement #4", result.get(3).describe());
+        assertEquals("CQL statements #5-#6", result.get(4).describe());
+    }
+
+    @Test
+    public void should_split_batches_on_partition_change_and_barriers() {
+        List<CqlStatement> result = batch(5120,
+                "INSERT INTO users (id, name) VALUES (1, 'a;b')",
+                "INSERT INTO events (id, day, seq, name) VALUES (2, 1, 1, 'c')",
+                "INSERT INTO events (id, day, seq, name) VALUES (2, 1, 2, 'd')",
+                "CREATE TABLE other (id int PRIMARY KEY)",
+                "INSERT INTO users (id, name) VALUES (2, 'e') IF NOT EXISTS",
+                "INSERT INTO other (id) VALUES (2)");
+
+        assertEquals(5, result.size());
+        assertEquals("CQL statement #1", result.get(0).describe());
+        assertEquals("CQL statements #2-#3", result.get(1).describe());
+        assertEquals("CREATE TABLE other (id int PRIMARY KEY)", result.get(2).getCql());
+        assertEquals("CQL statement #5", result.get(3).describe());
+        assertEquals("CQL statement #6", result.get(4).describe());
+    }
+
+    @Test
+    public void should_respect_the_size_threshold() {
+        String insert = "INSERT INTO events (id, day, seq, name) VALUES (1, 1, %d, 'a')";
+        List<CqlStatement> result = batch(String.format(insert, 1).length() * 2,
+                String.format(insert, 1), String.format(insert, 2), String.format(insert, 3));
+
+        assertEquals(2, result.size());
+        assertEquals("CQL statements #1-#2", result.get(0).describe());
+        assertEquals("CQL statement #3", result.get(1).describe());
+    }
+}
@@ -0,0 +1,51 @@
+package org.codehaus.mojo.cassandra;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CqlStatementReaderTest {
+
+    private static List<String> read(String script) {
+        CqlStatementReader reader = new CqlStatementReader(new StringReader(script));
+        List<String> statements = new ArrayList<String>();
+        while (reader.hasNext()) {
+            statements.add(reader.next());
+        }
+        return statements;
+    }
+
+    @Test
+    public void should_split_on_semicolons() {
+        assertEquals(Arrays.asList("USE ks", "\nINSERT INTO t (a) VALUES (1)", "\n"),
+                read("USE ks;\nINSERT INTO t (a) VALUES (1);\n"));
+    }
+
+    @Test
+    public void should_not_split_on_semicolons_in_strings_and_names() {
+        assertEquals(Arrays.asList("INSERT INTO \"t;\" (a, b) VALUES ('x;''y', $$z;$$)", " SELECT 1"),
+                read("INSERT INTO \"t;\" (a, b) VALUES ('x;''y', $$z;$$); SELECT 1"));
+    }
+
+    @Test
+    public void should_not_split_on_semicolons_in_comments() {
+        assertEquals(Arrays.asList("-- a;\n// b;\n/* c; */ DROP TABLE t", " /**/ DROP TABLE u"),
+                read("-- a;\n// b;\n/* c; */ DROP TABLE t; /**/ DROP TABLE u"));
+    }
+
+    @Test
+    public void should_read_statements_spanning_buffers() {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            value.append(i % 10 == 0 ? ';' : 'v');
+        }
+        String insert = "INSERT INTO t (a) VALUES ('" + value + "')";
+
+        assertEquals(Arrays.asList(insert, insert), read(insert + ";" + insert));
+    }
+}
@@ -0,0 +1,75 @@
+package org.codehaus.mojo.cassandra;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ways of splitting a CQL script into statements. Not run as part of the build, run {@link #main} from
+ * the IDE or with the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CqlStatementSplitterBenchmark {
+
+    @Param({"100000"})
+    public int statements;
+
+    private String script;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder("CREATE TABLE users (id int PRIMARY KEY, name text, data blob);\n");
+        for (int i = 0; i < statements; i++) {
+            builder.append("-- user ").append(i).append('\n')
+                    .append("INSERT INTO users (id, name, data) VALUES (").append(i)
+                    .append(", 'user ''").append(i).append("''; the user', 0xcafe);\n");
+        }
+        script = builder.toString();
+    }
+
+    @Benchmark
+    public void string_split(Blackhole blackhole) {
+        for (String statement : script.split(";")) {
+            blackhole.consume(statement);
+        }
+    }
+
+    @Benchmark
+    public void cql_lexer(Blackhole blackhole) {
+        for (String statement : AbstractCqlExecMojo.splitStatementsUsingCqlLexer(script)) {
+            blackhole.consume(statement);
+        }
+    }
+
+    @Benchmark
+    public void statement_reader(Blackhole blackhole) {
+        CqlStatementReader reader = new CqlStatementReader(new StringReader(script));
+        while (reader.hasNext()) {
+            blackhole.consume(reader.next());
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(CqlStatementSplitterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,82 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.cassandra.thrift.Cassandra;
+import org.apache.cassandra.thrift.Column;
+import org.apache.cassandra.thrift.Compression;
+import org.apache.cassandra.thrift.ConsistencyLevel;
+import org.apache.cassandra.thrift.CqlResult;
+import org.apache.cassandra.thrift.CqlResultType;
+import org.apache.cassandra.thrift.CqlRow;
+import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class CqlTruncatorTest {
+    @Test
+    public void should_only_skip_tables_that_every_replica_finds_empty() throws Exception {
+        final FakeClient client = new FakeClient("SELECT * FROM ks.filled LIMIT 1");
+        CqlTruncator truncator = new CqlTruncator("localhost", 9160, "3.4.4", 1, new SystemStreamLog()) {
+            @Override
+            CqlConnection open() {
+                return new CqlConnection(client, "3.4.4");
+            }
+        };
+
+        int truncated = truncator.truncate(Arrays.asList("ks.empty", "ks.filled"), true);
+
+        assertEquals(1, truncated);
+        assertEquals(Arrays.asList("SELECT * FROM ks.empty LIMIT 1 at ALL", "SELECT * FROM ks.filled LIMIT 1 at ALL",
+                "TRUNCATE ks.filled at ONE"), client.calls);
+    }
+
+    @Test
+    public void should_truncate_every_table_without_reading_it_when_not_skipping_empty_ones() throws Exception {
+        final FakeClient client = new FakeClient();
+        CqlTruncator truncator = new CqlTruncator("localhost", 9160, "3.4.4", 1, new SystemStreamLog()) {
+            @Override
+            CqlConnection open() {
+                return new CqlConnection(client, "3.4.4");
+            }
+        };
+
+        int truncated = truncator.truncate(Arrays.asList("ks.empty", "ks.filled"), false);
+
+        assertEquals(2, truncated);
+        assertEquals(Arrays.asList("TRUNCATE ks.empty at ONE", "TRUNCATE ks.filled at ONE"), client.calls);
+    }
+
+    private static final class FakeClient extends Cassandra.Client {
+        private final List<String> calls = new ArrayList<String>();
+        private final List<String> filled;
+
+        private FakeClient(String... filled) {
+            super(null);
+            this.filled = Arrays.asList(filled);
+        }
+
+        @Override
+        public CqlResult execute_cql3_query(ByteBuffer query, Compression compression, ConsistencyLevel consistency) {
+            String statement;
+            try {
+                statement = ByteBufferUtil.string(query);
+            } catch (CharacterCodingException e) {
+                throw new IllegalArgumentException(e);
+            }
+            calls.add(statement + " at " + consistency);
+            List<CqlRow> rows = new ArrayList<CqlRow>();
+            if (filled.contains(statement)) {
+                rows.add(new CqlRow(ByteBufferUtil.bytes("id"), Collections.<Column>emptyList()));
+            }
+            return new CqlResult(CqlResultType.ROWS).setRows(rows);
+        }
+    }
+}
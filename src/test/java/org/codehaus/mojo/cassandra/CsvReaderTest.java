@@ -0,0 +1,32 @@
+package org.codehaus.mojo.cassandra;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class CsvReaderTest {
+
+    @Test
+    public void should_read_quoted_fields_and_missing_values() {
+        CsvReader reader = new CsvReader(new StringReader(
+                "id,name,bio\r\n1,\"Doe, John\",\"said \"\"hi\"\"\nand left\"\n2,,\"\"\n"), ',');
+
+        assertEquals(Arrays.asList("id", "name", "bio"), reader.next());
+        assertEquals(Arrays.asList("1", "Doe, John", "said \"hi\"\nand left"), reader.next());
+        assertEquals(Arrays.asList("2", null, ""), reader.next());
+        assertEquals(3, reader.getRecordNumber());
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void should_turn_records_into_json_objects() {
+        String json = JsonRows.toJson(Arrays.asList("id", "name", null, "bio"),
+                                      Arrays.asList("1", "a \"b\"\\c", "skipped", null));
+
+        assertEquals("{\"id\": \"1\", \"name\": \"a \\\"b\\\"\\\\c\", \"bio\": null}", json);
+    }
+}
@@ -0,0 +1,39 @@
+package org.codehaus.mojo.cassandra;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GenerateSSTablesMojoTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void should_still_load_the_schema_on_the_first_start_after_installing_sstables() throws IOException {
+        File cassandraDir = new File(folder.getRoot(), "cassandra");
+        CqlSSTableGenerator generator = new CqlSSTableGenerator("CREATE TABLE shop.orders (id int PRIMARY KEY) "
+                + "WITH id = '5a1c395e-b41f-11e5-9f22-ba0be0483c18';");
+
+        File target = GenerateSSTablesMojo.tableDirectoryOf(cassandraDir, generator);
+
+        assertEquals(new File(cassandraDir, "data/shop/orders-5a1c395eb41f11e59f22ba0be0483c18"), target);
+        assertTrue(target.isDirectory());
+        assertTrue(Utils.isFirstStart(cassandraDir));
+    }
+
+    @Test
+    public void should_not_be_the_first_start_once_cassandra_created_its_system_keyspace() {
+        File cassandraDir = new File(folder.getRoot(), "cassandra");
+        assertTrue(Utils.isFirstStart(cassandraDir));
+        assertTrue(new File(cassandraDir, "data/system").mkdirs());
+        assertFalse(Utils.isFirstStart(cassandraDir));
+    }
+}
@@ -0,0 +1,55 @@
+package org.codehaus.mojo.cassandra;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void should_record_small_values_exactly() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(50, histogram.getValueAtPercentile(50));
+        assertEquals(99, histogram.getValueAtPercentile(99));
+        assertEquals(100, histogram.getValueAtPercentile(99.9));
+        assertEquals(100, histogram.getValueAtPercentile(100));
+        assertEquals(50.5, histogram.getMean(), 0.001);
+    }
+
+    @Test
+    public void should_keep_percentiles_within_one_percent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1000; value <= 10000000; value += 1000) {
+            histogram.record(value);
+        }
+        assertWithinOnePercent(5000000, histogram.getValueAtPercentile(50));
+        assertWithinOnePercent(9900000, histogram.getValueAtPercentile(99));
+        assertWithinOnePercent(9990000, histogram.getValueAtPercentile(99.9));
+        assertEquals(10000000, histogram.getMax());
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void should_add_histograms() {
+        LatencyHistogram first = new LatencyHistogram();
+        LatencyHistogram second = new LatencyHistogram();
+        first.record(10);
+        second.record(20);
+        second.record(-5);
+        first.add(second);
+        assertEquals(3, first.getCount());
+        assertEquals(20, first.getMax());
+        assertEquals(10, first.getValueAtPercentile(50));
+        assertEquals(0, new LatencyHistogram().getValueAtPercentile(99));
+    }
+
+    private static void assertWithinOnePercent(long expected, long actual) {
+        assertTrue(expected + " ~ " + actual, Math.abs(actual - expected) <= expected / 100);
+    }
+}
@@ -0,0 +1,114 @@
+package org.codehaus.mojo.cassandra;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RepairSchedulerTest {
+
+    private static final String MURMUR3 = "org.apache.cassandra.dht.Murmur3Partitioner";
+
+    private static final String RANDOM = "org.apache.cassandra.dht.RandomPartitioner";
+
+    @Test
+    public void should_split_ranges_into_contiguous_subranges() {
+        Map<List<String>, List<String>> ranges = new LinkedHashMap<List<String>, List<String>>();
+        ranges.put(Arrays.asList("-100", "200"), Arrays.asList("127.0.0.1", "127.0.0.2"));
+        ranges.put(Arrays.asList("200", "-100"), Arrays.asList("127.0.0.2", "127.0.0.3"));
+        List<RepairScheduler.Subrange> subranges = RepairScheduler.split("ks", MURMUR3, ranges, 3);
+        assertEquals(6, subranges.size());
+        assertEquals("-100", subranges.get(0).getStart());
+        assertEquals("0", subranges.get(0).getEnd());
+        assertEquals("100", subranges.get(1).getEnd());
+        assertEquals("200", subranges.get(2).getEnd());
+        assertEquals(Arrays.asList("127.0.0.1", "127.0.0.2"), subranges.get(2).getReplicas());
+        for (int i = 1; i < subranges.size(); i++) {
+            assertEquals(subranges.get(i - 1).getEnd(), subranges.get(i).getStart());
+        }
+        // the wrapping range crosses the end of the ring
+        assertTrue(new BigInteger(subranges.get(4).getStart()).signum() > 0);
+        assertTrue(new BigInteger(subranges.get(4).getEnd()).signum() < 0);
+        assertEquals("-100", subranges.get(5).getEnd());
+    }
+
+    @Test
+    public void should_count_every_token_of_the_ring_when_wrapping_around_it() {
+        Map<List<String>, List<String>> ranges = new LinkedHashMap<List<String>, List<String>>();
+        ranges.put(Arrays.asList(String.valueOf(Long.MAX_VALUE - 1), String.valueOf(Long.MIN_VALUE + 3)),
+                Arrays.asList("127.0.0.1"));
+        List<RepairScheduler.Subrange> subranges = RepairScheduler.split("ks", MURMUR3, ranges, 4);
+        assertEquals(4, subranges.size());
+        assertEquals(String.valueOf(Long.MAX_VALUE), subranges.get(0).getEnd());
+        assertEquals(String.valueOf(Long.MIN_VALUE), subranges.get(1).getEnd());
+        assertEquals(String.valueOf(Long.MIN_VALUE + 1), subranges.get(2).getEnd());
+        assertEquals(String.valueOf(Long.MIN_VALUE + 3), subranges.get(3).getEnd());
+
+        BigInteger max = BigInteger.ONE.shiftLeft(127);
+        ranges.clear();
+        ranges.put(Arrays.asList(max.subtract(BigInteger.ONE).toString(), "1"), Arrays.asList("127.0.0.1"));
+        subranges = RepairScheduler.split("ks", RANDOM, ranges, 3);
+        assertEquals(3, subranges.size());
+        assertEquals(max.toString(), subranges.get(0).getEnd());
+        assertEquals("0", subranges.get(1).getEnd());
+        assertEquals("1", subranges.get(2).getEnd());
+    }
+
+    @Test
+    public void should_never_repair_subranges_sharing_a_replica_at_the_same_time() throws InterruptedException {
+        Map<List<String>, List<String>> ranges = new LinkedHashMap<List<String>, List<String>>();
+        ranges.put(Arrays.asList("0", "1000"), Arrays.asList("a", "b"));
+        ranges.put(Arrays.asList("1000", "2000"), Arrays.asList("b", "c"));
+        ranges.put(Arrays.asList("2000", "3000"), Arrays.asList("c", "d"));
+        ranges.put(Arrays.asList("3000", "0"), Arrays.asList("d", "a"));
+        List<RepairScheduler.Subrange> subranges = RepairScheduler.split("ks", MURMUR3, ranges, 4);
+        final Set<String> busy = new HashSet<String>();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        int failed = new RepairScheduler(4, new SystemStreamLog()).run(subranges, new RepairScheduler.Repairer() {
+            public String repair(RepairScheduler.Subrange subrange) throws Exception {
+                synchronized (busy) {
+                    for (String replica : subrange.getReplicas()) {
+                        if (!busy.add(replica)) {
+                            overlaps.incrementAndGet();
+                        }
+                    }
+                }
+                maxConcurrent.set(Math.max(maxConcurrent.get(), concurrent.incrementAndGet()));
+                Thread.sleep(5);
+                concurrent.decrementAndGet();
+                synchronized (busy) {
+                    busy.removeAll(subrange.getReplicas());
+                }
+                if (subrange.getStart().equals("0")) {
+                    throw new IllegalStateException("boom");
+                }
+                return subrange.getReplicas().get(0);
+            }
+        });
+        assertEquals(1, failed);
+        assertEquals(0, overlaps.get());
+        assertTrue(maxConcurrent.get() <= 2);
+        for (RepairScheduler.Subrange subrange : subranges) {
+            if (subrange.getStart().equals("0")) {
+                assertEquals("boom", subrange.getError());
+            } else {
+                assertNull(subrange.getError());
+                assertFalse(subrange.getCoordinator().isEmpty());
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.codehaus.mojo.cassandra;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TableSnapshotTest {
+
+    private static final TableSnapshot.Schema SCHEMA = new TableSnapshot.Schema("shop", "Orders",
+            "5a1c395e-b41f-11e5-9f22-ba0be0483c18", Arrays.asList(
+            new CqlDataGenerator.ColumnSchema("total", "regular", -1, "decimal"),
+            new CqlDataGenerator.ColumnSchema("ts", "clustering", 0, "timestamp", "desc"),
+            new CqlDataGenerator.ColumnSchema("customer", "static", -1, "frozen<address>"),
+            new CqlDataGenerator.ColumnSchema("id", "partition_key", 0, "text")),
+            Collections.singletonList(new TableSnapshot.UserType("address", Arrays.asList("street", "city"),
+                    Arrays.asList("text", "text"))));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void should_read_the_rows_and_schema_written() throws IOException {
+        File file = write(3000);
+        TableSnapshot.Reader reader = new TableSnapshot.Reader(file);
+        try {
+            assertEquals("shop", reader.getSchema().getKeyspace());
+            assertEquals("Orders", reader.getSchema().getTable());
+            assertEquals(SCHEMA.createTable("shop"), reader.getSchema().createTable("shop"));
+            for (int i = 0; i < 3000; i++) {
+                assertTrue(reader.hasNext());
+                List<ByteBuffer> values = reader.next();
+                assertEquals(row(i), values);
+                assertEquals(i + 1, reader.getRowNumber());
+            }
+            assertFalse(reader.hasNext());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void should_detect_corrupted_and_truncated_snapshots() throws IOException {
+        File file = write(100);
+        RandomAccessFile corrupted = new RandomAccessFile(file, "rw");
+        try {
+            corrupted.seek(corrupted.length() - 20);
+            corrupted.write(corrupted.read() ^ 1);
+        } finally {
+            corrupted.close();
+        }
+        assertUnreadable(file);
+        file = write(100);
+        RandomAccessFile truncated = new RandomAccessFile(file, "rw");
+        try {
+            truncated.setLength(truncated.length() - 12);
+        } finally {
+            truncated.close();
+        }
+        assertUnreadable(file);
+    }
+
+    @Test
+    public void should_write_the_schema_as_cql() {
+        assertEquals(Collections.singletonList("CREATE TYPE IF NOT EXISTS \"copy\".\"address\" (\"street\" text, "
+                + "\"city\" text)"), SCHEMA.createTypes("copy"));
+        assertEquals("CREATE TABLE IF NOT EXISTS \"shop\".\"Orders\" (\"id\" text, \"ts\" timestamp, "
+                + "\"customer\" frozen<address> static, \"total\" decimal, PRIMARY KEY ((\"id\"), \"ts\")) "
+                + "WITH CLUSTERING ORDER BY (\"ts\" DESC) AND id = '5a1c395e-b41f-11e5-9f22-ba0be0483c18'",
+                SCHEMA.createTable("shop"));
+        assertFalse(SCHEMA.createTable("copy").contains("id = "));
+        BitSet present = new BitSet();
+        present.set(0);
+        present.set(3);
+        assertEquals("INSERT INTO \"copy\".\"Orders\" (\"id\", \"total\") VALUES (?, ?)",
+                SCHEMA.insert("copy", present));
+    }
+
+    @Test
+    public void should_insert_the_columns_that_are_set() throws IOException {
+        TableSnapshot.Reader reader = new TableSnapshot.Reader(write(2));
+        try {
+            CqlImporter.BoundRows rows = reader.toInserts("copy");
+            assertEquals(Arrays.asList(row(0).get(0), row(0).get(1), row(0).get(2)), rows.next());
+            assertEquals("INSERT INTO \"copy\".\"Orders\" (\"id\", \"ts\", \"customer\") VALUES (?, ?, ?)",
+                    rows.getStatement());
+            assertEquals(4, rows.next().size());
+            assertEquals(2, rows.getRowNumber());
+            assertFalse(rows.hasNext());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private File write(int rows) throws IOException {
+        File file = folder.newFile();
+        TableSnapshot.Writer writer = new TableSnapshot.Writer(file, SCHEMA);
+        try {
+            TableSnapshot.Block block = writer.newBlock();
+            for (int i = 0; i < rows; i++) {
+                block.add(row(i));
+                if (i % 1000 == 999) {
+                    writer.write(block);
+                }
+            }
+            writer.write(block);
+            assertEquals(rows, writer.getRows());
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private static List<ByteBuffer> row(int i) {
+        List<ByteBuffer> values = new ArrayList<ByteBuffer>();
+        values.add(ByteBuffer.wrap(("order" + i).getBytes()));
+        values.add(ByteBuffer.allocate(8).putLong(0, 1500000000000L + i));
+        values.add(ByteBuffer.wrap(new byte[i % 7]));
+        values.add(i % 2 == 0 ? null : ByteBuffer.wrap(new byte[]{0, 0, 0, 2, (byte) i}));
+        return values;
+    }
+
+    private static void assertUnreadable(File file) throws IOException {
+        TableSnapshot.Reader reader = new TableSnapshot.Reader(file);
+        try {
+            while (reader.hasNext()) {
+                reader.next();
+            }
+            fail("read " + reader.getRowNumber() + " rows");
+        } catch (UncheckedIOException expected) {
+            // expected
+        } finally {
+            reader.close();
+        }
+    }
+}